@@ -329,8 +329,9 @@ public class ActiveSongBackgroundMusicBuilderImpl implements PropertyChangeListe
     {
         assert mode.equals(Mode.PLAYING_SONG);
         var mapRvPhrases = update.getMapRvPhrases();
-        if (mapRvPhrases == null)
+        if (mapRvPhrases == null || update.isPartial())
         {
+            // Wait for the complete update
             return;
         }
 
@@ -32,6 +32,7 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sound.midi.Sequencer;
+import javax.swing.SwingUtilities;
 import org.jjazz.analytics.api.Analytics;
 import org.jjazz.harmony.api.ChordSymbol;
 import org.jjazz.harmony.spi.ChordTypeDatabase;
@@ -46,6 +47,8 @@ import org.jjazz.musiccontrol.api.playbacksession.PlaybackSession;
 import org.jjazz.musiccontrol.api.playbacksession.SessionConfig;
 import org.jjazz.musiccontrol.api.playbacksession.UpdateProviderSongSession;
 import org.jjazz.musiccontrol.api.playbacksession.UpdatableSongSessionOnePlay;
+import org.jjazz.musiccontrol.api.playbacksession.UpdatableSongSession.Update;
+import org.jjazz.musiccontrol.api.playbacksession.UpdatableSongSession.UpdateProvider;
 import org.jjazz.rhythm.api.MusicGenerationException;
 import org.jjazz.rhythm.api.RhythmParameter;
 import org.jjazz.song.api.Song;
@@ -77,6 +80,10 @@ public class Arranger implements SgsChangeListener, PropertyChangeListener
     private SongPart songPartWork;
     private CLI_ChordSymbol firstChordSymbol;
     private boolean playing;
+    private boolean liveMode = true;
+    private ChordBank chordBank;
+    private UpdateProviderSongSession dynSession;
+    private UpdatableSongSessionOnePlay updatableSession;
     private PropertyChangeSupport pcs = new PropertyChangeSupport(this);
     private static final Logger LOGGER = Logger.getLogger(Arranger.class.getSimpleName());
 
@@ -121,6 +128,32 @@ public class Arranger implements SgsChangeListener, PropertyChangeListener
         return firstChordSymbol;
     }
 
+    /**
+     * Check if the live mode is used.
+     *
+     * @return True by default
+     */
+    public boolean isLiveMode()
+    {
+        return liveMode;
+    }
+
+    /**
+     * Set the live mode.
+     * <p>
+     * In live mode a bank of phrases is pre-rendered for each chord type family when arranger starts playing. Upon a chord change, the bank phrases are
+     * transposed and immediately used for playback, until the exact music for the new chord is generated.
+     * <p>
+     * Must be called before play().
+     *
+     * @param b
+     * @see ChordBank
+     */
+    public void setLiveMode(boolean b)
+    {
+        liveMode = b;
+    }
+
     /**
      * Update the tempo once arranger has started playing.
      * <p>
@@ -163,13 +196,14 @@ public class Arranger implements SgsChangeListener, PropertyChangeListener
 
 
         var config = new SessionConfig(true, false, false, Sequencer.LOOP_CONTINUOUSLY,  null);
-        UpdateProviderSongSession dynSession = UpdateProviderSongSession.getSession(songContextWork, config, false, PlaybackSession.Context.ARRANGER);
+        dynSession = UpdateProviderSongSession.getSession(songContextWork, config, false, PlaybackSession.Context.ARRANGER);
         dynSession.setPreUpdateBufferTimeMs(5);     // Each user chord change generates only 2 song changes (remove and add 1 CLI_ChordSymbol)
         dynSession.setPostUpdateSleepTimeMs(100);    // This allow user to change chord quickly
         dynSession.setUserErrorExceptionHandler(null);  // User execption may occur depending on timing, as we remove then add a chord symbol at section start
+        dynSession.setSpeculativeGeneration(!liveMode);     // Idle time is used to fill the chord bank
 
 
-        var updatableSession = new UpdatableSongSessionOnePlay(dynSession);
+        updatableSession = new UpdatableSongSessionOnePlay(dynSession);
         mc.setPlaybackSession(updatableSession, false); // Can raise MusicGenerationException
 
 
@@ -177,6 +211,15 @@ public class Arranger implements SgsChangeListener, PropertyChangeListener
         mc.play(0);
 
 
+        // Pre-render the chord bank when session is idle
+        if (liveMode)
+        {
+            chordBank = new ChordBank();
+            dynSession.addPropertyChangeListener(this);
+            fillChordBank();
+        }
+
+
         playing = true;
         pcs.firePropertyChange(PROP_PLAYING, false, true);
 
@@ -190,6 +233,11 @@ public class Arranger implements SgsChangeListener, PropertyChangeListener
             LOGGER.fine("stop()");
             playing = false;                // Must be before calling stop() below    
             MusicController.getInstance().stop();
+            if (dynSession != null)
+            {
+                dynSession.removePropertyChangeListener(this);
+            }
+            chordBank = null;
             pcs.firePropertyChange(PROP_PLAYING, true, false);
         }
     }
@@ -221,6 +269,19 @@ public class Arranger implements SgsChangeListener, PropertyChangeListener
         CLI_ChordSymbol newCliCs = CLI_Factory.getDefault().createChordSymbol(newEcs, firstChordSymbol.getPosition());
 
 
+        // In live mode use the chord bank phrases until the exact music is generated by the session
+        var bank = chordBank;
+        var session = updatableSession;
+        if (bank != null && session != null && session.getState().equals(PlaybackSession.State.GENERATED))
+        {
+            var phrases = bank.getPhrases(newCs);
+            if (phrases != null)
+            {
+                session.updateSequence(new Update(phrases, null));
+            }
+        }
+
+
         // Update the chord leadsheet
         cls.removeItem(firstChordSymbol);
         cls.addItem(newCliCs);
@@ -236,6 +297,8 @@ public class Arranger implements SgsChangeListener, PropertyChangeListener
         songContextWork = null;
         songPartWork = null;
         firstChordSymbol = null;
+        dynSession = null;
+        updatableSession = null;
     }
 
     public void addPropertyListener(PropertyChangeListener l)
@@ -261,6 +324,11 @@ public class Arranger implements SgsChangeListener, PropertyChangeListener
             RpValueChangedEvent rpe = (RpValueChangedEvent) e;
             SongStructure sgs = songContextWork.getSong().getSongStructure();
             sgs.setRhythmParameterValue(songPartWork, (RhythmParameter) rpe.getRhythmParameter(), rpe.getNewValue());
+            if (chordBank != null)
+            {
+                // Bank will be filled again once session has generated the update
+                chordBank.clear();
+            }
         }
     }
 
@@ -290,6 +358,13 @@ public class Arranger implements SgsChangeListener, PropertyChangeListener
                         throw new AssertionError(state.name());
                 }
             }
+        } else if (evt.getSource() == dynSession)
+        {
+            if (evt.getPropertyName().equals(UpdateProvider.PROP_UPDATE_AVAILABLE))
+            {
+                // Session is now idle, we can complete the bank. Event might be fired out of the EDT.
+                SwingUtilities.invokeLater(() -> fillChordBank());
+            }
         }
     }
 
@@ -368,6 +443,18 @@ public class Arranger implements SgsChangeListener, PropertyChangeListener
 
     }
 
+    /**
+     * Fill the missing phrases of the chord bank using the session's music generation thread, so that it does not interfere with updates generation.
+     */
+    private void fillChordBank()
+    {
+        if (chordBank != null && !chordBank.isComplete() && songContextWork != null)
+        {
+            boolean b = dynSession.submitIdleTask(chordBank.getFillTask(songContextWork));
+            LOGGER.log(Level.FINE, "fillChordBank() submitted={0}", b);
+        }
+    }
+
     static private String toDumpString(ChordLeadSheet cls)
     {
         StringBuilder sb = new StringBuilder();
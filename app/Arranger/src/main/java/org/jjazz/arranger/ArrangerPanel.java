@@ -27,7 +27,6 @@ import java.awt.Font;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.text.ParseException;
-import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -379,22 +378,22 @@ public class ArrangerPanel extends javax.swing.JPanel implements PropertyChangeL
     /**
      * Called by the ChordReceiver when a chord was changed.
      *
-     * @param notes
+     * @param pitchClassSet
+     * @param lowestPitch
      */
-    protected void processIncomingChord(List<Note> notes)       // protected for testing, should be private
+    protected void processIncomingChord(int pitchClassSet, int lowestPitch)       // protected for testing, should be private
     {
-        LOGGER.log(Level.FINE, "processIncomingChord() -- notes={0} nanoTime()={1}", new Object[]
+        if (LOGGER.isLoggable(Level.FINE))
         {
-            notes, System.nanoTime()
-        });
-        if (notes.size() < 3 || notes.size() > chordSymbolFinder.getMaxNbNotes())
-        {
-            return;
+            LOGGER.log(Level.FINE, "processIncomingChord() -- pitchClassSet={0} lowestPitch={1} nanoTime()={2}", new Object[]
+            {
+                Integer.toBinaryString(pitchClassSet), lowestPitch, System.nanoTime()
+            });
         }
-        var chordSymbols = chordSymbolFinder.find(notes);
-        if (chordSymbols != null)
+        var chordSymbols = chordSymbolFinder.find(pitchClassSet);
+        if (!chordSymbols.isEmpty())
         {
-            var chordSymbol = chordSymbolFinder.getChordSymbol(notes, chordSymbols, cb_lowerNoteIsBass.isSelected());
+            var chordSymbol = chordSymbolFinder.getChordSymbol(lowestPitch, chordSymbols, cb_lowerNoteIsBass.isSelected());
             if (chordSymbol != null)
             {
                 if (arranger != null)
@@ -0,0 +1,211 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLab software.
+ *   
+ *  JJazzLab is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLab is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.arranger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jjazz.chordleadsheet.api.item.CLI_ChordSymbol;
+import org.jjazz.chordleadsheet.spi.item.CLI_Factory;
+import org.jjazz.harmony.api.ChordSymbol;
+import org.jjazz.harmony.api.ChordType;
+import org.jjazz.harmony.api.Note;
+import org.jjazz.harmony.spi.ChordTypeDatabase;
+import org.jjazz.midimix.api.UserRhythmVoice;
+import org.jjazz.phrase.api.Phrase;
+import org.jjazz.rhythm.api.MusicGenerationCancelledException;
+import org.jjazz.rhythm.api.MusicGenerationException;
+import org.jjazz.rhythm.api.RhythmVoice;
+import org.jjazz.rhythmmusicgeneration.api.SongSequenceBuilder;
+import org.jjazz.rhythmmusicgeneration.spi.CancellationToken;
+import org.jjazz.song.api.SongContext;
+
+/**
+ * A bank of pre-rendered phrases for the arranger work song part, one set of phrases per chord type family.
+ * <p>
+ * Phrases are rendered for a C root chord. Getting the phrases for a chord symbol is a lookup plus a transposition of the non-drums rhythm phrases, which is
+ * much faster than a music generation. The result is an approximation (chord type family instead of the exact chord type, no bass note): the exact music is
+ * still generated by the playback session afterwards.
+ */
+public class ChordBank
+{
+
+    /**
+     * The chord type used to render each family, with a C root.
+     */
+    private static final Map<ChordType.Family, String> FAMILY_CHORD_TYPES = Map.of(
+            ChordType.Family.MAJOR, "",
+            ChordType.Family.SEVENTH, "7",
+            ChordType.Family.MINOR, "m7",
+            ChordType.Family.DIMINISHED, "dim7",
+            ChordType.Family.SUS, "7sus");
+    private final Map<ChordType.Family, Map<RhythmVoice, Phrase>> mapFamilyPhrases = new ConcurrentHashMap<>();
+    private volatile int version;
+    private static final Logger LOGGER = Logger.getLogger(ChordBank.class.getSimpleName());
+
+
+    /**
+     * Check if phrases are available for all the chord type families.
+     *
+     * @return
+     */
+    public boolean isComplete()
+    {
+        return mapFamilyPhrases.size() == ChordType.Family.values().length;
+    }
+
+    /**
+     * Remove all the phrases, e.g. because a RhythmParameter value has changed.
+     * <p>
+     * Phrases being rendered by a previous fill task are discarded.
+     */
+    public void clear()
+    {
+        version++;
+        mapFamilyPhrases.clear();
+    }
+
+    /**
+     * Get the phrases for the specified chord symbol.
+     *
+     * @param cs
+     * @return Null if no phrases available for the chord type family of cs. The returned phrases can be modified.
+     */
+    public Map<RhythmVoice, Phrase> getPhrases(ChordSymbol cs)
+    {
+        var familyPhrases = mapFamilyPhrases.get(cs.getChordType().getFamily());
+        if (familyPhrases == null || familyPhrases.isEmpty())
+        {
+            return null;
+        }
+
+        int transpose = new Note(0).getRelativePitchDelta(cs.getRootNote().getRelativePitch());       // Between -5 and +6
+        Map<RhythmVoice, Phrase> res = new HashMap<>();
+        for (var rv : familyPhrases.keySet())
+        {
+            Phrase p = familyPhrases.get(rv);
+            boolean isFixed = transpose == 0 || rv.isDrums() || rv instanceof UserRhythmVoice;
+            res.put(rv, isFixed ? p.clone() : p.getProcessedPhrasePitch(pitch -> pitch + transpose));
+        }
+
+        return res;
+    }
+
+    /**
+     * Get a task which renders the missing families phrases.
+     * <p>
+     * Must be called on the thread which modifies sgContext, usually the Swing EDT. The task can be run on any thread, it stops as soon as its
+     * CancellationToken is cancelled.
+     *
+     * @param sgContext A context with one song part which starts with the only chord symbol of its section
+     * @return
+     */
+    public Consumer<CancellationToken> getFillTask(SongContext sgContext)
+    {
+        var contextCopy = sgContext.getDeepCopy(false);
+        int taskVersion = version;
+        return token -> fill(contextCopy, taskVersion, token);
+    }
+
+    // =========================================================================================
+    // Private methods
+    // =========================================================================================
+    private void fill(SongContext sgContext, int taskVersion, CancellationToken token)
+    {
+        var spt = sgContext.getSongParts().get(0);
+        var cls = sgContext.getSong().getChordLeadSheet();
+        long t = System.currentTimeMillis();
+
+        for (var family : ChordType.Family.values())
+        {
+            if (token.isCancelled() || taskVersion != version)
+            {
+                return;
+            }
+            if (mapFamilyPhrases.containsKey(family))
+            {
+                continue;
+            }
+
+            ChordType ct = getFamilyChordType(family);
+            if (ct == null)
+            {
+                LOGGER.log(Level.WARNING, "fill() No chord type found for family={0}", family);
+                continue;
+            }
+
+
+            // Replace the section chord symbol
+            var cliCs = cls.getItems(spt.getParentSection(), CLI_ChordSymbol.class).get(0);
+            var ecs = cliCs.getData().getCopy(new ChordSymbol(new Note(0), ct), null, null, null);
+            var newCliCs = CLI_Factory.getDefault().createChordSymbol(ecs, cliCs.getPosition());
+            cls.removeItem(cliCs);
+            cls.addItem(newCliCs);
+
+
+            try
+            {
+                var sgBuilder = new SongSequenceBuilder(sgContext);
+                sgBuilder.setCancellationToken(token);
+                var phrases = sgBuilder.buildMapRvPhrase(true);
+                if (taskVersion == version)
+                {
+                    mapFamilyPhrases.put(family, phrases);
+                }
+            } catch (MusicGenerationCancelledException ex)
+            {
+                return;
+            } catch (MusicGenerationException ex)
+            {
+                // Don't retry
+                LOGGER.log(Level.FINE, "fill() family={0} ex={1}", new Object[]
+                {
+                    family, ex.getMessage()
+                });
+                if (taskVersion == version)
+                {
+                    mapFamilyPhrases.put(family, Map.of());
+                }
+            }
+        }
+
+        LOGGER.log(Level.FINE, "fill() done in {0}ms", System.currentTimeMillis() - t);
+    }
+
+    private ChordType getFamilyChordType(ChordType.Family family)
+    {
+        var ctdb = ChordTypeDatabase.getDefault();
+        ChordType res = ctdb.getChordType(FAMILY_CHORD_TYPES.get(family));
+        if (res == null || res.getFamily() != family)
+        {
+            res = ctdb.getChordTypes().stream()
+                    .filter(ct -> ct.getFamily() == family)
+                    .findFirst()
+                    .orElse(null);
+        }
+        return res;
+    }
+}
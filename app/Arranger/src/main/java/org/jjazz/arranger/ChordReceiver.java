@@ -23,7 +23,6 @@
 package org.jjazz.arranger;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -31,15 +30,15 @@ import java.util.prefs.Preferences;
 import javax.sound.midi.MidiMessage;
 import javax.sound.midi.Receiver;
 import javax.sound.midi.ShortMessage;
-import org.jjazz.harmony.api.Note;
 import org.jjazz.midi.api.JJazzMidiSystem;
 import org.jjazz.midi.api.MidiUtilities;
 import org.openide.util.NbPreferences;
 
 
 /**
- * A Midi receiver which updates the current list of notes ON.
+ * A Midi receiver which updates the current set of notes ON.
  * <p>
+ * Notes ON are stored as a 128-bit set of pitches, so that note events are processed without allocating objects.
  */
 public class ChordReceiver implements Receiver
 {
@@ -55,13 +54,18 @@ public class ChordReceiver implements Receiver
          * <p>
          * Note: event handling should be as short as possible.
          *
-         * @param notes
+         * @param pitchClassSet A 12-bit value, bit n is set if a note ON has relative pitch n. See
+         *                      {@link org.jjazz.harmony.api.ChordSymbolFinder#find(int)}.
+         * @param lowestPitch   The pitch of the lowest note ON, or -1 if no note ON.
          */
-        void chordChanged(List<Note> notes);
+        void chordChanged(int pitchClassSet, int lowestPitch);
     }
     private int splitNote;
     private final List<ChordListener> listeners = new ArrayList<>();
-    private final List<Note> notes = new LinkedList<>();
+    /**
+     * Notes ON: bit n of pitchesOn[0] for pitch n, bit n of pitchesOn[1] for pitch 64+n.
+     */
+    private final long[] pitchesOn = new long[2];
     private static Preferences prefs = NbPreferences.forModule(JJazzMidiSystem.class);
     private static final Logger LOGGER = Logger.getLogger(ChordReceiver.class.getSimpleName());  
 
@@ -85,82 +89,56 @@ public class ChordReceiver implements Receiver
     {
         if (newSplitNote < this.splitNote)
         {
-            for (var it = notes.iterator(); it.hasNext();)
+            // Remove notes above the new split note
+            for (int pitch = newSplitNote + 1; pitch <= this.splitNote; pitch++)
             {
-                if (it.next().getPitch() > newSplitNote)
-                {
-                    it.remove();
-                }
+                pitchesOn[pitch >> 6] &= ~(1L << (pitch & 63));
             }
         }
         this.splitNote = newSplitNote;
         prefs.putInt(PREF_SPLIT_NOTE, this.splitNote);
     }
 
-    public void reset()
+    public synchronized void reset()
     {
-        notes.clear();
+        pitchesOn[0] = 0;
+        pitchesOn[1] = 0;
     }
 
     @Override
     public void send(MidiMessage msg, long timeStamp)
     {
-        ShortMessage noteMsg = MidiUtilities.getNoteOnShortMessage(msg);
-        if (noteMsg != null)
-        {
-            // Note ON
-            int pitch = noteMsg.getData1();
-            int velocity = noteMsg.getData2();
+        int pitchClassSet;
+        int lowestPitch;
 
-            if (pitch > getSplitNote())
+        synchronized (this)
+        {
+            ShortMessage noteMsg = MidiUtilities.getNoteOnShortMessage(msg);
+            boolean noteOn = noteMsg != null;
+            if (!noteOn)
             {
-                noteMsg = null;
-            } else
+                noteMsg = MidiUtilities.getNoteOffShortMessage(msg);
+            }
+            if (noteMsg == null || noteMsg.getData1() > splitNote)
             {
-                // Add new Note ordered by pitch
-                Note newNote = new Note(pitch, 1, velocity);
-                var lIt = notes.listIterator();
-                while (lIt.hasNext())
-                {
-                    if (pitch <= lIt.next().getPitch())
-                    {
-                        lIt.previous();
-                        break;
-                    }
-                }
-                lIt.add(newNote);
+                return;
             }
-        } else if ((noteMsg = MidiUtilities.getNoteOffShortMessage(msg)) != null)
-        {
-            // Note OFF
-            int pitch = noteMsg.getData1();
 
-            if (pitch > getSplitNote())
+            int pitch = noteMsg.getData1();
+            if (noteOn)
             {
-                noteMsg = null;
+                pitchesOn[pitch >> 6] |= 1L << (pitch & 63);
             } else
             {
-                // Remove Note
-                var it = notes.iterator();
-                while (it.hasNext())
-                {
-                    var n = it.next();
-                    if (n.getPitch() == pitch)
-                    {
-                        it.remove();
-                        break;
-                    }
-                }
+                pitchesOn[pitch >> 6] &= ~(1L << (pitch & 63));
             }
-        }
-
 
-        if (noteMsg != null)
-        {
-            // Chord was updated
-            fireChordChanged(new ArrayList<>(notes));
+            pitchClassSet = getPitchClassSet();
+            lowestPitch = getLowestPitch();
         }
 
+        // Chord was updated
+        fireChordChanged(pitchClassSet, lowestPitch);
     }
 
     @Override
@@ -182,10 +160,55 @@ public class ChordReceiver implements Receiver
         listeners.remove(listener);
     }
 
-    private void fireChordChanged(List<Note> notes)
+    // ================================================================================    
+    // Private methods
+    // ================================================================================    
+    /**
+     * Fold the notes ON into 12 relative pitches.
+     *
+     * @return
+     */
+    private int getPitchClassSet()
     {
-        LOGGER.log(Level.FINE, "fireChordChanged() notes={0}", notes);
-        listeners.forEach(l -> l.chordChanged(notes));
+        int res = 0;
+        for (int i = 0; i < 2; i++)
+        {
+            long bits = pitchesOn[i];
+            while (bits != 0)
+            {
+                int pitch = (i << 6) + Long.numberOfTrailingZeros(bits);
+                res |= 1 << (pitch % 12);
+                bits &= bits - 1;
+            }
+        }
+        return res;
+    }
+
+    private int getLowestPitch()
+    {
+        if (pitchesOn[0] != 0)
+        {
+            return Long.numberOfTrailingZeros(pitchesOn[0]);
+        } else if (pitchesOn[1] != 0)
+        {
+            return 64 + Long.numberOfTrailingZeros(pitchesOn[1]);
+        }
+        return -1;
+    }
+
+    private void fireChordChanged(int pitchClassSet, int lowestPitch)
+    {
+        if (LOGGER.isLoggable(Level.FINE))
+        {
+            LOGGER.log(Level.FINE, "fireChordChanged() pitchClassSet={0} lowestPitch={1}", new Object[]
+            {
+                Integer.toBinaryString(pitchClassSet), lowestPitch
+            });
+        }
+        for (var l : listeners)
+        {
+            l.chordChanged(pitchClassSet, lowestPitch);
+        }
     }
 
 }
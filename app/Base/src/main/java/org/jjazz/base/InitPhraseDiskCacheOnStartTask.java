@@ -0,0 +1,68 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLab software.
+ *   
+ *  JJazzLab is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLab is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.base;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jjazz.filedirectorymanager.api.FileDirectoryManager;
+import org.jjazz.rhythmmusicgeneration.api.PhraseDiskCache;
+import org.jjazz.startup.spi.OnStartTask;
+import org.openide.util.lookup.ServiceProvider;
+
+/**
+ * Set the default PhraseDiskCache so that music generated when opening a playback session or exporting a song is reused across sessions.
+ */
+@ServiceProvider(service = OnStartTask.class)
+public class InitPhraseDiskCacheOnStartTask implements OnStartTask
+{
+
+    public static final int ONSTART_TASK_PRIORITY = 80;
+    private static final String PHRASE_CACHE_DIR = "PhraseCache";
+    private static final Logger LOGGER = Logger.getLogger(InitPhraseDiskCacheOnStartTask.class.getSimpleName());
+
+    @Override
+    public void run()
+    {
+        File dir = FileDirectoryManager.getInstance().getAppConfigDirectory(PHRASE_CACHE_DIR);
+        if (dir == null || !dir.isDirectory())
+        {
+            LOGGER.log(Level.WARNING, "run() No phrase cache directory available, dir={0}", dir);
+            return;
+        }
+        PhraseDiskCache.setDefault(new PhraseDiskCache(dir, PhraseDiskCache.DEFAULT_MAX_SIZE_BYTES));
+        LOGGER.log(Level.INFO, "run() Using phrase cache directory {0}", dir.getAbsolutePath());
+    }
+
+    @Override
+    public int getPriority()
+    {
+        return ONSTART_TASK_PRIORITY;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "InitPhraseDiskCacheOnStartTask";
+    }
+}
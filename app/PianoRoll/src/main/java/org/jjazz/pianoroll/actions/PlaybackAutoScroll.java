@@ -33,6 +33,7 @@ import javax.swing.JComponent;
 import javax.swing.KeyStroke;
 import org.jjazz.harmony.api.Position;
 import org.jjazz.musiccontrol.api.MusicController;
+import org.jjazz.musiccontrol.api.NoteListener;
 import org.jjazz.musiccontrol.api.PlaybackListenerAdapter;
 import org.jjazz.musiccontrol.api.playbacksession.PlaybackSession;
 import org.jjazz.pianoroll.api.PianoRollEditor;
@@ -42,7 +43,7 @@ import org.jjazz.utilities.api.ToggleAction;
 /**
  * Action to toggle the playback auto-scroll.
  * <p>
- * The action also is responsible to move the playback point when playback is ON.
+ * The action also is responsible to move the playback point and to show the played notes on the keyboard when playback is ON.
  */
 public class PlaybackAutoScroll extends ToggleAction implements PropertyChangeListener
 {
@@ -51,6 +52,7 @@ public class PlaybackAutoScroll extends ToggleAction implements PropertyChangeLi
     public static final String KEYBOARD_SHORTCUT = "A";
     private final PianoRollEditor editor;
     private MusicListener musicListener;
+    private KeyboardNoteListener keyboardNoteListener;
     private static final Logger LOGGER = Logger.getLogger(PlaybackAutoScroll.class.getSimpleName());
 
     public PlaybackAutoScroll(PianoRollEditor editor)
@@ -79,6 +81,7 @@ public class PlaybackAutoScroll extends ToggleAction implements PropertyChangeLi
 
         var mc = MusicController.getInstance();
         musicListener.enabled = mc.isPlaying() || mc.isPaused();
+        keyboardNoteListener.enabled = musicListener.enabled;
     }
 
 
@@ -108,9 +111,14 @@ public class PlaybackAutoScroll extends ToggleAction implements PropertyChangeLi
                     case DISABLED, STOPPED ->
                     {
                         musicListener.enabled = false;
+                        keyboardNoteListener.setEnabled(false);
                         editor.showPlaybackPoint(-1f);
                     }
-                    case PAUSED, PLAYING -> musicListener.enabled = true;
+                    case PAUSED, PLAYING ->
+                    {
+                        musicListener.enabled = true;
+                        keyboardNoteListener.setEnabled(true);
+                    }
                     default -> throw new AssertionError(mc.getState().name());
 
                 }
@@ -131,8 +139,10 @@ public class PlaybackAutoScroll extends ToggleAction implements PropertyChangeLi
     private void listenToTheMusic()
     {
         musicListener = new MusicListener();
+        keyboardNoteListener = new KeyboardNoteListener();
         var mc = MusicController.getInstance();
         mc.addPlaybackListener(musicListener);
+        mc.addNoteListener(keyboardNoteListener);
         mc.addPropertyChangeListener(this);
     }
 
@@ -140,6 +150,7 @@ public class PlaybackAutoScroll extends ToggleAction implements PropertyChangeLi
     {
         var mc = MusicController.getInstance();
         mc.removePlaybackListener(musicListener);
+        mc.removeNoteListener(keyboardNoteListener);
         mc.removePropertyChangeListener(this);
     }
 
@@ -174,4 +185,72 @@ public class PlaybackAutoScroll extends ToggleAction implements PropertyChangeLi
         }
 
     }
+
+    /**
+     * Show the played notes of the editor channel on the keyboard.
+     * <p>
+     * Note events of a display frame are processed in a single EDT task, so the keyboard is repainted only once per frame.
+     */
+    private class KeyboardNoteListener implements NoteListener
+    {
+
+        boolean enabled;
+
+        void setEnabled(boolean b)
+        {
+            if (enabled && !b)
+            {
+                // Release the keys which might still be pressed
+                editor.getKeyboard().getAllKeys().stream()
+                        .filter(pk -> pk.isPressed())
+                        .forEach(pk -> pk.setReleased());
+            }
+            enabled = b;
+        }
+
+        @Override
+        public void noteOn(long tick, int channel, int pitch, int velocity)
+        {
+            if (enabled && channel == editor.getChannel())
+            {
+                editor.getKeyboard().setPressed(pitch, velocity, null);
+            }
+        }
+
+        @Override
+        public void noteOff(long tick, int channel, int pitch)
+        {
+            if (enabled && channel == editor.getChannel())
+            {
+                editor.getKeyboard().setReleased(pitch);
+            }
+        }
+
+        @Override
+        public void notesChanged(long[] packedEvents)
+        {
+            if (!enabled)
+            {
+                return;
+            }
+            var keyboard = editor.getKeyboard();
+            int editorChannel = editor.getChannel();
+            for (long e : packedEvents)
+            {
+                if (NoteListener.getChannel(e) != editorChannel)
+                {
+                    continue;
+                }
+                int pitch = NoteListener.getPitch(e);
+                int velocity = NoteListener.getVelocity(e);
+                if (velocity > 0)
+                {
+                    keyboard.setPressed(pitch, velocity, null);
+                } else
+                {
+                    keyboard.setReleased(pitch);
+                }
+            }
+        }
+    }
 }
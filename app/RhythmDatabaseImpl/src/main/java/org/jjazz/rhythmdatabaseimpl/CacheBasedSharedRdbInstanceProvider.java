@@ -57,7 +57,7 @@ import org.jjazz.rhythmdatabase.spi.SharedRdbInstanceProvider;
 /**
  * Create and initialize the RhythmDatabase instance via a cache file.
  * <p>
- * Upon clean/fresh start:<br>
+ * Upon clean/fresh start (or if cache file is missing):<br>
  * - copy default rhythm files<br>
  * - retrieve all available builtin &amp; file-based rhythm instances by polling RhythmProviders (this can be long if many rhythm files need to be scanned).<br>
  * - update the database<br>
@@ -66,6 +66,10 @@ import org.jjazz.rhythmdatabase.spi.SharedRdbInstanceProvider;
  * - retrieve all available builtin rhythm instances by polling RhythmProviders, create the corresponding RhythmInfos.<br>
  * - load additional file-based RhythmInfos from the cache file<br>
  * - create Rhythm instances only when required.<p>
+ * Upon start when a full rescan was requested (e.g. by the user):<br>
+ * - same as clean/fresh start.<p>
+ * Upon start when an incremental rescan was requested (rhythm files added or deleted, user rhythm directory changed):<br>
+ * - same as clean/fresh start, but RhythmProviders only read the new or modified rhythm files, the other RhythmInfos are reused from the cache file.<p>
  */
 @ServiceProvider(service = SharedRdbInstanceProvider.class)
 public class CacheBasedSharedRdbInstanceProvider implements SharedRdbInstanceProvider, PropertyChangeListener
@@ -75,10 +79,11 @@ public class CacheBasedSharedRdbInstanceProvider implements SharedRdbInstancePro
     public static final String ZIP_RESOURCE_PATH = "resources/Rhythms.zip";
 
     public static final String PREF_NEED_RESCAN = "NeedRescan";
+    public static final String PREF_NEED_INCREMENTAL_RESCAN = "NeedIncrementalRescan";
     private final DefaultRhythmDatabaseImpl dbInstance;
     private Future<?> initFuture;
     /**
-     * Stores PREF_NEED_RESCAN
+     * Stores PREF_NEED_RESCAN and PREF_NEED_INCREMENTAL_RESCAN
      */
     private static final Preferences prefs = NbPreferences.forModule(CacheBasedSharedRdbInstanceProvider.class);
     private static final Logger LOGGER = Logger.getLogger(CacheBasedSharedRdbInstanceProvider.class.getSimpleName());
@@ -142,6 +147,8 @@ public class CacheBasedSharedRdbInstanceProvider implements SharedRdbInstancePro
 
     /**
      * Request or cancel a full rescan upon next startup.
+     * <p>
+     * Cancelling also cancels a possible incremental rescan.
      *
      * @param b
      */
@@ -150,17 +157,31 @@ public class CacheBasedSharedRdbInstanceProvider implements SharedRdbInstancePro
     {
         LOGGER.log(Level.INFO, "markForStartupRefresh() b={0}", b);
         prefs.putBoolean(PREF_NEED_RESCAN, b);
+        if (!b)
+        {
+            prefs.putBoolean(PREF_NEED_INCREMENTAL_RESCAN, false);
+        }
     }
 
     /**
-     * Check if a full rescan s planned for next startup.
+     * Request an incremental rescan upon next startup.
+     */
+    @Override
+    public void markForStartupIncrementalRefresh()
+    {
+        LOGGER.info("markForStartupIncrementalRefresh() --");
+        prefs.putBoolean(PREF_NEED_INCREMENTAL_RESCAN, true);
+    }
+
+    /**
+     * Check if a full or incremental rescan is planned for next startup.
      *
      * @return
      */
     @Override
     public boolean isMarkedForStartupRefresh()
     {
-        return prefs.getBoolean(PREF_NEED_RESCAN, true);
+        return isMarkedForStartupFullRefresh() || prefs.getBoolean(PREF_NEED_INCREMENTAL_RESCAN, false);
     }
     // ---------------------------------------------------------------------
     // PropertyChangeListener interface 
@@ -175,7 +196,7 @@ public class CacheBasedSharedRdbInstanceProvider implements SharedRdbInstancePro
             if (evt.getPropertyName().equals(RhythmDirsLocator.PROP_RHYTHM_USER_DIRECTORY))
             {
                 // Directory has changed, plan a rescan
-                markForStartupRefresh(true);
+                markForStartupIncrementalRefresh();
             }
         }
     }
@@ -191,10 +212,11 @@ public class CacheBasedSharedRdbInstanceProvider implements SharedRdbInstancePro
     {
         boolean isFreshStart = UpgradeManager.getInstance().isFreshStart();
         boolean markedForRescan = isMarkedForStartupRefresh();
+        boolean markedForFullRescan = isMarkedForStartupFullRefresh();
         boolean cacheFilePresent = RhythmDbCache.getDefaultFile().isFile();
-        LOGGER.log(Level.INFO, "doInitialization() isFreshStart={0} markedForRescan={1} cacheFilePresent={2}", new Object[]
+        LOGGER.log(Level.INFO, "doInitialization() isFreshStart={0} markedForRescan={1} markedForFullRescan={2} cacheFilePresent={3}", new Object[]
         {
-            isFreshStart, markedForRescan, cacheFilePresent
+            isFreshStart, markedForRescan, markedForFullRescan, cacheFilePresent
         });
 
 
@@ -202,7 +224,11 @@ public class CacheBasedSharedRdbInstanceProvider implements SharedRdbInstancePro
                 RhythmDirsLocator.getDefault().getUserRhythmsDirectory().getAbsolutePath());
 
 
-        if (isFreshStart || markedForRescan || !cacheFilePresent)
+        if (!isFreshStart && markedForRescan && !markedForFullRescan && cacheFilePresent && doIncrementalScan(msgScanAll))
+        {
+            // INCREMENTAL SCAN done
+
+        } else if (isFreshStart || markedForRescan || !cacheFilePresent)
         {
             // FULL SCAN
 
@@ -293,6 +319,62 @@ public class CacheBasedSharedRdbInstanceProvider implements SharedRdbInstancePro
     }
 
 
+    private boolean isMarkedForStartupFullRefresh()
+    {
+        return prefs.getBoolean(PREF_NEED_RESCAN, true);
+    }
+
+    /**
+     * Rescan all rhythms but only read the rhythm files which are new or modified since the cache file was saved.
+     *
+     * @param msgScanAll
+     * @return False if cache file could not be read, nothing was done.
+     */
+    private boolean doIncrementalScan(String msgScanAll)
+    {
+        RhythmDbCache cache;
+        try
+        {
+            cache = RhythmDbCache.readFromFile(RhythmDbCache.getDefaultFile());
+        } catch (IOException | ClassNotFoundException ex)
+        {
+            LOGGER.log(Level.WARNING, "doIncrementalScan() Can''t read cache file, starting full scan... ex={0}", ex.getMessage());
+            return false;
+        }
+
+
+        // Prepare the ProgressHandle                    
+        ProgressHandle ph = ProgressHandle.createHandle(msgScanAll);
+        ph.start();
+        try
+        {
+            // Builtin rhythms
+            MultipleErrorsReport errReport = dbInstance.addRhythmsFromRhythmProviders(false, true, false);
+
+
+            // File rhythms
+            cache.addRhythmsIncrementally(dbInstance, errReport);
+
+
+            // Save cache file
+            writeCacheInSeparateThread();
+
+
+            // Notify user of possible errors
+            if (errReport.primaryErrorMessage != null)
+            {
+                SwingUtilities.invokeLater(()
+                        -> new MultipleErrorsReportDialog(ResUtil.getString(getClass(), "CTL_FileBasedRhythmErrors"), errReport).setVisible(true)
+                );
+            }
+
+        } finally
+        {
+            ph.finish();
+        }
+        return true;
+    }
+
     private void writeCacheInSeparateThread()
     {
         RhythmDbCache cache = new RhythmDbCache(dbInstance);
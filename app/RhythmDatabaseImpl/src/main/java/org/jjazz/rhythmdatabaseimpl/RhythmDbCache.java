@@ -40,19 +40,37 @@ import org.jjazz.filedirectorymanager.api.FileDirectoryManager;
 import org.jjazz.rhythm.spi.RhythmProvider;
 import org.jjazz.rhythmdatabase.api.RhythmInfo;
 import org.jjazz.rhythmdatabase.api.RhythmDatabase;
+import org.jjazz.utilities.api.MultipleErrorsReport;
 
 /**
  * Contains the serializable cached data of the RhythmDatabase.
  * <p>
- * Cache file contains only file-based RhythmInfo instances and no AdaptedRhythms.
+ * Cache file contains only file-based RhythmInfo instances and no AdaptedRhythms. The size and last modified time of each rhythm file are also saved to
+ * allow an incremental rescan, see {@link #addRhythmsIncrementally(org.jjazz.rhythmdatabase.api.RhythmDatabase, org.jjazz.utilities.api.MultipleErrorsReport)}.
  */
 public class RhythmDbCache implements Serializable
 {
 
-    private static final long serialVersionUID = 2922229276100L;
+    private static final long serialVersionUID = 2922229276101L;
     private static final String DB_CACHE_FILE = "RhythmDbCache.dat";
 
+    /**
+     * The state of a rhythm file when it was read.
+     */
+    private record FileStamp(long size, long lastModified) implements Serializable
+            {
+
+        FileStamp(File f)
+        {
+            this(f.length(), f.lastModified());
+        }
+    }
+
     private Map<String, List<RhythmInfo>> savedData;
+    /**
+     * Key=absolute path of a rhythm file.
+     */
+    private Map<String, FileStamp> fileStamps;
     private transient static final Logger LOGGER = Logger.getLogger(RhythmDbCache.class.getSimpleName());
 
     public RhythmDbCache()
@@ -67,6 +85,7 @@ public class RhythmDbCache implements Serializable
     public RhythmDbCache(RhythmDatabase rdb)
     {
         savedData = new HashMap<>();
+        fileStamps = new HashMap<>();
 
         // Copy data : just change RhythmProvider by its id
         for (var rp : rdb.getRhythmProviders())
@@ -78,6 +97,7 @@ public class RhythmDbCache implements Serializable
             if (!rhythms.isEmpty())
             {
                 savedData.put(rp.getInfo().getUniqueId(), rhythms);
+                rhythms.forEach(ri -> fileStamps.put(ri.file().getAbsolutePath(), new FileStamp(ri.file())));
             }
         }
     }
@@ -139,31 +159,44 @@ public class RhythmDbCache implements Serializable
      */
     static public int loadFromFile(File f, RhythmDatabase rdb) throws IOException, ClassNotFoundException
     {
+        return readFromFile(f).addRhythms(rdb);
+    }
 
-        // Read the file
-        RhythmDbCache cache;
+    /**
+     * Read a cache file.
+     *
+     * @param f
+     * @return
+     * @throws java.io.IOException
+     * @throws java.lang.ClassNotFoundException
+     */
+    static public RhythmDbCache readFromFile(File f) throws IOException, ClassNotFoundException
+    {
         try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(f)))
         {
-            cache = (RhythmDbCache) ois.readObject();           // throws IOException, possibly ClassNotFoundException
+            return (RhythmDbCache) ois.readObject();           // throws IOException, possibly ClassNotFoundException
         }
+    }
 
-
-        // Process it
-        var rps = RhythmProvider.getRhythmProviders();
+    /**
+     * Update the specified database with the cached RhythmInfos.
+     *
+     * @param rdb
+     * @return Number of rhythms successfully added to rdb
+     */
+    public int addRhythms(RhythmDatabase rdb)
+    {
         int added = 0;
-        for (String rpId : cache.savedData.keySet())
+        for (String rpId : savedData.keySet())
         {
-            List<RhythmInfo> rhythmInfos = cache.savedData.get(rpId);
+            List<RhythmInfo> rhythmInfos = savedData.get(rpId);
 
 
             // Check that database is using this RhythmProvider
-            var rp = rps.stream()
-                    .filter(rpi -> rpi.getInfo().getUniqueId().equals(rpId))
-                    .findAny()
-                    .orElse(null);
+            var rp = RhythmProvider.getRhythmProvider(rpId);
             if (rp == null)
             {
-                LOGGER.log(Level.WARNING, "loadFromFile() No RhythmProvider found for rpId={0}. Ignoring {1} rhythms.", new Object[]
+                LOGGER.log(Level.WARNING, "addRhythms() No RhythmProvider found for rpId={0}. Ignoring {1} rhythms.", new Object[]
                 {
                     rpId,
                     rhythmInfos.size()
@@ -184,6 +217,72 @@ public class RhythmDbCache implements Serializable
         return added;
     }
 
+    /**
+     * Rescan the file-based rhythms of all RhythmProviders, but reuse the cached RhythmInfos of the rhythm files which did not change.
+     * <p>
+     * A rhythm file did not change if its size and last modified time are the same than when the cache was created. Only new or changed rhythm files are
+     * read by the RhythmProviders, see {@link RhythmProvider#getFileRhythms(java.util.function.Predicate, org.jjazz.utilities.api.MultipleErrorsReport)}.
+     *
+     * @param rdb
+     * @param errRpt Updated by the RhythmProviders
+     * @return Number of rhythms successfully added to rdb
+     */
+    public int addRhythmsIncrementally(RhythmDatabase rdb, MultipleErrorsReport errRpt)
+    {
+        int added = 0;
+        int reused = 0;
+        for (var rp : RhythmProvider.getRhythmProviders())
+        {
+            // The cached RhythmInfos of this RhythmProvider which are still valid
+            Map<File, RhythmInfo> mapFileRhythmInfo = new HashMap<>();
+            for (var ri : savedData.getOrDefault(rp.getInfo().getUniqueId(), List.of()))
+            {
+                var stamp = fileStamps.get(ri.file().getAbsolutePath());
+                if (stamp != null && ri.file().isFile() && stamp.equals(new FileStamp(ri.file())))
+                {
+                    mapFileRhythmInfo.put(ri.file(), ri);
+                }
+            }
+
+
+            // Read only the new or modified files
+            List<RhythmInfo> upToDateRhythmInfos = new ArrayList<>();
+            var rhythms = rp.getFileRhythms(f -> 
+            {
+                var ri = mapFileRhythmInfo.get(f);
+                if (ri != null)
+                {
+                    upToDateRhythmInfos.add(ri);
+                }
+                return ri != null;
+            }, errRpt);
+
+
+            // Update database
+            for (var r : rhythms)
+            {
+                if (rdb.addRhythmInstance(rp, r))
+                {
+                    added++;
+                }
+            }
+            for (var ri : upToDateRhythmInfos)
+            {
+                if (rdb.addRhythm(rp, ri))
+                {
+                    added++;
+                    reused++;
+                }
+            }
+        }
+
+        LOGGER.log(Level.INFO, "addRhythmsIncrementally() added={0} (reused from cache={1})", new Object[]
+        {
+            added, reused
+        });
+        return added;
+    }
+
     static public File getDefaultFile()
     {
         var fdm = FileDirectoryManager.getInstance();
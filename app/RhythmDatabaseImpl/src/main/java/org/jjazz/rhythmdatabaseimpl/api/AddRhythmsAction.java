@@ -195,7 +195,7 @@ public class AddRhythmsAction extends AbstractAction
                     DialogDisplayer.getDefault().notify(nd);
                 }
 
-                SharedRdbInstanceProvider.getDefault().markForStartupRefresh(true);
+                SharedRdbInstanceProvider.getDefault().markForStartupIncrementalRefresh();
             }
         }
     }
@@ -24,7 +24,9 @@ package org.jjazz.musiccontrol.api;
 
 import com.google.common.base.Preconditions;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sound.midi.InvalidMidiDataException;
@@ -43,23 +45,55 @@ import org.jjazz.utilities.api.IntRange;
 import org.openide.util.Exceptions;
 
 /**
- * A control track contains custom MetaEvents used by the MusicController to fire PlaybackListener events.
+ * A control track provides the beat positions, chord symbols and SongParts of a SongContext, indexed by tick, used by the MusicController to fire
+ * PlaybackListener events.
  * <p>
+ * Control data is stored in tick-sorted arrays, so that beat position, chord symbol and SongPart lookups from a tick are O(log n). The control track
+ * MidiEvents are:<br>
  * - a trackname event <br>
- * - a MetaEvent for each chord symbol. <br>
- * - a MetaEvent for each beat changel. <br>
+ * - a marker MetaEvent (type CONTROL_META_EVENT_TYPE) on each tick where the chord symbol and/or the SongPart changes. The marker data is its tick (see
+ * {@link #getMarkerTick(javax.sound.midi.MetaMessage)}), so that the receiver can get the control data of the marker even if the event is dispatched
+ * late.
  * <p>
- * Methods are provided to extract the original data from these custom MetaEvents.
+ * There is no marker for beat changes: the beat position is obtained from the sequencer tick position with {@link #getBeatIndex(long)}.
+ * <p>
+ * Ticks are relative to the start of the SongContext (i.e. without precount).
  */
 public class ControlTrack
 {
 
-    public static final int POSITION_META_EVENT_TYPE = 10;
+    public static final int CONTROL_META_EVENT_TYPE = 10;
+    /**
+     * @deprecated Beat changes are no longer markers, use CONTROL_META_EVENT_TYPE.
+     */
+    @Deprecated
+    public static final int POSITION_META_EVENT_TYPE = CONTROL_META_EVENT_TYPE;
+    /**
+     * @deprecated Chord symbol markers now use CONTROL_META_EVENT_TYPE, this type is no longer used.
+     */
+    @Deprecated
     public static final int CHORD_SYMBOL_META_EVENT_TYPE = 11;
     public static String TRACK_NAME = "JJazzControlTrack";
-    private List<MidiEvent> midiEvents = new ArrayList<>();
+    private final List<MidiEvent> midiEvents = new ArrayList<>();
     private SongChordSequence contextChordSequence;
     private final int trackId;
+    /**
+     * Beat data, sorted by tick.
+     */
+    private long[] beatTicks;
+    private int[] beatBars;
+    private float[] beatInBarBeats;
+    private float[] beatPosInBeats;
+    /**
+     * Chord symbol data, sorted by tick.
+     */
+    private long[] chordTicks;
+    private CLI_ChordSymbol[] chordSymbols;
+    /**
+     * SongPart data, sorted by tick.
+     */
+    private final long[] sptTicks;
+    private final SongPart[] songParts;
     private static final Logger LOGGER = Logger.getLogger(ControlTrack.class.getSimpleName());
 
     /**
@@ -79,19 +113,62 @@ public class ControlTrack
             Exceptions.printStackTrace(ex);
         }
 
-        // Add track name
-        midiEvents.add(new MidiEvent(MidiUtilities.getTrackNameMetaMessage(TRACK_NAME), 0));
 
+        // Compute the beat data
+        int nbBeats = 0;
+        for (SongPart spt : sgContext.getSongParts())
+        {
+            nbBeats += (int) Math.ceil(sgContext.getSptBarRange(spt).size() * spt.getRhythm().getTimeSignature().getNbNaturalBeats());
+        }
+        beatTicks = new long[nbBeats];
+        beatBars = new int[nbBeats];
+        beatInBarBeats = new float[nbBeats];
+        beatPosInBeats = new float[nbBeats];
+        var spts = sgContext.getSongParts();
+        sptTicks = new long[spts.size()];
+        songParts = spts.toArray(SongPart[]::new);
         long tick = 0;
+        int beatIndex = 0;
+        for (int i = 0; i < songParts.length; i++)
+        {
+            sptTicks[i] = tick;
+            var res = addBeats(sgContext, tick, beatIndex, songParts[i]);
+            tick = res[0];
+            beatIndex = (int) res[1];
+        }
+        if (beatIndex < nbBeats)
+        {
+            beatTicks = Arrays.copyOf(beatTicks, beatIndex);
+            beatBars = Arrays.copyOf(beatBars, beatIndex);
+            beatInBarBeats = Arrays.copyOf(beatInBarBeats, beatIndex);
+            beatPosInBeats = Arrays.copyOf(beatPosInBeats, beatIndex);
+        }
 
-        // Add the beat change events and update songPositions
-        for (SongPart spt : sgContext.getSongParts())
+
+        // Compute the chord symbol data
+        addChordSymbols(sgContext);
+
+
+        // Create the MidiEvents
+        midiEvents.add(new MidiEvent(MidiUtilities.getTrackNameMetaMessage(TRACK_NAME), 0));
+        TreeSet<Long> markerTicks = new TreeSet<>();
+        for (long t : chordTicks)
         {
-            tick = addBeatChangeEvents(sgContext, tick, spt);
+            markerTicks.add(t);
         }
+        for (long t : sptTicks)
+        {
+            markerTicks.add(t);
+        }
+        if (markerTicks.contains(0L))
+        {
+            // HACK! 
+            // When tick==0 the first Meta event is sometimes not fired! Don't know why
+            markerTicks.add(1L);
+        }
+        markerTicks.forEach(t -> midiEvents.add(new MidiEvent(createMarkerMetaMessage(t), t)));
+
 
-        // Add the chord symbol marker events
-        addChordSymbolEvents(sgContext);
         this.trackId = trackId;
     }
 
@@ -102,9 +179,9 @@ public class ControlTrack
     }
 
     /**
-     * The list of MidiEvents of the control track: track name, beat changes, chord symbol changes.
+     * The list of MidiEvents of the control track: track name and marker events.
      *
-     * @return Can't be null. IMPORTANT: events may NOT be ordered by tick position.
+     * @return Can't be null. Events are ordered by tick position.
      */
     public List<MidiEvent> getMidiEvents()
     {
@@ -136,47 +213,192 @@ public class ControlTrack
         getMidiEvents().forEach(me -> track.add(me));
     }
 
+    /**
+     * Get the index of the beat active at the specified tick.
+     *
+     * @param tick A tick relative to the start of the SongContext
+     * @return -1 if tick is before the first beat.
+     */
+    public int getBeatIndex(long tick)
+    {
+        return floorIndex(beatTicks, tick);
+    }
+
+    public int getNbBeats()
+    {
+        return beatTicks.length;
+    }
+
+    /**
+     * The position of the specified beat.
+     *
+     * @param beatIndex
+     * @return A new Position instance
+     */
+    public Position getBeatPosition(int beatIndex)
+    {
+        return new Position(beatBars[beatIndex], beatInBarBeats[beatIndex]);
+    }
+
+    public int getBeatBar(int beatIndex)
+    {
+        return beatBars[beatIndex];
+    }
+
+    public float getBeatInBarBeat(int beatIndex)
+    {
+        return beatInBarBeats[beatIndex];
+    }
+
+    /**
+     * The position in beats of the specified beat.
+     *
+     * @param beatIndex
+     * @return
+     */
+    public float getBeatPositionInBeats(int beatIndex)
+    {
+        return beatPosInBeats[beatIndex];
+    }
+
+    /**
+     * The beat position active at the specified tick.
+     *
+     * @param tick A tick relative to the start of the SongContext
+     * @return Null if tick is before the first beat.
+     */
+    public Position getBeatPositionAt(long tick)
+    {
+        int index = getBeatIndex(tick);
+        return index == -1 ? null : getBeatPosition(index);
+    }
+
+    /**
+     * Get the index of the chord symbol active at the specified tick.
+     *
+     * @param tick A tick relative to the start of the SongContext
+     * @return -1 if tick is before the first chord symbol.
+     */
+    public int getChordSymbolIndex(long tick)
+    {
+        return floorIndex(chordTicks, tick);
+    }
+
+    public int getNbChordSymbols()
+    {
+        return chordTicks.length;
+    }
+
+    /**
+     * @param chordIndex
+     * @return A chord symbol of getContextChordGetSequence()
+     */
+    public CLI_ChordSymbol getChordSymbol(int chordIndex)
+    {
+        return chordSymbols[chordIndex];
+    }
+
+    /**
+     * The chord symbol active at the specified tick.
+     *
+     * @param tick A tick relative to the start of the SongContext
+     * @return Null if tick is before the first chord symbol.
+     */
+    public CLI_ChordSymbol getChordSymbolAt(long tick)
+    {
+        int index = getChordSymbolIndex(tick);
+        return index == -1 ? null : chordSymbols[index];
+    }
+
+    /**
+     * Get the index of the SongPart active at the specified tick.
+     *
+     * @param tick A tick relative to the start of the SongContext
+     * @return -1 if tick is before the first SongPart.
+     */
+    public int getSongPartIndex(long tick)
+    {
+        return floorIndex(sptTicks, tick);
+    }
+
+    /**
+     * The SongPart active at the specified tick.
+     *
+     * @param tick A tick relative to the start of the SongContext
+     * @return Null if tick is before the first SongPart.
+     */
+    public SongPart getSongPartAt(long tick)
+    {
+        int index = getSongPartIndex(tick);
+        return index == -1 ? null : songParts[index];
+    }
 
     /**
      * Retrieve the chord symbol from a control track MetaMessage.
      *
-     * @param mm A MetaMessage with type==CHORD_SYMBOL_META_EVENT_TYPE
+     * @param mm A marker MetaMessage
      * @return Can be null if mm is unknown
+     * @deprecated Use getChordSymbolAt(getMarkerTick(mm))
      */
+    @Deprecated
     public CLI_ChordSymbol getChordSymbol(MetaMessage mm)
     {
-        Preconditions.checkArgument(mm.getType() == CHORD_SYMBOL_META_EVENT_TYPE, "mm=%s", mm);
-        return ((MmChordSymbol) mm).cliCs;
+        Preconditions.checkArgument(mm.getType() == CONTROL_META_EVENT_TYPE, "mm=%s", mm);
+        long tick = getMarkerTick(mm);
+        return tick == -1 ? null : getChordSymbolAt(tick);
     }
 
     /**
-     * Retrieve the Position from a control track MetaMessage.
+     * Retrieve the beat Position from a control track MetaMessage.
      *
-     * @param mm A MetaMessage with type==POSITION_META_EVENT_TYPE
+     * @param mm A marker MetaMessage
      * @return Can be null if mm is unknown
+     * @deprecated Use getBeatPositionAt(getMarkerTick(mm))
      */
+    @Deprecated
     public Position getPosition(MetaMessage mm)
     {
-        Preconditions.checkArgument(mm.getType() == POSITION_META_EVENT_TYPE, "mm=%s", mm);
-        return ((MmPosition) mm).pos;
+        Preconditions.checkArgument(mm.getType() == CONTROL_META_EVENT_TYPE, "mm=%s", mm);
+        long tick = getMarkerTick(mm);
+        return tick == -1 ? null : getBeatPositionAt(tick);
     }
 
     /**
-     * Retrieve the position in beats from a control track MetaMessage.
+     * Retrieve the beat position in beats from a control track MetaMessage.
      *
-     * @param mm A MetaMessage with type==POSITION_META_EVENT_TYPE
+     * @param mm A marker MetaMessage
      * @return -1 if mm is unknown
+     * @deprecated Use getBeatPositionInBeats(getBeatIndex(getMarkerTick(mm)))
      */
+    @Deprecated
     public float getPositionInBeats(MetaMessage mm)
     {
-        Preconditions.checkArgument(mm.getType() == POSITION_META_EVENT_TYPE, "mm=%s", mm);
-        return ((MmPosition) mm).posInBeats;
+        Preconditions.checkArgument(mm.getType() == CONTROL_META_EVENT_TYPE, "mm=%s", mm);
+        long tick = getMarkerTick(mm);
+        int beatIndex = tick == -1 ? -1 : getBeatIndex(tick);
+        return beatIndex == -1 ? -1 : beatPosInBeats[beatIndex];
+    }
+
+    /**
+     * Get the tick of a marker MetaMessage.
+     *
+     * @param mm A MetaMessage of type CONTROL_META_EVENT_TYPE
+     * @return A tick relative to the start of the SongContext, or -1 if mm is not a valid marker.
+     */
+    public static long getMarkerTick(MetaMessage mm)
+    {
+        byte[] data = mm.getData();
+        if (mm.getType() != CONTROL_META_EVENT_TYPE || data.length != 4)
+        {
+            return -1;
+        }
+        return ((data[0] & 0xFFL) << 24) | ((data[1] & 0xFF) << 16) | ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
     }
 
     @Override
     public String toString()
     {
-        return "midiEvents.size()=" + midiEvents.size() + " contextChordSeq=" + contextChordSequence;
+        return "midiEvents.size()=" + midiEvents.size() + " nbBeats=" + beatTicks.length + " contextChordSeq=" + contextChordSequence;
     }
 
 
@@ -184,16 +406,15 @@ public class ControlTrack
     // Private methods
     // =================================================================================
     /**
-     * Create control events for the specified SongPart.
-     * <p>
-     * Update the songPositions list.
+     * Compute the beat data for the specified SongPart.
      *
      * @param context
      * @param tickOffset Will be 0 for the first SongPart
+     * @param beatIndex  The index of the first beat of spt
      * @param spt
-     * @return The tick position corresponding to the start of next spt.
+     * @return [0]=the tick position corresponding to the start of next spt, [1]=the index of the first beat of next spt
      */
-    private long addBeatChangeEvents(SongContext context, long tickOffset, SongPart spt)
+    private long[] addBeats(SongContext context, long tickOffset, int beatIndex, SongPart spt)
     {
         IntRange sptRange = context.getSptBarRange(spt);    // Use only the relevant bars for the context
         int sptStartBar = sptRange.from;
@@ -201,82 +422,85 @@ public class ControlTrack
         float nbNaturalBeats = sptRange.size() * nbNaturalBeatsPerBar;
         float posInBeatsOffset = context.getSptBeatRange(spt).from;
 
-        LOGGER.log(Level.FINE, "addBeatChangeEvents() -- tickOffset={0} spt={1} sptRange={2}", new Object[]
+        LOGGER.log(Level.FINE, "addBeats() -- tickOffset={0} spt={1} sptRange={2}", new Object[]
         {
             tickOffset, spt, sptRange
         });
 
-        // Add events every beat change
+        // Store data for each beat change
         for (float beat = 0; beat < nbNaturalBeats; beat++)
         {
-            long tick = (long) (tickOffset + beat * MidiConst.PPQ_RESOLUTION);
             int bar = (int) Math.floor(beat / nbNaturalBeatsPerBar);
-            float inbarBeat = beat - (bar * nbNaturalBeatsPerBar);
-            float posInBeats = posInBeatsOffset + beat;
-            Position pos = new Position(bar + sptStartBar, inbarBeat);
-            MmPosition mm = new MmPosition(pos, posInBeats);
-            midiEvents.add(new MidiEvent(mm, tick));
+            beatTicks[beatIndex] = (long) (tickOffset + beat * MidiConst.PPQ_RESOLUTION);
+            beatBars[beatIndex] = bar + sptStartBar;
+            beatInBarBeats[beatIndex] = beat - (bar * nbNaturalBeatsPerBar);
+            beatPosInBeats[beatIndex] = posInBeatsOffset + beat;
+            beatIndex++;
         }
 
-        return (long) (tickOffset + nbNaturalBeats * MidiConst.PPQ_RESOLUTION);
+        return new long[]
+        {
+            (long) (tickOffset + nbNaturalBeats * MidiConst.PPQ_RESOLUTION), beatIndex
+        };
     }
 
-    private void addChordSymbolEvents(SongContext context)
+    private void addChordSymbols(SongContext context)
     {
+        int nbChords = contextChordSequence == null ? 0 : contextChordSequence.size();
+        chordTicks = new long[nbChords];
+        chordSymbols = new CLI_ChordSymbol[nbChords];
         int csIndex = 0;
-        for (CLI_ChordSymbol cliCs : contextChordSequence)
+        if (contextChordSequence != null)
         {
-            long tick = context.toRelativeTick(cliCs.getPosition());
-            assert tick != -1 : "cliCs=" + cliCs + " contextChordSequence=" + contextChordSequence + " context=" + context;
-            var mm = new MmChordSymbol(cliCs);
-            // HACK!
-            // tick+1 is a hack, otherwise when tick==0 the first Meta event is sometimes not fired! Don't know why
-            midiEvents.add(new MidiEvent(mm, tick + 1));
-            csIndex++;
+            for (CLI_ChordSymbol cliCs : contextChordSequence)
+            {
+                long tick = context.toRelativeTick(cliCs.getPosition());
+                assert tick != -1 : "cliCs=" + cliCs + " contextChordSequence=" + contextChordSequence + " context=" + context;
+                assert csIndex == 0 || tick >= chordTicks[csIndex - 1] : "cliCs=" + cliCs + " contextChordSequence=" + contextChordSequence;
+                chordTicks[csIndex] = tick;
+                chordSymbols[csIndex] = cliCs;
+                csIndex++;
+            }
         }
     }
 
-
-    // =================================================================================
-    // Inner classes
-    // =================================================================================
-    private class MmPosition extends MetaMessage
+    /**
+     * Get the index of the last value &lt;= key.
+     *
+     * @param sortedValues
+     * @param key
+     * @return -1 if key is before the first value
+     */
+    private static int floorIndex(long[] sortedValues, long key)
     {
-
-        private final float posInBeats;
-        private final Position pos;
-
-        private MmPosition(Position pos, float posInBeats)
+        int index = Arrays.binarySearch(sortedValues, key);
+        if (index < 0)
         {
-            Preconditions.checkNotNull(pos);
-            this.posInBeats = posInBeats;
-            this.pos = pos;
-            try
-            {
-                setMessage(POSITION_META_EVENT_TYPE, new byte[0], 0);
-            } catch (InvalidMidiDataException ex)
-            {
-                Exceptions.printStackTrace(ex);
-            }
+            return -index - 2;
         }
+        // Use the last one if several identical values
+        while (index < sortedValues.length - 1 && sortedValues[index + 1] == key)
+        {
+            index++;
+        }
+        return index;
     }
 
-    private class MmChordSymbol extends MetaMessage
+    private static MetaMessage createMarkerMetaMessage(long tick)
     {
-
-        private final CLI_ChordSymbol cliCs;
-
-        private MmChordSymbol(CLI_ChordSymbol cliCs)
+        assert tick >= 0 && tick <= 0xFFFFFFFFL : "tick=" + tick;
+        MetaMessage mm = null;
+        byte[] data = new byte[]
         {
-            Preconditions.checkNotNull(cliCs);
-            this.cliCs = cliCs;
-            try
-            {
-                setMessage(CHORD_SYMBOL_META_EVENT_TYPE, new byte[0], 0);
-            } catch (InvalidMidiDataException ex)
-            {
-                Exceptions.printStackTrace(ex);
-            }
+            (byte) (tick >> 24), (byte) (tick >> 16), (byte) (tick >> 8), (byte) tick
+        };
+        try
+        {
+            mm = new MetaMessage(CONTROL_META_EVENT_TYPE, data, data.length);
+        } catch (InvalidMidiDataException ex)
+        {
+            Exceptions.printStackTrace(ex);
         }
+        return mm;
     }
 }
@@ -25,12 +25,13 @@ package org.jjazz.musiccontrol.api;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sound.midi.InvalidMidiDataException;
@@ -63,7 +64,7 @@ import org.jjazz.musiccontrol.api.playbacksession.ControlTrackProvider;
 import org.jjazz.outputsynth.api.OutputSynth;
 import org.jjazz.rhythmmusicgeneration.api.SongSequenceBuilder;
 import org.jjazz.outputsynth.spi.OutputSynthManager;
-import org.jjazz.utilities.api.SharedExecutorServices;
+import org.jjazz.utilities.api.TimingWheelScheduler;
 
 /**
  * Control the music playback of a PlaybackSession.
@@ -75,7 +76,8 @@ import org.jjazz.utilities.api.SharedExecutorServices;
  * <p>
  * Use NoteListener to get notified of note ON/OFF events during playback. Use PlaybackListener to get notified of other events such as beat/chord symbol
  * changes -this requires a PlaybackSession which implements ControlTrackprovider. Musical/real-time events such as PlaybackListener.beatChanged() or
- * NoteListener.noteOn() are fired on the EDT, taking into account the user-defined output synth latency.
+ * NoteListener.noteOn() are fired on the EDT, taking into account the user-defined output synth latency. By default note and Midi activity events are
+ * grouped per display frame, see setFrameBatching().
  * <p>
  * Use acquireSequencer()/releaseSequencer() if you want to temporarily use the Java system sequencer for another purpose.
  */
@@ -94,6 +96,10 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
      * @see #setPlaybackSession(org.jjazz.musiccontrol.api.playbacksession.PlaybackSession, boolean)
      */
     public static final String PROP_PLAYBACK_SESSION = "PropPlaybackSession";
+    /**
+     * The period used to check the sequencer position for beat changes.
+     */
+    private static final int BEAT_TIMER_PERIOD_MS = 10;
 
 
     /**
@@ -121,6 +127,15 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
      * The current chord symbol during playback (for ControlTrackProvider sessions only).
      */
     private CLI_ChordSymbol currentChordSymbol;
+    /**
+     * The last beat fired by the beatTimer.
+     */
+    private int lastControlBeatIndex = -1;
+    private ControlTrack lastControlTrack;
+    /**
+     * Check the sequencer position on the EDT to fire beat changes while playing.
+     */
+    private final Timer beatTimer;
     /**
      * The current song part during playback (for ControlTrackProvider sessions only).
      */
@@ -140,6 +155,15 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
      */
     private float songPartTempoFactor;
     private int audioLatency;
+    /**
+     * If true note and Midi activity events are delivered once per display frame.
+     */
+    private volatile boolean frameBatching;
+    private final FrameBatcher frameBatcher;
+    /**
+     * Delivers the audio latency-shifted events on the EDT.
+     */
+    private final TimingWheelScheduler latencyScheduler;
     /**
      * Our MidiReceiver to be able to fire events to NoteListeners and PlaybackListener (midiActivity).
      */
@@ -178,6 +202,10 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
         this.state = State.STOPPED;
         this.sequencer = JJazzMidiSystem.getInstance().getDefaultSequencer();
         this.receiver = new McReceiver();
+        this.frameBatcher = new FrameBatcher();
+        this.latencyScheduler = new TimingWheelScheduler("JL-MusicControllerLatency", SwingUtilities::invokeLater);
+        this.frameBatching = true;
+        this.beatTimer = new Timer(BEAT_TIMER_PERIOD_MS, e -> beatTimerTick());
         initSequencer();
         this.sequencerLockHolder = null;
 
@@ -601,12 +629,23 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
      * The current playback position updated at every natural beat (eg 0, 1, 2, 3 in 4/4).
      * <p>
      * Note: value is meaningful only for PlaybackSessions which are also ControlTrackProviders. Otherwise returned value is always bar=0, beat=0.
+     * <p>
+     * When playing the value is directly obtained from the sequencer tick position, without audio latency compensation.
      *
      * @return
      * @see PlaybackListener
      */
     public Position getCurrentBeatPosition()
     {
+        ControlTrack controlTrack = getPlayingControlTrack();
+        if (controlTrack != null)
+        {
+            int beatIndex = controlTrack.getBeatIndex(getRelativeTickFromMusicStart(sequencer.getTickPosition()));
+            if (beatIndex != -1)
+            {
+                return controlTrack.getBeatPosition(beatIndex);
+            }
+        }
         return currentBeatPosition;
     }
 
@@ -615,12 +654,23 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
      * <p>
      * Note: value is meaningful only when playback is on or paused, and for PlaybackSessions which are also ControlTrackProviders. Otherwise return value is
      * null.
+     * <p>
+     * When playing the value is directly obtained from the sequencer tick position, without audio latency compensation.
      *
      * @return Can be null.
      * @see PlaybackListener
      */
     public CLI_ChordSymbol getCurrentChordSymbol()
     {
+        ControlTrack controlTrack = getPlayingControlTrack();
+        if (controlTrack != null)
+        {
+            var cliCs = controlTrack.getChordSymbolAt(getRelativeTickFromMusicStart(sequencer.getTickPosition()));
+            if (cliCs != null)
+            {
+                return cliCs;
+            }
+        }
         return currentChordSymbol;
     }
 
@@ -707,16 +757,13 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
     /**
      * Add a listener of note ON/OFF events.
      * <p>
-     * Listeners will be called on the Swing EDT (Event Dispatch Thread). Can not be called if MusicController is playing.
+     * Listeners will be called on the Swing EDT (Event Dispatch Thread). If called while MusicController is playing, listener is notified from the next
+     * note event.
      *
      * @param listener
      */
     public void addNoteListener(NoteListener listener)
     {
-        if (isPlaying())
-        {
-            throw new IllegalStateException("addNoteListener() called while MusicController is playing");
-        }
         if (!noteListeners.contains(listener))
         {
             noteListeners.add(listener);
@@ -724,19 +771,51 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
     }
 
     /**
-     * Remove a NoteListener. Can not be called if MusicController is playing.
+     * Remove a NoteListener.
      *
      * @param listener
      */
     public void removeNoteListener(NoteListener listener)
     {
-        if (isPlaying())
-        {
-            throw new IllegalStateException("removeNoteListener() called while MusicController is playing");
-        }
         noteListeners.remove(listener);
     }
 
+    /**
+     * Set the delivery mode of note ON/OFF events and PlaybackListener.midiActivity() events.
+     * <p>
+     * If true (default), events are grouped per display frame (FRAME_PERIOD_MS) after latency compensation, and delivered using one EDT task per frame:
+     * NoteListeners are notified via NoteListener.notesChanged(), PlaybackListeners get at most one midiActivity() per channel per frame. If false each event
+     * is delivered using its own EDT task.
+     *
+     * @param b
+     * @see NoteListener#notesChanged(long[])
+     */
+    public void setFrameBatching(boolean b)
+    {
+        frameBatching = b;
+    }
+
+    public boolean isFrameBatching()
+    {
+        return frameBatching;
+    }
+
+    /**
+     * Get statistics about the delivery time error of the audio latency-shifted events (beat, chord symbol, song part, note and Midi activity events).
+     *
+     * @return
+     * @see #resetLatencyDeliveryStats()
+     */
+    public TimingWheelScheduler.DeliveryStats getLatencyDeliveryStats()
+    {
+        return latencyScheduler.getDeliveryStats();
+    }
+
+    public void resetLatencyDeliveryStats()
+    {
+        latencyScheduler.resetDeliveryStats();
+    }
+
     /**
      * Add a listener to be notified of playback bar/beat changes events etc.
      * <p>
@@ -784,48 +863,7 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
                 SwingUtilities.invokeLater(() -> stop());
 
             }
-            case ControlTrack.CHORD_SYMBOL_META_EVENT_TYPE ->
-            {
-                if (playbackSession instanceof ControlTrackProvider ctProvider)
-                {
-                    ControlTrack controlTrack = ctProvider.getControlTrack(); // Might be null for a specific BaseSongSession instance
-                    if (controlTrack != null)
-                    {
-                        var cliCs = controlTrack.getChordSymbol(meta);
-                        if (cliCs != null)
-                        {
-                            fireChordSymbolChanged(cliCs);
-                        } else
-                        {
-                            LOGGER.log(Level.WARNING, "meta() Unexpected null chord symbol meta={0}", meta);
-                        }
-                    }
-                }
-            }
-            case ControlTrack.POSITION_META_EVENT_TYPE ->
-            {
-                if (playbackSession instanceof ControlTrackProvider ctProvider)
-                {
-                    ControlTrack controlTrack = ctProvider.getControlTrack(); // Might be null for a specific BaseSongSession instance
-                    if (controlTrack != null && playbackSession.getMusicStartTick() != -1)
-                    {
-                        Position pos = controlTrack.getPosition(meta);
-                        float posInBeats = controlTrack.getPositionInBeats(meta);
-                        if (pos != null)
-                        {
-//                            LOGGER.log(Level.FINE, "meta() position received pos={0} posInBeats={1}", new Object[]
-//                            {
-//                                pos, posInBeats
-//                            });
-                            updateCurrentPosition(pos.getBar(), pos.getBeat(), posInBeats);
-                        } else
-                        {
-                            LOGGER.log(Level.WARNING, "meta() Unexpected null position meta={0}", meta);
-                        }
-
-                    }
-                }
-            }
+            case ControlTrack.CONTROL_META_EVENT_TYPE -> controlEventReceived(meta);
 
 
             case SongSequenceBuilder.TEMPO_FACTOR_META_EVENT_TYPE ->
@@ -1068,6 +1106,11 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
 
     private void fireNoteOn(long tick, int channel, int pitch, int velocity)
     {
+        if (frameBatching)
+        {
+            frameBatcher.addNoteEvent(tick, channel, pitch, velocity);
+            return;
+        }
         fireLatencyAwareEvent(() -> 
         {
             for (NoteListener l : noteListeners)
@@ -1085,6 +1128,11 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
 
     private void fireNoteOff(long tick, int channel, int pitch)
     {
+        if (frameBatching)
+        {
+            frameBatcher.addNoteEvent(tick, channel, pitch, 0);
+            return;
+        }
         fireLatencyAwareEvent(() -> 
         {
             for (NoteListener l : noteListeners)
@@ -1103,6 +1151,11 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
 
     private void fireMidiActivity(long tick, int channel)
     {
+        if (frameBatching)
+        {
+            frameBatcher.addMidiActivity(tick, channel);
+            return;
+        }
         fireLatencyAwareEvent(() -> 
         {
             for (PlaybackListener pl : playbackListeners)
@@ -1125,6 +1178,8 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
     /**
      * Fire an event after the audioLatency delay on the EDT.
      * <p>
+     * Use our own scheduler: the shared scheduled executor can be busy with other tasks, which would make the events slip.
+     * <p>
      *
      * @param r
      */
@@ -1136,10 +1191,7 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
         } else
         {
             // Most of the listeners use events to update the UI, so safer to fire on EDT.
-            SharedExecutorServices.getScheduledExecutor().schedule(
-                    () -> SwingUtilities.invokeLater(r),
-                    audioLatency,
-                    TimeUnit.MILLISECONDS);
+            latencyScheduler.schedule(r, audioLatency);
         }
     }
 
@@ -1169,6 +1221,7 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
 
             case STOPPED, PAUSED ->
             {
+                lastControlBeatIndex = -1;
                 SongContext sgContext = getSongContext(playbackSession);
                 if (sgContext != null && playbackSession instanceof ControlTrackProvider)
                 {
@@ -1206,16 +1259,92 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
         // Nothing
     }
 
-    private void updateCurrentPosition(int bar, float barBeat, float posInBeats)
+    /**
+     * Get the control track of the playback session if playing.
+     *
+     * @return Can be null
+     */
+    private ControlTrack getPlayingControlTrack()
+    {
+        var session = playbackSession;
+        if (isPlaying() && session instanceof ControlTrackProvider ctProvider && session.getMusicStartTick() != -1)
+        {
+            return ctProvider.getControlTrack();
+        }
+        return null;
+    }
+
+    /**
+     * A control track marker event was received: fire the chord symbol/SongPart changes at the marker position.
+     * <p>
+     * Called from the sequencer event dispatching thread. The marker tick is used (not the current sequencer position), so that no chord symbol or
+     * SongPart change is skipped or duplicated if dispatching lags.
+     *
+     * @param marker
+     */
+    private void controlEventReceived(MetaMessage marker)
+    {
+        if (playbackSession instanceof ControlTrackProvider ctProvider)
+        {
+            ControlTrack controlTrack = ctProvider.getControlTrack(); // Might be null for a specific BaseSongSession instance
+            if (controlTrack == null || playbackSession.getMusicStartTick() == -1)
+            {
+                return;
+            }
+
+            long relativeTick = ControlTrack.getMarkerTick(marker);
+            if (relativeTick == -1)
+            {
+                LOGGER.log(Level.WARNING, "controlEventReceived() Invalid marker={0}", marker);
+                return;
+            }
+
+            int csIndex = controlTrack.getChordSymbolIndex(relativeTick);
+            if (csIndex != -1)
+            {
+                fireChordSymbolChanged(controlTrack.getChordSymbol(csIndex));
+            }
+
+            SongPart spt = controlTrack.getSongPartAt(relativeTick);
+            if (spt != null)
+            {
+                fireSongPartChanged(spt);
+            }
+        }
+    }
+
+    /**
+     * Called by the beatTimer on the EDT: fire a beat change if the sequencer position has moved to another beat.
+     */
+    private void beatTimerTick()
+    {
+        ControlTrack controlTrack = getPlayingControlTrack();
+        if (controlTrack == null)
+        {
+            return;
+        }
+        int beatIndex = controlTrack.getBeatIndex(getRelativeTickFromMusicStart(sequencer.getTickPosition()));
+        if (beatIndex != -1 && (beatIndex != lastControlBeatIndex || controlTrack != lastControlTrack))
+        {
+            lastControlBeatIndex = beatIndex;
+            lastControlTrack = controlTrack;
+            updateCurrentBeatPosition(controlTrack.getBeatBar(beatIndex), controlTrack.getBeatInBarBeat(beatIndex),
+                    controlTrack.getBeatPositionInBeats(beatIndex));
+        }
+    }
+
+    private void updateCurrentBeatPosition(int bar, float barBeat, float posInBeats)
     {
-        assert !isDisabled();
         Position oldPos = new Position(currentBeatPosition);
         currentBeatPosition.setBar(bar);
         currentBeatPosition.setBeat(barBeat);
-
-
-        // Fire events
         fireBeatChanged(oldPos, new Position(currentBeatPosition), posInBeats);
+    }
+
+    private void updateCurrentPosition(int bar, float barBeat, float posInBeats)
+    {
+        assert !isDisabled();
+        updateCurrentBeatPosition(bar, barBeat, posInBeats);
 
 
         // Possibly fire a songpart change as well
@@ -1254,6 +1383,13 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
         {
             State oldState = getState();
             state = newState;
+            if (newState == State.PLAYING)
+            {
+                beatTimer.start();
+            } else
+            {
+                beatTimer.stop();
+            }
             pcs.firePropertyChange(PROP_STATE, oldState, newState);
         }
     }
@@ -1336,6 +1472,143 @@ public class MusicController implements PropertyChangeListener, MetaEventListene
         return sequenceTick - playbackSession.getMusicStartTick();
     }
 
+    /**
+     * Group note and Midi activity events per display frame, so that only one EDT task is used per frame.
+     * <p>
+     * An event occuring at time t is delivered at the end of the frame which contains t+audioLatency. Methods are called by the sequencer thread, batches
+     * are delivered on the EDT.
+     */
+    private class FrameBatcher
+    {
+
+        /**
+         * The display frame period.
+         */
+        public static final int FRAME_PERIOD_MS = 16;
+
+        /**
+         * The pending batches, ordered by frame.
+         */
+        private final ArrayDeque<Batch> batches = new ArrayDeque<>();
+
+        public synchronized void addNoteEvent(long tick, int channel, int pitch, int velocity)
+        {
+            getBatch().addNoteEvent(NoteListener.packNoteEvent(tick, channel, pitch, velocity));
+        }
+
+        public synchronized void addMidiActivity(long tick, int channel)
+        {
+            Batch batch = getBatch();
+            batch.activityChannels |= 1 << channel;
+            batch.activityTicks[channel] = tick;
+        }
+
+        /**
+         * Get the batch of the current frame, create and schedule a new one if required.
+         *
+         * @return
+         */
+        private Batch getBatch()
+        {
+            long nowMs = System.nanoTime() / 1000000;
+            long frame = (nowMs + audioLatency) / FRAME_PERIOD_MS;
+            Batch batch = batches.peekLast();
+            if (batch == null || batch.frame != frame)
+            {
+                batch = new Batch(frame);
+                batches.add(batch);
+                final Batch b = batch;
+                long delayMs = (frame + 1) * FRAME_PERIOD_MS - nowMs;
+                latencyScheduler.schedule(() -> deliver(b), delayMs);
+            }
+            return batch;
+        }
+
+        /**
+         * Called on the EDT.
+         *
+         * @param batch
+         */
+        private void deliver(Batch batch)
+        {
+            long[] noteEvents;
+            long[] activityTicks;
+            int activityChannels;
+            synchronized (this)
+            {
+                batches.remove(batch);
+                noteEvents = Arrays.copyOf(batch.noteEvents, batch.size);
+                activityTicks = batch.activityTicks.clone();
+                activityChannels = batch.activityChannels;
+            }
+
+
+            for (int channel = 0; activityChannels != 0; channel++, activityChannels >>>= 1)
+            {
+                if ((activityChannels & 1) == 0)
+                {
+                    continue;
+                }
+                for (PlaybackListener pl : playbackListeners)
+                {
+                    // playbackSession might be null because in the meantime of the latency firing session was closed ?
+                    if (playbackSession == null || pl.isAccepted(playbackSession))
+                    {
+                        try
+                        {
+                            pl.midiActivity(activityTicks[channel], channel);
+                        } catch (Exception e)
+                        {
+                            LOGGER.log(Level.WARNING, "FrameBatcher.deliver() exception in listener " + pl, e);
+                        }
+                    }
+                }
+            }
+
+
+            if (noteEvents.length > 0)
+            {
+                for (NoteListener l : noteListeners)
+                {
+                    try
+                    {
+                        l.notesChanged(noteEvents);
+                    } catch (Exception e)
+                    {
+                        LOGGER.log(Level.WARNING, "FrameBatcher.deliver() exception in listener " + l, e);
+                    }
+                }
+            }
+        }
+
+        private static class Batch
+        {
+
+            private final long frame;
+            private long[] noteEvents = new long[32];
+            private int size;
+            private int activityChannels;
+            /**
+             * The tick of the last Midi activity of each channel in the frame.
+             */
+            private final long[] activityTicks = new long[16];
+
+            Batch(long frame)
+            {
+                this.frame = frame;
+            }
+
+            void addNoteEvent(long packedEvent)
+            {
+                if (size == noteEvents.length)
+                {
+                    noteEvents = Arrays.copyOf(noteEvents, 2 * size);
+                }
+                noteEvents[size++] = packedEvent;
+            }
+        }
+    }
+
     /**
      * Our Midi Receiver used collect Note On/Off events and Midi activity events.
      * <p>
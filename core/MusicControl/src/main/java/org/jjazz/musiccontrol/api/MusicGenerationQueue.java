@@ -24,22 +24,30 @@ package org.jjazz.musiccontrol.api;
 
 import com.google.common.base.Preconditions;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.event.ChangeListener;
 import org.jjazz.phrase.api.Phrase;
+import org.jjazz.rhythm.api.MusicGenerationCancelledException;
 import org.jjazz.rhythm.api.MusicGenerationException;
 import org.jjazz.rhythm.api.RhythmVoice;
 import org.jjazz.rhythm.api.UserErrorGenerationException;
+import org.jjazz.rhythmmusicgeneration.api.MusicGenerationCache;
 import org.jjazz.rhythmmusicgeneration.api.SongSequenceBuilder;
+import org.jjazz.rhythmmusicgeneration.spi.CancellationToken;
+import org.jjazz.musiccontrol.api.playbacksession.SongContextProvider;
 import org.jjazz.song.api.SongContext;
 import org.jjazz.utilities.api.CheckedRunnable;
+import org.jjazz.utilities.api.FloatRange;
+import org.jjazz.utilities.api.IntRange;
 import org.jjazz.utilities.api.SharedExecutorServices;
 import org.jjazz.utilities.api.Utilities;
 import org.openide.DialogDisplayer;
@@ -50,10 +58,17 @@ import org.openide.util.ChangeSupport;
 /**
  * A thread to handle successive incoming music generation requests.
  * <p>
- * If several music generation requests arrive while a music generation task is already running, only the last request is kept. When generation task is done, a
- * new music generation task is started with that last request.
+ * If several music generation requests arrive while a music generation task is already running, only the last request is kept. The running task is cancelled
+ * (its result is discarded) and, as soon as it is aborted, a new music generation task is started with that last request. However, after
+ * MAX_NB_CONSECUTIVE_CANCELLATIONS cancelled tasks, the running task is not cancelled but completes and publishes its result before the last request is
+ * handled: this way continuous requests (e.g. user dragging a chord symbol) can't prevent any update.
  * <p>
  * A ChangeEvent is fired (outside of the Swing EDT) when a music generation task is complete and a result is available.
+ * <p>
+ * In progressive mode, if the song is being played, the SongParts around the playback position are generated first and published as a partial Result,
+ * then the complete Result follows.
+ * <p>
+ * Generated phrases are stored per SongPart in a MusicGenerationCache, so that only the SongParts impacted by a change are regenerated.
  */
 public class MusicGenerationQueue implements Runnable
 {
@@ -66,22 +81,58 @@ public class MusicGenerationQueue implements Runnable
      * @param songContext
      * @param mapRvPhrases
      * @param throwable    If not null an unexpected problem occured.
+     * @param beatRange    If not null this is a partial result: mapRvPhrases are only meaningful in this beat range, relative to the songContext start. The
+     *                     complete result for songContext will follow.
+     */
+    public record Result(SongContext songContext, Map<RhythmVoice, Phrase> mapRvPhrases, Throwable throwable, FloatRange beatRange)
+            {
+
+        public Result(SongContext songContext, Map<RhythmVoice, Phrase> mapRvPhrases, Throwable throwable)
+        {
+            this(songContext, mapRvPhrases, throwable, null);
+        }
+
+        public boolean isPartial()
+        {
+            return beatRange != null;
+        }
+    }
+
+    /**
+     * The bars to be generated first for a SongContext, computed when the SongContext was added.
+     *
+     * @param songContext
+     * @param barRange    Null if song was not being played
      */
-    public record Result(SongContext songContext, Map<RhythmVoice, Phrase> mapRvPhrases, Throwable throwable)
+    private record PlaybackPriority(SongContext songContext, IntRange barRange)
             {
 
     }
 
+    /**
+     * In progressive mode, the number of bars from the playback position which are generated first.
+     */
+    public static final int PROGRESSIVE_NB_BARS = 4;
+    /**
+     * Max number of successive generation tasks cancelled by new requests before a task is allowed to complete.
+     */
+    public static final int MAX_NB_CONSECUTIVE_CANCELLATIONS = 3;
+
     private final ExecutorService executorService;
     private final ScheduledExecutorService generationExecutorService;
     private Future<?> generationFuture;
     private UpdateGenerationTask generationTask;
+    private int nbConsecutiveCancellations;
     private SongContext threadSharedSongContext;
     private SongContext lastAddedSongContext;
     private volatile Result lastResult;
     private final int preUpdateBufferTimeMs;
     private final int postUpdateSleepTimeMs;
     private volatile boolean running;
+    private volatile boolean progressiveGeneration;
+    private volatile CancellationToken idleTaskCancelToken;
+    private volatile PlaybackPriority playbackPriority;
+    private final MusicGenerationCache generationCache = new MusicGenerationCache();
     private final ChangeSupport cs = new ChangeSupport(this);
     private static final Logger LOGGER = Logger.getLogger(MusicGenerationQueue.class.getSimpleName());
 
@@ -101,6 +152,8 @@ public class MusicGenerationQueue implements Runnable
 
     /**
      * Add a music generation request to this queue.
+     * <p>
+     * In progressive mode the playback position is read by this method, so that the music generation thread does not access the MusicController state.
      *
      * @param sgContext Generate music for this context.
      */
@@ -108,6 +161,7 @@ public class MusicGenerationQueue implements Runnable
     {
         Preconditions.checkNotNull(sgContext);
         lastAddedSongContext = sgContext;
+        playbackPriority = progressiveGeneration ? new PlaybackPriority(sgContext, computePlaybackPriorityBarRange(sgContext)) : null;
         writeThreadSharedSongContext(sgContext);
     }
 
@@ -123,7 +177,8 @@ public class MusicGenerationQueue implements Runnable
      */
     public boolean isGeneratingMusic()
     {
-        boolean idle = !running || lastAddedSongContext == null || (lastResult != null && lastResult.songContext() == lastAddedSongContext);
+        boolean idle = !running || lastAddedSongContext == null
+                || (lastResult != null && lastResult.songContext() == lastAddedSongContext && !lastResult.isPartial());
         return !idle;
     }
 
@@ -132,6 +187,96 @@ public class MusicGenerationQueue implements Runnable
         return running;
     }
 
+    /**
+     * The cache used to reuse the phrases of the unchanged SongParts.
+     * <p>
+     * Use getNbHits()/getNbMisses() to check the cache efficiency.
+     *
+     * @return
+     */
+    public MusicGenerationCache getMusicGenerationCache()
+    {
+        return generationCache;
+    }
+
+    /**
+     * Check if the progressive generation mode is used.
+     *
+     * @return False by default
+     * @see #setProgressiveGeneration(boolean)
+     */
+    public boolean isProgressiveGeneration()
+    {
+        return progressiveGeneration;
+    }
+
+    /**
+     * Set the progressive generation mode.
+     * <p>
+     * If true and the song is being played by the MusicController, the SongParts from the playback position up to PROGRESSIVE_NB_BARS bars are generated
+     * first, and a partial Result is published before the complete Result. This lets an edit near the playback position be heard sooner on long songs.
+     *
+     * @param b
+     * @see Result#isPartial()
+     */
+    public void setProgressiveGeneration(boolean b)
+    {
+        progressiveGeneration = b;
+    }
+
+    /**
+     * Run a low priority task on the music generation thread while no music generation is pending, e.g. to pre-fill the MusicGenerationCache.
+     * <p>
+     * Because it runs on the music generation thread, the task never runs in parallel with a music generation task of this queue. The CancellationToken
+     * passed to the task is cancelled as soon as a new music generation request is handled, or when another idle task is submitted: the task should then
+     * stop as soon as possible, typically by passing the token to SongSequenceBuilder.setCancellationToken().
+     * <p>
+     * The task runs with Thread.MIN_PRIORITY: the SongSequenceBuilder parallel work then uses low priority worker threads too.
+     *
+     * @param task
+     * @return False if task was rejected because queue is not running or is generating music
+     */
+    public boolean submitIdleTask(Consumer<CancellationToken> task)
+    {
+        Objects.requireNonNull(task);
+        if (!running || isGeneratingMusic())
+        {
+            return false;
+        }
+
+        var token = new CancellationToken();
+        cancelIdleTask();
+        idleTaskCancelToken = token;
+        try
+        {
+            generationExecutorService.execute(() -> 
+            {
+                if (token.isCancelled() || isGeneratingMusic())
+                {
+                    return;
+                }
+                var thread = Thread.currentThread();
+                int priority = thread.getPriority();
+                thread.setPriority(Thread.MIN_PRIORITY);
+                try
+                {
+                    task.accept(token);
+                } catch (Throwable t)
+                {
+                    LOGGER.log(Level.WARNING, "submitIdleTask() Unexpected exception in idle task: {0}", t.getMessage());
+                } finally
+                {
+                    thread.setPriority(priority);
+                }
+            });
+        } catch (RejectedExecutionException ex)
+        {
+            // Queue is being shutdown
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Start the thread which listens to requests.
      *
@@ -180,6 +325,7 @@ public class MusicGenerationQueue implements Runnable
         {
             LOGGER.fine("stop()");
             running = false;
+            cancelIdleTask();
             SharedExecutorServices.getThreadFactory("JL-MusicGenerationQueueStop", true).newThread(() -> 
             {
                 // This will block so better in a thread, not a problem since generationExecutorService and executorService will no longer be used
@@ -315,7 +461,13 @@ public class MusicGenerationQueue implements Runnable
 
             } else
             {
-                // NOK, task is generating music
+                // NOK, task is generating music for a now stale context: abort it, sgContext will be handled as soon as the task is done.
+                // Except if too many tasks were already cancelled: let it complete so that a result is published.
+                if (!generationTask.isCancelled() && nbConsecutiveCancellations < MAX_NB_CONSECUTIVE_CANCELLATIONS)
+                {
+                    generationTask.cancel();
+                    nbConsecutiveCancellations++;
+                }
                 newContextAccepted = false;
             }
         }
@@ -324,6 +476,36 @@ public class MusicGenerationQueue implements Runnable
     }
 
 
+    private void cancelIdleTask()
+    {
+        var token = idleTaskCancelToken;
+        if (token != null)
+        {
+            token.cancel();
+        }
+    }
+
+    /**
+     * Compute the bars to be generated first in progressive mode.
+     *
+     * @param sgContext
+     * @return Null if sgContext song is not being played, or if the playback position is outside of sgContext.
+     */
+    private IntRange computePlaybackPriorityBarRange(SongContext sgContext)
+    {
+        var mc = MusicController.getInstance();
+        if (!mc.isPlaying()
+                || !(mc.getPlaybackSession() instanceof SongContextProvider scp)
+                || scp.getSongContext() == null
+                || scp.getSongContext().getSong() != sgContext.getSong())
+        {
+            return null;
+        }
+        int bar = mc.getCurrentBeatPosition().getBar();
+        var res = new IntRange(bar, bar + PROGRESSIVE_NB_BARS - 1).getIntersection(sgContext.getBarRange());
+        return res.isEmpty() ? null : res;
+    }
+
     /**
      * Start a generation task after a fixed delay.
      *
@@ -331,6 +513,11 @@ public class MusicGenerationQueue implements Runnable
      */
     private void startGenerationTask(SongContext sgContext)
     {
+        cancelIdleTask();
+        if (generationTask != null && generationTask.isResultPublished())
+        {
+            nbConsecutiveCancellations = 0;
+        }
         try
         {
             generationTask = new UpdateGenerationTask(sgContext, postUpdateSleepTimeMs);
@@ -356,6 +543,8 @@ public class MusicGenerationQueue implements Runnable
         private boolean started = false;
         private SongContext songContext;
         private final int postUpdateSleepTime;
+        private final CancellationToken cancelToken = new CancellationToken();
+        private volatile boolean resultPublished;
 
         /**
          * Create an UpdateGenerator task for the given SongContext.
@@ -389,6 +578,29 @@ public class MusicGenerationQueue implements Runnable
             return false;
         }
 
+        /**
+         * Cancel the music generation if it is running.
+         * <p>
+         * A cancelled task does not update lastResult and does not notify listeners.
+         */
+        void cancel()
+        {
+            cancelToken.cancel();
+        }
+
+        boolean isCancelled()
+        {
+            return cancelToken.isCancelled();
+        }
+
+        /**
+         * @return True if the complete Result was published
+         */
+        boolean isResultPublished()
+        {
+            return resultPublished;
+        }
+
 
         @Override
         public void run()
@@ -403,13 +615,24 @@ public class MusicGenerationQueue implements Runnable
             //LOGGER.info("UpdateGenerationTask.run() >>> STARTING generation cls=" + toDebugString(songContext.getSong().getChordLeadSheet()));
 
             // Recompute the RhythmVoice mapRvPhrases
-            SongSequenceBuilder sgBuilder = new SongSequenceBuilder(songContext);
+            SongSequenceBuilder sgBuilder = new SongSequenceBuilder(songContext, generationCache);
+            sgBuilder.setCancellationToken(cancelToken);
 
             Throwable throwable = null;
             Map<RhythmVoice, Phrase> map = null;
             try
             {
+                if (progressiveGeneration)
+                {
+                    generatePartialResult(sgBuilder);
+                }
                 map = sgBuilder.buildMapRvPhrase(true);
+            } catch (MusicGenerationCancelledException ex)
+            {
+                // A more recent context is waiting, discard everything
+                LOGGER.log(Level.FINE, "UpdateGenerationTask.run() <<< CANCELLED generation  duration={0}ns", System.nanoTime() - startTime);
+                return;
+
             } catch (UserErrorGenerationException ex)
             {
                 LOGGER.warning(ex.getMessage());
@@ -433,9 +656,13 @@ public class MusicGenerationQueue implements Runnable
 
 
             lastResult = new Result(songContext, map, throwable);
+            resultPublished = true;
 
 
-            LOGGER.log(Level.FINE, "UpdateGenerationTask.run() <<< ENDING generation  duration={0}ns", System.nanoTime() - startTime);
+            LOGGER.log(Level.FINE, "UpdateGenerationTask.run() <<< ENDING generation  duration={0}ns cacheHits={1} cacheMisses={2}", new Object[]
+            {
+                System.nanoTime() - startTime, generationCache.getNbHits(), generationCache.getNbMisses()
+            });
 
             // Notify listeners
             cs.fireChange();
@@ -448,5 +675,46 @@ public class MusicGenerationQueue implements Runnable
                 LOGGER.log(Level.FINE, "UpdateGenerator.run() UpdateGenerator thread.sleep interrupted ex={0}", ex.getMessage());
             }
         }
+
+        /**
+         * If song was being played when songContext was added, generate the SongParts around the playback position and publish them as a partial Result.
+         * <p>
+         * Other exceptions than MusicGenerationCancelledException are ignored: they will occur again during the complete generation.
+         *
+         * @param sgBuilder
+         * @throws MusicGenerationCancelledException
+         */
+        private void generatePartialResult(SongSequenceBuilder sgBuilder) throws MusicGenerationCancelledException
+        {
+            var pp = playbackPriority;
+            if (pp == null || pp.songContext() != songContext || pp.barRange() == null)
+            {
+                return;
+            }
+            var priorityBarRange = pp.barRange();
+            var beatRange = sgBuilder.getPartialBeatRange(priorityBarRange);
+            if (beatRange.size() >= songContext.getBeatRange().size())
+            {
+                // Nothing to gain
+                return;
+            }
+
+            try
+            {
+                var map = sgBuilder.buildPartialMapRvPhrase(priorityBarRange);
+                lastResult = new Result(songContext, map, null, beatRange);
+                LOGGER.log(Level.FINE, "UpdateGenerationTask.generatePartialResult() priorityBarRange={0} beatRange={1}", new Object[]
+                {
+                    priorityBarRange, beatRange
+                });
+                cs.fireChange();
+            } catch (MusicGenerationCancelledException ex)
+            {
+                throw ex;
+            } catch (MusicGenerationException ex)
+            {
+                LOGGER.log(Level.FINE, "UpdateGenerationTask.generatePartialResult() ex={0}", ex.getMessage());
+            }
+        }
     }
 }
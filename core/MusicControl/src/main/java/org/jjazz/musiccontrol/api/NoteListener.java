@@ -25,7 +25,10 @@ package org.jjazz.musiccontrol.api;
 /**
  * A listener to Note ON/OFF events fired by the MusicController.
  * <p>
- * Events are fired outside the EDT and taking into account the user-defined output synth latency.
+ * Events are fired on the EDT and taking into account the user-defined output synth latency.
+ * <p>
+ * When MusicController uses frame batching, events are delivered via notesChanged() once per display frame. The default implementation of notesChanged()
+ * calls noteOn()/noteOff() for each event, override it to process a batch at once, e.g. to repaint only once.
  */
 public interface NoteListener
 {
@@ -33,8 +36,7 @@ public interface NoteListener
     /**
      * A note ON event has occured.
      * <p>
-     * <p>
-     * Call is made outside the EDT.
+     * Call is made on the EDT.
      *
      * @param channel
      * @param pitch
@@ -46,12 +48,79 @@ public interface NoteListener
     /**
      * A note OFF event has occured.
      * <p>
+     * Call is made on the EDT.
      *
-     * Call is made outside the EDT.
-     * 
      * @param channel
      * @param pitch
      * @param tick    The approximate tick at which the event occured. Can be -1 if no tick information available.
      */
     void noteOff(long tick, int channel, int pitch);
+
+    /**
+     * Several note ON/OFF events have occured.
+     * <p>
+     * Each event is packed in a long, use the static methods of this interface to decode it. Events are ordered by time. The array must not be modified
+     * since it is shared by all NoteListeners.
+     * <p>
+     * Call is made on the EDT. The default implementation calls noteOn() or noteOff() for each event.
+     *
+     * @param packedEvents
+     * @see #packNoteEvent(long, int, int, int)
+     */
+    default void notesChanged(long[] packedEvents)
+    {
+        for (long e : packedEvents)
+        {
+            int velocity = getVelocity(e);
+            if (velocity > 0)
+            {
+                noteOn(getTick(e), getChannel(e), getPitch(e), velocity);
+            } else
+            {
+                noteOff(getTick(e), getChannel(e), getPitch(e));
+            }
+        }
+    }
+
+    /**
+     * Pack a note event in a long.
+     *
+     * @param tick     Can be -1
+     * @param channel
+     * @param pitch
+     * @param velocity 0 for a note OFF
+     * @return
+     */
+    static long packNoteEvent(long tick, int channel, int pitch, int velocity)
+    {
+        return ((tick + 1) << 24) | ((channel & 0xFF) << 16) | ((pitch & 0xFF) << 8) | (velocity & 0xFF);
+    }
+
+    /**
+     * @param packedEvent
+     * @return Can be -1 if no tick information available.
+     */
+    static long getTick(long packedEvent)
+    {
+        return (packedEvent >>> 24) - 1;
+    }
+
+    static int getChannel(long packedEvent)
+    {
+        return (int) (packedEvent >>> 16) & 0xFF;
+    }
+
+    static int getPitch(long packedEvent)
+    {
+        return (int) (packedEvent >>> 8) & 0xFF;
+    }
+
+    /**
+     * @param packedEvent
+     * @return 0 for a note OFF
+     */
+    static int getVelocity(long packedEvent)
+    {
+        return (int) packedEvent & 0xFF;
+    }
 }
@@ -34,6 +34,7 @@ import org.jjazz.midi.api.MidiUtilities;
 import org.jjazz.midimix.api.MidiMix;
 import org.jjazz.rhythm.api.MusicGenerationException;
 import org.jjazz.rhythm.api.RhythmVoice;
+import org.jjazz.rhythmmusicgeneration.api.PhraseDiskCache;
 import org.jjazz.rhythmmusicgeneration.api.SongSequenceBuilder;
 import org.jjazz.song.api.Song;
 import org.jjazz.song.api.SongContext;
@@ -86,6 +87,7 @@ public class SongMidiExporter
 
         var sgContext = SongContextFactory.getDefault().of (song, midiMix);
         var ssb = new SongSequenceBuilder(sgContext);
+        ssb.setPhraseDiskCache(PhraseDiskCache.getDefault());
         SongSequenceBuilder.SongSequence songSequence = null;
 
 
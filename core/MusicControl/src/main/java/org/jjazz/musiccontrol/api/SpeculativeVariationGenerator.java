@@ -0,0 +1,243 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLab software.
+ *   
+ *  JJazzLab is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLab is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.musiccontrol.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jjazz.rhythm.api.MusicGenerationCancelledException;
+import org.jjazz.rhythm.api.MusicGenerationException;
+import org.jjazz.rhythmmusicgeneration.api.MusicGenerationCache;
+import org.jjazz.rhythmmusicgeneration.api.SongSequenceBuilder;
+import org.jjazz.rhythmmusicgeneration.spi.CancellationToken;
+import org.jjazz.rhythmparametersimpl.api.RP_SYS_Variation;
+import org.jjazz.song.api.SongContext;
+import org.jjazz.songstructure.api.SongPart;
+import org.jjazz.utilities.api.IntRange;
+
+/**
+ * Pre-generate in the background the music of the other RP_SYS_Variation values of the playing SongPart and of the next SongPart.
+ * <p>
+ * Phrases are stored in the MusicGenerationCache of a MusicGenerationQueue. When user changes the variation of one of these SongParts during playback (e.g.
+ * with the NextVariation or SetVariationA..D actions), the MusicGenerationQueue finds the phrases in the cache and the update is available almost
+ * immediately.
+ * <p>
+ * Pre-generation only runs when the MusicGenerationQueue is idle, it is aborted as soon as a music generation request arrives. Pre-generated phrases are
+ * stored as speculative cache entries, so that they don't evict the normal entries. Pre-generation stops when the estimated size of the speculative
+ * entries reaches the memory budget. Pre-generation threads use a low priority.
+ *
+ * @see MusicGenerationQueue#submitIdleTask(java.util.function.Consumer)
+ */
+public class SpeculativeVariationGenerator extends PlaybackListenerAdapter
+{
+
+    public static final long DEFAULT_MEMORY_BUDGET_BYTES = MusicGenerationCache.DEFAULT_MAX_SPECULATIVE_SIZE_BYTES;
+    private final MusicGenerationQueue musicGenerationQueue;
+    private final SongContext songContext;
+    private volatile long memoryBudgetBytes = DEFAULT_MEMORY_BUDGET_BYTES;
+    private boolean started;
+    private static final Logger LOGGER = Logger.getLogger(SpeculativeVariationGenerator.class.getSimpleName());
+
+    /**
+     * Create a generator.
+     *
+     * @param queue     The queue used to generate the updates of sgContext
+     * @param sgContext The context passed to queue for music generation requests
+     */
+    public SpeculativeVariationGenerator(MusicGenerationQueue queue, SongContext sgContext)
+    {
+        Objects.requireNonNull(queue);
+        Objects.requireNonNull(sgContext);
+        musicGenerationQueue = queue;
+        songContext = sgContext;
+    }
+
+    /**
+     * Start listening to the MusicController SongPart changes.
+     */
+    public void start()
+    {
+        if (!started)
+        {
+            started = true;
+            MusicController.getInstance().addPlaybackListener(this);
+        }
+    }
+
+    /**
+     * Stop listening to the MusicController SongPart changes.
+     * <p>
+     * A running pre-generation is aborted only when the MusicGenerationQueue handles a new request or is stopped.
+     */
+    public void stop()
+    {
+        if (started)
+        {
+            started = false;
+            MusicController.getInstance().removePlaybackListener(this);
+        }
+    }
+
+    /**
+     * The max estimated size of the speculative entries of the MusicGenerationCache for pre-generation.
+     *
+     * @return
+     * @see MusicGenerationCache#getSpeculativeSizeBytes()
+     */
+    public long getMemoryBudgetBytes()
+    {
+        return memoryBudgetBytes;
+    }
+
+    /**
+     * Set the max estimated size of the speculative entries of the MusicGenerationCache for pre-generation.
+     *
+     * @param bytes If 0 pre-generation is disabled
+     */
+    public void setMemoryBudgetBytes(long bytes)
+    {
+        memoryBudgetBytes = bytes;
+    }
+
+    /**
+     * Pre-generate the variations of spt and of the next SongPart.
+     * <p>
+     * Must be called on the thread which modifies the song, normally the Swing EDT. Does nothing if spt is not part of our context, or if
+     * MusicGenerationQueue is busy.
+     *
+     * @param spt Can be null
+     */
+    public void pregenerate(SongPart spt)
+    {
+        if (spt == null
+                || spt.getContainer() != songContext.getSong().getSongStructure()
+                || !songContext.isInRange(spt)
+                || musicGenerationQueue.getMusicGenerationCache().getSpeculativeSizeBytes() >= memoryBudgetBytes
+                || musicGenerationQueue.isGeneratingMusic())
+        {
+            return;
+        }
+
+
+        // Work on a snapshot, song might be modified while pre-generating
+        var contextCopy = songContext.getDeepCopy(false);
+        var sptsCopy = contextCopy.getSongParts();
+        int index = songContext.getSongParts().indexOf(spt);
+        List<SongPart> targetSpts = new ArrayList<>(sptsCopy.subList(index, Math.min(index + 2, sptsCopy.size())));
+
+
+        boolean b = musicGenerationQueue.submitIdleTask(token -> generateVariations(contextCopy, targetSpts, token));
+        LOGGER.log(Level.FINE, "pregenerate() spt={0} submitted={1}", new Object[]
+        {
+            spt, b
+        });
+    }
+
+    // ==========================================================================================================
+    // PlaybackListener interface
+    // ==========================================================================================================    
+    @Override
+    public void songPartChanged(SongPart newSpt)
+    {
+        pregenerate(newSpt);
+    }
+
+    // ==========================================================================================================
+    // Private methods
+    // ==========================================================================================================    
+    /**
+     * Fill the cache for the current variations of spts, then for all the other variation values.
+     *
+     * @param sgContext A context which can be modified
+     * @param spts      SongParts of sgContext
+     * @param token
+     */
+    private void generateVariations(SongContext sgContext, List<SongPart> spts, CancellationToken token)
+    {
+        var cache = musicGenerationQueue.getMusicGenerationCache();
+        var sgs = sgContext.getSong().getSongStructure();
+        long t = System.currentTimeMillis();
+        int nbGenerated = 0;
+
+        try
+        {
+            // Make sure the unchanged SongParts are cached, so that an update only needs to generate the modified SongPart
+            var barRange = sgContext.getSptBarRange(spts.getFirst()).getUnion(sgContext.getSptBarRange(spts.getLast()));
+            buildPartial(sgContext, barRange, token);
+
+
+            for (var spt : spts)
+            {
+                var rpVariation = RP_SYS_Variation.getVariationRp(spt.getRhythm());
+                if (rpVariation == null)
+                {
+                    continue;
+                }
+                String value = spt.getRPValue(rpVariation);
+                for (var otherValue : rpVariation.getPossibleValues())
+                {
+                    if (otherValue.equals(value))
+                    {
+                        continue;
+                    }
+                    if (token.isCancelled() || cache.getSpeculativeSizeBytes() >= memoryBudgetBytes)
+                    {
+                        return;
+                    }
+                    sgs.setRhythmParameterValue(spt, rpVariation, otherValue);
+                    try
+                    {
+                        buildPartial(sgContext, sgContext.getSptBarRange(spt), token);
+                        nbGenerated++;
+                    } finally
+                    {
+                        sgs.setRhythmParameterValue(spt, rpVariation, value);
+                    }
+                }
+            }
+        } catch (MusicGenerationCancelledException ex)
+        {
+            // Nothing
+        } catch (MusicGenerationException ex)
+        {
+            // Errors will be reported by the normal music generation
+            LOGGER.log(Level.FINE, "generateVariations() ex={0}", ex.getMessage());
+        } finally
+        {
+            LOGGER.log(Level.FINE, "generateVariations() nbGenerated={0} duration={1}ms speculativeSize={2}", new Object[]
+            {
+                nbGenerated, System.currentTimeMillis() - t, cache.getSpeculativeSizeBytes()
+            });
+        }
+    }
+
+    private void buildPartial(SongContext sgContext, IntRange barRange, CancellationToken token) throws MusicGenerationException
+    {
+        var sgBuilder = new SongSequenceBuilder(sgContext, musicGenerationQueue.getMusicGenerationCache());
+        sgBuilder.setCancellationToken(token);
+        sgBuilder.setSpeculative(true);
+        sgBuilder.buildPartialMapRvPhrase(barRange);
+    }
+}
@@ -47,6 +47,7 @@ import static org.jjazz.musiccontrol.api.playbacksession.PlaybackSession.PROP_ST
 import static org.jjazz.musiccontrol.api.playbacksession.PlaybackSession.PROP_TEMPO;
 import org.jjazz.rhythm.api.MusicGenerationException;
 import org.jjazz.rhythm.api.RhythmVoice;
+import org.jjazz.rhythmmusicgeneration.api.PhraseDiskCache;
 import org.jjazz.rhythmmusicgeneration.api.SongSequenceBuilder;
 import org.jjazz.phrase.api.Phrase;
 import org.jjazz.song.api.SongContext;
@@ -563,6 +564,7 @@ public class BaseSongSession implements PropertyChangeListener, PlaybackSession,
         SongSequenceBuilder.SongSequence res = null;
 
         SongSequenceBuilder seqBuilder = new SongSequenceBuilder(sgContext); // Will work on a deep copy of sgContext
+        seqBuilder.setPhraseDiskCache(PhraseDiskCache.getDefault());
 
         // Reuse ActiveSongBackgroundMusicBuilder result when possible (map Rv=>Phrase)
         var asbmb = ActiveSongBackgroundMusicBuilder.getDefault();
@@ -38,8 +38,11 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.sound.midi.MetaMessage;
 import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
 import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Track;
 import java.beans.PropertyChangeSupport;
 import org.jjazz.harmony.api.TimeSignature;
@@ -47,19 +50,23 @@ import org.jjazz.midi.api.MidiConst;
 import org.jjazz.midi.api.MidiUtilities;
 import org.jjazz.musiccontrol.api.ControlTrack;
 import org.jjazz.musiccontrol.api.PlaybackSettings;
+import org.jjazz.phrase.api.NoteEvent;
 import org.jjazz.phrase.api.Phrase;
 import org.jjazz.phrase.api.Phrases;
 import org.jjazz.rhythm.api.MusicGenerationException;
 import org.jjazz.rhythm.api.RhythmVoice;
 import org.jjazz.song.api.SongContext;
+import org.jjazz.utilities.api.FloatRange;
 import org.jjazz.utilities.api.IntRange;
+import org.jjazz.utilities.api.LongRange;
 
 /**
  * An UpdatableSongSession is a BaseSongSession wrapper which enables on-the-fly updates of the playing sequence using {@link updateSequence(Update)}.
  * <p>
  * Authorized udpates are notes+control track changes which do not change the Sequence size. Only user phrase modification or removal is supported.
  * <p>
- * The class uses buffer tracks and mute/unmute tracks to enable on-the-fly sequence changes.
+ * The class uses buffer tracks and mute/unmute tracks to enable on-the-fly sequence changes. In incremental update mode (default), only the MidiEvents in
+ * the changed tick range of a phrase are patched in the buffer track, so that a small change in a long song remains cheap.
  * <p>
  * If the BaseSongSession is an instance of UpdateProvider, the UpdatableSongSession listens to updates availability and automatically apply the updates.
  */
@@ -80,12 +87,27 @@ public class UpdatableSongSession implements PropertyChangeListener, PlaybackSes
 
         private final Map<RhythmVoice, Phrase> mapRvPhrases;
         private final ControlTrack controlTrack;
+        private final FloatRange beatRange;
 
         public Update(Map<RhythmVoice, Phrase> mapRvPhrases, ControlTrack controlTrack)
+        {
+            this(mapRvPhrases, controlTrack, null);
+        }
+
+        /**
+         * Create an update.
+         *
+         * @param mapRvPhrases
+         * @param controlTrack
+         * @param beatRange    If not null this is a partial update: only the notes of mapRvPhrases in this beat range are used, the current notes outside of
+         *                     this range are kept. Beat range is relative to the song context start, like phrases.
+         */
+        public Update(Map<RhythmVoice, Phrase> mapRvPhrases, ControlTrack controlTrack, FloatRange beatRange)
         {
             Preconditions.checkArgument(mapRvPhrases != null || controlTrack != null);
             this.mapRvPhrases = mapRvPhrases;
             this.controlTrack = controlTrack;
+            this.beatRange = beatRange;
         }
 
         /**
@@ -112,11 +134,26 @@ public class UpdatableSongSession implements PropertyChangeListener, PlaybackSes
             return controlTrack;
         }
 
+        /**
+         * The beat range of a partial update.
+         *
+         * @return Null if this is a complete update
+         */
+        public FloatRange getBeatRange()
+        {
+            return beatRange;
+        }
+
+        public boolean isPartial()
+        {
+            return beatRange != null;
+        }
+
         @Override
         public String toString()
         {
             var rvKeys = getMapRvPhrases() != null ? getMapRvPhrases().keySet().toString() : "null";
-            return "<mapRvPhrases.keySet=" + rvKeys + ", controlTrack=" + getControlTrack() + ">";
+            return "<mapRvPhrases.keySet=" + rvKeys + ", controlTrack=" + getControlTrack() + ", beatRange=" + beatRange + ">";
         }
     }
 
@@ -167,6 +204,17 @@ public class UpdatableSongSession implements PropertyChangeListener, PlaybackSes
     private BaseSongSession baseSongSession;
     private Sequence sequence;
     private boolean enabled;
+    private boolean incrementalUpdate = true;
+    /**
+     * For RhythmVoice tracks: the tick range (without precount shift) where the buffer track differs from the active track.
+     * <p>
+     * No entry if the difference is unknown, in this case the buffer track must be fully rebuilt.
+     */
+    private final HashMap<Integer, LongRange> mapTrackIdBufferDiffRange = new HashMap<>();
+    /**
+     * The ids of the RhythmVoice tracks whose active track only contains phrase events.
+     */
+    private final Set<Integer> phraseOnlyTrackIds = new HashSet<>();
     private final HashMap<Integer, Boolean> mapTrackIdMuted = new HashMap<>();
     private static final List<UpdatableSongSession> sessions = new ArrayList<>();
 
@@ -325,6 +373,30 @@ public class UpdatableSongSession implements PropertyChangeListener, PlaybackSes
         }
     }
 
+    /**
+     * Check if updates are applied incrementally.
+     *
+     * @return
+     * @see #setIncrementalUpdate(boolean)
+     */
+    public boolean isIncrementalUpdate()
+    {
+        return incrementalUpdate;
+    }
+
+    /**
+     * Set the update mode.
+     * <p>
+     * If true (default) only the MidiEvents in the changed tick range of an updated phrase are replaced. If false the whole track is rebuilt for each
+     * updated phrase.
+     *
+     * @param b
+     */
+    public void setIncrementalUpdate(boolean b)
+    {
+        incrementalUpdate = b;
+    }
+
     /**
      * Update the sequence with the specified parameter.
      * <p>
@@ -332,14 +404,16 @@ public class UpdatableSongSession implements PropertyChangeListener, PlaybackSes
      * the buffer and the playing tracks. The transition might be noticeable if notes were still ringing when tracks mute state is switched, but usually it's
      * unnoticeable.
      * <p>
+     * If update is partial, only the notes in the update beat range are replaced.
+     * <p>
      * Fire a PROP_UPDATED_RECEIVED change event.
      * <p>
-     * The method does nothing if session is disabled.
+     * The method does nothing if session is disabled. Method is synchronized because updates might come from different threads.
      *
      * @param update
      * @throws IllegalArgumentException If a MidiEvent tick position is beyond getOriginalSequenceSize(), or if session is not in the GENERATED state.
      */
-    public void updateSequence(Update update)
+    public synchronized void updateSequence(Update update)
     {
         LOGGER.log(Level.FINE, "updateSequence() ---- update={0} nanoTime()={1}", new Object[]
         {
@@ -392,8 +466,9 @@ public class UpdatableSongSession implements PropertyChangeListener, PlaybackSes
             // Update sequence for each modified phrase 
             for (RhythmVoice rv : modifiedPhraseRvs)
             {
-                var updatedPhrase = update.getMapRvPhrases().get(rv);
                 var currentPhrase = currentMapRvPhrase.get(rv);
+                var updatedPhrase = update.isPartial() ? mergePartialPhrase(currentPhrase, update.getMapRvPhrases().get(rv), update.getBeatRange())
+                        : update.getMapRvPhrases().get(rv);
                 LOGGER.log(Level.FINE, "   rv={0}", rv);
                 LOGGER.log(Level.FINE, "     currentPhrase={0}", currentPhrase);
                 LOGGER.log(Level.FINE, "     updatedPhrase={0}", updatedPhrase);
@@ -413,7 +488,7 @@ public class UpdatableSongSession implements PropertyChangeListener, PlaybackSes
 
                 // Update the track
                 int trackId = getOriginalRvTrackIdMap().get(rv);
-                updateTrack(trackId, Phrases.toMidiEvents(updatedPhrase), precountShift);
+                updatePhraseTrack(trackId, currentPhrase, updatedPhrase, precountShift);
 
             }
 
@@ -422,11 +497,11 @@ public class UpdatableSongSession implements PropertyChangeListener, PlaybackSes
             for (RhythmVoice urv : removedUserPhraseRvs)
             {
                 LOGGER.log(Level.FINE, "    Clearing user phrase for urv={0}", urv.getName());
-                int channel = currentMapRvPhrase.get(urv).getChannel();
-                Phrase emptyPhrase = new Phrase(channel, urv.isDrums());
+                Phrase removedPhrase = currentMapRvPhrase.get(urv);
+                Phrase emptyPhrase = new Phrase(removedPhrase.getChannel(), urv.isDrums());
                 currentMapRvPhrase.put(urv, emptyPhrase);
                 int trackId = getOriginalRvTrackIdMap().get(urv);
-                updateTrack(trackId, Phrases.toMidiEvents(emptyPhrase), precountShift);
+                updatePhraseTrack(trackId, removedPhrase, emptyPhrase, precountShift);
             }
         }
 
@@ -718,6 +793,8 @@ public class UpdatableSongSession implements PropertyChangeListener, PlaybackSes
         nbPlayingTracks = sequence.getTracks().length;
         currentMapRvPhrase = baseSongSession.getRvPhraseMap();
         currentControlTrack = baseSongSession.getControlTrack();
+        mapTrackIdBufferDiffRange.clear();
+        phraseOnlyTrackIds.clear();
 
 
         // Create the trackset to manage double-buffering at track level
@@ -772,6 +849,145 @@ public class UpdatableSongSession implements PropertyChangeListener, PlaybackSes
         MidiUtilities.setEndOfTrackPosition(bufferTrack, originalTrackTickSize);
 
 
+        activateBufferTrack(trackId);
+    }
+
+    /**
+     * Update a RhythmVoice track with a new phrase.
+     * <p>
+     * In incremental mode, if the buffer track is known to differ from the active track only in a given tick range, only the MidiEvents in this range plus
+     * the range changed between oldPhrase and newPhrase are replaced. Otherwise the buffer track is rebuilt.
+     *
+     * @param trackId
+     * @param oldPhrase          The phrase of the active track
+     * @param newPhrase
+     * @param precountTickOffset
+     */
+    private void updatePhraseTrack(int trackId, Phrase oldPhrase, Phrase newPhrase, long precountTickOffset)
+    {
+        LongRange changedRange = oldPhrase.getChannel() == newPhrase.getChannel() ? getChangedTickRange(oldPhrase, newPhrase) : null;
+        LongRange bufferDiffRange = mapTrackIdBufferDiffRange.get(trackId);
+
+        if (incrementalUpdate && changedRange != null && bufferDiffRange != null)
+        {
+            LongRange patchRange = new LongRange(Math.min(changedRange.from, bufferDiffRange.from), Math.max(changedRange.to, bufferDiffRange.to));
+            if (patchRange.size() < originalTrackTickSize / 2)
+            {
+                LOGGER.log(Level.FINE, "updatePhraseTrack() trackId={0} patchRange={1}", new Object[]
+                {
+                    trackId, patchRange
+                });
+                patchTrack(trackId, newPhrase, patchRange, precountTickOffset);
+            } else
+            {
+                updateTrack(trackId, Phrases.toMidiEvents(newPhrase), precountTickOffset);
+            }
+        } else
+        {
+            updateTrack(trackId, Phrases.toMidiEvents(newPhrase), precountTickOffset);
+        }
+
+
+        // The buffer track is now the previous active track
+        if (changedRange != null && phraseOnlyTrackIds.contains(trackId))
+        {
+            mapTrackIdBufferDiffRange.put(trackId, changedRange);
+        } else
+        {
+            mapTrackIdBufferDiffRange.remove(trackId);
+        }
+        phraseOnlyTrackIds.add(trackId);
+    }
+
+    /**
+     * Replace the note MidiEvents of the buffer track in the specified tick range by the phrase MidiEvents in this range, then activate the buffer track.
+     * <p>
+     * The buffer track is rebuilt in one pass from a merged sorted list: removing the events one by one from the middle of the track would be much slower,
+     * each Track.remove() call scanning the track, see MidiUtilities.clearTrack().
+     *
+     * @param trackId
+     * @param p
+     * @param tickRange          Without precount shift
+     * @param precountTickOffset
+     * @throws IllegalArgumentException
+     */
+    private void patchTrack(int trackId, Phrase p, LongRange tickRange, long precountTickOffset) throws IllegalArgumentException
+    {
+        Track bufferTrack = trackSet.getBufferTrack(trackId);
+        long fromTick = tickRange.from + precountTickOffset;
+        long toTick = tickRange.to + precountTickOffset;
+
+
+        // Keep all the events except the note events in the range, and the EndOfTrack event which is managed by the track
+        int firstIndex = getFirstEventIndex(bufferTrack, fromTick);
+        List<MidiEvent> keptEvents = new ArrayList<>(bufferTrack.size());
+        int nbRemovedEvents = 0;
+        for (int i = 0; i < bufferTrack.size(); i++)
+        {
+            MidiEvent me = bufferTrack.get(i);
+            MidiMessage mm = me.getMessage();
+            if (i >= firstIndex && me.getTick() <= toTick
+                    && mm instanceof ShortMessage sm
+                    && (sm.getCommand() == ShortMessage.NOTE_ON || sm.getCommand() == ShortMessage.NOTE_OFF))
+            {
+                nbRemovedEvents++;
+            } else if (!(mm instanceof MetaMessage mmm && mmm.getType() == MidiConst.META_END_OF_TRACK))
+            {
+                keptEvents.add(me);
+            }
+        }
+
+
+        // Get the phrase events in the range, in the same order than Phrases.toMidiEvents() 
+        List<MidiEvent> phraseEvents = new ArrayList<>();
+        for (NoteEvent ne : p)
+        {
+            float pos = ne.getPositionInBeats();
+            if (pos * MidiConst.PPQ_RESOLUTION > tickRange.to + 1)
+            {
+                break;
+            }
+            if ((pos + ne.getDurationInBeats()) * MidiConst.PPQ_RESOLUTION < tickRange.from - 1)
+            {
+                continue;
+            }
+            for (MidiEvent me : ne.toMidiEvents(p.getChannel()))
+            {
+                if (tickRange.contains(me.getTick()))
+                {
+                    me.setTick(me.getTick() + precountTickOffset);
+                    if (me.getTick() > originalTrackTickSize)
+                    {
+                        throw new IllegalArgumentException(
+                                "me=" + MidiUtilities.toString(me.getMessage(), me.getTick()) + " originalTrackTickSize=" + originalTrackTickSize);
+                    }
+                    phraseEvents.add(me);
+                }
+            }
+        }
+
+
+        // Same result than adding the phrase events to the track one by one
+        var newEvents = MidiUtilities.mergeSortedEvents(List.of(keptEvents, phraseEvents));
+        MidiUtilities.clearTrack(bufferTrack);
+        MidiUtilities.addSortedEvents(bufferTrack, newEvents);
+
+
+        LOGGER.log(Level.FINE, "patchTrack() trackId={0} nbRemovedEvents={1} nbAddedEvents={2}", new Object[]
+        {
+            trackId, nbRemovedEvents, phraseEvents.size()
+        });
+
+        activateBufferTrack(trackId);
+    }
+
+    /**
+     * Make the buffer track the active track.
+     *
+     * @param trackId
+     */
+    private void activateBufferTrack(int trackId)
+    {
         // Update the track mute state : apply mute status of the active track to the buffer track, then mute the active track
         boolean activeTrackMuteState = mapTrackIdMuted.get(trackSet.getActiveTrackId(trackId));
         mapTrackIdMuted.put(trackSet.getBufferTrackId(trackId), activeTrackMuteState);
@@ -783,6 +999,93 @@ public class UpdatableSongSession implements PropertyChangeListener, PlaybackSes
     }
 
 
+    /**
+     * Build a phrase with the notes of currentPhrase outside of beatRange, and the notes of partialPhrase inside beatRange.
+     *
+     * @param currentPhrase
+     * @param partialPhrase
+     * @param beatRange
+     * @return A new phrase with the partialPhrase channel
+     */
+    static private Phrase mergePartialPhrase(Phrase currentPhrase, Phrase partialPhrase, FloatRange beatRange)
+    {
+        Phrase res = new Phrase(partialPhrase.getChannel(), partialPhrase.isDrums());
+        res.addAll(currentPhrase.getNotes(ne -> !beatRange.contains(ne.getPositionInBeats(), true), FloatRange.MAX_FLOAT_RANGE, false));
+        res.addAll(partialPhrase.getNotes(ne -> true, beatRange, true));
+        return res;
+    }
+
+    /**
+     * Get the tick range which contains all the MidiEvents which differ between 2 phrases.
+     * <p>
+     * Notes are compared with NoteEvent.equalsAsNoteNearPosition(ne, 0), skipping the identical notes at the start and at the end of the phrases.
+     *
+     * @param p1
+     * @param p2
+     * @return Null if phrases are identical
+     */
+    static private LongRange getChangedTickRange(Phrase p1, Phrase p2)
+    {
+        List<NoteEvent> notes1 = p1.getNotes();
+        List<NoteEvent> notes2 = p2.getNotes();
+
+        int start = 0;
+        while (start < notes1.size() && start < notes2.size() && notes1.get(start).equalsAsNoteNearPosition(notes2.get(start), 0))
+        {
+            start++;
+        }
+        int end1 = notes1.size() - 1;
+        int end2 = notes2.size() - 1;
+        while (end1 >= start && end2 >= start && notes1.get(end1).equalsAsNoteNearPosition(notes2.get(end2), 0))
+        {
+            end1--;
+            end2--;
+        }
+        if (end1 < start && end2 < start)
+        {
+            return null;
+        }
+
+
+        long from = Long.MAX_VALUE;
+        long to = 0;
+        for (var changedNotes : List.of(notes1.subList(start, end1 + 1), notes2.subList(start, end2 + 1)))
+        {
+            for (NoteEvent ne : changedNotes)
+            {
+                // Same tick computation than NoteEvent.toMidiEvents()
+                from = Math.min(from, Math.round(ne.getPositionInBeats() * MidiConst.PPQ_RESOLUTION));
+                to = Math.max(to, Math.round((ne.getPositionInBeats() + ne.getDurationInBeats()) * MidiConst.PPQ_RESOLUTION));
+            }
+        }
+        return new LongRange(from, to);
+    }
+
+    /**
+     * The index of the first event whose tick is &gt;= tick.
+     *
+     * @param track
+     * @param tick
+     * @return track.size() if no such event
+     */
+    static private int getFirstEventIndex(Track track, long tick)
+    {
+        int low = 0;
+        int high = track.size();
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (track.get(mid).getTick() < tick)
+            {
+                low = mid + 1;
+            } else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
     /**
      * Find an identical existing session in state NEW or GENERATED and not dirty.
      *
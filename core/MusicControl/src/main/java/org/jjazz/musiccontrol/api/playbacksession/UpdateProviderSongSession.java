@@ -29,6 +29,7 @@ import java.util.Objects;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
 import org.jjazz.chordleadsheet.api.ChordLeadSheet;
 import org.jjazz.chordleadsheet.api.event.ClsChangeEvent;
 import org.jjazz.chordleadsheet.api.event.ItemAddedEvent;
@@ -42,12 +43,15 @@ import org.jjazz.midimix.api.UserRhythmVoice;
 import org.jjazz.musiccontrol.api.ControlTrack;
 import org.jjazz.musiccontrol.api.MusicGenerationQueue;
 import org.jjazz.musiccontrol.api.MusicGenerationQueue.Result;
+import org.jjazz.musiccontrol.api.MusicController;
 import org.jjazz.musiccontrol.api.PlaybackSettings;
 import org.jjazz.musiccontrol.api.SongMusicGenerationListener;
+import org.jjazz.musiccontrol.api.SpeculativeVariationGenerator;
 import org.jjazz.musiccontrol.api.playbacksession.UpdatableSongSession.Update;
 import static org.jjazz.musiccontrol.api.playbacksession.UpdatableSongSession.UpdateProvider.PROP_UPDATE_PROVISION_ENABLED;
 import org.jjazz.rhythm.api.MusicGenerationException;
 import org.jjazz.rhythm.api.UserErrorGenerationException;
+import org.jjazz.rhythmmusicgeneration.spi.CancellationToken;
 import org.jjazz.rhythmparametersimpl.api.RP_SYS_TempoFactor;
 import org.jjazz.song.api.Song;
 import org.jjazz.song.api.SongContext;
@@ -90,12 +94,15 @@ public class UpdateProviderSongSession extends BaseSongSession implements Updata
     public static final int DEFAULT_POST_UPDATE_SLEEP_TIME_MS = 700;
     private int preUpdateBufferTimeMs = DEFAULT_PRE_UPDATE_BUFFER_TIME_MS;
     private int postUpdateSleepTimeMs = DEFAULT_POST_UPDATE_SLEEP_TIME_MS;
+    private boolean progressiveGeneration = true;
+    private boolean speculativeGeneration = true;
     private Update update;
     private boolean isUpdateProvisionEnabled;
     private boolean isControlTrackEnabled;
     private final boolean isUpdateControlEnabled;
     private SongMusicGenerationListener songMusicGenerationListener;
     private MusicGenerationQueue musicGenerationQueue;
+    private SpeculativeVariationGenerator speculativeVariationGenerator;
     private Consumer<UserErrorGenerationException> userErrorExceptionHandler;
     private static final List<UpdateProviderSongSession> sessions = new ArrayList<>();
     private static final Logger LOGGER = Logger.getLogger(UpdateProviderSongSession.class.getSimpleName());
@@ -180,6 +187,12 @@ public class UpdateProviderSongSession extends BaseSongSession implements Updata
         var song = getSongContext().getSong();
         songMusicGenerationListener = new SongMusicGenerationListener(song, getSongContext().getMidiMix(), 0);  // 0ms because we can't miss an event which might disable updates
         songMusicGenerationListener.addPropertyChangeListener(this);
+
+        if (isSpeculativeGeneration() && isUpdateProvisionEnabled())
+        {
+            speculativeVariationGenerator = new SpeculativeVariationGenerator(getMusicGenerationQueue(), getSongContext());
+            speculativeVariationGenerator.start();
+        }
     }
 
     @Override
@@ -191,6 +204,10 @@ public class UpdateProviderSongSession extends BaseSongSession implements Updata
             songMusicGenerationListener.removePropertyChangeListener(this);
             songMusicGenerationListener.cleanup();
         }
+        if (speculativeVariationGenerator != null)
+        {
+            speculativeVariationGenerator.stop();
+        }
         if (musicGenerationQueue != null)
         {
             musicGenerationQueue.stop();
@@ -253,6 +270,62 @@ public class UpdateProviderSongSession extends BaseSongSession implements Updata
         this.postUpdateSleepTimeMs = postUpdateSleepTimeMs;
     }
 
+    /**
+     * Check if updates are generated progressively.
+     *
+     * @return True by default
+     * @see MusicGenerationQueue#isProgressiveGeneration()
+     */
+    public boolean isProgressiveGeneration()
+    {
+        return progressiveGeneration;
+    }
+
+    /**
+     * If true, while song is playing, a partial update for the bars around the playback position is provided before the complete update.
+     * <p>
+     * Calls to this method are ignored if state is not NEW.
+     *
+     * @param b
+     * @see MusicGenerationQueue#setProgressiveGeneration(boolean)
+     */
+    public void setProgressiveGeneration(boolean b)
+    {
+        if (!getState().equals(PlaybackSession.State.NEW))
+        {
+            return;
+        }
+        this.progressiveGeneration = b;
+    }
+
+    /**
+     * Check if the other variations of the playing SongPart and of the next SongPart are pre-generated in the background.
+     *
+     * @return True by default
+     * @see SpeculativeVariationGenerator
+     */
+    public boolean isSpeculativeGeneration()
+    {
+        return speculativeGeneration;
+    }
+
+    /**
+     * If true, while song is playing, the music of the other RP_SYS_Variation values of the current and next SongParts is pre-generated when CPU is idle,
+     * so that a variation change can be provided quickly as an update.
+     * <p>
+     * Calls to this method are ignored if state is not NEW.
+     *
+     * @param b
+     */
+    public void setSpeculativeGeneration(boolean b)
+    {
+        if (!getState().equals(PlaybackSession.State.NEW))
+        {
+            return;
+        }
+        this.speculativeGeneration = b;
+    }
+
     /**
      * The handler for exception during music generation due to user error.
      * <p>
@@ -519,19 +592,10 @@ public class UpdateProviderSongSession extends BaseSongSession implements Updata
         }
 
 
-        // Start our update handler thread if first time
-        if (musicGenerationQueue == null)
-        {
-            musicGenerationQueue = new MusicGenerationQueue(getPreUpdateBufferTimeMs(), getPostUpdateSleepTimeMs());
-            musicGenerationQueue.start();
-            musicGenerationQueue.addChangeListener(e -> musicGenerationResultReceived(musicGenerationQueue.getLastResult()));
-        }
-
-
         // Notify our update handler thread
         try
         {
-            musicGenerationQueue.add(getSongContext());
+            getMusicGenerationQueue().add(getSongContext());
         } catch (Exception e)
         {
             // Should never be here
@@ -543,6 +607,41 @@ public class UpdateProviderSongSession extends BaseSongSession implements Updata
     }
 
 
+    /**
+     * Run a low priority task on the music generation thread of this session when it's idle.
+     * <p>
+     * Use this method to run a task which uses the MusicGenerators of the session's rhythms: it will not run in parallel with the generation of an update.
+     *
+     * @param task
+     * @return False if task was rejected, e.g. because an update is being generated.
+     * @see MusicGenerationQueue#submitIdleTask(java.util.function.Consumer)
+     */
+    public boolean submitIdleTask(Consumer<CancellationToken> task)
+    {
+        if (getState().equals(PlaybackSession.State.CLOSED) || !isUpdateProvisionEnabled())
+        {
+            return false;
+        }
+        return getMusicGenerationQueue().submitIdleTask(task);
+    }
+
+    /**
+     * Get our update handler thread, start it if first time.
+     *
+     * @return
+     */
+    private MusicGenerationQueue getMusicGenerationQueue()
+    {
+        if (musicGenerationQueue == null)
+        {
+            musicGenerationQueue = new MusicGenerationQueue(getPreUpdateBufferTimeMs(), getPostUpdateSleepTimeMs());
+            musicGenerationQueue.setProgressiveGeneration(isProgressiveGeneration());
+            musicGenerationQueue.start();
+            musicGenerationQueue.addChangeListener(e -> musicGenerationResultReceived(musicGenerationQueue.getLastResult()));
+        }
+        return musicGenerationQueue;
+    }
+
     /**
      * Like setDirty() plus it stops further updates and disable the control track.
      * <p>
@@ -575,7 +674,7 @@ public class UpdateProviderSongSession extends BaseSongSession implements Updata
     }
 
     /**
-     * Called when MusicGenerationQueue completed a task.
+     * Called when MusicGenerationQueue completed a task, or provided a partial result.
      * <p>
      * Prepare an UpdatableSongSession.Update.
      *
@@ -616,12 +715,27 @@ public class UpdateProviderSongSession extends BaseSongSession implements Updata
         }
 
 
-        // Create the update
-        update = new Update(result.mapRvPhrases(), cTrack);
+        // Create the update, possibly partial
+        update = new Update(result.mapRvPhrases(), cTrack, result.beatRange());
 
 
         // Notify listeners, typically an UpdatableSongSession
         firePropertyChange(UpdatableSongSession.UpdateProvider.PROP_UPDATE_AVAILABLE, false, true);
+
+
+        // Song has changed, pre-generate again the variations of the playing SongPart
+        var svg = speculativeVariationGenerator;
+        if (svg != null && !result.isPartial())
+        {
+            SwingUtilities.invokeLater(() -> 
+            {
+                var mc = MusicController.getInstance();
+                if (mc.isPlaying())
+                {
+                    svg.pregenerate(mc.getCurrentSongPart());
+                }
+            });
+        }
     }
 
     /**
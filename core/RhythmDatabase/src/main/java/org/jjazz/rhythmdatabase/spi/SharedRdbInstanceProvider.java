@@ -79,7 +79,19 @@ public interface SharedRdbInstanceProvider
     public void markForStartupRefresh(boolean b);
 
     /**
-     * Check if a full refresh is planned for next startup.
+     * Request a refresh of the shared database upon next startup, which may only read the rhythm files which are new or modified.
+     * <p>
+     * To be used when a few rhythm files were added or removed. If a full refresh is also requested, the full refresh is done.
+     * <p>
+     * The default implementation calls markForStartupRefresh(true).
+     */
+    default void markForStartupIncrementalRefresh()
+    {
+        markForStartupRefresh(true);
+    }
+
+    /**
+     * Check if a (full or incremental) refresh is planned for next startup.
      *
      * @return
      */
@@ -49,6 +49,7 @@ import org.jjazz.rhythm.api.MusicGenerationException;
 import org.jjazz.rhythm.api.Rhythm;
 import org.jjazz.rhythm.api.RhythmVoice;
 import org.jjazz.rhythmparametersimpl.api.RP_SYS_Variation;
+import org.jjazz.rhythmmusicgeneration.spi.CancellationToken;
 import org.jjazz.rhythmmusicgeneration.spi.MusicGenerator;
 import org.jjazz.song.api.SongContext;
 import org.jjazz.song.spi.SongContextFactory;
@@ -201,9 +202,100 @@ public class CompositeMusicGenerator implements MusicGenerator
         return baseRhythm;
     }
 
+    /**
+     * Get the delegate MusicGenerators which would be used by generateMusic() for the specified context.
+     * <p>
+     * Delegate MusicGenerators which are themselves CompositeMusicGenerators are replaced by their own delegates.
+     *
+     * @param sgContext
+     * @return An identity-based set. Can be empty if no SongPart uses the base rhythm.
+     */
+    public Set<MusicGenerator> getDelegateMusicGenerators(SongContext sgContext)
+    {
+        Objects.requireNonNull(sgContext);
+        Set<MusicGenerator> res = Sets.newIdentityHashSet();
+        var baseRhythmSpts = sgContext.getSongParts().stream()
+                .filter(spt -> spt.getRhythm() == baseRhythm)
+                .toList();
+        for (var spt : baseRhythmSpts)
+        {
+            for (var rvBase : baseRhythm.getRhythmVoices())
+            {
+                var mg = baseRvToDelegateUnitMapper.get(rvBase, spt).mg();
+                if (mg instanceof CompositeMusicGenerator cmg && cmg != this)
+                {
+                    res.addAll(cmg.getDelegateMusicGenerators(sgContext));
+                } else
+                {
+                    res.add(mg);
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Combine the fingerprints of the delegate MusicGenerators.
+     *
+     * @param sgContext
+     * @return
+     */
+    @Override
+    public String getSettingsFingerprint(SongContext sgContext)
+    {
+        return getDelegateMusicGenerators(sgContext).stream()
+                .map(mg -> mg.getClass().getName() + "=" + mg.getSettingsFingerprint(sgContext))
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * True if all the delegate MusicGenerators return true.
+     *
+     * @param sgContext
+     * @return
+     */
+    @Override
+    public boolean isSongPartMusicReusable(SongContext sgContext)
+    {
+        return getDelegateMusicGenerators(sgContext).stream()
+                .allMatch(mg -> mg.isSongPartMusicReusable(sgContext));
+    }
+
+    /**
+     * The state of this instance is immutable.
+     * <p>
+     * Note that the thread-safety of the delegate MusicGenerators must be checked separately, see getDelegateMusicGenerators().
+     *
+     * @return True
+     */
+    @Override
+    public boolean isThreadSafe()
+    {
+        return true;
+    }
+
     @Override
     public Map<RhythmVoice, Phrase> generateMusic(SongContext sgContext, RhythmVoice... rvs) throws MusicGenerationException
     {
+        return generateMusic(sgContext, CancellationToken.NONE, rvs);
+    }
+
+    /**
+     * Generate music by calling the delegate MusicGenerators.
+     * <p>
+     * cancelToken is checked before each delegate MusicGenerator call, and passed to the delegate MusicGenerators.
+     *
+     * @param sgContext
+     * @param cancelToken
+     * @param rvs
+     * @return
+     * @throws MusicGenerationException
+     */
+    @Override
+    public Map<RhythmVoice, Phrase> generateMusic(SongContext sgContext, CancellationToken cancelToken, RhythmVoice... rvs) throws MusicGenerationException
+    {
+        Objects.requireNonNull(cancelToken);
         var rvsList = List.of(rvs);
         var rhythmRvs = baseRhythm.getRhythmVoices();
         Preconditions.checkArgument(rvsList.stream().allMatch(rv -> rhythmRvs.contains(rv)), "rvs=", rvsList);
@@ -256,9 +348,11 @@ public class CompositeMusicGenerator implements MusicGenerator
 
             if (!spts.isEmpty())
             {
+                cancelToken.checkCancelled();
+
                 // Call delegate generator
                 Map<SongPart, String> mapSptVariation = getMapSptVariation(delegateUnits);
-                var mapBaseRvPhrases = callDelegateGenerator(sgContext, mgConfig, mapSptVariation);     // throws MusicGenerationException
+                var mapBaseRvPhrases = callDelegateGenerator(sgContext, mgConfig, mapSptVariation, cancelToken);     // throws MusicGenerationException
                 postProcessPhrases(sgContext, mapBaseRvPhrases, delegateUnits);
                 mergePhrases(sgContext.getMidiMix(), res, mapBaseRvPhrases);
             }
@@ -531,11 +625,13 @@ public class CompositeMusicGenerator implements MusicGenerator
      * @param songContext            General context
      * @param mgConfig               The delegate MusicGenerator and delegate RhythmVoice mappings
      * @param mapSptRpVariationValue The delegate rpVariationValue to use for each base Songpart
+     * @param cancelToken            Passed to the delegate MusicGenerator
      *
      * @return One Phrase per base RhythmVoice, with music only for the mapSptRpVariationValue SongParts
      * @throws org.jjazz.rhythm.api.MusicGenerationException
      */
-    private Map<RhythmVoice, Phrase> callDelegateGenerator(SongContext songContext, MgConfig mgConfig, Map<SongPart, String> mapSptRpVariationValue) throws MusicGenerationException
+    private Map<RhythmVoice, Phrase> callDelegateGenerator(SongContext songContext, MgConfig mgConfig, Map<SongPart, String> mapSptRpVariationValue,
+            CancellationToken cancelToken) throws MusicGenerationException
     {
         Objects.requireNonNull(songContext);
         Objects.requireNonNull(mgConfig);
@@ -577,7 +673,7 @@ public class CompositeMusicGenerator implements MusicGenerator
         }
 
         // Call the delegate generator
-        var mapRvPhrases = mgConfig.mg().generateMusic(delegateContext, uniqueDelegateRvs.toArray(RhythmVoice[]::new));
+        var mapRvPhrases = mgConfig.mg().generateMusic(delegateContext, cancelToken, uniqueDelegateRvs.toArray(RhythmVoice[]::new));
 
 
         // Silence phrases parts which do not belong to songParts
@@ -61,6 +61,17 @@ public class DummyGenerator implements MusicGenerator
         rhythm = r;
     }
 
+    /**
+     * No shared state: generateMusic() only uses its parameters and the immutable rhythm field.
+     *
+     * @return True
+     */
+    @Override
+    public boolean isThreadSafe()
+    {
+        return true;
+    }
+
     @Override
     public HashMap<RhythmVoice, Phrase> generateMusic(SongContext sgContext, RhythmVoice... rvs) throws MusicGenerationException
     {
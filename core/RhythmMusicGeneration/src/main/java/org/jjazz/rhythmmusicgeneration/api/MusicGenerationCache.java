@@ -0,0 +1,421 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLab software.
+ *   
+ *  JJazzLab is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLab is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.rhythmmusicgeneration.api;
+
+import com.google.common.base.Preconditions;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.jjazz.harmony.api.Position;
+import org.jjazz.midimix.api.MidiMix;
+import org.jjazz.phrase.api.Phrase;
+import org.jjazz.rhythm.api.Rhythm;
+import org.jjazz.rhythm.api.RhythmParameter;
+import org.jjazz.rhythm.api.RhythmVoice;
+import org.jjazz.rhythmmusicgeneration.spi.MusicGenerator;
+import org.jjazz.song.api.SongContext;
+import org.jjazz.songstructure.api.SongPart;
+import org.jjazz.utilities.api.IntRange;
+
+/**
+ * A cache of the phrases generated by a rhythm MusicGenerator for a SongPart.
+ * <p>
+ * Entries are keyed by a fingerprint of the SongPart generation inputs (see
+ * {@link #getSongPartKey(SongContext, SongPart, ChordSequence, MusicGenerator)}), and store the phrases with positions relative to the start of the
+ * SongPart. The cache is bounded, least recently used entries are removed first.
+ * <p>
+ * Speculative entries (music pre-generated in case user needs it) are stored in a separate region bounded by a size in bytes, so that they can't
+ * evict the normal entries. A speculative entry is moved to the normal entries when it is used by get().
+ * <p>
+ * Methods are thread-safe.
+ *
+ * @see SongSequenceBuilder#SongSequenceBuilder(SongContext, MusicGenerationCache)
+ */
+public class MusicGenerationCache
+{
+
+    public static final int DEFAULT_MAX_NB_ENTRIES = 1000;
+    public static final long DEFAULT_MAX_SPECULATIVE_SIZE_BYTES = 32 * 1024 * 1024;
+    /**
+     * Rough estimate of the memory used by a cached NoteEvent.
+     */
+    private static final int NOTE_SIZE_ESTIMATE_BYTES = 120;
+    /**
+     * Rough estimate of the memory used by a cached Phrase, excluding notes.
+     */
+    private static final int PHRASE_SIZE_ESTIMATE_BYTES = 200;
+    private final LinkedHashMap<String, Map<RhythmVoice, Phrase>> mapKeyRvPhrases;
+    private final LinkedHashMap<String, Map<RhythmVoice, Phrase>> mapKeySpeculativeRvPhrases = new LinkedHashMap<>(64, 0.75f, true);
+    private long nbHits;
+    private long nbMisses;
+    private long estimatedSizeBytes;
+    private long speculativeSizeBytes;
+    private long maxSpeculativeSizeBytes = DEFAULT_MAX_SPECULATIVE_SIZE_BYTES;
+
+    public MusicGenerationCache()
+    {
+        this(DEFAULT_MAX_NB_ENTRIES);
+    }
+
+    /**
+     * Create a cache.
+     *
+     * @param maxNbEntries Max number of SongPart entries
+     */
+    public MusicGenerationCache(int maxNbEntries)
+    {
+        Preconditions.checkArgument(maxNbEntries > 0, "maxNbEntries=%s", maxNbEntries);
+        mapKeyRvPhrases = new LinkedHashMap<>(64, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<RhythmVoice, Phrase>> eldest)
+            {
+                boolean b = size() > maxNbEntries;
+                if (b)
+                {
+                    estimatedSizeBytes -= estimateSize(eldest.getValue());
+                }
+                return b;
+            }
+        };
+    }
+
+    /**
+     * Get a copy of the cached phrases for the specified key.
+     * <p>
+     * Update the hit/miss counters. If the entry is speculative, it becomes a normal entry.
+     *
+     * @param key A value returned by getSongPartKey()
+     * @param r   The rhythm used by the SongPart
+     * @return Null if no entry, or if entry does not match the RhythmVoices of r. Phrase positions are relative to the SongPart start.
+     */
+    public synchronized Map<RhythmVoice, Phrase> get(String key, Rhythm r)
+    {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(r);
+        var rvPhrases = mapKeyRvPhrases.get(key);
+        if (rvPhrases == null)
+        {
+            rvPhrases = mapKeySpeculativeRvPhrases.remove(key);
+            if (rvPhrases != null)
+            {
+                // It's used now, promote it
+                speculativeSizeBytes -= estimateSize(rvPhrases);
+                estimatedSizeBytes += estimateSize(rvPhrases);
+                mapKeyRvPhrases.put(key, rvPhrases);
+            }
+        }
+        if (rvPhrases == null || !rvPhrases.keySet().equals(new HashSet<>(r.getRhythmVoices())))
+        {
+            nbMisses++;
+            return null;
+        }
+        nbHits++;
+        return copy(rvPhrases);
+    }
+
+    /**
+     * Store a copy of the specified phrases.
+     *
+     * @param key       A value returned by getSongPartKey()
+     * @param rvPhrases Phrase positions must be relative to the SongPart start
+     */
+    public synchronized void put(String key, Map<RhythmVoice, Phrase> rvPhrases)
+    {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(rvPhrases);
+        var value = copy(rvPhrases);
+        estimatedSizeBytes += estimateSize(value);
+        var old = mapKeyRvPhrases.put(key, value);
+        if (old != null)
+        {
+            estimatedSizeBytes -= estimateSize(old);
+        }
+        var oldSpeculative = mapKeySpeculativeRvPhrases.remove(key);
+        if (oldSpeculative != null)
+        {
+            speculativeSizeBytes -= estimateSize(oldSpeculative);
+        }
+    }
+
+    /**
+     * Store a copy of the specified phrases as a speculative entry.
+     * <p>
+     * Do nothing if key is already a normal entry. The least recently used speculative entries are removed to stay within
+     * getMaxSpeculativeSizeBytes().
+     *
+     * @param key       A value returned by getSongPartKey()
+     * @param rvPhrases Phrase positions must be relative to the SongPart start
+     */
+    public synchronized void putSpeculative(String key, Map<RhythmVoice, Phrase> rvPhrases)
+    {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(rvPhrases);
+        if (mapKeyRvPhrases.containsKey(key))
+        {
+            return;
+        }
+        var value = copy(rvPhrases);
+        speculativeSizeBytes += estimateSize(value);
+        var old = mapKeySpeculativeRvPhrases.put(key, value);
+        if (old != null)
+        {
+            speculativeSizeBytes -= estimateSize(old);
+        }
+        evictSpeculative();
+    }
+
+    /**
+     * The number of normal entries.
+     *
+     * @return
+     */
+    public synchronized int size()
+    {
+        return mapKeyRvPhrases.size();
+    }
+
+    /**
+     * A rough estimate of the memory used by the phrases of the normal entries.
+     *
+     * @return
+     */
+    public synchronized long getEstimatedSizeBytes()
+    {
+        return estimatedSizeBytes;
+    }
+
+    /**
+     * A rough estimate of the memory used by the phrases of the speculative entries.
+     *
+     * @return
+     * @see #putSpeculative(java.lang.String, java.util.Map)
+     */
+    public synchronized long getSpeculativeSizeBytes()
+    {
+        return speculativeSizeBytes;
+    }
+
+    public synchronized long getMaxSpeculativeSizeBytes()
+    {
+        return maxSpeculativeSizeBytes;
+    }
+
+    /**
+     * Set the max estimated size of the speculative entries.
+     *
+     * @param bytes If 0 speculative entries are not stored
+     */
+    public synchronized void setMaxSpeculativeSizeBytes(long bytes)
+    {
+        Preconditions.checkArgument(bytes >= 0, "bytes=%s", bytes);
+        maxSpeculativeSizeBytes = bytes;
+        evictSpeculative();
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public synchronized void clear()
+    {
+        mapKeyRvPhrases.clear();
+        mapKeySpeculativeRvPhrases.clear();
+        estimatedSizeBytes = 0;
+        speculativeSizeBytes = 0;
+    }
+
+    public synchronized long getNbHits()
+    {
+        return nbHits;
+    }
+
+    public synchronized long getNbMisses()
+    {
+        return nbMisses;
+    }
+
+    public synchronized void resetCounters()
+    {
+        nbHits = 0;
+        nbMisses = 0;
+    }
+
+    /**
+     * Compute the key of a SongPart generation inputs.
+     * <p>
+     * The key depends on the rhythm, the time signature, the tempo, the RhythmParameter values, the Midi channels and instruments, the chord symbols of the
+     * SongPart, the same inputs for the previous and next SongParts, the neighbouring chord symbols, and the MusicGenerator settings fingerprint. It
+     * depends on the SongPart position in the song only if the MusicGenerator does not accept to reuse the music of identical SongParts.
+     * <p>
+     * The neighbouring SongParts are part of the key because SongSequenceBuilder generates a SongPart with its previous and next SongParts, so that
+     * transitions (e.g. bass approach notes, fills, anticipated chords) are the same than in a complete song generation. Generators only look at the
+     * adjacent SongParts for transitions, so the neighbours of neighbours do not need to be part of the key.
+     *
+     * @param context
+     * @param spt                  A SongPart within the context range
+     * @param contextChordSequence The chord sequence of the context, e.g. a SongChordSequence built for context.getBarRange()
+     * @param mg                   The MusicGenerator used for spt
+     * @return
+     * @see MusicGenerator#getSettingsFingerprint(org.jjazz.song.api.SongContext)
+     * @see MusicGenerator#isSongPartMusicReusable(org.jjazz.song.api.SongContext)
+     */
+    static public String getSongPartKey(SongContext context, SongPart spt, ChordSequence contextChordSequence, MusicGenerator mg)
+    {
+        Objects.requireNonNull(context);
+        Objects.requireNonNull(spt);
+        Objects.requireNonNull(contextChordSequence);
+        Objects.requireNonNull(mg);
+        IntRange sptBarRange = context.getSptBarRange(spt);
+        Preconditions.checkArgument(!sptBarRange.isEmpty(), "spt=%s context=%s", spt, context);
+
+        Rhythm r = spt.getRhythm();
+        MidiMix midiMix = context.getMidiMix();
+        StringBuilder sb = new StringBuilder(512);
+
+
+        // Tempo
+        sb.append("tempo=").append(context.getSong().getTempo());
+
+
+        // Rhythm, rhythm parameters, chord symbols
+        appendSongPartInputs(sb, context, spt, contextChordSequence);
+
+
+        // Channels and instruments
+        for (var rv : r.getRhythmVoices())
+        {
+            var insMix = midiMix.getInstrumentMix(rv);
+            sb.append("|ch").append(midiMix.getChannel(rv)).append('=').append(insMix == null ? "-" : insMix.getInstrument());
+        }
+
+
+        // Neighbouring chord symbols
+        var prevCliCs = contextChordSequence.getLastBefore(new Position(sptBarRange.from), false, cliCs -> true);
+        var nextCliCs = contextChordSequence.getFirstAfter(new Position(sptBarRange.to + 1), true, cliCs -> true);
+        sb.append("|prevCs=").append(prevCliCs == null ? "-" : prevCliCs.getData());
+        sb.append("|nextCs=").append(nextCliCs == null ? "-" : nextCliCs.getData());
+
+
+        // Neighbouring SongParts
+        var spts = context.getSongParts();
+        int index = spts.indexOf(spt);
+        sb.append("|prevSpt=[");
+        if (index > 0)
+        {
+            appendSongPartInputs(sb, context, spts.get(index - 1), contextChordSequence);
+        }
+        sb.append("]|nextSpt=[");
+        if (index < spts.size() - 1)
+        {
+            appendSongPartInputs(sb, context, spts.get(index + 1), contextChordSequence);
+        }
+        sb.append(']');
+
+
+        // Generator
+        sb.append("|settings=").append(mg.getSettingsFingerprint(context));
+        if (!mg.isSongPartMusicReusable(context))
+        {
+            sb.append("|startBar=").append(spt.getStartBarIndex());
+        }
+
+        return sb.toString();
+    }
+
+    // =================================================================================================================
+    // Private methods
+    // =================================================================================================================
+
+    private void evictSpeculative()
+    {
+        var it = mapKeySpeculativeRvPhrases.values().iterator();
+        while (speculativeSizeBytes > maxSpeculativeSizeBytes && it.hasNext())
+        {
+            speculativeSizeBytes -= estimateSize(it.next());
+            it.remove();
+        }
+    }
+
+    /**
+     * Append the rhythm, the RhythmParameter values and the chord symbols of a SongPart.
+     *
+     * @param sb
+     * @param context
+     * @param spt                  A SongPart within the context range
+     * @param contextChordSequence
+     */
+    static private void appendSongPartInputs(StringBuilder sb, SongContext context, SongPart spt, ChordSequence contextChordSequence)
+    {
+        IntRange sptBarRange = context.getSptBarRange(spt);
+        Rhythm r = spt.getRhythm();
+
+
+        // Rhythm, time signature
+        sb.append("|r=").append(r.getUniqueId()).append('|').append(r.getTimeSignature());
+
+
+        // Part of the SongPart within the context range
+        sb.append("|bars=").append(sptBarRange.from - spt.getStartBarIndex()).append('/').append(sptBarRange.size()).append('/').append(spt.getNbBars());
+
+
+        // Rhythm parameters
+        for (var rp : r.getRhythmParameters())
+        {
+            sb.append('|').append(rp.getId()).append('=').append(getRpValueString(rp, spt));
+        }
+
+
+        // Chord symbols, positions relative to the SongPart start
+        for (var cliCs : contextChordSequence.subSequence(sptBarRange, true))
+        {
+            Position pos = cliCs.getPosition();
+            sb.append("|cs").append(pos.getBar() - sptBarRange.from).append(':').append(pos.getBeat()).append('=').append(cliCs.getData());
+        }
+    }
+
+    static private <E> String getRpValueString(RhythmParameter<E> rp, SongPart spt)
+    {
+        E value = spt.getRPValue(rp);
+        String s = rp.saveAsString(value);
+        return s != null ? s : String.valueOf(value);
+    }
+
+    static private long estimateSize(Map<RhythmVoice, Phrase> rvPhrases)
+    {
+        long res = 0;
+        for (var p : rvPhrases.values())
+        {
+            res += PHRASE_SIZE_ESTIMATE_BYTES + (long) p.size() * NOTE_SIZE_ESTIMATE_BYTES;
+        }
+        return res;
+    }
+
+    static private Map<RhythmVoice, Phrase> copy(Map<RhythmVoice, Phrase> rvPhrases)
+    {
+        Map<RhythmVoice, Phrase> res = new HashMap<>();
+        rvPhrases.forEach((rv, p) -> res.put(rv, p.clone()));
+        return res;
+    }
+}
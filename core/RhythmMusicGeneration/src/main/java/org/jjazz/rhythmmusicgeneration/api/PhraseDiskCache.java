@@ -0,0 +1,553 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLab software.
+ *   
+ *  JJazzLab is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLab is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.rhythmmusicgeneration.api;
+
+import com.google.common.base.Preconditions;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jjazz.harmony.api.Note;
+import org.jjazz.phrase.api.NoteEvent;
+import org.jjazz.phrase.api.Phrase;
+import org.jjazz.rhythm.api.Rhythm;
+import org.jjazz.rhythm.api.RhythmVoice;
+import org.jjazz.rhythmmusicgeneration.spi.MusicGenerator;
+import org.jjazz.song.api.SongContext;
+
+/**
+ * A persistent cache of the phrases generated by a rhythm MusicGenerator for a SongContext.
+ * <p>
+ * There is one file per entry, named after the SHA-256 of the generation inputs (see
+ * {@link #computeKey(SongContext, Rhythm, MusicGenerator, ChordSequence, long)}). Phrases use a compact binary encoding. Files are written by a background
+ * thread. When the total size of the cache files exceeds the size cap, the least recently used files are deleted.
+ * <p>
+ * The default instance is null until set by the application. A SongSequenceBuilder uses a PhraseDiskCache only if explicitly set, see
+ * {@link SongSequenceBuilder#setPhraseDiskCache(PhraseDiskCache)}.
+ * <p>
+ * Methods are thread-safe.
+ */
+public class PhraseDiskCache
+{
+
+    public static final long DEFAULT_MAX_SIZE_BYTES = 64L * 1024 * 1024;
+    private static final int FORMAT_MAGIC = 0x4A4A5043;         // "JJPC"
+    private static final int FORMAT_VERSION = 1;
+    private static final String FILE_EXTENSION = ".jjpc";
+    private static PhraseDiskCache INSTANCE;
+    /**
+     * The version of each MusicGenerator class, see getGeneratorVersion().
+     */
+    private static final ClassValue<String> GENERATOR_VERSIONS = new ClassValue<>()
+    {
+        @Override
+        protected String computeValue(Class<?> type)
+        {
+            return computeGeneratorVersion(type);
+        }
+    };
+    private final File directory;
+    private final long maxSizeBytes;
+    private final ExecutorService writeExecutor;
+    /**
+     * The running total size of the cache files.
+     */
+    private long totalSizeBytes;
+    private long nbHits;
+    private long nbMisses;
+    private static final Logger LOGGER = Logger.getLogger(PhraseDiskCache.class.getSimpleName());
+
+    /**
+     * The default instance.
+     *
+     * @return Can be null
+     */
+    static public synchronized PhraseDiskCache getDefault()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the default instance.
+     *
+     * @param cache Can be null to disable the persistent cache
+     */
+    static public synchronized void setDefault(PhraseDiskCache cache)
+    {
+        INSTANCE = cache;
+    }
+
+    /**
+     * Create a cache which uses the specified directory.
+     *
+     * @param directory    Must be an existing directory
+     * @param maxSizeBytes The max total size of the cache files
+     */
+    public PhraseDiskCache(File directory, long maxSizeBytes)
+    {
+        Objects.requireNonNull(directory);
+        Preconditions.checkArgument(directory.isDirectory(), "directory=%s", directory);
+        Preconditions.checkArgument(maxSizeBytes > 0, "maxSizeBytes=%s", maxSizeBytes);
+        this.directory = directory;
+        this.maxSizeBytes = maxSizeBytes;
+
+        // Remove possible leftovers of interrupted writes
+        File[] tmpFiles = directory.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION + ".part"));
+        if (tmpFiles != null)
+        {
+            Arrays.stream(tmpFiles).forEach(f -> f.delete());
+        }
+
+        for (File f : listCacheFiles())
+        {
+            totalSizeBytes += f.length();
+        }
+
+        writeExecutor = Executors.newSingleThreadExecutor(r -> 
+        {
+            Thread t = new Thread(r, "JL-PhraseDiskCache");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    public long getMaxSizeBytes()
+    {
+        return maxSizeBytes;
+    }
+
+    /**
+     * Compute the cache key of the phrases generated by mg for rhythm r in the specified context.
+     * <p>
+     * The key depends on the rhythm id and version, the MusicGenerator class and version (see {@link #getGeneratorVersion(MusicGenerator)}), the
+     * generation seed, the context bar range, and the position and generation inputs of each SongPart using r (see
+     * {@link MusicGenerationCache#getSongPartKey(SongContext, org.jjazz.songstructure.api.SongPart, ChordSequence, MusicGenerator)}): chord symbols, RP
+     * values including the variation, tempo, channels and instruments, generator settings, etc.
+     *
+     * @param sgContext
+     * @param r
+     * @param mg
+     * @param contextChordSequence The chord sequence of the context, e.g. a SongChordSequence built for sgContext.getBarRange()
+     * @param seed                 The generation seed, see {@link SongSequenceBuilder#setGenerationSeed(long)}
+     * @return A hexadecimal string
+     */
+    static public String computeKey(SongContext sgContext, Rhythm r, MusicGenerator mg, ChordSequence contextChordSequence, long seed)
+    {
+        Objects.requireNonNull(sgContext);
+        Objects.requireNonNull(r);
+        Objects.requireNonNull(mg);
+        Objects.requireNonNull(contextChordSequence);
+
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append(FORMAT_VERSION).append('|').append(r.getUniqueId()).append('|').append(r.getVersion());
+        sb.append('|').append(mg.getClass().getName()).append('|').append(getGeneratorVersion(mg));
+        sb.append("|seed=").append(seed);
+        sb.append('|').append(sgContext.getBarRange());
+        for (var spt : sgContext.getSongParts())
+        {
+            if (spt.getRhythm() == r)
+            {
+                sb.append("\n").append(sgContext.getSptBarRange(spt).from).append('>');
+                sb.append(MusicGenerationCache.getSongPartKey(sgContext, spt, contextChordSequence, mg));
+            }
+        }
+
+        try
+        {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException ex)
+        {
+            // Should never happen, SHA-256 is mandatory on all Java platforms
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Get a version string of the MusicGenerator implementation.
+     * <p>
+     * Use the package implementation version if available. Otherwise (e.g. for a class loaded from a NetBeans module jar) use the size and last
+     * modification date of the jar or class file, so that upgrading a generator changes the version.
+     *
+     * @param mg
+     * @return Can't be null
+     */
+    static public String getGeneratorVersion(MusicGenerator mg)
+    {
+        return GENERATOR_VERSIONS.get(mg.getClass());
+    }
+
+    /**
+     * Get the cached phrases for the specified key.
+     * <p>
+     * Update the hit/miss counters.
+     *
+     * @param key A value returned by computeKey()
+     * @param r   The rhythm used to compute key
+     * @return Null if no entry or entry could not be read
+     */
+    public synchronized Map<RhythmVoice, Phrase> get(String key, Rhythm r)
+    {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(r);
+        File f = getFile(key);
+        Map<RhythmVoice, Phrase> res = null;
+        if (f.isFile())
+        {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f))))
+            {
+                var rvPhrases = readPhrases(in, r);
+                if (in.read() != -1)
+                {
+                    throw new IOException("Unexpected data after the phrases");
+                }
+                res = rvPhrases;
+                f.setLastModified(System.currentTimeMillis());     // For LRU
+            } catch (IOException | IllegalArgumentException ex)
+            {
+                LOGGER.log(Level.WARNING, "get() Invalid cache file {0}, deleting it. ex={1}", new Object[]
+                {
+                    f.getAbsolutePath(), ex.getMessage()
+                });
+                delete(f);
+            }
+        }
+
+        if (res == null)
+        {
+            nbMisses++;
+        } else
+        {
+            nbHits++;
+        }
+        return res;
+    }
+
+    /**
+     * Save the phrases for the specified key.
+     * <p>
+     * Phrases are encoded in the calling thread, then the file is written by a background thread, which also deletes the least recently used files if
+     * the cache size exceeds the size cap.
+     *
+     * @param key       A value returned by computeKey()
+     * @param r         The rhythm used to compute key
+     * @param rvPhrases One Phrase per RhythmVoice of r
+     */
+    public void put(String key, Rhythm r, Map<RhythmVoice, Phrase> rvPhrases)
+    {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(r);
+        Objects.requireNonNull(rvPhrases);
+
+        var bytes = new ByteArrayOutputStream(4096);
+        try (DataOutputStream out = new DataOutputStream(bytes))
+        {
+            writePhrases(out, r, rvPhrases);
+        } catch (IOException ex)
+        {
+            // Should never happen with a ByteArrayOutputStream
+            throw new IllegalStateException(ex);
+        }
+
+        byte[] data = bytes.toByteArray();
+        writeExecutor.execute(() -> write(key, data));
+    }
+
+    /**
+     * Delete all the cache files.
+     */
+    public synchronized void clear()
+    {
+        for (File f : listCacheFiles())
+        {
+            f.delete();
+        }
+        totalSizeBytes = 0;
+    }
+
+    /**
+     * The total size of the cache files.
+     *
+     * @return
+     */
+    public synchronized long getTotalSizeBytes()
+    {
+        return totalSizeBytes;
+    }
+
+    public synchronized long getNbHits()
+    {
+        return nbHits;
+    }
+
+    public synchronized long getNbMisses()
+    {
+        return nbMisses;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PhraseDiskCache[" + directory.getAbsolutePath() + "]";
+    }
+
+    /**
+     * Write the phrases in a compact binary format.
+     * <p>
+     * RhythmVoices are saved as their index in r.getRhythmVoices(). Each note uses 11 bytes. NoteEvent client properties are not saved.
+     *
+     * @param out
+     * @param r
+     * @param rvPhrases
+     * @throws IOException
+     * @throws IllegalArgumentException If a RhythmVoice is not part of r
+     */
+    static public void writePhrases(DataOutputStream out, Rhythm r, Map<RhythmVoice, Phrase> rvPhrases) throws IOException
+    {
+        var rvs = r.getRhythmVoices();
+        out.writeInt(FORMAT_MAGIC);
+        out.writeShort(FORMAT_VERSION);
+        out.writeShort(rvPhrases.size());
+        for (var rv : rvPhrases.keySet())
+        {
+            int rvIndex = rvs.indexOf(rv);
+            Preconditions.checkArgument(rvIndex >= 0, "rv=%s r=%s", rv, r);
+            Phrase p = rvPhrases.get(rv);
+            out.writeShort(rvIndex);
+            out.writeByte(p.getChannel());
+            out.writeBoolean(p.isDrums());
+            out.writeInt(p.size());
+            for (var ne : p)
+            {
+                out.writeByte(ne.getPitch());
+                out.writeByte(ne.getVelocity());
+                out.writeByte(ne.getAccidental() == Note.Accidental.FLAT ? 1 : 0);
+                out.writeFloat(ne.getDurationInBeats());
+                out.writeFloat(ne.getPositionInBeats());
+            }
+        }
+    }
+
+    /**
+     * Read phrases written by writePhrases().
+     *
+     * @param in
+     * @param r
+     * @return
+     * @throws IOException              If data is not in the expected format or version, or is truncated
+     * @throws IllegalArgumentException If data is inconsistent with r
+     */
+    static public Map<RhythmVoice, Phrase> readPhrases(DataInputStream in, Rhythm r) throws IOException
+    {
+        var rvs = r.getRhythmVoices();
+        if (in.readInt() != FORMAT_MAGIC)
+        {
+            throw new IOException("Invalid format");
+        }
+        int version = in.readShort();
+        if (version != FORMAT_VERSION)
+        {
+            throw new IOException("Unsupported format version " + version);
+        }
+        Map<RhythmVoice, Phrase> res = new HashMap<>();
+        int nbPhrases = in.readShort();
+        if (nbPhrases < 0)
+        {
+            throw new IOException("Invalid nbPhrases=" + nbPhrases);
+        }
+        for (int i = 0; i < nbPhrases; i++)
+        {
+            int rvIndex = in.readShort();
+            Preconditions.checkArgument(rvIndex >= 0 && rvIndex < rvs.size(), "rvIndex=%s r=%s", rvIndex, r);
+            int channel = in.readByte();
+            boolean isDrums = in.readBoolean();
+            int nbNotes = in.readInt();
+            if (nbNotes < 0)
+            {
+                throw new IOException("Invalid nbNotes=" + nbNotes);
+            }
+            Phrase p = new Phrase(channel, isDrums);
+            for (int j = 0; j < nbNotes; j++)
+            {
+                int pitch = in.readByte();
+                int velocity = in.readByte();
+                var acc = in.readByte() == 1 ? Note.Accidental.FLAT : Note.Accidental.SHARP;
+                float duration = in.readFloat();
+                float pos = in.readFloat();
+                p.add(new NoteEvent(pitch, duration, velocity, pos, acc));
+            }
+            res.put(rvs.get(rvIndex), p);
+        }
+        return res;
+    }
+
+    // =================================================================================================================
+    // Private methods
+    // =================================================================================================================
+    private File getFile(String key)
+    {
+        return new File(directory, key + FILE_EXTENSION);
+    }
+
+    /**
+     * Write the encoded phrases of an entry, then evict files if needed.
+     *
+     * @param key
+     * @param data
+     */
+    private synchronized void write(String key, byte[] data)
+    {
+        File f = getFile(key);
+        try
+        {
+            File tmpFile = File.createTempFile("tmp", FILE_EXTENSION + ".part", directory);
+            Files.write(tmpFile.toPath(), data);
+            long oldSize = f.length();      // 0 if f does not exist
+            Files.move(tmpFile.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            totalSizeBytes += data.length - oldSize;
+        } catch (IOException ex)
+        {
+            LOGGER.log(Level.WARNING, "write() Can''t write cache file {0}. ex={1}", new Object[]
+            {
+                f.getAbsolutePath(), ex.getMessage()
+            });
+            return;
+        }
+
+        if (totalSizeBytes > maxSizeBytes)
+        {
+            evict();
+        }
+    }
+
+    private void delete(File f)
+    {
+        long size = f.length();
+        if (f.delete())
+        {
+            totalSizeBytes -= size;
+        }
+    }
+
+    private File[] listCacheFiles()
+    {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+        return files == null ? new File[0] : files;
+    }
+
+    /**
+     * Delete the least recently used files until the total size is below maxSizeBytes.
+     */
+    private void evict()
+    {
+        // Resynchronize the running total with the actual files
+        File[] files = listCacheFiles();
+        totalSizeBytes = 0;
+        for (File f : files)
+        {
+            totalSizeBytes += f.length();
+        }
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File f : files)
+        {
+            if (totalSizeBytes <= maxSizeBytes)
+            {
+                break;
+            }
+            delete(f);
+            LOGGER.log(Level.FINE, "evict() deleted {0}", f.getName());
+        }
+    }
+
+    static private String computeGeneratorVersion(Class<?> mgClass)
+    {
+        String res = mgClass.getPackage() == null ? null : mgClass.getPackage().getImplementationVersion();
+        if (res != null)
+        {
+            return res;
+        }
+
+        // Use the jar or class file
+        try
+        {
+            var codeSource = mgClass.getProtectionDomain().getCodeSource();
+            if (codeSource != null && codeSource.getLocation() != null)
+            {
+                File f = new File(codeSource.getLocation().toURI());
+                if (f.isDirectory())
+                {
+                    f = new File(f, mgClass.getName().replace('.', File.separatorChar) + ".class");
+                }
+                if (f.exists())
+                {
+                    return f.getName() + ":" + f.length() + ":" + f.lastModified();
+                }
+            }
+        } catch (URISyntaxException | IllegalArgumentException | SecurityException ex)
+        {
+            // Nothing
+        }
+
+        // Last resort: the class file content
+        String resource = mgClass.getName().substring(mgClass.getName().lastIndexOf('.') + 1) + ".class";
+        try (InputStream in = mgClass.getResourceAsStream(resource))
+        {
+            if (in != null)
+            {
+                return "class:" + Arrays.hashCode(in.readAllBytes());
+            }
+        } catch (IOException ex)
+        {
+            // Nothing
+        }
+        LOGGER.log(Level.WARNING, "computeGeneratorVersion() No version available for {0}", mgClass.getName());
+        return "unknown";
+    }
+}
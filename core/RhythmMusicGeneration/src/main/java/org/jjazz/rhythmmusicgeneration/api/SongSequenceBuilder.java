@@ -28,18 +28,23 @@ import org.jjazz.rhythmparametersimpl.api.RP_SYS_OverrideTracks;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.MultimapBuilder;
 import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
 import org.jjazz.rhythm.api.UserErrorGenerationException;
 import org.jjazz.phrase.api.Phrase;
 import org.jjazz.phrase.api.NoteEvent;
+import org.jjazz.phrase.api.NotePipeline;
 import org.jjazz.song.api.SongContext;
 import org.jjazz.rhythm.api.MusicGenerationException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sound.midi.InvalidMidiDataException;
@@ -71,6 +76,7 @@ import org.jjazz.rhythm.api.AdaptedRhythm;
 import org.jjazz.rhythm.api.Rhythm;
 import org.jjazz.rhythm.api.RhythmVoice;
 import org.jjazz.rhythm.api.RhythmVoiceDelegate;
+import org.jjazz.rhythmmusicgeneration.spi.CancellationToken;
 import org.jjazz.rhythmmusicgeneration.spi.MusicGenerator;
 import org.jjazz.song.api.SongPartContext;
 import org.netbeans.api.progress.BaseProgressUtils;
@@ -106,6 +112,13 @@ public class SongSequenceBuilder
      * @see #getTempoFactor(javax.sound.midi.MetaMessage)
      */
     public static final int TEMPO_FACTOR_META_EVENT_TYPE = 12;
+    /**
+     * System property used to disable the fused note-level post-processing.
+     * <p>
+     * If "false", the note-level changes (NC chords, RP_SYS_Mute, fade_out, instrument settings, shift to 0) are applied using one pass per change, as
+     * before the NotePipeline was introduced. The result is the same, this is useful only for troubleshooting or benchmarking.
+     */
+    public static final String SYSTEM_PROP_FUSED_NOTE_PIPELINE = "SongSequenceBuilderFusedNotePipeline";
 
     /**
      * The return value of some of the buildXXX() methods.
@@ -123,11 +136,27 @@ public class SongSequenceBuilder
 
     private final SongContext songContextOriginal;
     private final SongContext songContextWork;
+    private final MusicGenerationCache generationCache;
+    private PhraseDiskCache diskCache;
+    private long generationSeed;
+    private SongChordSequence contextChordSequence;
+    private CancellationToken cancelToken = CancellationToken.NONE;
+    private boolean speculative;
+    /**
+     * If not null only the SongParts in this bar range are generated.
+     */
+    private IntRange partialBarRange;
     /**
      * Store substitute-tracks-rhythms to be released upon close for each song.
      */
     private final static SetMultimap<Song, Rhythm> MMAP_SONG_SUBSTITUTE_TRACKS_RHYTHMS = MultimapBuilder.hashKeys().hashSetValues().build();
 
+    /**
+     * Max number of threads used to run MusicGenerators in parallel.
+     */
+    private static final int MAX_GENERATION_THREADS = 8;
+    private static ForkJoinPool GENERATION_POOL;
+    private static ForkJoinPool LOW_PRIORITY_GENERATION_POOL;
     private static final Logger LOGGER = Logger.getLogger(SongSequenceBuilder.class.getSimpleName());
 
     /**
@@ -138,10 +167,114 @@ public class SongSequenceBuilder
      * @param sgContext
      */
     public SongSequenceBuilder(SongContext sgContext)
+    {
+        this(sgContext, null);
+    }
+
+    /**
+     * Create an instance to generate music for the specified SongContext, reusing the phrases of unchanged SongParts from a cache.
+     * <p>
+     * Only the SongParts missing from the cache are generated by the rhythm MusicGenerators, then the generated phrases are stored in the cache. Note that
+     * sgContext is not modified, the instance works on a deep copy snapshot of sgContext.
+     *
+     * @param sgContext
+     * @param cache     If null no cache is used
+     * @see MusicGenerationCache#getSongPartKey(org.jjazz.song.api.SongContext, org.jjazz.songstructure.api.SongPart,
+     * org.jjazz.rhythmmusicgeneration.api.ChordSequence, org.jjazz.rhythmmusicgeneration.spi.MusicGenerator)
+     */
+    public SongSequenceBuilder(SongContext sgContext, MusicGenerationCache cache)
     {
         Objects.requireNonNull(sgContext);
         this.songContextOriginal = sgContext;
         this.songContextWork = songContextOriginal.getDeepCopy(false);
+        this.generationCache = cache;
+    }
+
+    /**
+     * Set the persistent cache used to reuse the phrases generated in a previous session.
+     * <p>
+     * Cache lookups imply file I/O in the generation thread: use it only for one-shot generations (e.g. playback session opening, export), not for the
+     * frequent regenerations triggered by song edits. The PhraseDiskCache is not used by buildPartialMapRvPhrase().
+     *
+     * @param cache If null (default) no PhraseDiskCache is used
+     * @see PhraseDiskCache#getDefault()
+     */
+    public void setPhraseDiskCache(PhraseDiskCache cache)
+    {
+        this.diskCache = cache;
+    }
+
+    /**
+     * @return Can be null
+     */
+    public PhraseDiskCache getPhraseDiskCache()
+    {
+        return diskCache;
+    }
+
+    /**
+     * Set the generation seed used in the PhraseDiskCache keys.
+     * <p>
+     * MusicGenerators make random choices, so the cached phrases are only one possible result for the same song. Phrases cached with a different seed are
+     * not reused: change the seed to get a new generation result instead of the cached one.
+     *
+     * @param seed Default is 0
+     * @see PhraseDiskCache#computeKey(org.jjazz.song.api.SongContext, org.jjazz.rhythm.api.Rhythm,
+     * org.jjazz.rhythmmusicgeneration.spi.MusicGenerator, org.jjazz.rhythmmusicgeneration.api.ChordSequence, long)
+     */
+    public void setGenerationSeed(long seed)
+    {
+        this.generationSeed = seed;
+    }
+
+    public long getGenerationSeed()
+    {
+        return generationSeed;
+    }
+
+    /**
+     * Set the token used to cancel an ongoing music generation.
+     * <p>
+     * The token is passed to the rhythm MusicGenerators and checked between the generation steps. When cancelled, buildAll() and buildMapRvPhrase() throw
+     * a MusicGenerationCancelledException. Phrases of SongParts which were completely generated before cancellation may remain in the cache.
+     *
+     * @param token Can't be null
+     * @see MusicGenerator#generateMusic(org.jjazz.song.api.SongContext, org.jjazz.rhythmmusicgeneration.spi.CancellationToken,
+     * org.jjazz.rhythm.api.RhythmVoice...)
+     */
+    public void setCancellationToken(CancellationToken token)
+    {
+        Objects.requireNonNull(token);
+        this.cancelToken = token;
+    }
+
+    /**
+     * @return Default is CancellationToken.NONE
+     */
+    public CancellationToken getCancellationToken()
+    {
+        return cancelToken;
+    }
+
+    /**
+     * Set if the generated music is pre-generated in case user needs it.
+     * <p>
+     * If true the phrases generated for the missing SongParts are stored as speculative entries in the MusicGenerationCache.
+     *
+     * @param b
+     * @see MusicGenerationCache#putSpeculative(java.lang.String, java.util.Map)
+     */
+    public void setSpeculative(boolean b)
+    {
+        this.speculative = b;
+    }
+
+    /**
+     * @return Default is false
+     */
+    public boolean isSpeculative()
+    {
+        return speculative;
     }
 
 
@@ -217,6 +350,47 @@ public class SongSequenceBuilder
     }
 
 
+    /**
+     * Build the RhythmVoice phrases only for the SongParts which intersect barRange.
+     * <p>
+     * Same as buildMapRvPhrase(true) except that rhythm notes are only generated in getPartialBeatRange(barRange): phrases have no rhythm notes outside of
+     * this range. The generated SongParts are stored in the MusicGenerationCache with the same keys than for a complete generation, so that a subsequent
+     * buildMapRvPhrase() call only generates the remaining SongParts, without changing the music of the already generated SongParts.
+     * <p>
+     * The PhraseDiskCache is not used.
+     *
+     * @param barRange Must intersect the songContext bar range
+     * @return One phrase per RhythmVoice, starting at beat 0 like for buildMapRvPhrase(boolean)
+     * @throws MusicGenerationException
+     * @throws IllegalStateException    If this instance does not use a MusicGenerationCache
+     * @see #getPartialBeatRange(org.jjazz.utilities.api.IntRange)
+     */
+    public Map<RhythmVoice, Phrase> buildPartialMapRvPhrase(IntRange barRange) throws MusicGenerationException
+    {
+        Preconditions.checkState(generationCache != null, "No MusicGenerationCache used");
+        partialBarRange = getPartialBarRange(barRange);
+        try
+        {
+            return buildMapRvPhrase(true);
+        } finally
+        {
+            partialBarRange = null;
+        }
+    }
+
+    /**
+     * Get the beat range of the music generated by buildPartialMapRvPhrase(barRange).
+     *
+     * @param barRange Must intersect the songContext bar range
+     * @return The beat range of the SongParts which intersect barRange, relative to the songContext start (i.e. same reference than the phrases returned by
+     *         buildMapRvPhrase(boolean)).
+     */
+    public FloatRange getPartialBeatRange(IntRange barRange)
+    {
+        var beatRange = songContextWork.getSong().getSongStructure().toBeatRange(getPartialBarRange(barRange));
+        return beatRange.getTransformed(-songContextWork.getBeatRange().from);
+    }
+
     /**
      * Build the SongSequence from the specified RhythmVoice phrases for the defined context.
      * <p>
@@ -249,9 +423,11 @@ public class SongSequenceBuilder
         // First track is really useful only when exporting to Midi file type 1            
         // Contain song name, tempo factor changes, time signatures
         Track track0 = res.sequence.createTrack();
-        MidiUtilities.addTrackNameEvent(track0, songContextWork.getSong().getName() + " (JJazzLab song)");
-        addTimeSignatureChanges(songContextWork, track0);
-        addTempoFactorChanges(songContextWork, track0);
+        var meName = new MidiEvent(MidiUtilities.getTrackNameMetaMessage(songContextWork.getSong().getName() + " (JJazzLab song)"), 0);
+        var track0Events = MidiUtilities.mergeSortedEvents(List.of(List.of(meName),
+                getTimeSignatureChanges(songContextWork),
+                getTempoFactorChanges(songContextWork)));
+        MidiUtilities.addSortedEvents(track0, track0Events);
 
 
         // Other tracks : create one per RhythmVoice
@@ -323,7 +499,8 @@ public class SongSequenceBuilder
      * - add bank/program and volume/effects events for each RhythmVoice track<br>
      * - add a marker for each chord symbol<br>
      * - add a marker for each song part<br>
-     *
+     * <p>
+     * Note that the Track instances of songSequence.sequence are replaced, tracks order is unchanged.
      *
      * @param songSequence      Must have been created using buildSongSequence() for the current SongContext
      * @param ignoreMidiMixMute If true, a track will sound even if it was muted in the context MidiMix
@@ -337,7 +514,6 @@ public class SongSequenceBuilder
         List<SongPart> spts = songContextWork.getSongParts();
         MidiMix midiMix = songContextWork.getMidiMix();
         Track[] tracks = sequence.getTracks();
-        Track track0 = tracks[0];
 
 
         if (!MidiUtilities.checkMidiFileTypeSupport(sequence, 1, true))
@@ -346,32 +522,33 @@ public class SongSequenceBuilder
         }
 
 
-        // ========== Track 0 settings =============
-        // Copyright
-        MidiMessage mmCopyright = MidiUtilities.getCopyrightMetaMessage("JJazzLab Midi Export file");
-        MidiEvent me = new MidiEvent(mmCopyright, 0);
-        track0.add(me);
+        // Events are first collected then merged per track, tracks are rebuilt at the end. 
+        // This avoids slow Track.add() calls at the beginning of large tracks.
+        List<List<MidiEvent>> tracksEvents = new ArrayList<>();
+        for (Track track : tracks)
+        {
+            tracksEvents.add(getEventsWithoutEndOfTrack(track));
+        }
+
 
+        // ========== Track 0 settings =============
+        List<List<MidiEvent>> track0Runs = new ArrayList<>();
 
         // Clean track0 from JJazzLab internal Midi events
-        int i = 0;
-        while (i < track0.size())
-        {
-            me = track0.get(i);
-            MidiMessage mm = me.getMessage();
-            if (mm instanceof ShortMessage sm)
-            {
-                if (sm.getCommand() == ShortMessage.CONTROL_CHANGE && sm.getData1() == MidiConst.CTRL_CHG_JJAZZ_TEMPO_FACTOR)
-                {
-                    track0.remove(me);
-                    i--;
-                }
-            }
-            i++;
-        }
+        var track0Events = tracksEvents.get(0);
+        track0Events.removeIf(ev -> ev.getMessage() instanceof ShortMessage sm
+                && sm.getCommand() == ShortMessage.CONTROL_CHANGE
+                && sm.getData1() == MidiConst.CTRL_CHG_JJAZZ_TEMPO_FACTOR);
+        track0Runs.add(track0Events);
+
+
+        // Copyright
+        MidiMessage mmCopyright = MidiUtilities.getCopyrightMetaMessage("JJazzLab Midi Export file");
+        track0Runs.add(List.of(new MidiEvent(mmCopyright, 0)));
 
 
         // Add markers at each chord symbol position
+        List<MidiEvent> chordMarkers = new ArrayList<>();
         SongStructure ss = songContextWork.getSong().getSongStructure();
         for (SongPart spt : spts)
         {
@@ -380,10 +557,10 @@ public class SongSequenceBuilder
             {
                 Position absPos = ss.getSptItemPosition(spt, cliChordSymbol);
                 long tickPos = songContextWork.toRelativeTick(absPos);
-                me = new MidiEvent(MidiUtilities.getMarkerMetaMessage(cliChordSymbol.getData().getName()), tickPos);
-                track0.add(me);
+                chordMarkers.add(new MidiEvent(MidiUtilities.getMarkerMetaMessage(cliChordSymbol.getData().getName()), tickPos));
             }
         }
+        track0Runs.add(chordMarkers);
 
 
         // Add initial tempo event
@@ -396,19 +573,18 @@ public class SongSequenceBuilder
             tempoFactor = spt0.getRPValue(rp);
             tempo = Math.round(tempoFactor / 100f * tempo);
         }
-        me = new MidiEvent(MidiUtilities.getTempoMessage(0, tempo), 0);
-        track0.add(me);
+        track0Runs.add(List.of(new MidiEvent(MidiUtilities.getTempoMessage(0, tempo), 0)));
 
 
         // Add markers for each song part and additional song part tempo changes if present
+        List<MidiEvent> sptEvents = new ArrayList<>();
         int lastTempoFactor = tempoFactor;
         for (SongPart spt : spts)
         {
             String partName = spt.getName();
             float beatPos = songContextWork.getSptBeatRange(spt).from - songContextWork.getBeatRange().from;
             long spTickPos = Math.round(beatPos * MidiConst.PPQ_RESOLUTION);
-            me = new MidiEvent(MidiUtilities.getMarkerMetaMessage(partName), spTickPos);
-            track0.add(me);
+            sptEvents.add(new MidiEvent(MidiUtilities.getMarkerMetaMessage(partName), spTickPos));
 
             rp = RP_SYS_TempoFactor.getTempoFactorRp(spt.getRhythm());
             if (rp != null)
@@ -417,12 +593,12 @@ public class SongSequenceBuilder
                 if (tempoFactor != lastTempoFactor)
                 {
                     tempo = Math.round(tempoFactor / 100f * songContextWork.getSong().getTempo());
-                    me = new MidiEvent(MidiUtilities.getTempoMessage(0, tempo), spTickPos);
-                    track0.add(me);
+                    sptEvents.add(new MidiEvent(MidiUtilities.getTempoMessage(0, tempo), spTickPos));
                     lastTempoFactor = tempoFactor;
                 }
             }
         }
+        track0Runs.add(sptEvents);
 
 
         // Add XX mode ON initialization message
@@ -430,10 +606,11 @@ public class SongSequenceBuilder
         SysexMessage sxm = os.getUserSettings().getModeOnUponPlaySysexMessages();
         if (sxm != null)
         {
-            me = new MidiEvent(sxm, 0);
-            track0.add(me);
+            track0Runs.add(List.of(new MidiEvent(sxm, 0)));
         }
 
+        tracksEvents.set(0, MidiUtilities.mergeSortedEvents(track0Runs));
+
 
         // ========== RhythmVoice tracks settings =============
         // Remove elements from muted tracks (don't remove the muted tracks because it would impact mapRvTrack)
@@ -443,8 +620,7 @@ public class SongSequenceBuilder
             {
                 if (midiMix.getInstrumentMix(rv).isMute())
                 {
-                    Track track = sequence.getTracks()[songSequence.mapRvTrackId.get(rv)];
-                    MidiUtilities.clearTrack(track);
+                    tracksEvents.get(songSequence.mapRvTrackId.get(rv)).clear();
                 }
             }
         }
@@ -455,46 +631,45 @@ public class SongSequenceBuilder
         // - add instruments initialization messages for each track
         for (RhythmVoice rv : songSequence.mapRvTrackId.keySet())
         {
-            Track track = tracks[songSequence.mapRvTrackId.get(rv)];
+            int trackId = songSequence.mapRvTrackId.get(rv);
             int channel = midiMix.getChannel(rv);
             assert channel != -1 : "rv=" + rv + " midiMix=" + midiMix.toDebugString() + " songSequence.mapRvTrackId=" + songSequence.mapRvTrackId;
 
-            // Reset all controllers
-            MidiMessage mmReset = MidiUtilities.getResetAllControllersMessage(channel);
-            me = new MidiEvent(mmReset, 0);
-            track.add(me);
-
-            // Instrument + volume + pan etc.
-            InstrumentMix insMix = midiMix.getInstrumentMix(rv);
-            for (MidiMessage mm : insMix.getAllMidiMessages(channel))
-            {
-                me = new MidiEvent(mm, 0);
-                track.add(me);
-            }
-
 
             // FIX Issue #496 (export to mp3 with FluidSynth synth): at tick 0, make sure that note MidiEvents are *after* the program change MidiEvents
+            List<MidiEvent> trackEvents = new ArrayList<>();
             List<MidiEvent> tick0Notes = new ArrayList<>();
-            for (int j = 0; j < track.size(); j++)
+            for (var ev : tracksEvents.get(trackId))
             {
-                me = track.get(j);
-                if (me.getTick() > 0)
+                if (ev.getTick() == 0
+                        && (MidiUtilities.getNoteOnShortMessage(ev.getMessage()) != null || MidiUtilities.getNoteOffShortMessage(ev.getMessage()) != null))
                 {
-                    break;
-                }
-                if (MidiUtilities.getNoteOnShortMessage(me.getMessage()) != null || MidiUtilities.getNoteOffShortMessage(me.getMessage()) != null)
+                    tick0Notes.add(ev);
+                } else
                 {
-                    tick0Notes.add(me);
+                    trackEvents.add(ev);
                 }
             }
-            for (var note0 : tick0Notes)
+
+
+            // Reset all controllers
+            MidiMessage mmReset = MidiUtilities.getResetAllControllersMessage(channel);
+            List<MidiEvent> initEvents = new ArrayList<>();
+            initEvents.add(new MidiEvent(mmReset, 0));
+
+            // Instrument + volume + pan etc.
+            InstrumentMix insMix = midiMix.getInstrumentMix(rv);
+            for (MidiMessage mm : insMix.getAllMidiMessages(channel))
             {
-                track.remove(note0);
-                track.add(new MidiEvent(note0.getMessage(), 0));
+                initEvents.add(new MidiEvent(mm, 0));
             }
 
+
+            tracksEvents.set(trackId, MidiUtilities.mergeSortedEvents(List.of(trackEvents, initEvents, tick0Notes)));
         }
 
+
+        rebuildTracks(sequence, tracksEvents);
     }
 
     @Override
@@ -565,26 +740,92 @@ public class SongSequenceBuilder
         // Check there is no 2 chords at same position
         checkChordsAtSamePosition(songContextWork);            // throws MusicGenerationException        
 
-        for (Rhythm r : songContextWork.getUniqueRhythms())
+        // Generate the phrases of each rhythm
+        for (var rMap : generateAllRhythmPhrases())          // throws MusicGenerationException
         {
-            // Generate the phrases
-            MusicGenerator mg = processRP_SYS_OverrideTracks(r, songContextWork);
-            Map<RhythmVoice, Phrase> rMap = generateRhythmPhrases(r, mg, songContextWork);                       // throws MusicGenerationException
+            // Merge into the final result, always in the same rhythm order
+            res.putAll(rMap);
+        }
+        cancelToken.checkCancelled();
 
-            checkPhrasesScope(songContextWork, r, rMap);                              // throws MusicGenerationException
 
-            // Merge into the final result
-            res.putAll(rMap);
+        postProcessPhrases(res, !"false".equals(System.getProperty(SYSTEM_PROP_FUSED_NOTE_PIPELINE)));
 
-        }
 
+        return res;
+    }
 
+    /**
+     * Post-process the generated rhythm phrases and add the user track phrases.
+     * <p>
+     * Package visibility for unit tests.
+     *
+     * @param res   The generated rhythm phrases, keys can include RhythmVoiceDelegates. Updated with the final phrases.
+     * @param fused If true use a NotePipeline per phrase for the note-level changes, otherwise use one pass per change.
+     * @throws UserErrorGenerationException
+     * @see #SYSTEM_PROP_FUSED_NOTE_PIPELINE
+     */
+    void postProcessPhrases(Map<RhythmVoice, Phrase> res, boolean fused) throws UserErrorGenerationException
+    {
         // Handle the RP_SYS_CustomPhrase changes
         processCustomPhrases(songContextWork, res);
 
         // Handle the RP_SYS_DrumsTransform changes
         processDrumsTransforms(songContextWork, res);
 
+        if (fused)
+        {
+            postProcessPhrasesFused(res);
+        } else
+        {
+            postProcessPhrasesMultiPass(res);
+        }
+    }
+
+    private void postProcessPhrasesFused(Map<RhythmVoice, Phrase> res) throws UserErrorGenerationException
+    {
+        // Prepare the note-level changes, they are fused in a single pass per phrase
+        Map<RhythmVoice, NotePipeline> pipelines = new HashMap<>();
+
+        // Handle the NC chord symbols (user tracks are not impacted)
+        addNoChordsStages(songContextWork, res, pipelines);
+
+        // Add the user track phrases
+        addUserTrackPhrases(res);
+
+        // Handle the RP_SYS_Mute parameter (user track phrases must be in res)
+        addMutedInstrumentsStages(songContextWork, res, pipelines);
+
+        // Handle the RP_SYS_Fill with value fade_out
+        addFadeOutStages(songContextWork, res, pipelines);
+
+        // Handle instrument settings which impact the phrases: transposition, velocity shift, ...
+        addInstrumentsSettingsStages(songContextWork, res, pipelines);
+
+        // Shift phrases to start at position 0
+        float shift = -songContextWork.getBeatRange().from;
+        res.keySet().forEach(rv -> getPipeline(pipelines, rv).add(NotePipeline.shift(shift)));
+
+        // The stages are per-note, so applying them before the delegate/rerouting merges below gives the same result (see SongSequenceBuilderPostProcessingTest)
+        processNotePipelines(res, pipelines);
+
+
+        // Handle the AdaptedRhythm's RhythmVoiceDelegates
+        // IMPORTANT: after that res will NOT contain RhythmVoiceDelegates anymore
+        processAdaptedRhythms(res);
+
+        // Process drums rerouting
+        processDrumsRerouting(songContextWork, res);
+    }
+
+    /**
+     * The post-processing used before the NotePipeline: each note-level change is a separate pass on the phrases.
+     *
+     * @param res
+     * @throws UserErrorGenerationException
+     */
+    private void postProcessPhrasesMultiPass(Map<RhythmVoice, Phrase> res) throws UserErrorGenerationException
+    {
         // Handle the NC chord symbols 
         processNoChords(songContextWork, res);
 
@@ -613,9 +854,6 @@ public class SongSequenceBuilder
         {
             p.shiftAllEvents(-songContextWork.getBeatRange().from, false);
         }
-
-
-        return res;
     }
 
     /**
@@ -723,14 +961,199 @@ public class SongSequenceBuilder
         return res;
     }
 
+    /**
+     * Generate the phrases of each rhythm used in songContextWork.
+     * <p>
+     * Rhythm resources are loaded serially, then the MusicGenerators run in parallel on the generation pool. Rhythms which share a MusicGenerator instance
+     * (e.g. via RP_SYS_OverrideTracks) are processed serially in the same pool task. Rhythms which use a non thread-safe MusicGenerator are processed last
+     * in the calling thread.
+     *
+     * @return One map per rhythm, in the songContextWork.getUniqueRhythms() order
+     * @throws MusicGenerationException The exception of the first failing rhythm, in the songContextWork.getUniqueRhythms() order
+     * @see MusicGenerator#isThreadSafe()
+     */
+    private List<Map<RhythmVoice, Phrase>> generateAllRhythmPhrases() throws MusicGenerationException
+    {
+        if (generationCache != null || diskCache != null)
+        {
+            contextChordSequence = new SongChordSequence(songContextWork.getSong(), songContextWork.getBarRange());    // throws UserErrorGenerationException
+        }
+
+        List<GenerationUnit> units = new ArrayList<>();
+        for (Rhythm r : songContextWork.getUniqueRhythms())
+        {
+            MusicGenerator mg = processRP_SYS_OverrideTracks(r, songContextWork);      // throws MusicGenerationException
+            loadRhythmResources(r, songContextWork);          // throws MusicGenerationException
+            units.add(new GenerationUnit(r, mg));
+        }
+
+
+        // Group the units which share a MusicGenerator instance
+        List<List<GenerationUnit>> parallelGroups = new ArrayList<>();
+        List<GenerationUnit> serialUnits = new ArrayList<>();
+        for (var unit : units)
+        {
+            if (!unit.isThreadSafe())
+            {
+                serialUnits.add(unit);
+                continue;
+            }
+            List<GenerationUnit> group = new ArrayList<>();
+            group.add(unit);
+            for (var it = parallelGroups.iterator(); it.hasNext();)
+            {
+                var g = it.next();
+                if (g.stream().anyMatch(u -> !Collections.disjoint(u.musicGenerators, unit.musicGenerators)))
+                {
+                    group.addAll(g);
+                    it.remove();
+                }
+            }
+            parallelGroups.add(group);
+        }
+
+
+        // Generate
+        long t = System.currentTimeMillis();
+        if (parallelGroups.size() > 1)
+        {
+            var pool = getGenerationPool();
+            var tasks = parallelGroups.stream()
+                    .map(g -> pool.submit(() -> g.forEach(u -> u.generate())))
+                    .toList();
+            tasks.forEach(task -> task.join());
+        } else
+        {
+            parallelGroups.forEach(g -> g.forEach(u -> u.generate()));
+        }
+        serialUnits.forEach(u -> u.generate());
+
+        LOGGER.log(DEFAULT_LEVEL, "generateAllRhythmPhrases() nbRhythms={0} nbParallelGroups={1} nbSerial={2} duration={3}ms", new Object[]
+        {
+            units.size(), parallelGroups.size(), serialUnits.size(), System.currentTimeMillis() - t
+        });
+
+
+        // Merge in rhythm order
+        List<Map<RhythmVoice, Phrase>> res = new ArrayList<>();
+        for (var unit : units)
+        {
+            if (unit.exception != null)
+            {
+                throw unit.exception;
+            }
+            res.add(unit.rvPhrases);
+        }
+
+        return res;
+    }
+
+    /**
+     * Extend barRange to the previous and next SongParts.
+     *
+     * @param sgContext
+     * @param barRange  A union of SongParts bar ranges
+     * @return A bar range within sgContext.getBarRange()
+     * @see MusicGenerationCache#getSongPartKey(org.jjazz.song.api.SongContext, org.jjazz.songstructure.api.SongPart,
+     * org.jjazz.rhythmmusicgeneration.api.ChordSequence, org.jjazz.rhythmmusicgeneration.spi.MusicGenerator)
+     */
+    static private IntRange getBarRangeWithNeighbours(SongContext sgContext, IntRange barRange)
+    {
+        var res = barRange;
+        var spts = sgContext.getSongParts();
+        for (int i = 0; i < spts.size(); i++)
+        {
+            var sptBarRange = sgContext.getSptBarRange(spts.get(i));
+            if (sptBarRange.from == barRange.from && i > 0)
+            {
+                res = res.getUnion(sgContext.getSptBarRange(spts.get(i - 1)));
+            }
+            if (sptBarRange.to == barRange.to && i < spts.size() - 1)
+            {
+                res = res.getUnion(sgContext.getSptBarRange(spts.get(i + 1)));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Get the bounded pool used to run the MusicGenerators in parallel.
+     * <p>
+     * If the calling thread has a priority lower than Thread.NORM_PRIORITY (e.g. a background pre-generation), a separate pool whose workers use
+     * Thread.MIN_PRIORITY is returned, so that the low priority work does not compete with the normal music generation.
+     * <p>
+     * Worker threads use the context ClassLoader of the thread which created the pool, so that generators can access the application Lookup.
+     *
+     * @return
+     */
+    static private synchronized ForkJoinPool getGenerationPool()
+    {
+        if (Thread.currentThread().getPriority() < Thread.NORM_PRIORITY)
+        {
+            if (LOW_PRIORITY_GENERATION_POOL == null)
+            {
+                LOW_PRIORITY_GENERATION_POOL = createGenerationPool("JL-MusicGenerationLow-", Thread.MIN_PRIORITY);
+            }
+            return LOW_PRIORITY_GENERATION_POOL;
+        }
+        if (GENERATION_POOL == null)
+        {
+            GENERATION_POOL = createGenerationPool("JL-MusicGeneration-", Thread.NORM_PRIORITY);
+        }
+        return GENERATION_POOL;
+    }
+
+    static private ForkJoinPool createGenerationPool(String threadNamePrefix, int threadPriority)
+    {
+        int nbThreads = Math.min(MAX_GENERATION_THREADS, Math.max(2, Runtime.getRuntime().availableProcessors() - 1));
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        AtomicInteger n = new AtomicInteger(1);
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> 
+        {
+            var wt = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            wt.setName(threadNamePrefix + n.getAndIncrement());
+            wt.setContextClassLoader(cl);
+            wt.setPriority(threadPriority);
+            return wt;
+        };
+        return new ForkJoinPool(nbThreads, factory,
+                (th, ex) -> LOGGER.log(Level.SEVERE, "Uncaught in " + th.getName(), ex), false);
+    }
+
+    /**
+     * Make sure the resources of r and of its possible substitute tracks rhythms are loaded.
+     *
+     * @param r
+     * @param sgContext
+     * @throws MusicGenerationException
+     */
+    private void loadRhythmResources(Rhythm r, SongContext sgContext) throws MusicGenerationException
+    {
+        r.loadResources();          // throws MusicGenerationException      
+        var substituteRhythms = getOverrideTracksRhythms(r, sgContext);
+        if (!substituteRhythms.isEmpty())
+        {
+            for (var sr : substituteRhythms)
+            {
+                sr.loadResources();     // throws MusicGenerationException
+
+                // Not ideal but it must be done somewhere
+                releaseSubstitutetrackRhythmResourcesUponSongClose(sr);
+            }
+        }
+    }
+
     /**
      * Generate music for r using the specified MusicGenerator.
+     * <p>
+     * Rhythm resources must be loaded.
      *
      * @param r
      * @param mg
      * @param sgContext
      * @return
      * @throws org.jjazz.rhythm.api.MusicGenerationException
+     * @see #loadRhythmResources(org.jjazz.rhythm.api.Rhythm, org.jjazz.song.api.SongContext)
      */
     private Map<RhythmVoice, Phrase> generateRhythmPhrases(Rhythm r, MusicGenerator mg, SongContext sgContext) throws MusicGenerationException
     {
@@ -739,35 +1162,150 @@ public class SongSequenceBuilder
         Objects.requireNonNull(sgContext);
 
 
-        // Make sure all Rhythm resources are loaded
-        r.loadResources();          // throws MusicGenerationException      
-        var substituteRhythms = getOverrideTracksRhythms(r, sgContext);
-        if (!substituteRhythms.isEmpty())
+        // Generate the phrases
+        LOGGER.log(DEFAULT_LEVEL, "generateRhythmPhrases() calling generateMusic() for rhythm r={0}", r);
+        Map<RhythmVoice, Phrase> res = mg.generateMusic(sgContext, cancelToken);
+
+
+        // Robustness checks
+        var rvs = res.keySet();
+        assert r.getRhythmVoices().size() == rvs.size() && !rvs.contains(null) : "r=" + r + " rvs=" + rvs;
+        var phrases = res.values();
+        assert !phrases.contains(null) : "r=" + r + " phrases=" + phrases;
+
+
+        return res;
+
+    }
+
+    /**
+     * Same as generateRhythmPhrases() but reuse the generationCache phrases of the unchanged SongParts.
+     * <p>
+     * Contiguous SongParts missing from the cache are generated together using a sub-context which also includes the previous and next SongParts, so
+     * that transitions (e.g. bass approach notes, fills, anticipated chords) are the same than with a complete generation. Only the notes of the
+     * missing SongParts are kept. If partialBarRange is set, SongParts outside of partialBarRange are ignored.
+     *
+     * @param r
+     * @param mg
+     * @param sgContext
+     * @return
+     * @throws org.jjazz.rhythm.api.MusicGenerationException
+     */
+    private Map<RhythmVoice, Phrase> generateRhythmPhrasesCached(Rhythm r, MusicGenerator mg, SongContext sgContext) throws MusicGenerationException
+    {
+        var rSpts = sgContext.getSongParts().stream()
+                .filter(spt -> spt.getRhythm() == r)
+                .toList();
+
+
+        if (partialBarRange != null)
         {
-            for (var sr : substituteRhythms)
+            rSpts = rSpts.stream()
+                    .filter(spt -> partialBarRange.contains(sgContext.getSptBarRange(spt)))
+                    .toList();
+        }
+
+
+        // Get cached data
+        Map<SongPart, String> mapSptKey = new HashMap<>();
+        Map<SongPart, Map<RhythmVoice, Phrase>> mapSptRvPhrases = new HashMap<>();
+        List<IntRange> dirtyBarRanges = new ArrayList<>();
+        for (var spt : rSpts)
+        {
+            String key = MusicGenerationCache.getSongPartKey(sgContext, spt, contextChordSequence, mg);
+            mapSptKey.put(spt, key);
+            var rvPhrases = generationCache.get(key, r);
+            if (rvPhrases != null)
             {
-                sr.loadResources();     // throws MusicGenerationException
+                mapSptRvPhrases.put(spt, rvPhrases);
+            } else
+            {
+                dirtyBarRanges.add(sgContext.getSptBarRange(spt));
+            }
+        }
 
-                // Not ideal but it must be done somewhere
-                releaseSubstitutetrackRhythmResourcesUponSongClose(sr);
+
+        // Generate the missing SongParts
+        for (var br : IntRange.merge(dirtyBarRanges))
+        {
+            var subContext = SongContextFactory.getDefault().of(sgContext, getBarRangeWithNeighbours(sgContext, br));
+            var rMap = generateRhythmPhrases(r, mg, subContext);        // throws MusicGenerationException
+
+            for (var spt : rSpts)
+            {
+                if (!br.contains(sgContext.getSptBarRange(spt)))
+                {
+                    continue;
+                }
+                // Extract the SongPart notes, relative to the SongPart start
+                FloatRange sptBeatRange = sgContext.getSptBeatRange(spt);
+                Map<RhythmVoice, Phrase> sptRvPhrases = new HashMap<>();
+                for (var rv : rMap.keySet())
+                {
+                    Phrase p = rMap.get(rv);
+                    Phrase sptPhrase = new Phrase(p.getChannel(), p.isDrums());
+                    for (var ne : p.getNotes(ne -> true, sptBeatRange, true))
+                    {
+                        sptPhrase.add(ne.setPosition(ne.getPositionInBeats() - sptBeatRange.from, true));
+                    }
+                    sptRvPhrases.put(rv, sptPhrase);
+                }
+                if (speculative)
+                {
+                    generationCache.putSpeculative(mapSptKey.get(spt), sptRvPhrases);
+                } else
+                {
+                    generationCache.put(mapSptKey.get(spt), sptRvPhrases);
+                }
+                mapSptRvPhrases.put(spt, sptRvPhrases);
             }
         }
 
 
-        // Generate the phrases
-        LOGGER.log(DEFAULT_LEVEL, "generateRhythmPhrases() calling generateMusic() for rhythm r={0}", r);
-        Map<RhythmVoice, Phrase> res = mg.generateMusic(sgContext);
-
-
-        // Robustness checks
-        var rvs = res.keySet();
-        assert r.getRhythmVoices().size() == rvs.size() && !rvs.contains(null) : "r=" + r + " rvs=" + rvs;
-        var phrases = res.values();
-        assert !phrases.contains(null) : "r=" + r + " phrases=" + phrases;
+        // Assemble the SongParts phrases
+        Map<RhythmVoice, Phrase> res = new HashMap<>();
+        if (rSpts.isEmpty())
+        {
+            // Possible in partial mode, return empty phrases
+            for (var rv : r.getRhythmVoices())
+            {
+                RhythmVoice rvSrc = rv instanceof RhythmVoiceDelegate rvd ? rvd.getSource() : rv;
+                res.put(rv, new Phrase(sgContext.getMidiMix().getChannel(rvSrc), rv.isDrums()));
+            }
+        }
+        for (var spt : rSpts)
+        {
+            float sptStartPos = sgContext.getSptBeatRange(spt).from;
+            var sptRvPhrases = mapSptRvPhrases.get(spt);
+            for (var rv : sptRvPhrases.keySet())
+            {
+                Phrase p = sptRvPhrases.get(rv);
+                p.shiftAllEvents(sptStartPos, false);
+                res.computeIfAbsent(rv, k -> new Phrase(p.getChannel(), p.isDrums())).add(p, true);
+            }
+        }
 
+        LOGGER.log(DEFAULT_LEVEL, "generateRhythmPhrasesCached() r={0} nbSpts={1} dirtyBarRanges={2}", new Object[]
+        {
+            r, rSpts.size(), dirtyBarRanges
+        });
 
         return res;
+    }
 
+    /**
+     * The bar range of the SongParts which intersect barRange.
+     *
+     * @param barRange
+     * @return
+     */
+    private IntRange getPartialBarRange(IntRange barRange)
+    {
+        var spts = songContextWork.getSongParts().stream()
+                .filter(spt -> songContextWork.getSptBarRange(spt).isIntersecting(barRange))
+                .toList();
+        Preconditions.checkArgument(!spts.isEmpty(), "barRange=%s songContextWork=%s", barRange, songContextWork);
+        return new IntRange(songContextWork.getSptBarRange(spts.getFirst()).from, songContextWork.getSptBarRange(spts.getLast()).to);
     }
 
     /**
@@ -932,8 +1470,9 @@ public class SongSequenceBuilder
      *
      * @param context
      * @param rvPhrases Keys can include RhythmVoiceDelegates
+     * @param pipelines
      */
-    private void processMutedInstruments(SongContext context, Map<RhythmVoice, Phrase> rvPhrases)
+    private void addMutedInstrumentsStages(SongContext context, Map<RhythmVoice, Phrase> rvPhrases, Map<RhythmVoice, NotePipeline> pipelines)
     {
         for (SongPart spt : context.getSongParts())
         {
@@ -958,16 +1497,15 @@ public class SongSequenceBuilder
             List<RhythmVoice> mutedRvs = RP_SYS_Mute.getMutedRhythmVoices(r, context.getMidiMix(), muteValues);
             for (RhythmVoice rv : mutedRvs)
             {
-                var p = rvPhrases.get(rv);
-                if (p == null)
+                if (rvPhrases.get(rv) == null)
                 {
-                    LOGGER.log(Level.WARNING, "processMutedInstruments() Unexpected null phase. rv={0} rvPhrases={1}", new Object[]
+                    LOGGER.log(Level.WARNING, "addMutedInstrumentsStages() Unexpected null phase. rv={0} rvPhrases={1}", new Object[]
                     {
                         rv, rvPhrases
                     });
                     continue;
                 }
-                Phrases.silence(p, sptRange, true, false, 0.1f);
+                getPipeline(pipelines, rv).add(NotePipeline.silence(sptRange, 0.1f));
             }
         }
     }
@@ -977,9 +1515,10 @@ public class SongSequenceBuilder
      *
      * @param context
      * @param rvPhrases Keys can include RhythmVoiceDelegates
+     * @param pipelines
      * @throws org.jjazz.rhythm.api.UserErrorGenerationException
      */
-    private void processNoChords(SongContext context, Map<RhythmVoice, Phrase> rvPhrases) throws UserErrorGenerationException
+    private void addNoChordsStages(SongContext context, Map<RhythmVoice, Phrase> rvPhrases, Map<RhythmVoice, NotePipeline> pipelines) throws UserErrorGenerationException
     {
         var songChordSequence = new SongChordSequence(context.getSong(), context.getBarRange());        // throws UserErrorGenerationException
         SongStructure ss = context.getSong().getSongStructure();
@@ -994,9 +1533,9 @@ public class SongSequenceBuilder
                 float chordDuration = songChordSequence.getChordDuration(cliCs, ts);
                 FloatRange beatRange = new FloatRange(posInBeats, posInBeats + chordDuration - 0.1f);
 
-                for (Phrase p : rvPhrases.values())
+                for (RhythmVoice rv : rvPhrases.keySet())
                 {
-                    Phrases.silence(p, beatRange, true, false, 0.01f);
+                    getPipeline(pipelines, rv).add(NotePipeline.silence(beatRange, 0.01f));
                 }
             }
         }
@@ -1103,6 +1642,164 @@ public class SongSequenceBuilder
         }
     }
 
+    /**
+     * Apply transposition/velocity offset to match the InstrumentSettings of each RhythmVoice.
+     * <p>
+     * A RhythmVoiceDelegate uses the InstrumentSettings of its source RhythmVoice.
+     *
+     * @param context
+     * @param rvPhrases Keys can include RhythmVoiceDelegates
+     * @param pipelines
+     */
+    private void addInstrumentsSettingsStages(SongContext context, Map<RhythmVoice, Phrase> rvPhrases, Map<RhythmVoice, NotePipeline> pipelines)
+    {
+        LOGGER.fine("addInstrumentsSettingsStages() -- ");
+        MidiMix midiMix = context.getMidiMix();
+        for (RhythmVoice rv : rvPhrases.keySet())
+        {
+            RhythmVoice rvMix = rv instanceof RhythmVoiceDelegate rvd ? rvd.getSource() : rv;
+            InstrumentMix insMix = midiMix.getInstrumentMix(rvMix);
+            if (insMix == null)
+            {
+                LOGGER.log(Level.WARNING, "addInstrumentsSettingsStages() Unexpected null InstrumentMix for rv={0} midMix={1}", new Object[]
+                {
+                    rvMix,
+                    midiMix
+                });
+                continue;
+            }
+            InstrumentSettings insSet = insMix.getSettings();
+            int transposition = insSet.getTransposition();
+            if (transposition != 0)
+            {
+                getPipeline(pipelines, rv).add(NotePipeline.transpose(transposition));
+                LOGGER.log(DEFAULT_LEVEL, "addInstrumentsSettingsStages()    Adjusting transposition={0} for rv={1}", new Object[]
+                {
+                    transposition,
+                    rv
+                });
+            }
+            int velocityShift = insSet.getVelocityShift();
+            if (velocityShift != 0)
+            {
+                getPipeline(pipelines, rv).add(NotePipeline.shiftVelocity(velocityShift));
+                LOGGER.log(DEFAULT_LEVEL, "addInstrumentsSettingsStages()    Adjusting velocity={0} for rv={1}", new Object[]
+                {
+                    velocityShift,
+                    rv
+                });
+            }
+        }
+    }
+
+    /**
+     * Continuously decrease velocity for song parts with RP_STD_Fill value "fade_out".
+     *
+     * @param context
+     * @param rvPhrases
+     * @param pipelines
+     */
+    private void addFadeOutStages(SongContext context, Map<RhythmVoice, Phrase> rvPhrases, Map<RhythmVoice, NotePipeline> pipelines)
+    {
+        LOGGER.fine("addFadeOutStages() -- ");
+        for (SongPart spt : context.getSongParts())
+        {
+            // Check Fill RhythmParameter + fade_out value
+            Rhythm r = spt.getRhythm();
+            RP_SYS_Fill rpFill = RP_SYS_Fill.getFillRp(r);
+            if (rpFill == null || !spt.getRPValue(rpFill).equals(RP_SYS_Fill.VALUE_FADE_OUT))
+            {
+                continue;
+            }
+
+            LOGGER.log(DEFAULT_LEVEL, "addFadeOutStages() processing spt={0}", spt);
+            FloatRange beatRange = context.getSptBeatRange(spt);        // Might be smaller than songPart.toBeatRange()
+
+            for (RhythmVoice rv : rvPhrases.keySet())
+            {
+                // From 100% to 0%
+                getPipeline(pipelines, rv).add(NotePipeline.fadeOut(beatRange));
+            }
+
+        }
+    }
+
+    /**
+     * For each SongPart remove notes for muted RhythmVoices depending on the RP_SYS_Mute value.<br>
+     *
+     * @param context
+     * @param rvPhrases Keys can include RhythmVoiceDelegates
+     */
+    private void processMutedInstruments(SongContext context, Map<RhythmVoice, Phrase> rvPhrases)
+    {
+        for (SongPart spt : context.getSongParts())
+        {
+            Rhythm r = spt.getRhythm();
+            RP_SYS_Mute rpMute = RP_SYS_Mute.getMuteRp(r);
+            if (rpMute == null)
+            {
+                continue;
+            }
+
+
+            Set<String> muteValues = spt.getRPValue(rpMute);
+            if (muteValues.isEmpty())
+            {
+                // There is a MuteRp but nothing is muted 
+                continue;
+            }
+
+
+            // At least one RhythmVoice/Track is muted
+            FloatRange sptRange = context.getSptBeatRange(spt);
+            List<RhythmVoice> mutedRvs = RP_SYS_Mute.getMutedRhythmVoices(r, context.getMidiMix(), muteValues);
+            for (RhythmVoice rv : mutedRvs)
+            {
+                var p = rvPhrases.get(rv);
+                if (p == null)
+                {
+                    LOGGER.log(Level.WARNING, "processMutedInstruments() Unexpected null phase. rv={0} rvPhrases={1}", new Object[]
+                    {
+                        rv, rvPhrases
+                    });
+                    continue;
+                }
+                Phrases.silence(p, sptRange, true, false, 0.1f);
+            }
+        }
+    }
+
+    /**
+     * Remove notes for NC chord symbols, ie NCExtChordSymbol instances.
+     *
+     * @param context
+     * @param rvPhrases Keys can include RhythmVoiceDelegates
+     * @throws org.jjazz.rhythm.api.UserErrorGenerationException
+     */
+    private void processNoChords(SongContext context, Map<RhythmVoice, Phrase> rvPhrases) throws UserErrorGenerationException
+    {
+        var songChordSequence = new SongChordSequence(context.getSong(), context.getBarRange());        // throws UserErrorGenerationException
+        SongStructure ss = context.getSong().getSongStructure();
+
+        for (var cliCs : songChordSequence)
+        {
+            var pos = cliCs.getPosition();
+            if (cliCs.getData() instanceof NCExtChordSymbol ncecs)
+            {
+                float posInBeats = ss.toPositionInNaturalBeats(pos.getBar()) + pos.getBeat();
+                TimeSignature ts = ss.getSongPart(pos.getBar()).getRhythm().getTimeSignature();
+                float chordDuration = songChordSequence.getChordDuration(cliCs, ts);
+                FloatRange beatRange = new FloatRange(posInBeats, posInBeats + chordDuration - 0.1f);
+
+                for (Phrase p : rvPhrases.values())
+                {
+                    Phrases.silence(p, beatRange, true, false, 0.01f);
+                }
+            }
+        }
+
+    }
+
     /**
      * Apply transposition/velocity offset to match the InstrumentSettings of each RhythmVoice.
      *
@@ -1186,6 +1883,39 @@ public class SongSequenceBuilder
         }
     }
 
+
+    /**
+     * Apply the note pipelines, one pass per phrase, phrases being processed in parallel.
+     *
+     * @param rvPhrases
+     * @param pipelines
+     */
+    private void processNotePipelines(Map<RhythmVoice, Phrase> rvPhrases, Map<RhythmVoice, NotePipeline> pipelines)
+    {
+        long t = System.currentTimeMillis();
+
+        var rvs = pipelines.keySet().stream()
+                .filter(rv -> rvPhrases.get(rv) != null)
+                .toList();
+        if (rvs.size() > 1)
+        {
+            getGenerationPool().submit(() -> rvs.parallelStream().forEach(rv -> pipelines.get(rv).process(rvPhrases.get(rv)))).join();
+        } else
+        {
+            rvs.forEach(rv -> pipelines.get(rv).process(rvPhrases.get(rv)));
+        }
+
+        LOGGER.log(DEFAULT_LEVEL, "processNotePipelines() nbPhrases={0} duration={1}ms", new Object[]
+        {
+            rvs.size(), System.currentTimeMillis() - t
+        });
+    }
+
+    static private NotePipeline getPipeline(Map<RhythmVoice, NotePipeline> pipelines, RhythmVoice rv)
+    {
+        return pipelines.computeIfAbsent(rv, k -> new NotePipeline());
+    }
+
     /**
      * Move rerouted channels phrase content into the GM Drums chanel phrase content.
      *
@@ -1293,14 +2023,15 @@ public class SongSequenceBuilder
     }
 
     /**
-     * Add tempo factor change JJazz Midi controller messages in the specified track.
+     * Get the tempo factor change JJazz Midi controller messages.
      * <p>
      *
      * @param context
-     * @param track
+     * @return MidiEvents sorted by tick
      */
-    private void addTempoFactorChanges(SongContext context, Track track)
+    private List<MidiEvent> getTempoFactorChanges(SongContext context)
     {
+        List<MidiEvent> res = new ArrayList<>();
         List<SongPart> spts = context.getSongParts();
         float beatOffset = context.getBeatRange().from;
         float firstTempoPercentChange = -1;
@@ -1316,7 +2047,7 @@ public class SongSequenceBuilder
             float beatPos = context.getSptBeatRange(spt).from - beatOffset;
             long tickPos = Math.round(beatPos * MidiConst.PPQ_RESOLUTION);
             MidiEvent me = new MidiEvent(getTempoFactorMetaMessage(tempoPercentChange), tickPos);
-            track.add(me);
+            res.add(me);
             if (firstTempoPercentChange == -1)
             {
                 firstTempoPercentChange = tempoPercentChange;
@@ -1332,19 +2063,22 @@ public class SongSequenceBuilder
             float beatPos = context.getSptBeatRange(spts.get(spts.size() - 1)).to - beatOffset;
             long tickPos = Math.round(beatPos * MidiConst.PPQ_RESOLUTION) - 2;  // Make sure it's before the End of Track
             MidiEvent me = new MidiEvent(getTempoFactorMetaMessage(firstTempoPercentChange), tickPos);
-            track.add(me);
+            res.add(me);
         }
+
+        return res;
     }
 
     /**
-     * Add time signature controller messages in the specified track.
+     * Get the time signature Midi meta messages.
      * <p>
      *
      * @param context
-     * @param track
+     * @return MidiEvents sorted by tick
      */
-    private void addTimeSignatureChanges(SongContext context, Track track)
+    private List<MidiEvent> getTimeSignatureChanges(SongContext context)
     {
+        List<MidiEvent> res = new ArrayList<>();
         List<SongPart> spts = context.getSongParts();
         float beatOffset = context.getBeatRange().from;
         TimeSignature prevTs = null;
@@ -1356,10 +2090,59 @@ public class SongSequenceBuilder
                 float beatPos = songContextWork.getSptBeatRange(spt).from - beatOffset;
                 long tickPos = Math.round(beatPos * MidiConst.PPQ_RESOLUTION);
                 MidiEvent me = new MidiEvent(MidiUtilities.getTimeSignatureMessage(ts), tickPos);
-                track.add(me);
+                res.add(me);
                 prevTs = ts;
             }
         }
+
+        return res;
+    }
+
+    /**
+     * Get the MidiEvents of a track, except the EndOfTrack MetaEvent.
+     *
+     * @param track
+     * @return
+     */
+    static private List<MidiEvent> getEventsWithoutEndOfTrack(Track track)
+    {
+        List<MidiEvent> res = new ArrayList<>(track.size());
+        for (int i = 0; i < track.size(); i++)
+        {
+            MidiEvent me = track.get(i);
+            if (me.getMessage() instanceof MetaMessage mm && mm.getType() == MidiConst.META_END_OF_TRACK)
+            {
+                continue;
+            }
+            res.add(me);
+        }
+        return res;
+    }
+
+    /**
+     * Replace the content of all the tracks of a sequence, preserving the tracks order and the EndOfTrack positions.
+     * <p>
+     * Track.add() is slow when inserting an event before the last events of a large track, so the tracks are recreated and filled with events sorted by
+     * tick.
+     *
+     * @param sequence
+     * @param tracksEvents For each track, the new events sorted by tick
+     */
+    static private void rebuildTracks(Sequence sequence, List<List<MidiEvent>> tracksEvents)
+    {
+        Track[] tracks = sequence.getTracks();
+        Preconditions.checkArgument(tracks.length == tracksEvents.size(), "tracks.length=%s tracksEvents.size()=%s", tracks.length, tracksEvents.size());
+
+        for (Track track : tracks)
+        {
+            sequence.deleteTrack(track);
+        }
+        for (int i = 0; i < tracks.length; i++)
+        {
+            Track track = sequence.createTrack();
+            MidiUtilities.addSortedEvents(track, tracksEvents.get(i));
+            MidiUtilities.setEndOfTrackPosition(track, Math.max(track.ticks(), tracks[i].ticks()));
+        }
     }
 
 
@@ -1412,6 +2195,72 @@ public class SongSequenceBuilder
     }
 
 
+    /**
+     * The music generation of one rhythm.
+     * <p>
+     * Produced data must be retrieved from the fields. If exception field is not null it means an exception occured.
+     */
+    private class GenerationUnit
+    {
+
+        private final Rhythm rhythm;
+        private final MusicGenerator musicGenerator;
+        /**
+         * All the MusicGenerator instances used by musicGenerator, identity-based.
+         */
+        private final Set<MusicGenerator> musicGenerators;
+        private Map<RhythmVoice, Phrase> rvPhrases;
+        private MusicGenerationException exception;
+
+        private GenerationUnit(Rhythm r, MusicGenerator mg)
+        {
+            rhythm = r;
+            musicGenerator = mg;
+            musicGenerators = Sets.newIdentityHashSet();
+            musicGenerators.add(mg);
+            if (mg instanceof CompositeMusicGenerator cmg)
+            {
+                musicGenerators.addAll(cmg.getDelegateMusicGenerators(songContextWork));
+            }
+        }
+
+        private boolean isThreadSafe()
+        {
+            return musicGenerators.stream().allMatch(mg -> mg.isThreadSafe());
+        }
+
+        private void generate()
+        {
+            try
+            {
+                cancelToken.checkCancelled();
+
+                String diskKey = null;
+                if (diskCache != null && partialBarRange == null)
+                {
+                    diskKey = PhraseDiskCache.computeKey(songContextWork, rhythm, musicGenerator, contextChordSequence, generationSeed);
+                    rvPhrases = diskCache.get(diskKey, rhythm);
+                    if (rvPhrases != null)
+                    {
+                        return;
+                    }
+                }
+
+                rvPhrases = generationCache == null ? generateRhythmPhrases(rhythm, musicGenerator, songContextWork)
+                        : generateRhythmPhrasesCached(rhythm, musicGenerator, songContextWork);
+                checkPhrasesScope(songContextWork, rhythm, rvPhrases);
+
+                if (diskKey != null)
+                {
+                    diskCache.put(diskKey, rhythm, rvPhrases);
+                }
+            } catch (MusicGenerationException ex)
+            {
+                exception = ex;
+            }
+        }
+    }
+
     static private class MmTempoFactor extends MetaMessage
     {
 
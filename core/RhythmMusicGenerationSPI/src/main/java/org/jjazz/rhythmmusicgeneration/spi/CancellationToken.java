@@ -0,0 +1,79 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLab software.
+ *   
+ *  JJazzLab is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLab is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.rhythmmusicgeneration.spi;
+
+import org.jjazz.rhythm.api.MusicGenerationCancelledException;
+
+/**
+ * A token used by a caller to cooperatively cancel an ongoing music generation.
+ * <p>
+ * MusicGenerator implementations should call {@link #checkCancelled()} at regular points of the generation process, typically at chord sequence or
+ * song part boundaries, so that a stale generation is aborted quickly. Once cancelled a token can not be reset.
+ * <p>
+ * This class is thread-safe.
+ */
+public class CancellationToken
+{
+
+    /**
+     * A shared token which is never cancelled.
+     */
+    public static final CancellationToken NONE = new CancellationToken()
+    {
+        @Override
+        public void cancel()
+        {
+            throw new UnsupportedOperationException("CancellationToken.NONE can not be cancelled");
+        }
+    };
+
+    private volatile boolean cancelled;
+
+    /**
+     * Request the cancellation of the music generation(s) using this token.
+     * <p>
+     * Does nothing if token is already cancelled.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Throw an exception if this token was cancelled.
+     *
+     * @throws MusicGenerationCancelledException
+     */
+    public void checkCancelled() throws MusicGenerationCancelledException
+    {
+        if (cancelled)
+        {
+            throw new MusicGenerationCancelledException("Music generation was cancelled");
+        }
+    }
+}
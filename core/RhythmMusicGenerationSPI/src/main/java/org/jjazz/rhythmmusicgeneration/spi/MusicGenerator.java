@@ -65,4 +65,69 @@ public interface MusicGenerator
      */
 
     Map<RhythmVoice, Phrase> generateMusic(SongContext songContext, RhythmVoice... rhythmVoices) throws MusicGenerationException;
+
+    /**
+     * Same as {@link #generateMusic(org.jjazz.song.api.SongContext, org.jjazz.rhythm.api.RhythmVoice...)} but the generation can be cancelled by the
+     * caller.
+     * <p>
+     * Implementations should override this method and regularly call <code>cancelToken.checkCancelled()</code>, typically at chord sequence or song part
+     * boundaries, so that a stale generation is aborted as soon as possible. The default implementation only checks <code>cancelToken</code> before and
+     * after calling generateMusic(songContext, rhythmVoices).
+     *
+     * @param songContext
+     * @param cancelToken  Can't be null. Use {@link CancellationToken#NONE} if cancellation is not needed.
+     * @param rhythmVoices
+     * @return
+     * @throws MusicGenerationException                               If generator could not produce the expected music for some reason.
+     * @throws org.jjazz.rhythm.api.MusicGenerationCancelledException If cancelToken was cancelled during the generation
+     */
+    default Map<RhythmVoice, Phrase> generateMusic(SongContext songContext, CancellationToken cancelToken, RhythmVoice... rhythmVoices) throws MusicGenerationException
+    {
+        cancelToken.checkCancelled();
+        var res = generateMusic(songContext, rhythmVoices);
+        cancelToken.checkCancelled();
+        return res;
+    }
+
+    /**
+     * Check if generateMusic() can run in parallel with the generateMusic() method of other MusicGenerator instances.
+     * <p>
+     * When a song uses several rhythms, the framework may run the MusicGenerators of these rhythms in parallel. The same MusicGenerator instance is never
+     * called concurrently. Return true only if the implementation has been checked not to rely on unsynchronized mutable state shared between
+     * instances (static fields, lazily created singletons, etc.). If false generateMusic() is called only once the other MusicGenerators have completed.
+     *
+     * @return Default implementation returns false.
+     */
+    default boolean isThreadSafe()
+    {
+        return false;
+    }
+
+    /**
+     * Get a fingerprint of the user settings which impact the music generated by this instance, e.g. generator-specific preferences.
+     * <p>
+     * The framework uses the fingerprint in the keys of the caches of generated music: when the fingerprint changes, cached music is not reused.
+     *
+     * @param songContext The context of the music generation
+     * @return Default implementation returns an empty string. Can't be null.
+     */
+    default String getSettingsFingerprint(SongContext songContext)
+    {
+        return "";
+    }
+
+    /**
+     * Check if the music generated for a SongPart can be reused for another SongPart with identical generation inputs (chord symbols, rhythm
+     * parameters, etc.).
+     * <p>
+     * If false, the framework caches music per SongPart occurrence, so that each repeat of an identical SongPart keeps its own (possibly randomized)
+     * music. Return true if the generated music only depends on the generation inputs and it's fine to play the same music for identical SongParts.
+     *
+     * @param songContext The context of the music generation
+     * @return Default implementation returns false.
+     */
+    default boolean isSongPartMusicReusable(SongContext songContext)
+    {
+        return false;
+    }
 }
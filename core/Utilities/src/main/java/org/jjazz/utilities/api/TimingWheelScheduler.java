@@ -0,0 +1,375 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLab software.
+ *   
+ *  JJazzLab is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLab is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.utilities.api;
+
+import com.google.common.base.Preconditions;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A hashed timing-wheel scheduler with 1 millisecond slots, for frequent short-delay tasks which must be delivered on time.
+ * <p>
+ * Unlike a ScheduledExecutorService, scheduling a task does not allocate a ScheduledFuture: tasks are stored in pooled entries. A dedicated thread advances
+ * the wheel every millisecond and is parked when there is no pending task. Expired tasks are handed over to the delivery Executor, e.g.
+ * SwingUtilities::invokeLater.
+ * <p>
+ * Delivery statistics measure the difference between the time a task is run by the delivery Executor and its due time.
+ * <p>
+ * Thread-safe: all public methods can be called from any thread.
+ */
+public final class TimingWheelScheduler
+{
+
+    /**
+     * Delivery statistics.
+     *
+     * @param count           Number of delivered tasks
+     * @param meanErrorMicros Mean of (delivery time - due time)
+     * @param maxErrorMicros  Max of (delivery time - due time)
+     */
+    public record DeliveryStats(long count, long meanErrorMicros, long maxErrorMicros)
+        {
+
+    }
+
+    private static final int NB_SLOTS = 512;
+    private static final int SLOT_MASK = NB_SLOTS - 1;
+    private static final long SLOT_NANOS = 1000000;
+    private final String name;
+    private final Executor deliveryExecutor;
+    private final Entry[] slots = new Entry[NB_SLOTS];
+    private final Object lock = new Object();
+    /**
+     * Pooled entries.
+     */
+    private Entry freeEntries;
+    private int nbPending;
+    /**
+     * The tick currently processed by the wheel thread.
+     */
+    private long currentTick;
+    private long startNanos;
+    private Thread thread;
+    private boolean shutdown;
+    private final AtomicLong statsCount = new AtomicLong();
+    private final AtomicLong statsSumMicros = new AtomicLong();
+    private final AtomicLong statsMaxMicros = new AtomicLong(Long.MIN_VALUE);
+    private static final Logger LOGGER = Logger.getLogger(TimingWheelScheduler.class.getSimpleName());
+
+    /**
+     * Create a scheduler.
+     *
+     * @param name             Used to name the wheel thread
+     * @param deliveryExecutor Used to run expired tasks. If null tasks are run on the wheel thread, so they should be very short.
+     */
+    public TimingWheelScheduler(String name, Executor deliveryExecutor)
+    {
+        Objects.requireNonNull(name);
+        this.name = name;
+        this.deliveryExecutor = deliveryExecutor;
+    }
+
+    /**
+     * Run task after delayMs.
+     * <p>
+     * Any exception thrown by task is logged.
+     *
+     * @param task
+     * @param delayMs If 0 task is delivered on the next wheel tick
+     * @throws IllegalStateException If scheduler was shutdown
+     */
+    public void schedule(Runnable task, long delayMs)
+    {
+        Objects.requireNonNull(task);
+        Preconditions.checkArgument(delayMs >= 0, "delayMs=%s", delayMs);
+
+        long dueNanos = System.nanoTime() + delayMs * SLOT_NANOS;
+        boolean wakeUp;
+
+        synchronized (lock)
+        {
+            if (shutdown)
+            {
+                throw new IllegalStateException("Scheduler " + name + " is shutdown");
+            }
+            if (thread == null)
+            {
+                startThread();
+            }
+
+            wakeUp = nbPending == 0;
+            if (wakeUp)
+            {
+                // Wheel thread might be parked for a long time, resynchronize the current tick
+                currentTick = Math.max(currentTick, (dueNanos - delayMs * SLOT_NANOS - startNanos) / SLOT_NANOS);
+            }
+
+
+            // Tick k is processed at startNanos + (k+1) * SLOT_NANOS
+            long tick = Math.max(currentTick, ceilDiv(dueNanos - startNanos, SLOT_NANOS) - 1);
+            Entry e = freeEntries;
+            if (e != null)
+            {
+                freeEntries = e.next;
+            } else
+            {
+                e = new Entry();
+            }
+            e.task = task;
+            e.dueNanos = dueNanos;
+            e.rounds = (tick - currentTick) / NB_SLOTS;
+            int slot = (int) (tick & SLOT_MASK);
+            e.next = slots[slot];
+            slots[slot] = e;
+            nbPending++;
+        }
+
+
+        if (wakeUp)
+        {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Stop the wheel thread. Pending tasks are discarded.
+     */
+    public void shutdown()
+    {
+        Thread t;
+        synchronized (lock)
+        {
+            shutdown = true;
+            t = thread;
+        }
+        if (t != null)
+        {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * @return The number of tasks not yet handed over to the delivery Executor.
+     */
+    public int getNbPendingTasks()
+    {
+        synchronized (lock)
+        {
+            return nbPending;
+        }
+    }
+
+    public DeliveryStats getDeliveryStats()
+    {
+        long count = statsCount.get();
+        return new DeliveryStats(count,
+                count == 0 ? 0 : statsSumMicros.get() / count,
+                count == 0 ? 0 : statsMaxMicros.get());
+    }
+
+    public void resetDeliveryStats()
+    {
+        statsCount.set(0);
+        statsSumMicros.set(0);
+        statsMaxMicros.set(Long.MIN_VALUE);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TimingWheelScheduler[" + name + "]";
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    /**
+     * Must be called with lock held.
+     */
+    private void startThread()
+    {
+        startNanos = System.nanoTime();
+        currentTick = 0;
+        thread = SharedExecutorServices.getThreadFactory(name, true).newThread(() -> runWheel());
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    private void runWheel()
+    {
+        while (true)
+        {
+            long tick;
+            synchronized (lock)
+            {
+                if (shutdown)
+                {
+                    return;
+                }
+                if (nbPending == 0)
+                {
+                    tick = -1;
+                } else
+                {
+                    tick = currentTick;
+                }
+            }
+
+            if (tick == -1)
+            {
+                // Nothing to do, schedule() will wake us up
+                LockSupport.park(this);
+                continue;
+            }
+
+
+            // Wait for the end of the tick
+            long tickEndNanos = startNanos + (tick + 1) * SLOT_NANOS;
+            long waitNanos;
+            while ((waitNanos = tickEndNanos - System.nanoTime()) > 0 && !isShutdown())
+            {
+                LockSupport.parkNanos(this, waitNanos);
+            }
+
+
+            // Collect expired entries
+            Entry expired = null;
+            synchronized (lock)
+            {
+                int slot = (int) (tick & SLOT_MASK);
+                Entry prev = null;
+                Entry e = slots[slot];
+                while (e != null)
+                {
+                    Entry next = e.next;
+                    if (e.rounds <= 0)
+                    {
+                        if (prev == null)
+                        {
+                            slots[slot] = next;
+                        } else
+                        {
+                            prev.next = next;
+                        }
+                        e.next = expired;
+                        expired = e;
+                        nbPending--;
+                    } else
+                    {
+                        e.rounds--;
+                        prev = e;
+                    }
+                    e = next;
+                }
+                currentTick = tick + 1;
+            }
+
+
+            // Deliver
+            while (expired != null)
+            {
+                Entry next = expired.next;
+                expired.next = null;
+                if (deliveryExecutor == null)
+                {
+                    expired.run();
+                } else
+                {
+                    try
+                    {
+                        deliveryExecutor.execute(expired);
+                    } catch (Exception ex)
+                    {
+                        LOGGER.log(Level.WARNING, "runWheel() " + name + " delivery executor failed", ex);
+                    }
+                }
+                expired = next;
+            }
+        }
+    }
+
+    private boolean isShutdown()
+    {
+        synchronized (lock)
+        {
+            return shutdown;
+        }
+    }
+
+    private void recordDelivery(long errorNanos)
+    {
+        long micros = errorNanos / 1000;
+        statsCount.incrementAndGet();
+        statsSumMicros.addAndGet(micros);
+        statsMaxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    private void release(Entry e)
+    {
+        synchronized (lock)
+        {
+            e.task = null;
+            e.next = freeEntries;
+            freeEntries = e;
+        }
+    }
+
+    private static long ceilDiv(long x, long y)
+    {
+        return -Math.floorDiv(-x, y);
+    }
+
+    // =================================================================================================
+    // Inner classes
+    // =================================================================================================
+    /**
+     * A pooled wheel entry, also used as the Runnable given to the delivery Executor.
+     */
+    private class Entry implements Runnable
+    {
+
+        private Runnable task;
+        private long dueNanos;
+        private long rounds;
+        private Entry next;
+
+        @Override
+        public void run()
+        {
+            Runnable r = task;
+            recordDelivery(System.nanoTime() - dueNanos);
+            release(this);
+            try
+            {
+                r.run();
+            } catch (Throwable ex)
+            {
+                LOGGER.log(Level.WARNING, "Exception in task of " + name, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * 
+ *   DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *  
+ *   Copyright @2019 Jerome Lelasseux. All rights reserved.
+ * 
+ *   This file is part of the JJazzLab software.
+ *    
+ *   JJazzLab is free software: you can redistribute it and/or modify
+ *   it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *   as published by the Free Software Foundation, either version 3 of the License, 
+ *   or (at your option) any later version.
+ * 
+ *   JJazzLab is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *  
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ *  
+ *   Contributor(s): 
+ * 
+ */
+package org.jjazz.utilities.api;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for TimingWheelScheduler.
+ * <p>
+ * Tests which check wall-clock delays are tagged "timing": they depend on the machine load and are excluded from the default build, use
+ * -Djjazzlab.surefire.excludedGroups=none to run them.
+ */
+public class TimingWheelSchedulerTest
+{
+
+    private static final long TOLERANCE = 100; // timing tolerance in milliseconds
+    private TimingWheelScheduler scheduler;
+
+    static
+    {
+        Utilities.setLoggingFormat(null);
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdown();
+        }
+    }
+
+    @Tag("timing")
+    @Test
+    public void testNoEarlyDelivery() throws InterruptedException
+    {
+        scheduler = new TimingWheelScheduler("test", null);
+        final int nbTasks = 2000;
+        final int maxDelay = 1500;          // more than one wheel round
+        CountDownLatch latch = new CountDownLatch(nbTasks);
+        AtomicInteger nbEarly = new AtomicInteger();
+        Random rnd = new Random(0);
+
+        for (int i = 0; i < nbTasks; i++)
+        {
+            long delay = rnd.nextInt(maxDelay);
+            long dueNanos = System.nanoTime() + delay * 1000000;
+            scheduler.schedule(() -> 
+            {
+                if (System.nanoTime() < dueNanos)
+                {
+                    nbEarly.incrementAndGet();
+                }
+                latch.countDown();
+            }, delay);
+        }
+
+        Assertions.assertTrue(latch.await(maxDelay + TOLERANCE, TimeUnit.MILLISECONDS), "All tasks should have executed");
+        Assertions.assertEquals(0, nbEarly.get(), "No task should execute before its due time");
+        Assertions.assertEquals(0, scheduler.getNbPendingTasks());
+        Assertions.assertEquals(nbTasks, scheduler.getDeliveryStats().count());
+    }
+
+    @Tag("timing")
+    @Test
+    public void testDeliveryExecutorAndIdleRestart() throws InterruptedException
+    {
+        var executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "test-delivery"));
+        scheduler = new TimingWheelScheduler("test", executor);
+        AtomicLong delayMs = new AtomicLong();
+        AtomicReference<String> threadName = new AtomicReference<>();
+
+        try
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                // Let the wheel thread become idle
+                Thread.sleep(50);
+
+                CountDownLatch latch = new CountDownLatch(1);
+                long start = System.nanoTime();
+                scheduler.schedule(() -> 
+                {
+                    threadName.set(Thread.currentThread().getName());
+                    delayMs.set((System.nanoTime() - start) / 1000000);
+                    latch.countDown();
+                }, 20);
+
+                Assertions.assertTrue(latch.await(20 + TOLERANCE, TimeUnit.MILLISECONDS));
+                Assertions.assertEquals("test-delivery", threadName.get());
+                Assertions.assertTrue(delayMs.get() >= 20 && delayMs.get() < 20 + TOLERANCE, "delayMs=" + delayMs.get());
+            }
+        } finally
+        {
+            executor.shutdown();
+        }
+
+        var stats = scheduler.getDeliveryStats();
+        Assertions.assertEquals(3, stats.count());
+        Assertions.assertTrue(stats.maxErrorMicros() >= 0, "stats=" + stats);
+    }
+
+    @Test
+    public void testExceptionInTask() throws InterruptedException
+    {
+        scheduler = new TimingWheelScheduler("test", null);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        scheduler.schedule(() -> 
+        {
+            throw new IllegalStateException("test exception");
+        }, 5);
+        scheduler.schedule(latch::countDown, 10);
+
+        // Not a timing test: the first exception logging can be slow
+        Assertions.assertTrue(latch.await(10 + 10 * TOLERANCE, TimeUnit.MILLISECONDS), "Scheduler should survive a task exception");
+    }
+
+    @Test
+    public void testScheduleAfterShutdown()
+    {
+        scheduler = new TimingWheelScheduler("test", null);
+        scheduler.shutdown();
+        Assertions.assertThrows(IllegalStateException.class, () -> scheduler.schedule(() -> 
+        {
+        }, 10));
+    }
+}
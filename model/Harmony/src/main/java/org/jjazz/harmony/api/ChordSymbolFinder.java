@@ -45,6 +45,7 @@ public class ChordSymbolFinder
     static long[] positions3;
     static long[] positions4;
     static long[] positions5;
+    static private List<List<ChordSymbol>> pitchClassSets;
     static private List<ChordType> allChordTypes;
     private final int maxNbNotes;
     private static final Logger LOGGER = Logger.getLogger(ChordSymbolFinder.class.getSimpleName());  
@@ -80,6 +81,7 @@ public class ChordSymbolFinder
         {
             allChordTypes = ChordTypeDatabase.getDefault().getChordTypes();
             buildPositionsDatabase();
+            buildPitchClassSetsDatabase();
         }
     }
 
@@ -98,9 +100,27 @@ public class ChordSymbolFinder
     {
         checkArgument(chordSymbols != null && notes != null && !notes.isEmpty(),
                 "notes=%s, chordSymbols=%s, lowerNoteIsBass=%s", notes, chordSymbols, lowerNoteIsBass);
+        return getChordSymbol(notes.get(0).getPitch(), chordSymbols, lowerNoteIsBass);
+    }
+
+    /**
+     * Select one chord symbol from the provided chord symbols.
+     * <p>
+     * Same as {@link #getChordSymbol(java.util.List, java.util.List, boolean)} but only the lowest pitch of the original notes is needed.
+     *
+     * @param lowestPitch     The lowest pitch of the original notes which led to the chordSymbols.
+     * @param chordSymbols    The ChordSymbols to choose from. Can't be empty.
+     * @param lowerNoteIsBass For ex. G-C-E pitches will return C/G.
+     * @return
+     * @see ChordSymbolFinder#find(int)
+     */
+    public ChordSymbol getChordSymbol(int lowestPitch, List<ChordSymbol> chordSymbols, boolean lowerNoteIsBass)
+    {
+        checkArgument(chordSymbols != null && lowestPitch >= 0 && lowestPitch <= 127,
+                "lowestPitch=%s, chordSymbols=%s, lowerNoteIsBass=%s", lowestPitch, chordSymbols, lowerNoteIsBass);
 
-        ChordSymbol chordSymbol;
-        Note firstNote = notes.get(0);
+        ChordSymbol chordSymbol = null;
+        int lowestRelPitch = lowestPitch % 12;
 
         if (chordSymbols.isEmpty())
         {
@@ -112,10 +132,14 @@ public class ChordSymbolFinder
         } else
         {
             // Search for a chord symbol with root matching
-            chordSymbol = chordSymbols.stream()
-                    .filter(cs -> cs.getRootNote().equalsRelativePitch(firstNote))
-                    .findAny()
-                    .orElse(null);
+            for (var cs : chordSymbols)
+            {
+                if (cs.getRootNote().getRelativePitch() == lowestRelPitch)
+                {
+                    chordSymbol = cs;
+                    break;
+                }
+            }
 
             // Find most common chord symbol
             if (chordSymbol == null)
@@ -124,9 +148,9 @@ public class ChordSymbolFinder
             }
         }
 
-        if (lowerNoteIsBass && !chordSymbol.getRootNote().equalsRelativePitch(firstNote))
+        if (lowerNoteIsBass && chordSymbol.getRootNote().getRelativePitch() != lowestRelPitch)
         {
-            chordSymbol = new ChordSymbol(chordSymbol.getRootNote(), firstNote, chordSymbol.getChordType());
+            chordSymbol = new ChordSymbol(chordSymbol.getRootNote(), new Note(lowestPitch), chordSymbol.getChordType());
         }
 
         return chordSymbol;
@@ -174,6 +198,46 @@ public class ChordSymbolFinder
     }
 
 
+    /**
+     * Find the chord symbols which match the specified set of pitch classes.
+     * <p>
+     * The lookup is done in a precomputed table and does not allocate: the returned list is shared and unmodifiable. Unlike
+     * {@link #find(java.util.List)} the notes order and octave doublings are ignored, e.g. C3 E3 G3 C4 gives the same result than C3 E3 G3.
+     *
+     * @param pitchClassSet A 12-bit value, bit n is set if relative pitch n is used. See {@link #toPitchClassSet(java.util.List)}.
+     * @return An empty list if the number of pitch classes is not in the [3; getMaxNbNotes()] range or if there is no match. Can return max 4
+     *         chord symbols (e.g. for dim7 notes like C Eb Gb A).
+     */
+    public List<ChordSymbol> find(int pitchClassSet)
+    {
+        checkArgument(pitchClassSet >= 0 && pitchClassSet <= 0xFFF, "pitchClassSet=%s", pitchClassSet);
+
+        int nbNotes = Integer.bitCount(pitchClassSet);
+        if (nbNotes < 3 || nbNotes > getMaxNbNotes())
+        {
+            return List.of();
+        }
+        checkStaticData();
+        return pitchClassSets.get(pitchClassSet);
+    }
+
+    /**
+     * Get the 12-bit pitch class set of the specified notes.
+     *
+     * @param notes
+     * @return Bit n is set if one of the notes has relative pitch n.
+     * @see #find(int)
+     */
+    static public int toPitchClassSet(List<Note> notes)
+    {
+        int res = 0;
+        for (var n : notes)
+        {
+            res |= 1 << n.getRelativePitch();
+        }
+        return res;
+    }
+
     /**
      * Get the index in the positions database for the specified notes list.
      *
@@ -298,6 +362,42 @@ public class ChordSymbolFinder
         LOGGER.log(Level.INFO, "buildPositionsDatabase() complete in {0}ms for {1} positions.", new Object[]{durationInMs, positionCount});
     }
 
+    /**
+     * Build the pitch class sets database: the chord symbols candidates for each of the 4096 possible sets of relative pitches.
+     * <p>
+     * Chord symbols are added in the same order than in buildPositionsDatabase(), so that both databases give the same results.
+     */
+    static private void buildPitchClassSetsDatabase()
+    {
+        long[] values = new long[4096];
+
+        for (int rootPitch = 0; rootPitch < 12; rootPitch++)
+        {
+            Note rootNote = new Note(rootPitch);
+
+            for (ChordType ct : allChordTypes)
+            {
+                var chord = ct.getChord();
+                int nbNotes = chord.size();
+                if (nbNotes < 3 || nbNotes > MAX_NOTES)
+                {
+                    continue;
+                }
+                chord.transpose(rootPitch);
+                int pcs = toPitchClassSet(chord.getNotes());
+                values[pcs] = encodeChordSymbol(new ChordSymbol(rootNote, ct), values[pcs]);
+            }
+        }
+
+        var res = new ArrayList<List<ChordSymbol>>(values.length);
+        for (long value : values)
+        {
+            var list = decodeChordSymbols(value);
+            res.add(list == null ? List.of() : List.copyOf(list));
+        }
+        pitchClassSets = res;
+    }
+
     /**
      * Add a chordSymbol encoded in a long value (up to 4 chord symbols can be encoded).
      * <p>
@@ -343,7 +443,7 @@ public class ChordSymbolFinder
      * @return Null if no chord symbols.
      * @see ChordSymbolFinder#encodeChordSymbol(org.jjazz.harmony.api.ChordSymbol, long)
      */
-    private List<ChordSymbol> decodeChordSymbols(long value)
+    static private List<ChordSymbol> decodeChordSymbols(long value)
     {
         if (value == 0)
         {
@@ -433,7 +533,7 @@ public class ChordSymbolFinder
 
     static private void checkStaticData()
     {
-        if (positions3 == null)
+        if (positions3 == null || pitchClassSets == null)
         {
             throw new IllegalStateException("Static data not built yet!");
         }
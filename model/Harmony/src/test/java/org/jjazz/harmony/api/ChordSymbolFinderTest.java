@@ -0,0 +1,120 @@
+/*
+ * 
+ *   DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *  
+ *   Copyright @2019 Jerome Lelasseux. All rights reserved.
+ * 
+ *   This file is part of the JJazzLab software.
+ *    
+ *   JJazzLab is free software: you can redistribute it and/or modify
+ *   it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *   as published by the Free Software Foundation, either version 3 of the License, 
+ *   or (at your option) any later version.
+ * 
+ *   JJazzLab is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *  
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ *  
+ *   Contributor(s): 
+ * 
+ */
+package org.jjazz.harmony.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check that the pitch class set path gives the same results than the notes list path.
+ */
+public class ChordSymbolFinderTest
+{
+
+    private final ChordSymbolFinder finder = new ChordSymbolFinder(ChordSymbolFinder.MAX_NOTES);
+
+    @BeforeAll
+    public static void setUpClass()
+    {
+        ChordSymbolFinder.buildStaticData();
+    }
+
+    @Test
+    public void testFindSameAsNotesList()
+    {
+        // All 3-note and 4-note sets from C3 to B4, in ascending pitch order
+        for (int p0 = 48; p0 < 72; p0++)
+        {
+            for (int p1 = p0 + 1; p1 < 72; p1++)
+            {
+                for (int p2 = p1 + 1; p2 < 72; p2++)
+                {
+                    checkSameResult(List.of(new Note(p0), new Note(p1), new Note(p2)));
+                    for (int p3 = p2 + 1; p3 < 72; p3++)
+                    {
+                        checkSameResult(List.of(new Note(p0), new Note(p1), new Note(p2), new Note(p3)));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFindIgnoresDoublings()
+    {
+        // C3 E3 G3 C4
+        var notes = List.of(new Note(48), new Note(52), new Note(55), new Note(60));
+        int pcs = ChordSymbolFinder.toPitchClassSet(notes);
+        assertEquals(0b000010010001, pcs);
+        var chordSymbols = finder.find(pcs);
+        assertFalse(chordSymbols.isEmpty());
+        assertEquals("C", finder.getChordSymbol(48, chordSymbols, true).getName());
+    }
+
+    @Test
+    public void testFindNbNotesOutOfRange()
+    {
+        assertTrue(finder.find(0).isEmpty());
+        assertTrue(finder.find(0b000010000001).isEmpty());     // C G
+        assertTrue(new ChordSymbolFinder(3).find(0b010010010001).isEmpty());     // C E G Bb
+    }
+
+    @Test
+    public void testLowerNoteIsBass()
+    {
+        // G2 C3 E3
+        var notes = List.of(new Note(43), new Note(48), new Note(52));
+        var chordSymbols = finder.find(ChordSymbolFinder.toPitchClassSet(notes));
+        assertEquals("C/G", finder.getChordSymbol(43, chordSymbols, true).getName());
+        assertEquals("C", finder.getChordSymbol(43, chordSymbols, false).getName());
+    }
+
+    private void checkSameResult(List<Note> notes)
+    {
+        int pcs = ChordSymbolFinder.toPitchClassSet(notes);
+        if (Integer.bitCount(pcs) < notes.size())
+        {
+            return;     // Doublings are only supported by the pitch class set path
+        }
+        var expected = finder.find(notes);
+        var res = finder.find(pcs);
+        assertEquals(toNames(expected), toNames(res), "notes=" + notes);
+        if (!expected.isEmpty())
+        {
+            int lowestPitch = notes.get(0).getPitch();
+            assertEquals(finder.getChordSymbol(notes, expected, true).getName(), finder.getChordSymbol(lowestPitch, res, true).getName());
+        }
+    }
+
+    private List<String> toNames(List<ChordSymbol> chordSymbols)
+    {
+        var res = new ArrayList<String>();
+        chordSymbols.forEach(cs -> res.add(cs.getName()));
+        return res;
+    }
+}
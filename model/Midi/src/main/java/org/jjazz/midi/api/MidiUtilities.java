@@ -26,8 +26,10 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.function.Predicate;
 import java.util.logging.Level;
@@ -174,18 +176,22 @@ public class MidiUtilities
 
     /**
      * Remove all MidiEvents from a track, but leave the End Of Track MetaEvent unchanged.
+     * <p>
+     * Events are removed from the start of the track: Track.remove() searches the event from the start of the track, so each removal does not need to
+     * scan the track.
      *
      * @param track
      */
     static public void clearTrack(Track track)
     {
-        int last = track.size() - 1;
-        for (int i = last; i >= 0; i--)
+        int i = 0;
+        while (i < track.size())
         {
             MidiEvent me = track.get(i);
             MidiMessage mm = me.getMessage();
             if ((mm instanceof MetaMessage) && ((MetaMessage) mm).getType() == MidiConst.META_END_OF_TRACK)
             {
+                i++;
                 continue;
             }
             track.remove(me);
@@ -212,6 +218,101 @@ public class MidiUtilities
         return res;
     }
 
+    /**
+     * Merge several lists of MidiEvents into one list sorted by tick.
+     * <p>
+     * The merge is stable: events with the same tick are ordered by list index, then by their order in their list. So adding the returned events to an
+     * empty Track produces the same Track than adding the events of each list one by one, list after list, but in linear time (see
+     * {@link #addSortedEvents(javax.sound.midi.Track, java.util.List)}).
+     *
+     * @param lists Each list should be sorted by tick. If not, a sorted copy is used.
+     * @return
+     */
+    static public List<MidiEvent> mergeSortedEvents(List<List<MidiEvent>> lists)
+    {
+        List<List<MidiEvent>> sortedLists = new ArrayList<>();
+        int size = 0;
+        for (var list : lists)
+        {
+            if (!isSortedByTick(list))
+            {
+                list = new ArrayList<>(list);
+                list.sort(Comparator.comparingLong(MidiEvent::getTick));      // Stable sort
+            }
+            sortedLists.add(list);
+            size += list.size();
+        }
+
+
+        // k-way merge, heap elements are {listIndex, indexInList}
+        List<MidiEvent> res = new ArrayList<>(size);
+        PriorityQueue<int[]> heap = new PriorityQueue<>(Math.max(1, sortedLists.size()), (a, b) -> 
+        {
+            int c = Long.compare(sortedLists.get(a[0]).get(a[1]).getTick(), sortedLists.get(b[0]).get(b[1]).getTick());
+            return c != 0 ? c : Integer.compare(a[0], b[0]);
+        });
+        for (int i = 0; i < sortedLists.size(); i++)
+        {
+            if (!sortedLists.get(i).isEmpty())
+            {
+                heap.add(new int[]
+                {
+                    i, 0
+                });
+            }
+        }
+        while (!heap.isEmpty())
+        {
+            int[] head = heap.poll();
+            var list = sortedLists.get(head[0]);
+            res.add(list.get(head[1]));
+            head[1]++;
+            if (head[1] < list.size())
+            {
+                heap.add(head);
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * Add MidiEvents to a track.
+     * <p>
+     * Track.add() searches the insertion point by scanning the track backwards from its end. If events are sorted by tick and are not before the last
+     * event of the track, each add is a constant time operation. Otherwise events are still correctly added, but more slowly.
+     *
+     * @param track
+     * @param events Should be sorted by tick
+     */
+    static public void addSortedEvents(Track track, List<MidiEvent> events)
+    {
+        for (var me : events)
+        {
+            track.add(me);
+        }
+    }
+
+    /**
+     * Check if events are sorted by tick.
+     *
+     * @param events
+     * @return
+     */
+    static public boolean isSortedByTick(List<MidiEvent> events)
+    {
+        long lastTick = Long.MIN_VALUE;
+        for (var me : events)
+        {
+            if (me.getTick() < lastTick)
+            {
+                return false;
+            }
+            lastTick = me.getTick();
+        }
+        return true;
+    }
+
     /**
      * Return a non-null ShortMessage only if mm is a ShortMessage.NOTE_ON or NOTE_OFF.
      *
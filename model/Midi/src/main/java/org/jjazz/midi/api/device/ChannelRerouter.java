@@ -23,18 +23,27 @@
 package org.jjazz.midi.api.device;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import javax.sound.midi.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jjazz.midi.api.MidiConst;
+import org.jjazz.midi.api.sequencer.FastShortMessage;
 
 /**
  * This MidiDevice can reroute MidiMessages from one channel to another. Rerouting are added via the addRerouting().
+ * <p>
+ * A rerouted message is a reused mutable instance (the incoming message is not modified): receivers must not keep a reference on a
+ * message after send() has returned.
  */
 public class ChannelRerouter extends JJazzMidiDevice
 {
 
     ArrayList<Rerouting> reroutings = new ArrayList<>();
+    /**
+     * channelMap[fromChannel]=toChannel, or -1. Copy-on-write, updated when reroutings change.
+     */
+    private volatile int[] channelMap = makeChannelMap();
     private static final Logger LOGGER = Logger.getLogger(ChannelRerouter.class.getSimpleName());
 
     /**
@@ -48,7 +57,7 @@ public class ChannelRerouter extends JJazzMidiDevice
 
     public synchronized void addRerouting(int channelFrom, int channelTo)
     {
-        if (!MidiConst.checkMidiChannel(channelTo) || MidiConst.checkMidiChannel(channelFrom))
+        if (!MidiConst.checkMidiChannel(channelTo) || !MidiConst.checkMidiChannel(channelFrom))
         {
             throw new IllegalArgumentException("channelFrom=" + channelFrom + " channelTo=" + channelTo);   
         }
@@ -57,28 +66,27 @@ public class ChannelRerouter extends JJazzMidiDevice
             return;
         }
         reroutings.add(new Rerouting(channelFrom, channelTo));
+        channelMap = makeChannelMap();
     }
 
     public synchronized void clearReroutings()
     {
         reroutings.clear();
+        channelMap = makeChannelMap();
     }
 
     /**
      *
      * @param fromChannel
-     * @return The new channel to be used, or -1 if no rerouting registered.
+     * @return The new channel to be used, or -1 if no rerouting registered or if fromChannel is not a valid Midi channel.
      */
     public int getRerouting(int fromChannel)
     {
-        for (Rerouting r : reroutings)
+        if (!MidiConst.checkMidiChannel(fromChannel))
         {
-            if (r.from == fromChannel)
-            {
-                return r.to;
-            }
+            return -1;
         }
-        return -1;
+        return channelMap[fromChannel];
     }
 
     @Override
@@ -94,6 +102,19 @@ public class ChannelRerouter extends JJazzMidiDevice
     // ========================================================================================
     // Private methods
     // ========================================================================================
+    private int[] makeChannelMap()
+    {
+        int[] res = new int[16];
+        Arrays.fill(res, -1);
+        for (int i = reroutings.size() - 1; i >= 0; i--)
+        {
+            // First registered rerouting wins
+            Rerouting r = reroutings.get(i);
+            res[r.from] = r.to;
+        }
+        return res;
+    }
+
     // ========================================================================================
     // Private classes
     // ========================================================================================
@@ -104,6 +125,24 @@ public class ChannelRerouter extends JJazzMidiDevice
     {
 
         boolean isOpen = true;
+        /**
+         * Reused rerouted messages, one per destination channel.
+         */
+        private final FastShortMessage[] reroutedMessages = new FastShortMessage[16];
+
+        RerouterReceiver()
+        {
+            for (int i = 0; i < reroutedMessages.length; i++)
+            {
+                try
+                {
+                    reroutedMessages[i] = new FastShortMessage(ShortMessage.NOTE_OFF | i);
+                } catch (InvalidMidiDataException ex)
+                {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        }
 
         @Override
         public void close()
@@ -117,41 +156,28 @@ public class ChannelRerouter extends JJazzMidiDevice
          * Operation called each time a MidiMessage arrives. Reroute incoming MidiMessages when matching.
          */
         @Override
-        public void send(MidiMessage msg, long timeStamp)
+        synchronized public void send(MidiMessage msg, long timeStamp)
         {
             if (!isOpen)
             {
                 throw new IllegalStateException("RerouterReceiver object is closed");   
             }
 
-            if (msg instanceof ShortMessage)
+            // Only channel messages can be rerouted
+            if (msg instanceof ShortMessage sm && sm.getCommand() < 0xF0)
             {
-                // Only ShortMessage have a channel
-                ShortMessage sm = (ShortMessage) msg;
-                int channel = sm.getChannel();
-                int newChannel = getRerouting(channel);
+                int newChannel = getRerouting(sm.getChannel());
                 if (newChannel != -1)
                 {
-                    // Reroute it
-                    try
-                    {
-                        sm.setMessage(sm.getCommand(), newChannel, sm.getData1(), sm.getData2());
-                    } catch (InvalidMidiDataException ex)
-                    {
-                        throw new IllegalStateException(ex);   
-                    }
+                    // Reroute it using a reused message
+                    FastShortMessage fsm = reroutedMessages[newChannel];
+                    fsm.setPackedMsg((sm.getCommand() | newChannel) | (sm.getData1() << 8) | (sm.getData2() << 16));
+                    msg = fsm;
                 }
             }
 
             // send the messages
-            for (Transmitter t : transmitters.toArray(new Transmitter[0]))
-            {
-                Receiver rcv = t.getReceiver();
-                if (rcv != null)
-                {
-                    rcv.send(msg, timeStamp);
-                }
-            }
+            sendToTransmitters(msg, timeStamp);
         }
     }
 
@@ -37,6 +37,10 @@ public class JJazzMidiDevice implements MidiDevice
     protected boolean isOpen = true;
     protected ArrayList<Transmitter> transmitters = new ArrayList<>();
     protected ArrayList<Receiver> receivers = new ArrayList<>();
+    /**
+     * Copy-on-write snapshot of transmitters, so that messages can be forwarded without allocation.
+     */
+    private volatile Transmitter[] transmittersSnapshot = new Transmitter[0];
 
     private static final Logger LOGGER = Logger.getLogger(JJazzMidiDevice.class.getSimpleName());
 
@@ -104,7 +108,7 @@ public class JJazzMidiDevice implements MidiDevice
     public Transmitter getTransmitter()
     {
         JJazzTransmitter mt = new JJazzTransmitter();
-        transmitters.add(mt);
+        addTransmitter(mt);
         open();
         LOGGER.log(Level.FINE, "getTransmitter() mt={0}", mt);   
         return mt;
@@ -131,6 +135,54 @@ public class JJazzMidiDevice implements MidiDevice
         return Collections.unmodifiableList(receivers);
     }
 
+    /**
+     * Send a message to the receivers of all our transmitters.
+     * <p>
+     * This method does not allocate: it can be used in the real-time MIDI path.
+     *
+     * @param msg
+     * @param timeStamp
+     */
+    protected void sendToTransmitters(MidiMessage msg, long timeStamp)
+    {
+        for (Transmitter t : transmittersSnapshot)
+        {
+            Receiver rcv = t.getReceiver();
+            if (rcv != null)
+            {
+                rcv.send(msg, timeStamp);
+            }
+        }
+    }
+
+    /**
+     * Add a transmitter and update the transmitters snapshot.
+     *
+     * @param t
+     */
+    protected void addTransmitter(Transmitter t)
+    {
+        synchronized (transmitters)
+        {
+            transmitters.add(t);
+            transmittersSnapshot = transmitters.toArray(new Transmitter[0]);
+        }
+    }
+
+    /**
+     * Remove a transmitter and update the transmitters snapshot.
+     *
+     * @param t
+     */
+    protected void removeTransmitter(Transmitter t)
+    {
+        synchronized (transmitters)
+        {
+            transmitters.remove(t);
+            transmittersSnapshot = transmitters.toArray(new Transmitter[0]);
+        }
+    }
+
     //~ Classes =====================================================================================
     /**
      * The device info of the MidiDevice.
@@ -169,7 +221,7 @@ public class JJazzMidiDevice implements MidiDevice
         {
             LOGGER.fine("JJazzTransmitter.close()");   
             rcv = null;
-            transmitters.remove(this);
+            removeTransmitter(this);
         }
     }
 }
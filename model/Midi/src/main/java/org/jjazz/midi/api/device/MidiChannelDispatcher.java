@@ -48,6 +48,10 @@ public class MidiChannelDispatcher extends JJazzMidiDevice
      * The transmitters per channel.
      */
     private ArrayList<Transmitter>[] channelTransmitters = new ArrayList[LAST_CHANNEL + 1];
+    /**
+     * Copy-on-write snapshots of channelTransmitters, so that messages can be dispatched without allocation.
+     */
+    private volatile Transmitter[][] channelTransmittersSnapshots = new Transmitter[LAST_CHANNEL + 1][];
 
     public MidiChannelDispatcher()
     {
@@ -57,6 +61,7 @@ public class MidiChannelDispatcher extends JJazzMidiDevice
         for (int i = 0; i < channelTransmitters.length; i++)
         {
             channelTransmitters[i] = new ArrayList<>();
+            channelTransmittersSnapshots[i] = new Transmitter[0];
         }
     }
 
@@ -86,7 +91,13 @@ public class MidiChannelDispatcher extends JJazzMidiDevice
         }
 
         Transmitter mt = super.getTransmitter();
-        channelTransmitters[channel].add(mt);
+        synchronized (channelTransmitters)
+        {
+            channelTransmitters[channel].add(mt);
+            Transmitter[][] snapshots = channelTransmittersSnapshots.clone();
+            snapshots[channel] = channelTransmitters[channel].toArray(new Transmitter[0]);
+            channelTransmittersSnapshots = snapshots;
+        }
         return mt;
     }
 
@@ -138,7 +149,7 @@ public class MidiChannelDispatcher extends JJazzMidiDevice
             }
 
             // send the messages via the transmitters for the selected channel
-            for (Transmitter t : channelTransmitters[msgChannel])
+            for (Transmitter t : channelTransmittersSnapshots[msgChannel])
             {
                 Receiver rcv = t.getReceiver();
                 if (rcv != null)
@@ -117,14 +117,7 @@ public class MidiFilter extends JJazzMidiDevice
     private void passed(MidiMessage msg, long timestamp)
     {
         // Forward the message to transmitters
-        for (Transmitter t : transmitters.toArray(new Transmitter[0]))
-        {
-            Receiver rcv = t.getReceiver();
-            if (rcv != null)
-            {
-                rcv.send(msg, timestamp);
-            }
-        }
+        sendToTransmitters(msg, timestamp);
 
         // Optional log
         if (configLog.contains(ConfigLog.LOG_PASSED_MESSAGES))
@@ -26,6 +26,11 @@ package org.jjazz.midi.api.sequencer;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
 
 import javax.sound.midi.ControllerEventListener;
 import javax.sound.midi.MetaEventListener;
@@ -38,6 +43,13 @@ import javax.sound.sampled.LineListener;
  * EventDispatcher.
  * <p>
  * Used by various classes in the Java Sound implementation to send events.
+ * <p>
+ * JJazzLab: events are queued in a bounded multi-producer/single-consumer ring buffer with pre-allocated EventInfo slots, so that producers (the
+ * play threads of the sequencers sharing this dispatcher) never block nor allocate when posting an event.
+ * <p>
+ * If the ring buffer is full, controller events (ShortMessages) are dropped. Other events (e.g. META_END_OF_TRACK or marker MetaMessages, LineEvents)
+ * are never dropped: they go to an unbounded overflow queue which is dispatched once the ring buffer is empty. While the overflow queue is not empty,
+ * new events also go to the overflow queue (or are dropped for controller events), so that the posting order is preserved.
  *
  * @author David Rivas
  * @author Kara Kytle
@@ -52,14 +64,49 @@ final class EventDispatcher implements Runnable
     private static final int AUTO_CLOSE_TIME = 5000;
 
     /**
-     * List of events.
+     * Size of the event ring buffer, must be a power of 2.
+     */
+    private static final int RING_SIZE = 1024;
+    private static final int RING_MASK = RING_SIZE - 1;
+
+    /**
+     * Pre-allocated event slots.
+     */
+    private final EventInfo[] eventRing = new EventInfo[RING_SIZE];
+
+    /**
+     * Sequence number of each slot.
+     * <p>
+     * Slot i is free for the write of index w when its sequence is w, and ready to be read at index r when its sequence is r+1. Once read its sequence
+     * becomes r+RING_SIZE.
+     */
+    private final AtomicLongArray slotSequences = new AtomicLongArray(RING_SIZE);
+
+    /**
+     * Index of the next slot to be claimed by a producer thread.
+     */
+    private final AtomicLong writeIndex = new AtomicLong();
+
+    /**
+     * Index of the next slot to be read. Only used by the consumer thread.
+     */
+    private long readIndex;
+
+    /**
+     * Events which can't be dropped, posted while ring buffer was full.
+     */
+    private final ConcurrentLinkedQueue<EventInfo> overflowQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of controller events dropped because ring buffer was full.
      */
-    private final ArrayList<EventInfo> eventQueue = new ArrayList<>();
+    private final AtomicLong nbDroppedEvents = new AtomicLong();
+    private long nbDroppedEventsLogged;
 
     /**
      * Thread object for this EventDispatcher instance.
      */
-    private Thread thread = null;
+    private volatile Thread thread = null;
 
     /*
      * support for auto-closing Clips
@@ -76,16 +123,35 @@ final class EventDispatcher implements Runnable
      */
     static final int LINE_MONITOR_TIME = 400;
 
+    private static final Logger LOGGER = Logger.getLogger(EventDispatcher.class.getSimpleName());
+
+    EventDispatcher()
+    {
+        for (int i = 0; i < RING_SIZE; i++)
+        {
+            eventRing[i] = new EventInfo();
+            slotSequences.set(i, i);
+        }
+    }
+
     /**
      * This start() method starts an event thread if one is not already active.
      */
-    synchronized void start()
+    void start()
     {
-        if (thread == null)
+        if (thread != null)
         {
-            thread = new Thread(this, "JJazzLab-EventDispatcher");
-            thread.setDaemon(true);
-            thread.start();
+            return;
+        }
+        synchronized (this)
+        {
+            if (thread == null)
+            {
+                Thread t = new Thread(this, "JJazzLab-EventDispatcher");
+                t.setDaemon(true);
+                thread = t;
+                t.start();
+            }
         }
     }
 
@@ -167,50 +233,56 @@ final class EventDispatcher implements Runnable
     }
 
     /**
-     * Wait until there is something in the event queue to process. Then dispatch the event to the listeners.The entire method does not need to be synchronized
-     * since this includes taking the event out from the queue and processing the event. We only need to provide exclusive access over the code where an event
-     * is removed from the queue.
+     * Wait until there is something in the event ring buffer or in the overflow queue to process. Then dispatch the event to the listeners.
+     * <p>
+     * Must be called only by the consumer thread.
      */
     void dispatchEvents()
     {
+        long r = readIndex;
+        int slot = (int) (r & RING_MASK);
 
-        EventInfo eventInfo = null;
-
-        synchronized (this)
+        if (slotSequences.get(slot) != r + 1 && overflowQueue.isEmpty())
         {
-
-            // Wait till there is an event in the event queue.
-            try
+            // Wait till there is an event in the ring buffer, producer will unpark us
+            if (autoClosingClips.size() > 0 || lineMonitors.size() > 0)
             {
-
-                if (eventQueue.size() == 0)
+                int waitTime = AUTO_CLOSE_TIME;
+                if (lineMonitors.size() > 0)
                 {
-                    if (autoClosingClips.size() > 0 || lineMonitors.size() > 0)
-                    {
-                        int waitTime = AUTO_CLOSE_TIME;
-                        if (lineMonitors.size() > 0)
-                        {
-                            waitTime = LINE_MONITOR_TIME;
-                        }
-                        wait(waitTime);
-                    } else
-                    {
-                        wait();
-                    }
+                    waitTime = LINE_MONITOR_TIME;
                 }
-            } catch (InterruptedException e)
+                LockSupport.parkNanos(this, waitTime * 1000000L);
+            } else
             {
+                LockSupport.park(this);
             }
-            if (eventQueue.size() > 0)
+        }
+
+        long dropped = nbDroppedEvents.get();
+        if (dropped != nbDroppedEventsLogged)
+        {
+            LOGGER.warning("dispatchEvents() Event ring buffer was full, total number of dropped events=" + dropped);
+            nbDroppedEventsLogged = dropped;
+        }
+
+        if (slotSequences.get(slot) == r + 1)
+        {
+            // Dispatch the event to the listeners, then release the slot
+            EventInfo eventInfo = eventRing[slot];
+            try
+            {
+                processEvent(eventInfo);
+            } finally
             {
-                // Remove the event from the queue and dispatch it to the listeners.
-                eventInfo = eventQueue.remove(0);
+                eventInfo.clear();
+                readIndex = r + 1;
+                slotSequences.lazySet(slot, r + RING_SIZE);
             }
-
-        } // end of synchronized
-        if (eventInfo != null)
+        } else if (!overflowQueue.isEmpty())
         {
-            processEvent(eventInfo);
+            // Ring buffer is empty, the overflow events were posted after the ring buffer events
+            processEvent(overflowQueue.poll());
         } else
         {
             if (autoClosingClips.size() > 0)
@@ -225,12 +297,84 @@ final class EventDispatcher implements Runnable
     }
 
     /**
-     * Queue the given event in the event queue.
+     * Queue the given event in the event ring buffer.
+     * <p>
+     * Can be called concurrently by several producer threads. Does not block nor allocate (unless listeners size exceeds the slot capacity, or ring
+     * buffer is full).
+     *
+     * @param event
+     * @param listeners
+     */
+    private void postEvent(Object event, List<Object> listeners)
+    {
+        // Only controller events can be lost
+        boolean droppable = event instanceof ShortMessage;
+
+
+        // Claim a slot, unless overflow events are waiting
+        long w = 0;
+        int slot = 0;
+        boolean claimed = false;
+        while (overflowQueue.isEmpty())
+        {
+            w = writeIndex.get();
+            slot = (int) (w & RING_MASK);
+            long diff = slotSequences.get(slot) - w;
+            if (diff == 0)
+            {
+                if (writeIndex.compareAndSet(w, w + 1))
+                {
+                    claimed = true;
+                    break;
+                }
+            } else if (diff < 0)
+            {
+                // Ring buffer is full, consumer is too slow
+                break;
+            }
+            // else another producer claimed the slot, retry
+        }
+
+
+        if (!claimed)
+        {
+            if (droppable)
+            {
+                nbDroppedEvents.incrementAndGet();
+            } else
+            {
+                EventInfo eventInfo = new EventInfo();
+                eventInfo.set(event, listeners);
+                overflowQueue.add(eventInfo);
+                wakeUp();
+            }
+            return;
+        }
+
+        // Fill and publish the slot
+        eventRing[slot].set(event, listeners);
+        slotSequences.lazySet(slot, w + 1);
+        wakeUp();
+    }
+
+    /**
+     * @return The number of controller events dropped because the ring buffer was full.
+     */
+    long getNbDroppedEvents()
+    {
+        return nbDroppedEvents.get();
+    }
+
+    /**
+     * Unpark the consumer thread.
      */
-    private synchronized void postEvent(EventInfo eventInfo)
+    private void wakeUp()
     {
-        eventQueue.add(eventInfo);
-        notifyAll();
+        Thread t = thread;
+        if (t != null)
+        {
+            LockSupport.unpark(t);
+        }
     }
 
     /**
@@ -257,6 +401,11 @@ final class EventDispatcher implements Runnable
 
     /**
      * Send audio and MIDI events.
+     * <p>
+     * Can be called concurrently by several producer threads.
+     *
+     * @param event
+     * @param listeners The listeners are copied into the event slot
      */
     void sendAudioEvents(Object event, List<Object> listeners)
     {
@@ -269,8 +418,7 @@ final class EventDispatcher implements Runnable
 
         start();
 
-        EventInfo eventInfo = new EventInfo(event, listeners);
-        postEvent(eventInfo);
+        postEvent(event, listeners);
     }
 
     /*
@@ -336,14 +484,11 @@ final class EventDispatcher implements Runnable
         }
         if (index == -1)
         {
-            synchronized (this)
-            {
-                // this is only for the case that the first clip is set to autoclosing,
-                // and it is already open, and nothing is done with it.
-                // EventDispatcher.process() method would block in wait() and
-                // never close this first clip, keeping the device open.
-                notifyAll();
-            }
+            // this is only for the case that the first clip is set to autoclosing,
+            // and it is already open, and nothing is done with it.
+            // EventDispatcher.process() method would block in park() and
+            // never close this first clip, keeping the device open.
+            wakeUp();
         }
     }
 
@@ -393,11 +538,8 @@ final class EventDispatcher implements Runnable
             }
             lineMonitors.add(lm);
         }
-        synchronized (this)
-        {
-            // need to interrupt the infinite wait()
-            notifyAll();
-        }
+        // need to interrupt the infinite park()
+        wakeUp();
     }
 
     /**
@@ -416,24 +558,55 @@ final class EventDispatcher implements Runnable
     }
 
     /**
-     * Container for an event and a set of listeners to deliver it to.
+     * A reusable container for an event and a set of listeners to deliver it to.
      */
     private class EventInfo
     {
 
-        private final Object event;
-        private final Object[] listeners;
+        private Object event;
+        private Object[] listeners = new Object[8];
+        private int listenerCount;
 
         /**
-         * Create a new instance of this event Info class
+         * Fill this slot.
          *
          * @param event     the event to be dispatched
          * @param listeners listener list; will be copied
          */
-        EventInfo(Object event, List<Object> listeners)
+        void set(Object event, List<Object> listeners)
         {
+            int size = listeners.size();
+            if (size > this.listeners.length)
+            {
+                this.listeners = new Object[Math.max(size, 2 * this.listeners.length)];
+            }
+            int count = 0;
+            try
+            {
+                for (int i = 0; i < size; i++)
+                {
+                    this.listeners[count] = listeners.get(i);
+                    count++;
+                }
+            } catch (IndexOutOfBoundsException ex)
+            {
+                // listeners list was modified by another thread, use what we have
+            }
+            this.listenerCount = count;
             this.event = event;
-            this.listeners = listeners.toArray();
+        }
+
+        /**
+         * Release references so that event and listeners can be garbage collected.
+         */
+        void clear()
+        {
+            for (int i = 0; i < listenerCount; i++)
+            {
+                listeners[i] = null;
+            }
+            listenerCount = 0;
+            event = null;
         }
 
         Object getEvent()
@@ -443,7 +616,7 @@ final class EventDispatcher implements Runnable
 
         int getListenerCount()
         {
-            return listeners.length;
+            return listenerCount;
         }
 
         Object getListener(int index)
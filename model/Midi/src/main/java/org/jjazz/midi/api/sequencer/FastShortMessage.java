@@ -29,15 +29,17 @@ import javax.sound.midi.ShortMessage;
 
 /**
  * an optimized ShortMessage that does not need an array.
+ * <p>
+ * JJazzLab: made public so that it can be reused as a mutable message in allocation-free MIDI paths.
  *
  * @author Florian Bomers
  */
-final class FastShortMessage extends ShortMessage
+public final class FastShortMessage extends ShortMessage
 {
 
     private int packedMsg;
 
-    FastShortMessage(int packedMsg) throws InvalidMidiDataException
+    public FastShortMessage(int packedMsg) throws InvalidMidiDataException
     {
         this.packedMsg = packedMsg;
         getDataLength(packedMsg & 0xFF); // to check for validity
@@ -53,11 +55,26 @@ final class FastShortMessage extends ShortMessage
                 | (msg.getData2() << 16);
     }
 
-    int getPackedMsg()
+    /**
+     * The message as an int: status | (data1 &lt;&lt; 8) | (data2 &lt;&lt; 16).
+     *
+     * @return
+     */
+    public int getPackedMsg()
     {
         return packedMsg;
     }
 
+    /**
+     * Update the message without any validity check nor allocation.
+     *
+     * @param packedMsg status | (data1 &lt;&lt; 8) | (data2 &lt;&lt; 16), must be a valid ShortMessage
+     */
+    public void setPackedMsg(int packedMsg)
+    {
+        this.packedMsg = packedMsg;
+    }
+
     @Override
     public byte[] getMessage()
     {
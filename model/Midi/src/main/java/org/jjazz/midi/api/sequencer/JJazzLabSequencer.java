@@ -27,9 +27,11 @@ package org.jjazz.midi.api.sequencer;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Logger;
 
 import javax.sound.midi.ControllerEventListener;
@@ -57,7 +59,7 @@ import javax.sound.midi.Transmitter;
  * Updated for JJazzLab @author Jerome Lelasseux - based on AdoptOpenJDK16 version.
  *
  */
-final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, AutoConnectSequencer
+final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, AutoConnectSequencer, SchedulingSequencer, OfflineRenderingSequencer
 {
 
     /**
@@ -82,6 +84,15 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
     private static final Sequencer.SyncMode masterSyncMode = Sequencer.SyncMode.INTERNAL_CLOCK;
     private static final Sequencer.SyncMode slaveSyncMode = Sequencer.SyncMode.NO_SYNC;
 
+    /**
+     * In DEADLINE scheduler mode, max park duration so that tempo/position changes and tracks modified at runtime are taken into account.
+     */
+    private static final long MAX_PARK_NANOS = 2_000_000;
+    /**
+     * In DEADLINE scheduler mode, we stop parking this duration before the deadline and spin-wait until the deadline.
+     */
+    private static final long SPIN_NANOS = 250_000;
+
     /**
      * Sequence on which this sequencer is operating.
      */
@@ -146,6 +157,16 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
      */
     private final ArrayList<ControllerListElement> controllerEventListeners = new ArrayList<>();
 
+    /**
+     * Reused by sendControllerEvents() to avoid allocation in the play thread.
+     */
+    private final ArrayList<Object> controllerEventTargets = new ArrayList<>();
+
+    /**
+     * The event dispatcher used by the play thread.
+     */
+    private EventDispatcher eventDispatcher;
+
     /**
      * automatic connection support.
      */
@@ -161,13 +182,25 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
      */
     Receiver autoConnectedReceiver = null;
 
+    private volatile SchedulerMode schedulerMode;
+    private final LatenessHistogram latenessHistogram = new LatenessHistogram();
+
     private static final Logger LOGGER = Logger.getLogger(JJazzLabSequencer.class.getSimpleName());
 
     /* ****************************** CONSTRUCTOR ****************************** */
     JJazzLabSequencer()
     {
         super(info);
-        LOGGER.info("JJazzLabSequencer() Setting up JJazzLab sequencer");
+        String strMode = System.getProperty(SYSTEM_PROP_SCHEDULER_MODE, SchedulerMode.FIXED_SLEEP.name());
+        try
+        {
+            schedulerMode = SchedulerMode.valueOf(strMode);
+        } catch (IllegalArgumentException ex)
+        {
+            LOGGER.warning("JJazzLabSequencer() Invalid value for system property " + SYSTEM_PROP_SCHEDULER_MODE + ": " + strMode);
+            schedulerMode = SchedulerMode.FIXED_SLEEP;
+        }
+        LOGGER.info("JJazzLabSequencer() Setting up JJazzLab sequencer, schedulerMode=" + schedulerMode);
     }
 
     /* ****************************** SEQUENCER METHODS ******************** */
@@ -429,6 +462,7 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
         {
             // set the native tempo in MPQ
             getDataPump().setTempoMPQ(mpq);
+            playThread.wakeUp();
 
             // reset the tempoInBPM and tempoInMPQ values so we won't use them again
             cacheTempoMPQ = -1;
@@ -449,6 +483,7 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
         } else
         {
             getDataPump().setTempoFactor(factor);
+            playThread.wakeUp();
             // don't need cache anymore
             cacheTempoFactor = -1;
         }
@@ -513,6 +548,7 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
         } else
         {
             getDataPump().setTickPos(tick);
+            playThread.wakeUp();
         }
     }
 
@@ -774,6 +810,68 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
         }
     }
 
+    // interface SchedulingSequencer
+    @Override
+    public void setSchedulerMode(SchedulerMode mode)
+    {
+        if (mode == null)
+        {
+            throw new IllegalArgumentException("mode=" + mode);
+        }
+        schedulerMode = mode;
+        if (playThread != null)
+        {
+            playThread.wakeUp();
+        }
+    }
+
+    @Override
+    public SchedulerMode getSchedulerMode()
+    {
+        return schedulerMode;
+    }
+
+    @Override
+    public LatenessHistogram getLatenessHistogram()
+    {
+        return latenessHistogram;
+    }
+
+    // interface OfflineRenderingSequencer
+    @Override
+    public long renderOffline(Receiver receiver)
+    {
+        if (receiver == null)
+        {
+            throw new IllegalArgumentException("receiver=" + receiver);
+        }
+        DataPump offlinePump;
+        long startTick;
+        float tempoMPQ;
+        synchronized (this)
+        {
+            if (sequence == null)
+            {
+                throw new IllegalStateException("sequence not set");
+            }
+            if (running)
+            {
+                throw new IllegalStateException("sequencer is running");
+            }
+            if (loopCount == LOOP_CONTINUOUSLY)
+            {
+                throw new IllegalStateException("can not render offline an infinite loop");
+            }
+            startTick = getTickPosition();
+            tempoMPQ = getTempoInMPQ();
+            offlinePump = new DataPump(receiver);
+            offlinePump.setSequence(sequence);
+            offlinePump.setTempoFactor(getTempoFactor());
+        }
+
+        return offlinePump.renderOffline(startTick, tempoMPQ);
+    }
+
     ////////////////// LOOPING (added in 1.5) ///////////////////////
     @Override
     public void setLoopStartPoint(long tick)
@@ -1043,6 +1141,20 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
         }
     }
 
+    /**
+     * The event dispatcher used by the play thread.
+     * <p>
+     * Avoid the synchronized lookup of getEventDispatcher() for each event.
+     */
+    private EventDispatcher getPlayThreadEventDispatcher()
+    {
+        if (eventDispatcher == null)
+        {
+            eventDispatcher = getEventDispatcher();
+        }
+        return eventDispatcher;
+    }
+
     /**
      * Send midi player events. must not be synchronized on "this"
      */
@@ -1053,7 +1165,7 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
             return;
         }
 
-        getEventDispatcher().sendAudioEvents(message, metaEventListeners);
+        getPlayThreadEventDispatcher().sendAudioEvents(message, metaEventListeners);
     }
 
     /**
@@ -1073,7 +1185,8 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
         }
         ShortMessage msg = (ShortMessage) message;
         int controller = msg.getData1();
-        List<Object> sendToListeners = new ArrayList<>();
+        List<Object> sendToListeners = controllerEventTargets;
+        sendToListeners.clear();
         for (int i = 0; i < size; i++)
         {
             ControllerListElement cve = controllerEventListeners.get(i);
@@ -1086,7 +1199,7 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                 }
             }
         }
-        getEventDispatcher().sendAudioEvents(message, sendToListeners);
+        getPlayThreadEventDispatcher().sendAudioEvents(message, sendToListeners);
     }
 
     private boolean needCaching()
@@ -1482,7 +1595,7 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                 long tickPos = getTickPosition();
                 dataPump.setTempoMPQ(tempoCache.getTempoMPQAt(tickPos));
             }
-            dataPump.checkPointMillis = 0; // means restarted
+            dataPump.checkPointMicros = 0; // means restarted
             dataPump.clearNoteOnCache();
             dataPump.needReindex = true;
 
@@ -1532,6 +1645,19 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
             {
                 lock.notifyAll();
             }
+            wakeUp();
+        }
+
+        /**
+         * Unpark the thread if it's waiting for the next event deadline.
+         */
+        void wakeUp()
+        {
+            Thread t = thread;
+            if (t != null)
+            {
+                LockSupport.unpark(t);
+            }
         }
 
         void close()
@@ -1546,11 +1672,12 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
             }
             if (oldThread != null)
             {
-                // wake up the thread if it's in wait()
+                // wake up the thread if it's in wait() or parked
                 synchronized (lock)
                 {
                     lock.notifyAll();
                 }
+                LockSupport.unpark(oldThread);
             }
             // wait for the thread to terminate itself,
             // but max. 2 seconds. Must not be synchronized!
@@ -1583,12 +1710,9 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                 {
                     EOM = dataPump.pump();
 
-                    try
+                    if (!EOM)
                     {
-                        Thread.sleep(1);
-                    } catch (InterruptedException ie)
-                    {
-                        // ignore
+                        waitForNextPump();
                     }
                 }
 
@@ -1628,26 +1752,75 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                 }
             } // end of while(!EOM && !interrupted && running)
         }
+
+        /**
+         * Wait before next pump() call, depending on the scheduler mode.
+         */
+        private void waitForNextPump()
+        {
+            if (schedulerMode == SchedulerMode.FIXED_SLEEP)
+            {
+                try
+                {
+                    Thread.sleep(1);
+                } catch (InterruptedException ie)
+                {
+                    // ignore
+                }
+                return;
+            }
+
+            // DEADLINE mode
+            long now = System.nanoTime();
+            long nextEventMicros = dataPump.getNextEventMicros();
+            long deadline = nextEventMicros * 1000;
+            if (nextEventMicros < 0 || deadline - now > MAX_PARK_NANOS)
+            {
+                // Next event is unknown or far away: come back later, the deadline might have changed
+                LockSupport.parkNanos(MAX_PARK_NANOS);
+                return;
+            }
+            long parkNanos = deadline - now - SPIN_NANOS;
+            if (parkNanos > 0)
+            {
+                LockSupport.parkNanos(parkNanos);
+            }
+            while (System.nanoTime() < deadline && running && !interrupted)
+            {
+                Thread.onSpinWait();
+            }
+        }
     }
 
     /**
      * class that does the actual dispatching of events, used to be in native in MMAPI.
+     * <p>
+     * JJazzLab: an offline DataPump uses a virtual clock and sends the messages to an offline receiver, see renderOffline().
      */
     private class DataPump
     {
 
+        /**
+         * Virtual clock start value, must not be 0 which is used as "no check point" value.
+         */
+        private static final long VIRTUAL_TIME_ORIGIN = 1;
+
         private float currTempo;         // MPQ tempo
         private float tempoFactor;       // 1.0 is default
         private float inverseTempoFactor;// = 1.0 / tempoFactor
         private long ignoreTempoEventAt; // ignore next META tempo during playback at this tick pos only
         private int resolution;
         private float divisionType;
-        private long checkPointMillis;   // microseconds at checkoint
+        private long checkPointMicros;   // microseconds at checkoint
         private long checkPointTick;     // ticks at checkpoint
+        private long nextEventMicros = -1;   // microseconds time of the next event, -1 if unknown
         private int[] noteOnCache;       // bit-mask of notes that are currently on
         private Track[] tracks;
         private boolean[] trackDisabled; // if true, do not play this track
         private int[] trackReadPos;      // read index per track
+        private TrackIndex[] trackIndexes; // tick index per track, can be null or contain null values
+        private final Receiver offlineReceiver; // non null for an offline DataPump
+        private long virtualMicros;      // virtual clock for an offline DataPump
         private long lastTick;
         private boolean needReindex = false;
         private int currLoopCounter = 0;
@@ -1656,9 +1829,115 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
         //private long perfFreq = perf.highResFrequency();
         DataPump()
         {
+            this(null);
+        }
+
+        /**
+         * @param offlineReceiver If not null create an offline DataPump which sends its messages to this receiver
+         */
+        DataPump(Receiver offlineReceiver)
+        {
+            this.offlineReceiver = offlineReceiver;
             init();
         }
 
+        /**
+         * Play the sequence from startTick using a virtual clock, as fast as possible.
+         * <p>
+         * Must be used only with an offline DataPump.
+         *
+         * @param startTick
+         * @param tempoMPQ  Tempo at startTick
+         * @return The rendered duration in microseconds
+         */
+        synchronized long renderOffline(long startTick, float tempoMPQ)
+        {
+            assert offlineReceiver != null;
+
+            // Same initialization than setTickPos() and PlayThread.start()
+            virtualMicros = VIRTUAL_TIME_ORIGIN;
+            lastTick = startTick;
+            clearNoteOnCache();
+            if (startTick > 0)
+            {
+                // Chase from beginning, will also reindex
+                chaseEvents(0, startTick);
+            } else
+            {
+                needReindex = true;
+            }
+            setTempoMPQ(tempoMPQ);
+            checkPointMicros = 0;
+            resetLoopCount();
+
+            boolean EOM = false;
+            while (!EOM)
+            {
+                EOM = pump();
+                if (!EOM)
+                {
+                    // Jump to the next event
+                    virtualMicros = nextEventMicros > virtualMicros ? nextEventMicros : virtualMicros + 1000;
+                }
+            }
+            notesOff(true);
+
+            return virtualMicros - VIRTUAL_TIME_ORIGIN;
+        }
+
+        boolean isOffline()
+        {
+            return offlineReceiver != null;
+        }
+
+        /**
+         * An offline DataPump is always considered running.
+         */
+        private boolean isPumpRunning()
+        {
+            return isOffline() || running;
+        }
+
+        /**
+         * Send a message built by the DataPump, i.e. not from the sequence.
+         *
+         * @param packedMsg
+         */
+        private void sendPacked(int packedMsg)
+        {
+            if (!isOffline())
+            {
+                getTransmitterList().sendMessage(packedMsg, -1);
+            } else
+            {
+                try
+                {
+                    offlineReceiver.send(new FastShortMessage(packedMsg), virtualMicros - VIRTUAL_TIME_ORIGIN);
+                } catch (InvalidMidiDataException ex)
+                {
+                    // should never happen
+                }
+            }
+        }
+
+        /**
+         * Send a sequence event.
+         * <p>
+         * If offline the timestamp is the computed time of the event.
+         *
+         * @param event
+         */
+        private void sendEvent(MidiEvent event)
+        {
+            if (!isOffline())
+            {
+                getTransmitterList().sendMessage(event.getMessage(), -1);
+            } else
+            {
+                offlineReceiver.send(event.getMessage(), getEventMicros(event.getTick()) - VIRTUAL_TIME_ORIGIN);
+            }
+        }
+
         synchronized void init()
         {
             ignoreTempoEventAt = -1;
@@ -1667,6 +1946,7 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
             noteOnCache = new int[128];
             tracks = null;
             trackDisabled = null;
+            trackIndexes = null;
         }
 
         synchronized void setTickPos(long tickPos)
@@ -1677,11 +1957,11 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
             // should bring only a quite minor performance improvement.            
             long oldLastTick = lastTick;                // JDK 16: long oldLastTick = tickPos;              
             lastTick = tickPos;
-            if (running)
+            if (isPumpRunning())
             {
                 notesOff(false);
             }
-            if (running || tickPos > 0)
+            if (isPumpRunning() || tickPos > 0)
             {
                 // will also reindex
                 chaseEvents(oldLastTick, tickPos);
@@ -1696,7 +1976,7 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                 ignoreTempoEventAt = -1;
             }
             // trigger re-configuration
-            checkPointMillis = 0;
+            checkPointMicros = 0;
         }
 
         long getTickPos()
@@ -1722,7 +2002,7 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                 ignoreTempoEventAt = lastTick;
                 this.currTempo = tempoMPQ;
                 // re-calculate check point
-                checkPointMillis = 0;
+                checkPointMicros = 0;
             }
         }
 
@@ -1738,7 +2018,7 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                 tempoFactor = factor;
                 inverseTempoFactor = 1.0f / factor;
                 // re-calculate check point
-                checkPointMillis = 0;
+                checkPointMicros = 0;
             }
         }
 
@@ -1750,7 +2030,7 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
         synchronized void muteSoloChanged()
         {
             boolean[] newDisabled = makeDisabledArray();
-            if (running)
+            if (running && !isOffline())
             {
                 applyDisabledTracks(trackDisabled, newDisabled);
             }
@@ -1769,8 +2049,14 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
             resolution = seq.getResolution();
             divisionType = seq.getDivisionType();
             trackReadPos = new int[tracks.length];
+            // JJazzLab: build the tick indexes now to avoid doing it on the play thread
+            trackIndexes = new TrackIndex[tracks.length];
+            for (int t = 0; t < tracks.length; t++)
+            {
+                getTrackIndex(t);
+            }
             // trigger re-initialization
-            checkPointMillis = 0;
+            checkPointMicros = 0;
             needReindex = true;
         }
 
@@ -1799,18 +2085,18 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                     {
                         noteOnCache[i] ^= channelMask;
                         // send note on with velocity 0
-                        getTransmitterList().sendMessage((ShortMessage.NOTE_ON | ch) | (i << 8), -1);
+                        sendPacked((ShortMessage.NOTE_ON | ch) | (i << 8));
                         done++;
                     }
                 }
                 /* all notes off */
-                getTransmitterList().sendMessage((ShortMessage.CONTROL_CHANGE | ch) | (123 << 8), -1);
+                sendPacked((ShortMessage.CONTROL_CHANGE | ch) | (123 << 8));
                 /* sustain off */
-                getTransmitterList().sendMessage((ShortMessage.CONTROL_CHANGE | ch) | (64 << 8), -1);
+                sendPacked((ShortMessage.CONTROL_CHANGE | ch) | (64 << 8));
                 if (doControllers)
                 {
                     /* reset all controllers */
-                    getTransmitterList().sendMessage((ShortMessage.CONTROL_CHANGE | ch) | (121 << 8), -1);
+                    sendPacked((ShortMessage.CONTROL_CHANGE | ch) | (121 << 8));
                     done++;
                 }
             }
@@ -1908,7 +2194,7 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                             if ((noteOnCache[note] & bit) != 0)
                             {
                                 // the bit is set. Send Note Off
-                                getTransmitterList().sendMessage(status | (note << 8), -1);
+                                sendPacked(status | (note << 8));
                                 // clear the bit
                                 noteOnCache[note] &= (0xFFFF ^ bit);
                                 done++;
@@ -1991,63 +2277,26 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                     tempArray[co][ch] = -1;
                 }
             }
-            Track track = tracks[trackNum];
-            int size = track.size();
-            try
+            // JJazzLab: use the track index (binary search + snapshot replay) instead of scanning the track from the beginning
+            TrackIndex index = getTrackIndex(trackNum);
+            if (doReindex && !index.isValidAt(endTick))
             {
-                for (int i = 0; i < size; i++)
+                // Track was patched around endTick
+                trackIndexes[trackNum] = null;
+                index = getTrackIndex(trackNum);
+            }
+            index.chase(startTick, endTick, tempArray, progs);
+            if (doReindex && (trackNum < trackReadPos.length))
+            {
+                int i = index.tick2index(endTick);
+                if (i < index.size())
                 {
-                    MidiEvent event = track.get(i);
-                    // Jerome JJazzLab fix => required when fixing the other bug in setTickPos()
-                    if (event.getTick() < startTick)
-                    {
-                        continue;
-                    }
-                    // END of Jerome JJazzLab fix
-                    if (event.getTick() >= endTick)
-                    {
-                        if (doReindex && (trackNum < trackReadPos.length))
-                        {
-                            // JJazzLab fix: when endTick falls exactly on an event, use i directly so that event
-                            // is not skipped on the next pump() iteration. Only back up by 1 when endTick falls between events.
-                            // Without this fix, in loop mode, restart loop point had to be increased by +1 tick to work correctly
-                            trackReadPos[trackNum] = (event.getTick() > endTick && i > 0) ? (i - 1) : i;
-                            // END JJazzLab fix
-                        }
-                        break;
-                    }
-                    MidiMessage msg = event.getMessage();
-                    int status = msg.getStatus();
-                    int len = msg.getLength();
-                    if (len == 3 && ((status & 0xF0) == ShortMessage.CONTROL_CHANGE))
-                    {
-                        if (msg instanceof ShortMessage)
-                        {
-                            ShortMessage smsg = (ShortMessage) msg;
-                            tempArray[smsg.getData1() & 0x7F][status & 0x0F] = (byte) smsg.getData2();
-                        } else
-                        {
-                            byte[] data = msg.getMessage();
-                            tempArray[data[1] & 0x7F][status & 0x0F] = data[2];
-                        }
-                    }
-                    if (len == 2 && ((status & 0xF0) == ShortMessage.PROGRAM_CHANGE))
-                    {
-                        if (msg instanceof ShortMessage)
-                        {
-                            ShortMessage smsg = (ShortMessage) msg;
-                            progs[status & 0x0F] = (byte) smsg.getData1();
-                        } else
-                        {
-                            byte[] data = msg.getMessage();
-                            progs[status & 0x0F] = data[1];
-                        }
-                    }
+                    // JJazzLab fix: when endTick falls exactly on an event, use i directly so that event
+                    // is not skipped on the next pump() iteration. Only back up by 1 when endTick falls between events.
+                    // Without this fix, in loop mode, restart loop point had to be increased by +1 tick to work correctly
+                    trackReadPos[trackNum] = (index.getTick(i) > endTick && i > 0) ? (i - 1) : i;
+                    // END JJazzLab fix
                 }
-            } catch (ArrayIndexOutOfBoundsException aioobe)
-            {
-                // this happens when messages are removed
-                // from the track while this method executes
             }
             int numControllersSent = 0;
             // now send out the aggregated controllers and program changes
@@ -2059,7 +2308,7 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                     if (controllerValue >= 0)
                     {
                         int packedMsg = (ShortMessage.CONTROL_CHANGE | ch) | (co << 8) | (controllerValue << 16);
-                        getTransmitterList().sendMessage(packedMsg, -1);
+                        sendPacked(packedMsg);
                         numControllersSent++;
                     }
                 }
@@ -2067,14 +2316,14 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                 // correctly initialize banks
                 if (progs[ch] >= 0)
                 {
-                    getTransmitterList().sendMessage((ShortMessage.PROGRAM_CHANGE | ch) | (progs[ch] << 8), -1);
+                    sendPacked((ShortMessage.PROGRAM_CHANGE | ch) | (progs[ch] << 8));
                 }
                 if (progs[ch] >= 0 || startTick == 0 || endTick == 0)
                 {
                     // reset pitch bend on this channel (E0 00 40)
-                    getTransmitterList().sendMessage((ShortMessage.PITCH_BEND | ch) | (0x40 << 16), -1);
+                    sendPacked((ShortMessage.PITCH_BEND | ch) | (0x40 << 16));
                     // reset sustain pedal on this channel
-                    getTransmitterList().sendMessage((ShortMessage.CONTROL_CHANGE | ch) | (64 << 8), -1);
+                    sendPacked((ShortMessage.CONTROL_CHANGE | ch) | (64 << 8));
                 }
             }
         }
@@ -2098,46 +2347,166 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
         }
 
         // playback related methods (pumping)
-        private long getCurrentTimeMillis()
+        // JJazzLab: use a microsecond clock (was milliseconds), so that events are not quantized to the millisecond
+        private long getCurrentTimeMicros()
         {
-            return System.nanoTime() / 1000000l;
+            if (isOffline())
+            {
+                return virtualMicros;
+            }
+            return System.nanoTime() / 1000l;
             //return perf.highResCounter() * 1000 / perfFreq;
         }
 
-        private long millis2tick(long millis)
+        private long micros2tick(long micros)
         {
             if (divisionType != Sequence.PPQ)
             {
-                double dTick = ((((double) millis) * tempoFactor)
+                double dTick = ((((double) micros) * tempoFactor)
                         * ((double) divisionType)
                         * ((double) resolution))
-                        / ((double) 1000);
+                        / ((double) 1000000);
                 return (long) dTick;
             }
-            return MidiUtils.microsec2ticks(millis * 1000,
+            return MidiUtils.microsec2ticks(micros,
                     currTempo * inverseTempoFactor,
                     resolution);
         }
 
-        private long tick2millis(long tick)
+        private long tick2micros(long tick)
         {
             if (divisionType != Sequence.PPQ)
             {
-                double dMillis = ((((double) tick) * 1000)
+                double dMicros = ((((double) tick) * 1000000)
                         / (tempoFactor * ((double) divisionType) * ((double) resolution)));
-                return (long) dMillis;
+                return (long) dMicros;
             }
             return MidiUtils.ticks2microsec(tick,
                     currTempo * inverseTempoFactor,
-                    resolution) / 1000;
+                    resolution);
+        }
+
+        /**
+         * The time of the next event to be dispatched, as computed at the end of the last pump() call.
+         *
+         * @return A time in microseconds (same clock than System.nanoTime()/1000), or -1 if unknown.
+         */
+        long getNextEventMicros()
+        {
+            return nextEventMicros;
+        }
+
+        /**
+         * Compute the time of the next event among all tracks.
+         * <p>
+         * Needs to be called in synchronized state.
+         *
+         * @return -1 if no more event or time can not be computed
+         */
+        private long computeNextEventMicros()
+        {
+            if (checkPointMicros == 0 || needReindex || tracks == null)
+            {
+                return -1;
+            }
+            long nextTick = Long.MAX_VALUE;
+            try
+            {
+                for (int t = 0; t < tracks.length; t++)
+                {
+                    int readPos = trackReadPos[t];
+                    if (readPos < tracks[t].size())
+                    {
+                        nextTick = Math.min(nextTick, tracks[t].get(readPos).getTick());
+                    }
+                }
+            } catch (IndexOutOfBoundsException ex)
+            {
+                // this happens when messages are removed from the track while this method executes
+                return -1;
+            }
+            if ((loopEnd != -1)
+                    && ((loopCount > 0 && currLoopCounter > 0) || (loopCount == LOOP_CONTINUOUSLY))
+                    && lastTick < loopEnd)
+            {
+                // loop point is a deadline too
+                nextTick = Math.min(nextTick, loopEnd - 1);
+            }
+            if (nextTick == Long.MAX_VALUE)
+            {
+                return -1;
+            }
+            // +1 because micros2tick() truncates
+            return checkPointMicros + tick2micros(nextTick - checkPointTick) + 1;
+        }
+
+        /**
+         * The time at which an event should be sent.
+         *
+         * @param tick
+         * @return The current time if tick is before the check point
+         */
+        private long getEventMicros(long tick)
+        {
+            if (checkPointMicros == 0 || tick < checkPointTick)
+            {
+                // chased event or new check point
+                return getCurrentTimeMicros();
+            }
+            return checkPointMicros + tick2micros(tick - checkPointTick);
+        }
+
+        /**
+         * Record the lateness of an event dispatched now.
+         */
+        private void recordLateness(long tick)
+        {
+            if (isOffline() || checkPointMicros == 0 || tick < checkPointTick)
+            {
+                // chased event or new check point
+                return;
+            }
+            latenessHistogram.record(getCurrentTimeMicros() - getEventMicros(tick));
         }
 
         private void ReindexTrack(int trackNum, long tick)
         {
             if (trackNum < trackReadPos.length && trackNum < tracks.length)
             {
-                trackReadPos[trackNum] = MidiUtils.tick2index(tracks[trackNum], tick);
+                TrackIndex index = getTrackIndex(trackNum);
+                if (!index.isValidAt(tick))
+                {
+                    // Track was patched around tick
+                    trackIndexes[trackNum] = null;
+                    index = getTrackIndex(trackNum);
+                }
+                trackReadPos[trackNum] = index.tick2index(tick);
+            }
+        }
+
+        /**
+         * Get the tick index of a track, (re)build it if needed.
+         * <p>
+         * Needs to be called in synchronized state.
+         *
+         * @param trackNum
+         * @return
+         */
+        private TrackIndex getTrackIndex(int trackNum)
+        {
+            if (trackIndexes == null || trackIndexes.length < tracks.length)
+            {
+                trackIndexes = trackIndexes == null ? new TrackIndex[tracks.length] : Arrays.copyOf(trackIndexes, tracks.length);
             }
+            TrackIndex index = trackIndexes[trackNum];
+            if (index == null || index.getTrack() != tracks[trackNum] || !index.isValid())
+            {
+                // Track was modified at runtime
+                long snapshotInterval = divisionType == Sequence.PPQ ? 4L * resolution : Math.max(1, (long) (divisionType * resolution));
+                index = new TrackIndex(tracks[trackNum], Math.max(1, snapshotInterval));
+                trackIndexes[trackNum] = index;
+            }
+            return index;
         }
 
         /* returns if changes are pending */
@@ -2170,12 +2539,16 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                     }
                 }
                 // send to listeners
-                sendMetaEvents(message);
+                if (!isOffline())
+                {
+                    sendMetaEvents(message);
+                }
 
             } else
             {
                 // not meta, send to device
-                getTransmitterList().sendMessage(message, -1);
+                sendEvent(event);
+                recordLateness(event.getTick());
 
                 switch (msgStatus & 0xF0)
                 {
@@ -2207,7 +2580,10 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
 
                     case ShortMessage.CONTROL_CHANGE:
                         // if controller message, send controller listeners
-                        sendControllerEvents(message);
+                        if (!isOffline())
+                        {
+                            sendControllerEvents(message);
+                        }
                         break;
 
                 }
@@ -2222,14 +2598,14 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
          */
         synchronized boolean pump()
         {
-            long currMillis;
+            long currMicros;
             long targetTick = lastTick;
             MidiEvent currEvent;
             boolean changesPending = false;
             boolean doLoop = false;
             boolean EOM = false;
 
-            currMillis = getCurrentTimeMillis();
+            currMicros = getCurrentTimeMicros();
             int finishedTracks = 0;
             do
             {
@@ -2247,21 +2623,21 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                         ReindexTrack(t, targetTick);
                     }
                     needReindex = false;
-                    checkPointMillis = 0;
+                    checkPointMicros = 0;
                 }
 
                 // get target tick from current time in millis
-                if (checkPointMillis == 0)
+                if (checkPointMicros == 0)
                 {
                     // new check point
-                    currMillis = getCurrentTimeMillis();
-                    checkPointMillis = currMillis;
+                    currMicros = getCurrentTimeMicros();
+                    checkPointMicros = currMicros;
                     targetTick = lastTick;
                     checkPointTick = targetTick;
                 } else
                 {
-                    // calculate current tick based on current time in milliseconds
-                    targetTick = checkPointTick + millis2tick(currMillis - checkPointMillis);
+                    // calculate current tick based on current time in microseconds
+                    targetTick = checkPointTick + micros2tick(currMicros - checkPointMicros);
                     if ((loopEnd != -1)
                             && ((loopCount > 0 && currLoopCounter > 0)
                             || (loopCount == LOOP_CONTINUOUSLY)))
@@ -2343,7 +2719,7 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                         && EOM))
                 {
 
-                    long oldCheckPointMillis = checkPointMillis;
+                    long oldCheckPointMicros = checkPointMicros;
                     long loopEndTick = loopEnd;
                     if (loopEndTick == -1)
                     {
@@ -2356,7 +2732,7 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                         currLoopCounter--;
                     }
                     setTickPos(loopStart);
-                    // now patch the checkPointMillis so that
+                    // now patch the checkPointMicros so that
                     // it points to the exact beginning of when the loop was finished
 
                     // $$fb TODO: although this is mathematically correct (i.e. the loop position
@@ -2365,7 +2741,7 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                     //            by the chasing.
 
                     // Jerome JJazzLab: see bug fix on setTickPos+chasing which improves chasing perf. => could reduce this drift?
-                    checkPointMillis = oldCheckPointMillis + tick2millis(loopEndTick - checkPointTick);
+                    checkPointMicros = oldCheckPointMicros + tick2micros(loopEndTick - checkPointTick);
                     checkPointTick = loopStart;
                     // no need for reindexing, is done in setTickPos
                     needReindex = false;
@@ -2376,6 +2752,8 @@ final class JJazzLabSequencer extends AbstractMidiDevice implements Sequencer, A
                 }
             } while (changesPending);
 
+            nextEventMicros = EOM ? -1 : computeNextEventMicros();
+
             return EOM;
         }
     } // class DataPump
@@ -0,0 +1,164 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLab software.
+ *   
+ *  JJazzLab is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLab is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.midi.api.sequencer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size histogram of event dispatch lateness, in microseconds.
+ * <p>
+ * Lateness is the difference between the time a MIDI event is actually sent out by the sequencer and the time it should have been sent according to
+ * its tick position and the current tempo.
+ * <p>
+ * Recording a value does not allocate nor block, so it can be used from the sequencer play thread. Values read while recording is in progress
+ * might be slightly inconsistent with each other.
+ */
+public final class LatenessHistogram
+{
+
+    /**
+     * The width of a bucket in microseconds.
+     */
+    public static final int BUCKET_WIDTH_MICROS = 100;
+    /**
+     * The number of regular buckets. Values greater than or equal to BUCKET_WIDTH_MICROS*NB_BUCKETS go into the overflow bucket.
+     */
+    public static final int NB_BUCKETS = 100;
+    private final AtomicLongArray buckets = new AtomicLongArray(NB_BUCKETS + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Record a lateness value.
+     *
+     * @param latenessMicros Negative values (event sent early) are counted as 0.
+     */
+    public void record(long latenessMicros)
+    {
+        if (latenessMicros < 0)
+        {
+            latenessMicros = 0;
+        }
+        int index = (int) Math.min(latenessMicros / BUCKET_WIDTH_MICROS, NB_BUCKETS);
+        buckets.incrementAndGet(index);
+        count.incrementAndGet();
+        sumMicros.addAndGet(latenessMicros);
+        long max = maxMicros.get();
+        while (latenessMicros > max && !maxMicros.compareAndSet(max, latenessMicros))
+        {
+            max = maxMicros.get();
+        }
+    }
+
+    /**
+     * Clear all recorded values.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < buckets.length(); i++)
+        {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sumMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    /**
+     * @return The number of recorded values
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * @return The highest recorded lateness in microseconds
+     */
+    public long getMaxMicros()
+    {
+        return maxMicros.get();
+    }
+
+    /**
+     * @return The average lateness in microseconds, 0 if no value recorded.
+     */
+    public double getMeanMicros()
+    {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sumMicros.get() / n;
+    }
+
+    /**
+     * Get an upper bound of the lateness for the specified percentile.
+     * <p>
+     * Precision is BUCKET_WIDTH_MICROS. If percentile falls in the overflow bucket, getMaxMicros() is returned.
+     *
+     * @param percentile A value in the ]0;100] range, e.g. 99 for the 99th percentile.
+     * @return 0 if no value recorded.
+     */
+    public long getPercentileMicros(double percentile)
+    {
+        if (percentile <= 0 || percentile > 100)
+        {
+            throw new IllegalArgumentException("percentile=" + percentile);
+        }
+        long n = count.get();
+        if (n == 0)
+        {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(n * percentile / 100);
+        long cumul = 0;
+        for (int i = 0; i < NB_BUCKETS; i++)
+        {
+            cumul += buckets.get(i);
+            if (cumul >= threshold)
+            {
+                return Math.min((long) (i + 1) * BUCKET_WIDTH_MICROS, getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+
+    /**
+     * Get the number of values recorded for a bucket.
+     *
+     * @param index In the [0;NB_BUCKETS] range, NB_BUCKETS being the overflow bucket.
+     * @return
+     */
+    public long getBucketCount(int index)
+    {
+        return buckets.get(index);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("n=%d mean=%.0fus p50=%dus p99=%dus max=%dus",
+                getCount(), getMeanMicros(),
+                getPercentileMicros(50), getPercentileMicros(99), getMaxMicros());
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLab software.
+ *   
+ *  JJazzLab is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLab is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.midi.api.sequencer;
+
+import javax.sound.midi.Receiver;
+
+/**
+ * Interface for Sequencers able to render their sequence faster than real time.
+ */
+public interface OfflineRenderingSequencer
+{
+
+    /**
+     * Play the current sequence from the current tick position into receiver, using a virtual clock instead of the wall clock.
+     * <p>
+     * The same dispatch logic than real-time playback is used (mute/solo, loop points and loop count, tempo factor, tempo changes, controller
+     * chasing), so messages are sent in the same order. Each message is sent with its computed timestamp in microseconds, relative to the start of
+     * the rendering. Meta messages are not sent to the receiver, and meta/controller event listeners are not notified.
+     * <p>
+     * The method returns when the end of the sequence is reached. Sequencer state (position, running, etc.) is not changed.
+     *
+     * @param receiver
+     * @return The rendered duration in microseconds
+     * @throws IllegalStateException If sequence is not set, if sequencer is running, or if loop count is Sequencer.LOOP_CONTINUOUSLY
+     */
+    long renderOffline(Receiver receiver);
+}
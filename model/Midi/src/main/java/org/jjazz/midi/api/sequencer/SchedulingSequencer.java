@@ -0,0 +1,66 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLab software.
+ *   
+ *  JJazzLab is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLab is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.midi.api.sequencer;
+
+/**
+ * Interface for Sequencers which let the user choose how the play thread waits between MIDI events, and which measure the event dispatch
+ * lateness.
+ */
+public interface SchedulingSequencer
+{
+
+    /**
+     * System property to set the initial SchedulerMode, e.g. "-DSequencerSchedulerMode=DEADLINE". Default is FIXED_SLEEP.
+     */
+    public static final String SYSTEM_PROP_SCHEDULER_MODE = "SequencerSchedulerMode";
+
+    /**
+     * How the play thread waits between 2 pump cycles.
+     */
+    public enum SchedulerMode
+    {
+        /**
+         * Pump events then sleep 1ms, in a loop. Lateness depends on the OS sleep granularity.
+         */
+        FIXED_SLEEP,
+        /**
+         * Park the play thread until just before the next event deadline, then spin until the deadline.
+         * <p>
+         * Lower lateness but the spin-wait before each event uses more CPU, so this mode must be explicitly enabled.
+         */
+        DEADLINE
+    }
+
+    void setSchedulerMode(SchedulerMode mode);
+
+    SchedulerMode getSchedulerMode();
+
+    /**
+     * The lateness of each dispatched MIDI event.
+     * <p>
+     * The histogram is not reset by the sequencer, caller is responsible for calling LatenessHistogram.reset() when appropriate.
+     *
+     * @return
+     */
+    LatenessHistogram getLatenessHistogram();
+}
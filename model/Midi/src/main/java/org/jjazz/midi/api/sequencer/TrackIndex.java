@@ -0,0 +1,332 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLab software.
+ *   
+ *  JJazzLab is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLab is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.midi.api.sequencer;
+
+import java.util.Arrays;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+/**
+ * A compact tick index of a Track, with periodic snapshots of the controller and program change state.
+ * <p>
+ * Used by the sequencer to seek, restart a loop or chase events with one binary search plus one snapshot replay, instead of scanning the track
+ * from the beginning.
+ * <p>
+ * The index is built from the track content at construction time. Tracks can be modified while sequencer is running: use isValid() to check
+ * that the index is still consistent with the track.
+ */
+final class TrackIndex
+{
+
+    private final Track track;
+    private final MidiEvent[] events;
+    private final long[] ticks;
+    /**
+     * Snapshots are taken every snapshotInterval ticks.
+     */
+    private final long snapshotInterval;
+    /**
+     * snapshots[k]=controller and program state before tick k*snapshotInterval, as packed ShortMessages.
+     */
+    private final int[][] snapshots;
+    /**
+     * snapshotEventIndex[k]=index of the first event whose tick &gt;= k*snapshotInterval.
+     */
+    private final int[] snapshotEventIndex;
+
+    /**
+     * Build the index.
+     *
+     * @param track
+     * @param snapshotInterval In ticks, typically the size of a bar. Must be &gt; 0.
+     */
+    TrackIndex(Track track, long snapshotInterval)
+    {
+        if (track == null || snapshotInterval <= 0)
+        {
+            throw new IllegalArgumentException("track=" + track + " snapshotInterval=" + snapshotInterval);
+        }
+        this.track = track;
+        this.snapshotInterval = snapshotInterval;
+
+        // Track methods are synchronized on the track instance: lock it to get a consistent copy
+        synchronized (track)
+        {
+            int size = track.size();
+            events = new MidiEvent[size];
+            ticks = new long[size];
+            for (int i = 0; i < size; i++)
+            {
+                events[i] = track.get(i);
+                ticks[i] = events[i].getTick();
+            }
+        }
+
+        int nbSnapshots = (ticks.length == 0 ? 0 : (int) (ticks[ticks.length - 1] / snapshotInterval)) + 1;
+        snapshots = new int[nbSnapshots][];
+        snapshotEventIndex = new int[nbSnapshots];
+        buildSnapshots();
+    }
+
+    Track getTrack()
+    {
+        return track;
+    }
+
+    int size()
+    {
+        return events.length;
+    }
+
+    long getTick(int index)
+    {
+        return ticks[index];
+    }
+
+    /**
+     * Check that the track was not modified since this index was built.
+     * <p>
+     * This is a quick heuristic check (size and identity of a few events), not a full comparison. It works well with JJazzLab tracks which are
+     * cleared and refilled with new MidiEvent instances when updated.
+     *
+     * @return
+     */
+    boolean isValid()
+    {
+        try
+        {
+            synchronized (track)
+            {
+                int size = track.size();
+                if (size != events.length)
+                {
+                    return false;
+                }
+                return size == 0
+                        || (track.get(0) == events[0]
+                        && track.get(size / 2) == events[size / 2]
+                        && track.get(size - 1) == events[size - 1]);
+            }
+        } catch (IndexOutOfBoundsException ex)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Check that the events around the specified tick were not modified since this index was built.
+     * <p>
+     * Complements isValid() for tracks which are patched in place: a patch may keep the track size and the events checked by isValid().
+     *
+     * @param tick
+     * @return
+     */
+    boolean isValidAt(long tick)
+    {
+        int index = tick2index(tick);
+        try
+        {
+            synchronized (track)
+            {
+                if (track.size() != events.length)
+                {
+                    return false;
+                }
+                for (int i = Math.max(0, index - 1); i <= index && i < events.length; i++)
+                {
+                    if (track.get(i) != events[i])
+                    {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        } catch (IndexOutOfBoundsException ex)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * The index of the first event whose tick is &gt;= tick.
+     *
+     * @param tick
+     * @return size() if there is no such event
+     */
+    int tick2index(long tick)
+    {
+        int low = 0;
+        int high = ticks.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (ticks[mid] < tick)
+            {
+                low = mid + 1;
+            } else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Update the controller and program states with the events in the [startTick;endTick[ range.
+     * <p>
+     * If startTick is 0, the last snapshot before endTick is used, then only the events between the snapshot and endTick are replayed.
+     *
+     * @param startTick
+     * @param endTick
+     * @param controllers A byte[128][16] array, controllers[controller][channel]=value
+     * @param progs       A byte[16] array, progs[channel]=program
+     */
+    void chase(long startTick, long endTick, byte[][] controllers, byte[] progs)
+    {
+        if (startTick >= endTick || events.length == 0)
+        {
+            return;
+        }
+        int from;
+        if (startTick == 0)
+        {
+            int k = (int) Math.min((endTick - 1) / snapshotInterval, snapshots.length - 1);
+            int[] snapshot = snapshots[k];
+            for (int packedMsg : snapshot)
+            {
+                apply(packedMsg, controllers, progs);
+            }
+            from = snapshotEventIndex[k];
+        } else
+        {
+            from = tick2index(startTick);
+        }
+        for (int i = from; i < events.length && ticks[i] < endTick; i++)
+        {
+            apply(events[i].getMessage(), controllers, progs);
+        }
+    }
+
+    // ============================================================================================
+    // Private methods
+    // ============================================================================================
+    private void buildSnapshots()
+    {
+        byte[][] controllers = new byte[128][16];
+        byte[] progs = new byte[16];
+        for (byte[] b : controllers)
+        {
+            Arrays.fill(b, (byte) -1);
+        }
+        Arrays.fill(progs, (byte) -1);
+
+        int i = 0;
+        for (int k = 0; k < snapshots.length; k++)
+        {
+            long snapshotTick = k * snapshotInterval;
+            while (i < events.length && ticks[i] < snapshotTick)
+            {
+                apply(events[i].getMessage(), controllers, progs);
+                i++;
+            }
+            snapshots[k] = pack(controllers, progs);
+            snapshotEventIndex[k] = i;
+        }
+    }
+
+    /**
+     * Pack the controller and program states, controllers first.
+     */
+    private static int[] pack(byte[][] controllers, byte[] progs)
+    {
+        int n = 0;
+        int[] res = new int[16];
+        for (int ch = 0; ch < 16; ch++)
+        {
+            for (int co = 0; co < 128; co++)
+            {
+                if (controllers[co][ch] >= 0)
+                {
+                    if (n == res.length)
+                    {
+                        res = Arrays.copyOf(res, 2 * n);
+                    }
+                    res[n++] = (ShortMessage.CONTROL_CHANGE | ch) | (co << 8) | (controllers[co][ch] << 16);
+                }
+            }
+        }
+        for (int ch = 0; ch < 16; ch++)
+        {
+            if (progs[ch] >= 0)
+            {
+                if (n == res.length)
+                {
+                    res = Arrays.copyOf(res, 2 * n);
+                }
+                res[n++] = (ShortMessage.PROGRAM_CHANGE | ch) | (progs[ch] << 8);
+            }
+        }
+        return Arrays.copyOf(res, n);
+    }
+
+    private static void apply(int packedMsg, byte[][] controllers, byte[] progs)
+    {
+        int status = packedMsg & 0xFF;
+        if ((status & 0xF0) == ShortMessage.CONTROL_CHANGE)
+        {
+            controllers[(packedMsg >> 8) & 0x7F][status & 0x0F] = (byte) ((packedMsg >> 16) & 0x7F);
+        } else
+        {
+            progs[status & 0x0F] = (byte) ((packedMsg >> 8) & 0x7F);
+        }
+    }
+
+    private static void apply(MidiMessage msg, byte[][] controllers, byte[] progs)
+    {
+        int status = msg.getStatus();
+        int len = msg.getLength();
+        if (len == 3 && ((status & 0xF0) == ShortMessage.CONTROL_CHANGE))
+        {
+            if (msg instanceof ShortMessage smsg)
+            {
+                controllers[smsg.getData1() & 0x7F][status & 0x0F] = (byte) smsg.getData2();
+            } else
+            {
+                byte[] data = msg.getMessage();
+                controllers[data[1] & 0x7F][status & 0x0F] = data[2];
+            }
+        } else if (len == 2 && ((status & 0xF0) == ShortMessage.PROGRAM_CHANGE))
+        {
+            if (msg instanceof ShortMessage smsg)
+            {
+                progs[status & 0x0F] = (byte) smsg.getData1();
+            } else
+            {
+                byte[] data = msg.getMessage();
+                progs[status & 0x0F] = data[1];
+            }
+        }
+    }
+}
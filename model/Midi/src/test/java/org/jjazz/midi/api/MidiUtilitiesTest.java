@@ -0,0 +1,186 @@
+/*
+ * 
+ *   DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *  
+ *   Copyright @2019 Jerome Lelasseux. All rights reserved.
+ * 
+ *   This file is part of the JJazzLab software.
+ *    
+ *   JJazzLab is free software: you can redistribute it and/or modify
+ *   it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *   as published by the Free Software Foundation, either version 3 of the License, 
+ *   or (at your option) any later version.
+ * 
+ *   JJazzLab is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *  
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ *  
+ *   Contributor(s): 
+ * 
+ */
+package org.jjazz.midi.api;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the MidiUtilities MidiEvent list methods.
+ */
+public class MidiUtilitiesTest
+{
+
+    @Test
+    public void testMergeSortedEventsEmptyInputs() throws InvalidMidiDataException
+    {
+        Assertions.assertTrue(MidiUtilities.mergeSortedEvents(List.of()).isEmpty());
+        Assertions.assertTrue(MidiUtilities.mergeSortedEvents(List.of(List.of(), List.of())).isEmpty());
+
+        var me = noteOn(0, 10);
+        var res = MidiUtilities.mergeSortedEvents(List.of(List.of(), List.of(me), List.of()));
+        Assertions.assertEquals(1, res.size());
+        Assertions.assertSame(me, res.get(0));
+    }
+
+    /**
+     * Events with the same tick must be ordered by list index, then by their order in their list.
+     */
+    @Test
+    public void testMergeSortedEventsStableWithEqualTicks() throws InvalidMidiDataException
+    {
+        var a0 = noteOn(0, 0);
+        var a1 = noteOn(1, 0);
+        var a2 = noteOn(2, 5);
+        var b0 = noteOn(3, 0);
+        var b1 = noteOn(4, 5);
+        var b2 = noteOn(5, 5);
+        var c0 = noteOn(6, 0);
+
+        var res = MidiUtilities.mergeSortedEvents(List.of(List.of(a0, a1, a2), List.of(b0, b1, b2), List.of(c0)));
+
+        assertSameEvents(List.of(a0, a1, b0, c0, a2, b1, b2), res);
+    }
+
+    /**
+     * Adding the merged events must give the same Track than adding each list one after the other, notably for the events at tick 0 (e.g. the
+     * meta/controller events which must precede the notes).
+     */
+    @Test
+    public void testMergeSortedEventsSameAsTrackAdd() throws InvalidMidiDataException
+    {
+        Random rnd = new Random(496);
+        List<List<MidiEvent>> lists = new ArrayList<>();
+        int data1 = 0;
+        for (int i = 0; i < 10; i++)
+        {
+            List<MidiEvent> list = new ArrayList<>();
+            long tick = 0;
+            for (int j = 0; j < 200; j++)
+            {
+                list.add(noteOn(data1++ % 128, tick));
+                tick += rnd.nextInt(3) * 240;       // Many equal ticks, including tick 0
+            }
+            lists.add(list);
+        }
+        var meta = new MidiEvent(new MetaMessage(0x03, new byte[]
+        {
+            'T'
+        }, 1), 0);
+        lists.add(0, List.of(meta));
+
+
+        Track track1 = new Sequence(Sequence.PPQ, 480).createTrack();
+        lists.forEach(list -> list.forEach(me -> track1.add(me)));
+
+        Track track2 = new Sequence(Sequence.PPQ, 480).createTrack();
+        MidiUtilities.addSortedEvents(track2, MidiUtilities.mergeSortedEvents(lists));
+
+        Assertions.assertEquals(track1.size(), track2.size());
+        for (int i = 0; i < track1.size(); i++)
+        {
+            Assertions.assertEquals(track1.get(i).getTick(), track2.get(i).getTick(), "i=" + i);
+            if (!(track1.get(i).getMessage() instanceof MetaMessage mm && mm.getType() == MidiConst.META_END_OF_TRACK))
+            {
+                Assertions.assertSame(track1.get(i), track2.get(i), "i=" + i);
+            }
+        }
+        Assertions.assertSame(meta, track2.get(0));
+    }
+
+    @Test
+    public void testMergeSortedEventsUnsortedInput() throws InvalidMidiDataException
+    {
+        var a0 = noteOn(0, 10);
+        var a1 = noteOn(1, 0);
+        var a2 = noteOn(2, 10);
+        var b0 = noteOn(3, 10);
+        List<MidiEvent> unsorted = new ArrayList<>(List.of(a0, a1, a2));
+
+        var res = MidiUtilities.mergeSortedEvents(List.of(unsorted, List.of(b0)));
+
+        assertSameEvents(List.of(a1, a0, a2, b0), res);
+        assertSameEvents(List.of(a0, a1, a2), unsorted);       // Input list is not modified
+    }
+
+    @Test
+    public void testClearTrack() throws InvalidMidiDataException
+    {
+        Track track = new Sequence(Sequence.PPQ, 480).createTrack();
+        for (int i = 0; i < 100; i++)
+        {
+            track.add(noteOn(i, 10 * i));
+        }
+        MidiUtilities.setEndOfTrackPosition(track, 2000);
+
+        MidiUtilities.clearTrack(track);
+
+        Assertions.assertEquals(1, track.size());
+        Assertions.assertTrue(track.get(0).getMessage() instanceof MetaMessage mm && mm.getType() == MidiConst.META_END_OF_TRACK);
+        Assertions.assertEquals(2000, track.get(0).getTick());
+    }
+
+    @Test
+    public void testIsSortedByTick() throws InvalidMidiDataException
+    {
+        Assertions.assertTrue(MidiUtilities.isSortedByTick(List.of()));
+        Assertions.assertTrue(MidiUtilities.isSortedByTick(List.of(noteOn(0, 5))));
+        Assertions.assertTrue(MidiUtilities.isSortedByTick(List.of(noteOn(0, 0), noteOn(1, 0), noteOn(2, 3), noteOn(3, 3))));
+        Assertions.assertFalse(MidiUtilities.isSortedByTick(List.of(noteOn(0, 0), noteOn(1, 3), noteOn(2, 2))));
+
+        List<MidiEvent> events = new ArrayList<>(List.of(noteOn(0, 7), noteOn(1, 2), noteOn(2, 7)));
+        Assertions.assertFalse(MidiUtilities.isSortedByTick(events));
+        events.sort(Comparator.comparingLong(MidiEvent::getTick));
+        Assertions.assertTrue(MidiUtilities.isSortedByTick(events));
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+
+    private MidiEvent noteOn(int pitch, long tick) throws InvalidMidiDataException
+    {
+        return new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, pitch, 64), tick);
+    }
+
+    private void assertSameEvents(List<MidiEvent> expected, List<MidiEvent> actual)
+    {
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+        {
+            Assertions.assertSame(expected.get(i), actual.get(i), "i=" + i);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * 
+ *   DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *  
+ *   Copyright @2019 Jerome Lelasseux. All rights reserved.
+ * 
+ *   This file is part of the JJazzLab software.
+ *    
+ *   JJazzLab is free software: you can redistribute it and/or modify
+ *   it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *   as published by the Free Software Foundation, either version 3 of the License, 
+ *   or (at your option) any later version.
+ * 
+ *   JJazzLab is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *  
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ *  
+ *   Contributor(s): 
+ * 
+ */
+package org.jjazz.midi.api.device;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for ChannelRerouter.
+ */
+public class ChannelRerouterTest
+{
+
+    @Test
+    public void testGetRerouting()
+    {
+        ChannelRerouter rerouter = new ChannelRerouter();
+        Assertions.assertEquals(-1, rerouter.getRerouting(1));
+
+        rerouter.addRerouting(1, 9);
+        rerouter.addRerouting(1, 10);       // First registered rerouting wins
+        Assertions.assertEquals(9, rerouter.getRerouting(1));
+        Assertions.assertEquals(-1, rerouter.getRerouting(2));
+
+        rerouter.clearReroutings();
+        Assertions.assertEquals(-1, rerouter.getRerouting(1));
+    }
+
+    @Test
+    public void testGetReroutingOutOfRange()
+    {
+        ChannelRerouter rerouter = new ChannelRerouter();
+        rerouter.addRerouting(15, 9);
+        Assertions.assertEquals(9, rerouter.getRerouting(15));
+        Assertions.assertEquals(-1, rerouter.getRerouting(-1));
+        Assertions.assertEquals(-1, rerouter.getRerouting(16));
+        Assertions.assertEquals(-1, rerouter.getRerouting(Integer.MAX_VALUE));
+    }
+}
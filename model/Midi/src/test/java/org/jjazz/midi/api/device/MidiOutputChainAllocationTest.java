@@ -0,0 +1,127 @@
+/*
+ * 
+ *   DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *  
+ *   Copyright @2019 Jerome Lelasseux. All rights reserved.
+ * 
+ *   This file is part of the JJazzLab software.
+ *    
+ *   JJazzLab is free software: you can redistribute it and/or modify
+ *   it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *   as published by the Free Software Foundation, either version 3 of the License, 
+ *   or (at your option) any later version.
+ * 
+ *   JJazzLab is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *  
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ *  
+ *   Contributor(s): 
+ * 
+ */
+package org.jjazz.midi.api.device;
+
+import java.lang.management.ManagementFactory;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Check that forwarding notes through MidiFilter, ChannelRerouter and MidiChannelDispatcher does not allocate.
+ */
+public class MidiOutputChainAllocationTest
+{
+
+    private static final int NB_WARMUP_NOTES = 50000;
+    private static final int NB_NOTES = 100000;
+    private Receiver chainInput;
+    private CountingReceiver output;
+
+    @BeforeEach
+    public void setUp()
+    {
+        MidiFilter filter = new MidiFilter("test filter");
+        ChannelRerouter rerouter = new ChannelRerouter();
+        rerouter.addRerouting(1, 2);
+        MidiChannelDispatcher dispatcher = new MidiChannelDispatcher();
+
+        filter.getTransmitter().setReceiver(rerouter.getReceiver());
+        rerouter.getTransmitter().setReceiver(dispatcher.getReceiver());
+        output = new CountingReceiver();
+        dispatcher.getTransmitter(0).setReceiver(output);
+        dispatcher.getTransmitter(2).setReceiver(output);
+
+        chainInput = filter.getReceiver();
+    }
+
+    @Test
+    public void testNoAllocationPerForwardedNote() throws InvalidMidiDataException
+    {
+        var threadBean = ManagementFactory.getThreadMXBean();
+        Assertions.assertTrue(threadBean instanceof com.sun.management.ThreadMXBean, "Allocation measurement not supported by this JVM");
+        var sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+        long threadId = Thread.currentThread().threadId();
+
+
+        ShortMessage noteOn0 = new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100);
+        ShortMessage noteOff0 = new ShortMessage(ShortMessage.NOTE_OFF, 0, 60, 0);
+        ShortMessage noteOn1 = new ShortMessage(ShortMessage.NOTE_ON, 1, 64, 100);       // rerouted
+        ShortMessage noteOff1 = new ShortMessage(ShortMessage.NOTE_OFF, 1, 64, 0);
+
+
+        // Steady state
+        sendNotes(NB_WARMUP_NOTES, noteOn0, noteOff0, noteOn1, noteOff1);
+        output.count = 0;
+
+
+        long before = sunThreadBean.getThreadAllocatedBytes(threadId);
+        sendNotes(NB_NOTES, noteOn0, noteOff0, noteOn1, noteOff1);
+        long allocated = sunThreadBean.getThreadAllocatedBytes(threadId) - before;
+
+
+        Assertions.assertEquals(4 * NB_NOTES, output.count);
+        Assertions.assertEquals(2, output.lastChannel, "Rerouting failed");
+        Assertions.assertEquals(1, noteOff1.getChannel(), "Original message must not be modified");
+
+        // Tolerate a few bytes for the measurement itself
+        double bytesPerNote = (double) allocated / NB_NOTES;
+        Assertions.assertTrue(bytesPerNote < 1, "allocated=" + allocated + " bytesPerNote=" + bytesPerNote);
+    }
+
+    private void sendNotes(int nbNotes, ShortMessage... msgs)
+    {
+        for (int i = 0; i < nbNotes; i++)
+        {
+            for (var sm : msgs)
+            {
+                chainInput.send(sm, -1);
+            }
+        }
+    }
+
+    private static class CountingReceiver implements Receiver
+    {
+
+        int count;
+        int lastChannel;
+
+        @Override
+        public void send(MidiMessage msg, long timeStamp)
+        {
+            count++;
+            lastChannel = ((ShortMessage) msg).getChannel();
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * 
+ *   DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *  
+ *   Copyright @2019 Jerome Lelasseux. All rights reserved.
+ * 
+ *   This file is part of the JJazzLab software.
+ *    
+ *   JJazzLab is free software: you can redistribute it and/or modify
+ *   it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *   as published by the Free Software Foundation, either version 3 of the License, 
+ *   or (at your option) any later version.
+ * 
+ *   JJazzLab is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *  
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ *  
+ *   Contributor(s): 
+ * 
+ */
+package org.jjazz.midi.api.sequencer;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sound.midi.ControllerEventListener;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaEventListener;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.ShortMessage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Check that the EventDispatcher ring buffer can be shared by several producer threads, e.g. 2 sequencers in the same ThreadGroup, and that
+ * MetaMessages are never dropped.
+ */
+public class EventDispatcherTest
+{
+
+    private static final int NB_PRODUCERS = 4;
+    private static final int NB_EVENTS_PER_PRODUCER = 20000;
+    private static final int META_TYPE = 0x7F;
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException
+    {
+        EventDispatcher dispatcher = new EventDispatcher();
+        int[] lastSeq = new int[NB_PRODUCERS];
+        AtomicInteger nbReceived = new AtomicInteger();
+        AtomicInteger nbErrors = new AtomicInteger();
+        MetaEventListener listener = mm -> 
+        {
+            // Only called by the dispatcher thread
+            byte[] data = mm.getData();
+            int producer = data[0];
+            int seq = ((data[1] & 0xFF) << 8) | (data[2] & 0xFF);
+            if (mm.getType() != META_TYPE || producer < 0 || producer >= NB_PRODUCERS || seq <= lastSeq[producer])
+            {
+                nbErrors.incrementAndGet();
+            } else
+            {
+                lastSeq[producer] = seq;
+            }
+            nbReceived.incrementAndGet();
+        };
+        List<Object> listeners = List.of(listener);
+
+
+        CountDownLatch startLatch = new CountDownLatch(1);
+        Thread[] producers = new Thread[NB_PRODUCERS];
+        for (int i = 0; i < NB_PRODUCERS; i++)
+        {
+            final int producer = i;
+            producers[i] = new Thread(() -> 
+            {
+                try
+                {
+                    startLatch.await();
+                    for (int seq = 1; seq <= NB_EVENTS_PER_PRODUCER; seq++)
+                    {
+                        byte[] data = new byte[]
+                        {
+                            (byte) producer, (byte) (seq >> 8), (byte) seq
+                        };
+                        dispatcher.sendAudioEvents(new MetaMessage(META_TYPE, data, data.length), listeners);
+                    }
+                } catch (InterruptedException | InvalidMidiDataException ex)
+                {
+                    nbErrors.incrementAndGet();
+                }
+            });
+            producers[i].start();
+        }
+        startLatch.countDown();
+        for (Thread t : producers)
+        {
+            t.join();
+        }
+
+
+        // Wait for the dispatcher thread to process the remaining events
+        int nbExpected = NB_PRODUCERS * NB_EVENTS_PER_PRODUCER;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (nbReceived.get() < nbExpected && System.nanoTime() < deadline)
+        {
+            Thread.sleep(10);
+        }
+
+        Assertions.assertEquals(0, nbErrors.get(), "Corrupted, duplicated or out of order events");
+        Assertions.assertEquals(nbExpected, nbReceived.get());
+        Assertions.assertEquals(0, dispatcher.getNbDroppedEvents());
+    }
+
+    /**
+     * Fill the ring buffer with controller events while the dispatcher thread is blocked: controller events can be dropped, but not the
+     * META_END_OF_TRACK which follows.
+     */
+    @Test
+    public void testEndOfTrackNotDroppedWhenRingIsFull() throws InterruptedException, InvalidMidiDataException
+    {
+        EventDispatcher dispatcher = new EventDispatcher();
+        CountDownLatch blockLatch = new CountDownLatch(1);
+        CountDownLatch blockedLatch = new CountDownLatch(1);
+        CountDownLatch eotLatch = new CountDownLatch(1);
+        AtomicInteger nbControllerEvents = new AtomicInteger();
+        AtomicInteger nbAfterEot = new AtomicInteger();
+
+
+        // Block the dispatcher thread on the first event
+        MetaEventListener blockingListener = mm -> 
+        {
+            blockedLatch.countDown();
+            try
+            {
+                blockLatch.await();
+            } catch (InterruptedException ex)
+            {
+                // Nothing
+            }
+        };
+        dispatcher.sendAudioEvents(new MetaMessage(META_TYPE, new byte[0], 0), List.of(blockingListener));
+        Assertions.assertTrue(blockedLatch.await(5, TimeUnit.SECONDS));
+
+
+        // Fill the ring buffer, then post the end of track
+        ControllerEventListener ctlListener = sm -> 
+        {
+            if (eotLatch.getCount() == 0)
+            {
+                nbAfterEot.incrementAndGet();
+            }
+            nbControllerEvents.incrementAndGet();
+        };
+        int nbPosted = 3000;
+        for (int i = 0; i < nbPosted; i++)
+        {
+            dispatcher.sendAudioEvents(new ShortMessage(ShortMessage.CONTROL_CHANGE, 0, 7, i % 128), List.of(ctlListener));
+        }
+        MetaEventListener eotListener = mm -> 
+        {
+            if (mm.getType() == 47)
+            {
+                eotLatch.countDown();
+            }
+        };
+        dispatcher.sendAudioEvents(new MetaMessage(47, new byte[0], 0), List.of(eotListener));
+        Assertions.assertTrue(dispatcher.getNbDroppedEvents() > 0, "Ring buffer was expected to be full");
+
+
+        // Unblock the dispatcher
+        blockLatch.countDown();
+        Assertions.assertTrue(eotLatch.await(5, TimeUnit.SECONDS), "END_OF_TRACK was not dispatched");
+        Assertions.assertEquals(nbPosted, nbControllerEvents.get() + dispatcher.getNbDroppedEvents());
+        Assertions.assertEquals(0, nbAfterEot.get(), "END_OF_TRACK dispatched before previous events");
+    }
+}
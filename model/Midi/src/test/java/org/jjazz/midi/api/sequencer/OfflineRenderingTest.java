@@ -0,0 +1,291 @@
+/*
+ * 
+ *   DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *  
+ *   Copyright @2019 Jerome Lelasseux. All rights reserved.
+ * 
+ *   This file is part of the JJazzLab software.
+ *    
+ *   JJazzLab is free software: you can redistribute it and/or modify
+ *   it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *   as published by the Free Software Foundation, either version 3 of the License, 
+ *   or (at your option) any later version.
+ * 
+ *   JJazzLab is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *  
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ *  
+ *   Contributor(s): 
+ * 
+ */
+package org.jjazz.midi.api.sequencer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Check that JJazzLabSequencer.renderOffline() dispatches the same messages in the same order than real-time playback.
+ * <p>
+ * Each test plays a short sequence (about 1s) in real time.
+ */
+public class OfflineRenderingTest
+{
+
+    private static final int RESOLUTION = 96;
+    private static final int NB_BEATS = 8;
+    private static final int TEMPO_CHANGE_BEAT = 4;
+    private static final int MPQ_START = 100000;      // 600 bpm
+    private static final int MPQ_END = 200000;        // 300 bpm
+    private static final int META_END_OF_TRACK = 47;
+    private static final int META_TEMPO = 81;
+
+    @Test
+    public void testSameEventsAsRealTime() throws Exception
+    {
+        Sequence sequence = buildSequence();
+        RecordingReceiver realTime = playRealTime(sequence, 0, -1, -1, 0, 1f, false);
+        RecordingReceiver offline = renderOffline(sequence, 0, -1, -1, 0, 1f, false);
+
+        Assertions.assertTrue(realTime.size() > 0);
+        Assertions.assertEquals(realTime.packedMessages, offline.packedMessages);
+    }
+
+    @Test
+    public void testSameEventsAsRealTimeWithLoopMuteChase() throws Exception
+    {
+        Sequence sequence = buildSequence();
+        RecordingReceiver realTime = playRealTime(sequence, 2 * RESOLUTION + 10, RESOLUTION, 6 * RESOLUTION, 1, 2f, true);
+        RecordingReceiver offline = renderOffline(sequence, 2 * RESOLUTION + 10, RESOLUTION, 6 * RESOLUTION, 1, 2f, true);
+
+        Assertions.assertTrue(realTime.size() > 0);
+        Assertions.assertEquals(realTime.packedMessages, offline.packedMessages);
+    }
+
+    @Test
+    public void testOfflineTimestamps() throws Exception
+    {
+        Sequence sequence = buildSequence();
+        RecordingReceiver offline = renderOffline(sequence, 0, -1, -1, 0, 1f, false);
+
+        // Each sequence note is unique: check its timestamp against its tick
+        int nbNotes = 0;
+        long lastTimeStamp = 0;
+        for (int i = 0; i < offline.size(); i++)
+        {
+            long timeStamp = offline.timeStamps.get(i);
+            Assertions.assertTrue(timeStamp >= lastTimeStamp, "i=" + i + " timeStamp=" + timeStamp + " lastTimeStamp=" + lastTimeStamp);
+            lastTimeStamp = timeStamp;
+
+            int packed = offline.packedMessages.get(i);
+            long tick = getTick(sequence, packed);
+            if (tick >= 0 && (packed & 0xF0) == ShortMessage.NOTE_ON)
+            {
+                long expected = tickToMicros(tick);
+                Assertions.assertTrue(Math.abs(timeStamp - expected) <= 5, "tick=" + tick + " timeStamp=" + timeStamp + " expected=" + expected);
+                nbNotes++;
+            }
+        }
+        Assertions.assertEquals(3 * NB_BEATS, nbNotes);
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    private RecordingReceiver playRealTime(Sequence sequence, long startTick, long loopStart, long loopEnd, int loopCount, float tempoFactor,
+            boolean muteTrack1) throws Exception
+    {
+        RecordingReceiver receiver = new RecordingReceiver();
+        JJazzLabSequencer sequencer = new JJazzLabSequencer();
+        CountDownLatch endLatch = new CountDownLatch(1);
+        try
+        {
+            sequencer.open();
+            sequencer.addMetaEventListener(mm ->
+            {
+                if (mm.getType() == META_END_OF_TRACK)
+                {
+                    endLatch.countDown();
+                }
+            });
+            setup(sequencer, sequence, loopStart, loopEnd, loopCount, tempoFactor, muteTrack1);
+            sequencer.getTransmitter().setReceiver(receiver);
+            sequencer.setTickPosition(startTick);       // Might chase events
+            sequencer.start();
+            Assertions.assertTrue(endLatch.await(10, TimeUnit.SECONDS));
+            sequencer.stop();
+        } finally
+        {
+            sequencer.close();
+        }
+        return receiver;
+    }
+
+    private RecordingReceiver renderOffline(Sequence sequence, long startTick, long loopStart, long loopEnd, int loopCount, float tempoFactor,
+            boolean muteTrack1) throws Exception
+    {
+        RecordingReceiver receiver = new RecordingReceiver();
+        JJazzLabSequencer sequencer = new JJazzLabSequencer();
+        try
+        {
+            sequencer.open();
+            setup(sequencer, sequence, loopStart, loopEnd, loopCount, tempoFactor, muteTrack1);
+            sequencer.setTickPosition(startTick);
+            sequencer.renderOffline(receiver);
+        } finally
+        {
+            sequencer.close();
+        }
+        return receiver;
+    }
+
+    private void setup(JJazzLabSequencer sequencer, Sequence sequence, long loopStart, long loopEnd, int loopCount, float tempoFactor,
+            boolean muteTrack1) throws InvalidMidiDataException
+    {
+        sequencer.setSequence(sequence);
+        if (loopStart >= 0)
+        {
+            sequencer.setLoopStartPoint(loopStart);
+            sequencer.setLoopEndPoint(loopEnd);
+        }
+        sequencer.setLoopCount(loopCount);
+        sequencer.setTempoFactor(tempoFactor);
+        sequencer.setTrackMute(1, muteTrack1);
+    }
+
+    /**
+     * Track 0: tempo changes, program change, a note every half beat, volume changes.<br>
+     * Track 1: a note every beat, a pan change. <br>
+     * Each note uses a unique pitch.
+     */
+    private Sequence buildSequence() throws InvalidMidiDataException
+    {
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        long tickLength = NB_BEATS * RESOLUTION;
+
+        Track track0 = sequence.createTrack();
+        track0.add(new MidiEvent(makeTempo(MPQ_START), 0));
+        track0.add(new MidiEvent(makeTempo(MPQ_END), TEMPO_CHANGE_BEAT * RESOLUTION));
+        track0.add(new MidiEvent(new ShortMessage(ShortMessage.PROGRAM_CHANGE, 0, 5, 0), 0));
+        for (int i = 0; i < 2 * NB_BEATS; i++)
+        {
+            long tick = i * RESOLUTION / 2;
+            track0.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, 30 + i, 100), tick));
+            track0.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, 30 + i, 0), tick + RESOLUTION / 4));
+            if (i % 3 == 0)
+            {
+                track0.add(new MidiEvent(new ShortMessage(ShortMessage.CONTROL_CHANGE, 0, 7, 50 + i), tick));
+            }
+        }
+        track0.add(new MidiEvent(makeEndOfTrack(), tickLength));
+
+        Track track1 = sequence.createTrack();
+        track1.add(new MidiEvent(new ShortMessage(ShortMessage.CONTROL_CHANGE, 1, 10, 20), RESOLUTION));
+        for (int i = 0; i < NB_BEATS; i++)
+        {
+            long tick = i * RESOLUTION;
+            track1.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 1, 70 + i, 90), tick));
+            track1.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 1, 70 + i, 0), tick + RESOLUTION - 1));
+        }
+        track1.add(new MidiEvent(makeEndOfTrack(), tickLength));
+
+        return sequence;
+    }
+
+    private MetaMessage makeTempo(int mpq) throws InvalidMidiDataException
+    {
+        byte[] data = new byte[]
+        {
+            (byte) (mpq >> 16), (byte) (mpq >> 8), (byte) mpq
+        };
+        return new MetaMessage(META_TEMPO, data, 3);
+    }
+
+    private MetaMessage makeEndOfTrack() throws InvalidMidiDataException
+    {
+        return new MetaMessage(META_END_OF_TRACK, new byte[0], 0);
+    }
+
+    /**
+     * @return The tick of the sequence ShortMessage equal to packed, or -1
+     */
+    private long getTick(Sequence sequence, int packed)
+    {
+        for (Track track : sequence.getTracks())
+        {
+            for (int i = 0; i < track.size(); i++)
+            {
+                MidiEvent me = track.get(i);
+                if (me.getMessage() instanceof ShortMessage sm && RecordingReceiver.pack(sm) == packed)
+                {
+                    return me.getTick();
+                }
+            }
+        }
+        return -1;
+    }
+
+    private long tickToMicros(long tick)
+    {
+        long tempoChangeTick = TEMPO_CHANGE_BEAT * RESOLUTION;
+        if (tick <= tempoChangeTick)
+        {
+            return Math.round((double) tick * MPQ_START / RESOLUTION);
+        }
+        return Math.round((double) tempoChangeTick * MPQ_START / RESOLUTION + (double) (tick - tempoChangeTick) * MPQ_END / RESOLUTION);
+    }
+
+    // =================================================================================================
+    // Inner classes
+    // =================================================================================================
+    /**
+     * Record the received ShortMessages and their timestamps.
+     */
+    private static class RecordingReceiver implements Receiver
+    {
+
+        private final List<Integer> packedMessages = new ArrayList<>();
+        private final List<Long> timeStamps = new ArrayList<>();
+
+        @Override
+        public synchronized void send(MidiMessage msg, long timeStamp)
+        {
+            if (msg instanceof ShortMessage sm)
+            {
+                packedMessages.add(pack(sm));
+                timeStamps.add(timeStamp);
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            // Nothing
+        }
+
+        public synchronized int size()
+        {
+            return packedMessages.size();
+        }
+
+        static int pack(ShortMessage sm)
+        {
+            return sm.getStatus() | (sm.getData1() << 8) | (sm.getData2() << 16);
+        }
+    }
+}
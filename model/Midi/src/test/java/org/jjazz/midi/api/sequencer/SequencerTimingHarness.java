@@ -0,0 +1,354 @@
+/*
+ * 
+ *   DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *  
+ *   Copyright @2019 Jerome Lelasseux. All rights reserved.
+ * 
+ *   This file is part of the JJazzLab software.
+ *    
+ *   JJazzLab is free software: you can redistribute it and/or modify
+ *   it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *   as published by the Free Software Foundation, either version 3 of the License, 
+ *   or (at your option) any later version.
+ * 
+ *   JJazzLab is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *  
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ *  
+ *   Contributor(s): 
+ * 
+ */
+package org.jjazz.midi.api.sequencer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+/**
+ * A headless harness to measure how closely JJazzLabSequencer meets the intended event times.
+ * <p>
+ * The sequencer output is connected to a LoopbackReceiver which records the System.nanoTime() of each received message. A
+ * generated sequence is played with the requested tempo, loop count and track count, then each received Note ON is matched
+ * with its expected time to compute lateness statistics and reordering.
+ * <p>
+ * No Midi hardware is used, so it can run on a headless build machine.
+ */
+public class SequencerTimingHarness
+{
+
+    /**
+     * The maximum number of tracks: each track uses its own Midi channel to identify its notes.
+     */
+    public static final int MAX_NB_TRACKS = 16;
+    private static final int META_END_OF_TRACK = 47;
+    private static final int META_TEMPO = 81;
+
+    /**
+     * Parameters of a timing run.
+     *
+     * @param tempoBPM
+     * @param nbTracks       [1;MAX_NB_TRACKS]
+     * @param loopCount      Number of additional plays of the whole sequence. Can't be Sequencer.LOOP_CONTINUOUSLY.
+     * @param nbBeats        Sequence length in beats
+     * @param notesPerBeat   Number of Note ON per beat per track
+     * @param schedulerMode
+     */
+    public record Scenario(float tempoBPM, int nbTracks, int loopCount, int nbBeats, int notesPerBeat,
+            SchedulingSequencer.SchedulerMode schedulerMode)
+        {
+
+        public Scenario
+        {
+            if (tempoBPM <= 0 || nbTracks < 1 || nbTracks > MAX_NB_TRACKS || loopCount < 0 || nbBeats < 1 || notesPerBeat < 1
+                    || schedulerMode == null)
+            {
+                throw new IllegalArgumentException("tempoBPM=" + tempoBPM + " nbTracks=" + nbTracks + " loopCount=" + loopCount
+                        + " nbBeats=" + nbBeats + " notesPerBeat=" + notesPerBeat + " schedulerMode=" + schedulerMode);
+            }
+        }
+
+        /**
+         * @return The expected play duration in milliseconds.
+         */
+        public long getDurationMillis()
+        {
+            return (long) Math.ceil((loopCount + 1) * nbBeats * 60000d / tempoBPM);
+        }
+    }
+
+    /**
+     * The result of a timing run.
+     * <p>
+     * Lateness is the received time minus the expected time, relative to the time when the sequencer was started. Negative
+     * values mean an event was received early.
+     *
+     * @param scenario
+     * @param nbExpected      Number of expected Note ON
+     * @param nbReceived      Number of received Note ON
+     * @param nbUnexpected    Number of received Note ON which could not be matched with an expected one
+     * @param nbReordered     Number of Note ON received after a Note ON with a later expected time
+     * @param startMicros     Lateness of the first received Note ON
+     * @param minMicros
+     * @param p50Micros
+     * @param p99Micros
+     * @param maxMicros
+     */
+    public record Report(Scenario scenario, int nbExpected, int nbReceived, int nbUnexpected, int nbReordered,
+            long startMicros, long minMicros, long p50Micros, long p99Micros, long maxMicros)
+        {
+
+        public boolean isComplete()
+        {
+            return nbReceived == nbExpected && nbUnexpected == 0;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s/%.0fbpm/%dtrk/loop%d: received=%d/%d unexpected=%d reordered=%d start=%dus min=%dus p50=%dus p99=%dus max=%dus",
+                    scenario.schedulerMode(), scenario.tempoBPM(), scenario.nbTracks(), scenario.loopCount(),
+                    nbReceived, nbExpected, nbUnexpected, nbReordered, startMicros, minMicros, p50Micros, p99Micros, maxMicros);
+        }
+    }
+
+    /**
+     * Run a scenario on a new JJazzLabSequencer instance.
+     *
+     * @param scenario
+     * @return
+     * @throws MidiUnavailableException
+     * @throws InvalidMidiDataException
+     * @throws InterruptedException
+     */
+    public Report run(Scenario scenario) throws MidiUnavailableException, InvalidMidiDataException, InterruptedException
+    {
+        final int resolution = 480;
+        Sequence sequence = buildSequence(scenario, resolution);
+        int nbNotesPerLoop = scenario.nbTracks() * scenario.nbBeats() * scenario.notesPerBeat();
+        int nbExpected = nbNotesPerLoop * (scenario.loopCount() + 1);
+        LoopbackReceiver loopback = new LoopbackReceiver(2 * nbExpected + 1000);
+
+
+        JJazzLabSequencer sequencer = new JJazzLabSequencer();
+        CountDownLatch endLatch = new CountDownLatch(1);
+        long t0;
+        try
+        {
+            sequencer.open();
+            sequencer.getTransmitter().setReceiver(loopback);
+            sequencer.addMetaEventListener(mm ->
+            {
+                if (mm.getType() == META_END_OF_TRACK)
+                {
+                    endLatch.countDown();
+                }
+            });
+            sequencer.setSchedulerMode(scenario.schedulerMode());
+            sequencer.setSequence(sequence);
+            sequencer.setTempoInBPM(scenario.tempoBPM());
+            sequencer.setLoopStartPoint(0);
+            sequencer.setLoopEndPoint(sequence.getTickLength());
+            sequencer.setLoopCount(scenario.loopCount());
+
+            t0 = System.nanoTime();
+            sequencer.start();
+
+            endLatch.await(scenario.getDurationMillis() + 3000, TimeUnit.MILLISECONDS);
+            sequencer.stop();
+        } finally
+        {
+            sequencer.close();
+        }
+
+
+        return analyze(scenario, resolution, t0, loopback, nbNotesPerLoop, nbExpected);
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    /**
+     * Each track uses a channel, and each note in a track is identified by its pitch/velocity pair.
+     */
+    private Sequence buildSequence(Scenario scenario, int resolution) throws InvalidMidiDataException
+    {
+        Sequence sequence = new Sequence(Sequence.PPQ, resolution);
+        int nbNotesPerTrack = scenario.nbBeats() * scenario.notesPerBeat();
+        long tickLength = (long) scenario.nbBeats() * resolution;
+
+        for (int t = 0; t < scenario.nbTracks(); t++)
+        {
+            Track track = sequence.createTrack();
+            if (t == 0)
+            {
+                int mpq = Math.round(60000000f / scenario.tempoBPM());
+                byte[] data = new byte[]
+                {
+                    (byte) (mpq >> 16), (byte) (mpq >> 8), (byte) mpq
+                };
+                track.add(new MidiEvent(new MetaMessage(META_TEMPO, data, 3), 0));
+            }
+
+            for (int k = 0; k < nbNotesPerTrack; k++)
+            {
+                // Shift tracks a little so that not all notes are on the same tick
+                long tick = (k * tickLength) / nbNotesPerTrack + t;
+                track.add(new MidiEvent(makeNoteOn(t, k), tick));
+            }
+
+            track.add(new MidiEvent(new MetaMessage(META_END_OF_TRACK, new byte[0], 0), tickLength));
+        }
+        return sequence;
+    }
+
+    private ShortMessage makeNoteOn(int track, int noteIndex) throws InvalidMidiDataException
+    {
+        return new ShortMessage(ShortMessage.NOTE_ON, track, noteIndex % 128, 1 + (noteIndex / 128) % 127);
+    }
+
+    private Report analyze(Scenario scenario, int resolution, long t0, LoopbackReceiver loopback, int nbNotesPerLoop, int nbExpected)
+    {
+        double microsPerTick = 60000000d / (scenario.tempoBPM() * resolution);
+        long loopMicros = Math.round(scenario.nbBeats() * resolution * microsPerTick);
+        int nbNotesPerTrack = scenario.nbBeats() * scenario.notesPerBeat();
+        long tickLength = (long) scenario.nbBeats() * resolution;
+
+
+        // Expected time within a loop for each note, identified by its packed Note ON message
+        HashMap<Integer, Long> mapNoteExpectedMicros = new HashMap<>();
+        for (int t = 0; t < scenario.nbTracks(); t++)
+        {
+            for (int k = 0; k < nbNotesPerTrack; k++)
+            {
+                long tick = (k * tickLength) / nbNotesPerTrack + t;
+                int packed = ShortMessage.NOTE_ON | t | ((k % 128) << 8) | ((1 + (k / 128) % 127) << 16);
+                mapNoteExpectedMicros.put(packed, Math.round(tick * microsPerTick));
+            }
+        }
+
+
+        // The nth occurence of a note is played in the nth loop
+        HashMap<Integer, Integer> mapNoteOccurences = new HashMap<>();
+        List<Long> latenesses = new ArrayList<>();
+        int nbUnexpected = 0;
+        int nbReordered = 0;
+        long lastExpectedMicros = Long.MIN_VALUE;
+        for (int i = 0; i < loopback.size(); i++)
+        {
+            int packed = loopback.getPackedMessage(i);
+            if ((packed & 0xF0) != ShortMessage.NOTE_ON || (packed >> 16) == 0)
+            {
+                // Notes off, controllers...
+                continue;
+            }
+            Long micros = mapNoteExpectedMicros.get(packed);
+            int occurence = mapNoteOccurences.merge(packed, 1, Integer::sum) - 1;
+            if (micros == null || occurence > scenario.loopCount())
+            {
+                nbUnexpected++;
+                continue;
+            }
+            long expectedMicros = occurence * loopMicros + micros;
+            if (expectedMicros < lastExpectedMicros)
+            {
+                nbReordered++;
+            }
+            lastExpectedMicros = Math.max(lastExpectedMicros, expectedMicros);
+            latenesses.add((loopback.getNanoTime(i) - t0) / 1000 - expectedMicros);
+        }
+
+
+        long[] sorted = latenesses.stream().mapToLong(Long::longValue).toArray();
+        long start = sorted.length > 0 ? sorted[0] : 0;
+        Arrays.sort(sorted);
+        return new Report(scenario, nbExpected, sorted.length, nbUnexpected, nbReordered, start,
+                percentile(sorted, 0), percentile(sorted, 50), percentile(sorted, 99), percentile(sorted, 100));
+    }
+
+    private long percentile(long[] sorted, double percentile)
+    {
+        if (sorted.length == 0)
+        {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    // =================================================================================================
+    // Inner classes
+    // =================================================================================================
+    /**
+     * A Receiver which records the System.nanoTime() and the packed bytes of each received ShortMessage.
+     * <p>
+     * Arrays are preallocated to not disturb the sequencer thread. Messages beyond capacity are ignored.
+     */
+    public static class LoopbackReceiver implements Receiver
+    {
+
+        private final long[] nanoTimes;
+        private final int[] packedMessages;
+        private volatile int size;
+
+        public LoopbackReceiver(int capacity)
+        {
+            nanoTimes = new long[capacity];
+            packedMessages = new int[capacity];
+        }
+
+        @Override
+        public void send(MidiMessage msg, long timeStamp)
+        {
+            long nanoTime = System.nanoTime();
+            int index = size;
+            if (index == nanoTimes.length || !(msg instanceof ShortMessage sm))
+            {
+                return;
+            }
+            nanoTimes[index] = nanoTime;
+            packedMessages[index] = sm.getStatus() | (sm.getData1() << 8) | (sm.getData2() << 16);
+            size = index + 1;
+        }
+
+        @Override
+        public void close()
+        {
+            // Nothing
+        }
+
+        public int size()
+        {
+            return size;
+        }
+
+        public long getNanoTime(int index)
+        {
+            return nanoTimes[index];
+        }
+
+        /**
+         * @param index
+         * @return status | data1 &lt;&lt; 8 | data2 &lt;&lt; 16
+         */
+        public int getPackedMessage(int index)
+        {
+            return packedMessages[index];
+        }
+    }
+}
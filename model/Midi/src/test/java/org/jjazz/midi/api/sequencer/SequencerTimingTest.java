@@ -0,0 +1,79 @@
+/*
+ * 
+ *   DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *  
+ *   Copyright @2019 Jerome Lelasseux. All rights reserved.
+ * 
+ *   This file is part of the JJazzLab software.
+ *    
+ *   JJazzLab is free software: you can redistribute it and/or modify
+ *   it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *   as published by the Free Software Foundation, either version 3 of the License, 
+ *   or (at your option) any later version.
+ * 
+ *   JJazzLab is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *  
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ *  
+ *   Contributor(s): 
+ * 
+ */
+package org.jjazz.midi.api.sequencer;
+
+import java.util.List;
+import java.util.logging.Logger;
+import org.jjazz.midi.api.sequencer.SchedulingSequencer.SchedulerMode;
+import org.jjazz.midi.api.sequencer.SequencerTimingHarness.Report;
+import org.jjazz.midi.api.sequencer.SequencerTimingHarness.Scenario;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Play generated sequences with various tempos, loop counts and track counts, and report timing accuracy.
+ * <p>
+ * Lateness is only reported by default since it depends on the machine load. Set the SequencerTimingMaxP99Micros system
+ * property to also fail when the p99 lateness exceeds the given value.
+ * <p>
+ * This is a real-time test (about 20s) which is excluded from the default build, use -Djjazzlab.surefire.excludedGroups=none to run
+ * it.
+ */
+@Tag("timing")
+public class SequencerTimingTest
+{
+
+    public static final String SYSTEM_PROP_MAX_P99_MICROS = "SequencerTimingMaxP99Micros";
+    private static final Logger LOGGER = Logger.getLogger(SequencerTimingTest.class.getSimpleName());
+
+    @Test
+    public void testTimingAccuracy() throws Exception
+    {
+        var scenarios = List.of(
+                new Scenario(120, 1, 0, 4, 4, SchedulerMode.DEADLINE),
+                new Scenario(120, 16, 0, 4, 4, SchedulerMode.DEADLINE),
+                new Scenario(60, 4, 0, 2, 8, SchedulerMode.DEADLINE),
+                new Scenario(240, 4, 3, 4, 4, SchedulerMode.DEADLINE),
+                new Scenario(180, 8, 2, 4, 8, SchedulerMode.DEADLINE),
+                new Scenario(120, 16, 0, 4, 4, SchedulerMode.FIXED_SLEEP),
+                new Scenario(240, 4, 3, 4, 4, SchedulerMode.FIXED_SLEEP));
+
+        String strMax = System.getProperty(SYSTEM_PROP_MAX_P99_MICROS);
+        long maxP99Micros = strMax == null ? Long.MAX_VALUE : Long.parseLong(strMax);
+
+
+        var harness = new SequencerTimingHarness();
+        for (var scenario : scenarios)
+        {
+            Report report = harness.run(scenario);
+            LOGGER.info(report.toString());
+
+            Assertions.assertTrue(report.isComplete(), report.toString());
+            Assertions.assertEquals(0, report.nbReordered(), report.toString());
+            Assertions.assertTrue(report.p99Micros() <= maxP99Micros, report.toString());
+        }
+    }
+}
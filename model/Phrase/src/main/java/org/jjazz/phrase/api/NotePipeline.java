@@ -0,0 +1,263 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLab software.
+ *
+ *  JJazzLab is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3)
+ *  as published by the Free Software Foundation, either version 3 of the License,
+ *  or (at your option) any later version.
+ *
+ *  JJazzLab is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *  Contributor(s):
+ */
+package org.jjazz.phrase.api;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import java.util.ArrayList;
+import java.util.List;
+import org.jjazz.midi.api.MidiConst;
+import org.jjazz.utilities.api.FloatRange;
+
+/**
+ * An ordered list of note-level transformations applied to a phrase in a single pass.
+ * <p>
+ * A note goes through all the stages before the next note is processed, and a new NoteEvent is created only once per modified note. This
+ * is equivalent to (but faster than) applying the corresponding Phrase/Phrases methods one after the other.
+ */
+public class NotePipeline
+{
+
+    /**
+     * A note-level transformation which can be fused with other stages.
+     */
+    public interface Stage
+    {
+
+        /**
+         * Process the note.
+         *
+         * @param nd The note data to be modified
+         * @return False if note must be removed
+         */
+        boolean process(NoteData nd);
+    }
+
+    /**
+     * The mutable note data passed through the stages.
+     */
+    static public class NoteData
+    {
+
+        public int pitch;
+        public int velocity;
+        public float position;
+        public float duration;
+
+        private void set(NoteEvent ne)
+        {
+            pitch = ne.getPitch();
+            velocity = ne.getVelocity();
+            position = ne.getPositionInBeats();
+            duration = ne.getDurationInBeats();
+        }
+
+        private boolean isSame(NoteEvent ne)
+        {
+            return pitch == ne.getPitch() && velocity == ne.getVelocity() && position == ne.getPositionInBeats() && duration == ne.getDurationInBeats();
+        }
+    }
+
+    private final List<Stage> stages = new ArrayList<>();
+
+    /**
+     * Append a stage.
+     *
+     * @param stage
+     * @return This instance
+     */
+    public NotePipeline add(Stage stage)
+    {
+        stages.add(stage);
+        return this;
+    }
+
+    public boolean isEmpty()
+    {
+        return stages.isEmpty();
+    }
+
+    /**
+     * Apply all the stages to the notes of p.
+     *
+     * @param p
+     */
+    public void process(Phrase p)
+    {
+        if (stages.isEmpty() || p.isEmpty())
+        {
+            return;
+        }
+
+        List<NoteEvent> toBeRemoved = new ArrayList<>();
+        List<NoteEvent> toBeAdded = new ArrayList<>();
+        NoteData nd = new NoteData();
+
+        for (var ne : p)
+        {
+            nd.set(ne);
+            boolean keep = true;
+            for (var stage : stages)
+            {
+                if (!stage.process(nd))
+                {
+                    keep = false;
+                    break;
+                }
+            }
+            if (!keep)
+            {
+                toBeRemoved.add(ne);
+            } else if (!nd.isSame(ne))
+            {
+                toBeRemoved.add(ne);
+                toBeAdded.add(ne.setAll(nd.pitch, nd.duration, nd.velocity, nd.position, null, true));
+            }
+        }
+
+        p.removeAll(toBeRemoved);
+        p.addAll(toBeAdded);
+    }
+
+    // =========================================================================
+    // Stages
+    // =========================================================================
+
+    /**
+     * A stage which does the same as Phrases.silence(p, range, true, false, beatWindow).
+     *
+     * @param range
+     * @param beatWindow Must be &gt;= 0
+     * @return
+     * @see Phrases#silence(org.jjazz.phrase.api.Phrase, org.jjazz.utilities.api.FloatRange, boolean, boolean, float)
+     */
+    static public Stage silence(FloatRange range, float beatWindow)
+    {
+        checkArgument(beatWindow >= 0, "beatWindow=%s", beatWindow);
+
+        FloatRange frLeft = FloatRange.EMPTY_FLOAT_RANGE;
+        FloatRange frRight = FloatRange.EMPTY_FLOAT_RANGE;
+        if (beatWindow > 0)
+        {
+            frLeft = range.from - beatWindow >= 0 ? new FloatRange(range.from - beatWindow, range.from) : FloatRange.EMPTY_FLOAT_RANGE;
+            frRight = range.to - beatWindow >= range.from ? new FloatRange(range.to - beatWindow, range.to) : FloatRange.EMPTY_FLOAT_RANGE;
+        }
+        final FloatRange frLeftFinal = frLeft;
+        final FloatRange frRightFinal = frRight;
+
+        return nd ->
+        {
+            float nePosFrom = nd.position;
+            float nePosTo = nePosFrom + nd.duration;
+            if (nePosFrom < range.from)
+            {
+                if (nePosTo <= range.from)
+                {
+                    return true;
+                } else if (frLeftFinal.contains(nePosFrom, true))
+                {
+                    // It's in the left beat window, remove the note
+                    return false;
+                }
+                // Shorten the note
+                nd.duration = range.from - nePosFrom;
+                return true;
+            } else if (nePosFrom < range.to)
+            {
+                if (nePosTo > range.to && frRightFinal.contains(nePosFrom, true))
+                {
+                    // Keep the part after range
+                    nd.position = range.to;
+                    nd.duration = nePosTo - range.to;
+                    return true;
+                }
+                return false;
+            }
+            return true;
+        };
+    }
+
+    /**
+     * A stage which does the same as Phrase.processPitch(pitch -&gt; pitch + transposition).
+     *
+     * @param transposition
+     * @return
+     */
+    static public Stage transpose(int transposition)
+    {
+        return nd ->
+        {
+            nd.pitch = MidiConst.clamp(nd.pitch + transposition);
+            return true;
+        };
+    }
+
+    /**
+     * A stage which does the same as Phrase.processVelocity(v -&gt; v + velocityShift).
+     *
+     * @param velocityShift
+     * @return
+     */
+    static public Stage shiftVelocity(int velocityShift)
+    {
+        return nd ->
+        {
+            nd.velocity = MidiConst.clamp(nd.velocity + velocityShift);
+            return true;
+        };
+    }
+
+    /**
+     * A stage which continuously decreases velocity from 100% to 0% for notes starting in beatRange.
+     *
+     * @param beatRange
+     * @return
+     */
+    static public Stage fadeOut(FloatRange beatRange)
+    {
+        return nd ->
+        {
+            if (beatRange.contains(nd.position, true))
+            {
+                float f = 1 - beatRange.getPercentage(nd.position);
+                nd.velocity = Math.round(f * nd.velocity);
+            }
+            return true;
+        };
+    }
+
+    /**
+     * A stage which does the same as Phrase.shiftAllEvents(shiftInBeats, false).
+     *
+     * @param shiftInBeats
+     * @return
+     */
+    static public Stage shift(float shiftInBeats)
+    {
+        return nd ->
+        {
+            nd.position += shiftInBeats;
+            checkArgument(nd.position >= 0, "position=%s shiftInBeats=%s", nd.position, shiftInBeats);
+            return true;
+        };
+    }
+}
@@ -328,17 +328,33 @@ public class Phrases
         return res;
     }
 
+    /**
+     * Get the phrase notes as MidiEvents sorted by tick.
+     * <p>
+     * Tick resolution used is MidiConst.PPQ_RESOLUTION. Events with the same tick are in the toMidiEvents(p) order.
+     *
+     * @param p
+     * @return
+     * @see #toMidiEvents(org.jjazz.phrase.api.Phrase)
+     */
+    static public List<MidiEvent> toSortedMidiEvents(Phrase p)
+    {
+        var res = toMidiEvents(p);
+        res.sort(Comparator.comparingLong(MidiEvent::getTick));         // Stable and fast: note ON events are already sorted
+        return res;
+    }
+
     /**
      * Create MidiEvents for each phrase note then add them to the specified track.
      * <p>
-     * Tick resolution used is MidiConst.PPQ_RESOLUTION.
+     * Tick resolution used is MidiConst.PPQ_RESOLUTION. Events are added in tick order, which is much faster for a large phrase.
      *
      * @param p
      * @param track
      */
     static public void fillTrack(Phrase p, Track track)
     {
-        toMidiEvents(p).forEach(me -> track.add(me));
+        MidiUtilities.addSortedEvents(track, toSortedMidiEvents(p));
     }
 
 
@@ -0,0 +1,154 @@
+/*
+ * 
+ *   DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *  
+ *   Copyright @2019 Jerome Lelasseux. All rights reserved.
+ * 
+ *   This file is part of the JJazzLab software.
+ *    
+ *   JJazzLab is free software: you can redistribute it and/or modify
+ *   it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *   as published by the Free Software Foundation, either version 3 of the License, 
+ *   or (at your option) any later version.
+ * 
+ *   JJazzLab is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *  
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ *  
+ *   Contributor(s): 
+ * 
+ */
+package org.jjazz.phrase.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.jjazz.utilities.api.FloatRange;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check that the NotePipeline stages give the same result than the corresponding Phrase/Phrases methods.
+ * <p>
+ * The equivalence of the whole SongSequenceBuilder post-processing is tested in SongSequenceBuilderPostProcessingTest (SongImpl module).
+ */
+public class NotePipelineTest
+{
+
+    public NotePipelineTest()
+    {
+    }
+
+    @BeforeAll
+    public static void setUpClass() throws Exception
+    {
+        System.setProperty(NoteEvent.SYSTEM_PROP_NOTEEVENT_TOSTRING_FORMAT, "(p=%2$.1f d=%3$.1f)");
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    /**
+     * Test of silence stage against Phrases.silence().
+     */
+    @Test
+    public void testSilence()
+    {
+        Random rnd = new Random(17);
+        for (int i = 0; i < 200; i++)
+        {
+            Phrase p = createRandomPhrase(0, 64, rnd);
+            float from = rnd.nextInt(60 * 4) / 4f;
+            var range = new FloatRange(from, from + 0.25f + rnd.nextInt(16) / 4f);
+            float beatWindow = rnd.nextInt(3) * 0.1f;
+
+            Phrase p1 = p.clone();
+            Phrases.silence(p1, range, true, false, beatWindow);
+
+            Phrase p2 = p.clone();
+            new NotePipeline().add(NotePipeline.silence(range, beatWindow)).process(p2);
+
+            assertTrue(p1.equalsAsNoteNearPosition(p2, 0), "range=" + range + " beatWindow=" + beatWindow + "\np1=" + p1 + "\np2=" + p2);
+        }
+    }
+
+    /**
+     * Test of transpose, shiftVelocity and shift stages against Phrase.processPitch(), Phrase.processVelocity() and Phrase.shiftAllEvents().
+     */
+    @Test
+    public void testTransposeVelocityShift()
+    {
+        Random rnd = new Random(29);
+        for (int i = 0; i < 50; i++)
+        {
+            Phrase p = createRandomPhrase(0, 64, rnd);
+            int transposition = rnd.nextInt(49) - 24;
+            int velocityShift = rnd.nextInt(161) - 80;
+            float shift = rnd.nextInt(16) / 4f;
+
+            Phrase p1 = p.clone();
+            p1.processPitch(pitch -> pitch + transposition);
+            p1.processVelocity(v -> v + velocityShift);
+            p1.shiftAllEvents(shift, false);
+
+            Phrase p2 = p.clone();
+            new NotePipeline()
+                    .add(NotePipeline.transpose(transposition))
+                    .add(NotePipeline.shiftVelocity(velocityShift))
+                    .add(NotePipeline.shift(shift))
+                    .process(p2);
+
+            assertTrue(p1.equalsAsNoteNearPosition(p2, 0), "transposition=" + transposition + " velocityShift=" + velocityShift + " shift=" + shift
+                    + "\np1=" + p1 + "\np2=" + p2);
+        }
+    }
+
+    /**
+     * Test that chained silence stages give the same result than successive Phrases.silence() calls.
+     */
+    @Test
+    public void testChainedSilences()
+    {
+        Random rnd = new Random(31);
+        for (int i = 0; i < 50; i++)
+        {
+            Phrase p = createRandomPhrase(0, 128, rnd);
+            List<FloatRange> ranges = new ArrayList<>();
+            for (int j = 0; j < 5; j++)
+            {
+                float from = rnd.nextInt(120 * 4) / 4f;
+                ranges.add(new FloatRange(from, from + 0.25f + rnd.nextInt(16) / 4f));
+            }
+
+            Phrase p1 = p.clone();
+            ranges.forEach(r -> Phrases.silence(p1, r, true, false, 0.1f));
+
+            Phrase p2 = p.clone();
+            NotePipeline pipeline = new NotePipeline();
+            ranges.forEach(r -> pipeline.add(NotePipeline.silence(r, 0.1f)));
+            pipeline.process(p2);
+
+            assertTrue(p1.equalsAsNoteNearPosition(p2, 0), "ranges=" + ranges + "\np1=" + p1 + "\np2=" + p2);
+        }
+    }
+
+    /**
+     * Create a phrase with random notes until sizeInBeats, possibly overlapping.
+     */
+    private Phrase createRandomPhrase(int channel, float sizeInBeats, Random rnd)
+    {
+        Phrase p = new Phrase(channel);
+        float pos = rnd.nextInt(4) / 4f;
+        while (pos < sizeInBeats)
+        {
+            float dur = 0.05f + rnd.nextInt(16) / 4f;
+            p.add(new NoteEvent(30 + rnd.nextInt(60), dur, 1 + rnd.nextInt(127), pos));         // (pitch, dur, velo, pos)
+            pos += rnd.nextInt(8) / 8f + 0.125f;
+        }
+        return p;
+    }
+}
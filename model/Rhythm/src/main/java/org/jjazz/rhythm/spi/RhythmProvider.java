@@ -28,9 +28,18 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.jjazz.harmony.api.TimeSignature;
 import org.jjazz.rhythm.api.Rhythm;
 import org.jjazz.rhythm.api.AdaptedRhythm;
+import org.jjazz.utilities.api.SharedExecutorServices;
 import org.openide.util.Lookup;
 
 /**
@@ -48,6 +57,10 @@ public interface RhythmProvider
      * See getFileRhythms().
      */
     public static final int SUBDIR_MAX_DEPTH = 3;
+    /**
+     * See readFastInParallel(RhythmProvider, List, MultipleErrorsReport).
+     */
+    public static final int READ_FAST_MAX_THREADS = 4;
 
     /**
      * The RhythmProviders instances available in the global lookup, sorted by name.
@@ -104,6 +117,24 @@ public interface RhythmProvider
      */
     public List<Rhythm> getFileRhythms(boolean forceRescan, MultipleErrorsReport errRpt);
 
+    /**
+     * Rescan the file-based rhythms but skip the files for which the caller already has up-to-date data.
+     * <p>
+     * Same as getFileRhythms(true, errRpt) except that a rhythm file f is not read if <code>isUpToDate.test(f)</code> returns true. isUpToDate is called
+     * once for each rhythm file found, from the calling thread. Because the provider's cached data is then incomplete, the next
+     * getFileRhythms(false, errRpt) call should do a rescan.
+     * <p>
+     * The default implementation ignores isUpToDate and returns getFileRhythms(true, errRpt).
+     *
+     * @param isUpToDate Tested with a rhythm file (the file passed to readFast())
+     * @param errRpt     Can't be null. RhythmProvider should update this object so that the framework can notify user about problems.
+     * @return The rhythms read from the files which are not up-to-date. List can be empty but not null.
+     */
+    default List<Rhythm> getFileRhythms(Predicate<File> isUpToDate, MultipleErrorsReport errRpt)
+    {
+        return getFileRhythms(true, errRpt);
+    }
+
     /**
      * Get the file extensions accepted by readFast().
      * <p>
@@ -124,6 +155,117 @@ public interface RhythmProvider
      */
     public Rhythm readFast(File f) throws IOException;
 
+    /**
+     * Call readFast() on several files.
+     * <p>
+     * The default implementation reads the files one after the other. A RhythmProvider whose readFast(File) is thread-safe can override this
+     * method to use {@link #readFastInParallel(RhythmProvider, List, MultipleErrorsReport)}.
+     *
+     * @param files
+     * @param errRpt Can't be null. The error message of each file which could not be read is added to errRpt.individualErrorMessages, in the files order.
+     * @return The rhythms successfully read, in the files order.
+     */
+    default List<Rhythm> readFast(List<File> files, MultipleErrorsReport errRpt)
+    {
+        Objects.requireNonNull(files);
+        Objects.requireNonNull(errRpt);
+
+        List<Rhythm> res = new ArrayList<>();
+        for (File f : files)
+        {
+            try
+            {
+                res.add(readFast(f));
+            } catch (IOException ex)
+            {
+                Logger.getLogger(RhythmProvider.class.getSimpleName()).log(Level.WARNING, "readFast() ex={0}", ex.getLocalizedMessage());
+                errRpt.individualErrorMessages.add(ex.getLocalizedMessage());
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Call rp.readFast(File) on several files in parallel.
+     * <p>
+     * Files are read using at most READ_FAST_MAX_THREADS threads. The first file is read alone, so that the shared data lazily initialized by
+     * readFast() is ready before the parallel reads. Result is the same as {@link #readFast(List, MultipleErrorsReport)} and does not depend on the
+     * threads scheduling.
+     * <p>
+     * Use it only if rp.readFast(File) is thread-safe.
+     *
+     * @param rp
+     * @param files
+     * @param errRpt Can't be null. The error message of each file which could not be read is added to errRpt.individualErrorMessages, in the files order.
+     * @return The rhythms successfully read, in the files order.
+     */
+    static List<Rhythm> readFastInParallel(RhythmProvider rp, List<File> files, MultipleErrorsReport errRpt)
+    {
+        Objects.requireNonNull(rp);
+        Objects.requireNonNull(files);
+        Objects.requireNonNull(errRpt);
+
+        List<Rhythm> res = new ArrayList<>();
+        if (files.isEmpty())
+        {
+            return res;
+        }
+
+        int nbThreads = Math.min(READ_FAST_MAX_THREADS, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        ExecutorService executor = files.size() > 1 && nbThreads > 1
+                ? Executors.newFixedThreadPool(nbThreads, SharedExecutorServices.getThreadFactory("JL-ReadFast", true))
+                : null;
+        try
+        {
+            List<Future<Rhythm>> futures = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++)
+            {
+                File f = files.get(i);
+                var task = new FutureTask<>(() -> rp.readFast(f));
+                if (i == 0 || executor == null)
+                {
+                    task.run();
+                } else
+                {
+                    executor.execute(task);
+                }
+                futures.add(task);
+            }
+
+            for (var future : futures)
+            {
+                try
+                {
+                    res.add(future.get());
+                } catch (ExecutionException ex)
+                {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof RuntimeException re)
+                    {
+                        throw re;
+                    } else if (cause instanceof Error err)
+                    {
+                        throw err;
+                    }
+                    Logger.getLogger(RhythmProvider.class.getSimpleName()).log(Level.WARNING, "readFastInParallel() ex={0}", cause.getLocalizedMessage());
+                    errRpt.individualErrorMessages.add(cause.getLocalizedMessage());
+                } catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } finally
+        {
+            if (executor != null)
+            {
+                executor.shutdownNow();
+            }
+        }
+
+        return res;
+    }
+
     /**
      * Provide a new rhythm which is an adapted version of r for a different time signature.
      * <p>
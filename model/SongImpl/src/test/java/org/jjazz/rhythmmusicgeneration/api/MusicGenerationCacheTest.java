@@ -0,0 +1,260 @@
+/*
+ *
+ *   DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ *   Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *   This file is part of the JJazzLab software.
+ *
+ *   JJazzLab is free software: you can redistribute it and/or modify
+ *   it under the terms of the Lesser GNU General Public License (LGPLv3)
+ *   as published by the Free Software Foundation, either version 3 of the License,
+ *   or (at your option) any later version.
+ *
+ *   JJazzLab is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   Contributor(s):
+ *
+ */
+package org.jjazz.rhythmmusicgeneration.api;
+
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.jjazz.chordleadsheet.ChordLeadSheetImpl;
+import org.jjazz.chordleadsheet.api.UnsupportedEditException;
+import org.jjazz.chordleadsheet.api.item.CLI_ChordSymbol;
+import org.jjazz.chordleadsheet.api.item.ExtChordSymbol;
+import org.jjazz.chordleadsheet.item.CLI_ChordSymbolImpl;
+import org.jjazz.chordleadsheet.item.CLI_SectionImpl;
+import org.jjazz.harmony.api.Position;
+import org.jjazz.harmony.api.TimeSignature;
+import org.jjazz.midimix.spi.MidiMixManager;
+import org.jjazz.phrase.api.Phrase;
+import org.jjazz.rhythm.api.MusicGenerationException;
+import org.jjazz.rhythm.api.Rhythm;
+import org.jjazz.rhythm.api.RhythmVoice;
+import org.jjazz.rhythmdatabase.api.RhythmDatabase;
+import org.jjazz.rhythmdatabase.api.UnavailableRhythmException;
+import org.jjazz.rhythmmusicgeneration.spi.MusicGenerator;
+import org.jjazz.rhythmparametersimpl.api.RP_SYS_Variation;
+import org.jjazz.song.api.Song;
+import org.jjazz.song.api.SongContext;
+import org.jjazz.song.spi.SongContextFactory;
+import org.jjazz.song.spi.SongFactory;
+import org.jjazz.songstructure.api.SongPart;
+import org.jjazz.utilities.api.Utilities;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the MusicGenerationCache SongPart keys.
+ * <p>
+ * The fixture is a 12-bar song with 3 sections of 4 bars (A, B, C), so that A and C are not neighbours.
+ */
+public class MusicGenerationCacheTest
+{
+
+    private Song song;
+    private SongPart spt_A, spt_B, spt_C;
+    private CLI_ChordSymbol cliCs_A0, cliCs_B4, cliCs_C8;
+    private MusicGenerationCache cache;
+    private TestMusicGenerator musicGenerator;
+
+    static
+    {
+        Utilities.setLoggingFormat(null);
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @BeforeEach
+    public void setUp() throws UnsupportedEditException, ParseException
+    {
+        var cls = new ChordLeadSheetImpl("A", TimeSignature.FOUR_FOUR, 12);
+        cls.addSection(new CLI_SectionImpl("B", TimeSignature.FOUR_FOUR, 4));
+        cls.addSection(new CLI_SectionImpl("C", TimeSignature.FOUR_FOUR, 8));
+        cliCs_A0 = new CLI_ChordSymbolImpl(ExtChordSymbol.get("Dm7"), new Position(0));
+        cliCs_B4 = new CLI_ChordSymbolImpl(ExtChordSymbol.get("G7"), new Position(4));
+        cliCs_C8 = new CLI_ChordSymbolImpl(ExtChordSymbol.get("C7M"), new Position(8));
+        cls.addItem(cliCs_A0);
+        cls.addItem(new CLI_ChordSymbolImpl(ExtChordSymbol.get("A7"), new Position(2, 2)));
+        cls.addItem(cliCs_B4);
+        cls.addItem(cliCs_C8);
+
+        song = SongFactory.getDefault().createSong("TestSong", cls);
+        var sgs = song.getSongStructure();
+        spt_A = sgs.getSongPart(0);
+        spt_B = sgs.getSongPart(4);
+        spt_C = sgs.getSongPart(8);
+
+        cache = new MusicGenerationCache();
+        musicGenerator = new TestMusicGenerator();
+    }
+
+    @Test
+    public void testKeyStability() throws Exception
+    {
+        String key = getKey(spt_A);
+        assertEquals(key, getKey(spt_A));
+
+        // Same key with a deep copy of the context
+        var context = getContext();
+        var contextCopy = context.getDeepCopy(false);
+        var sptCopy = contextCopy.getSongParts().get(0);
+        String keyCopy = MusicGenerationCache.getSongPartKey(contextCopy, sptCopy, new SongChordSequence(contextCopy.getSong(), contextCopy.getBarRange()),
+                musicGenerator);
+        assertEquals(key, keyCopy);
+
+        // SongParts are not reused by default
+        assertNotEquals(getKey(spt_A), getKey(spt_C));
+    }
+
+    @Test
+    public void testHitOnUnchangedSongPart() throws Exception
+    {
+        cache.put(getKey(spt_A), createRvPhrases(spt_A.getRhythm()));
+
+        // C is not a neighbour of A
+        song.getChordLeadSheet().changeItem(cliCs_C8, ExtChordSymbol.get("Eb7"));
+
+        assertNotNull(cache.get(getKey(spt_A), spt_A.getRhythm()));
+        assertEquals(1, cache.getNbHits());
+        assertEquals(0, cache.getNbMisses());
+    }
+
+    @Test
+    public void testMissAfterChordChange() throws Exception
+    {
+        cache.put(getKey(spt_A), createRvPhrases(spt_A.getRhythm()));
+        song.getChordLeadSheet().changeItem(cliCs_A0, ExtChordSymbol.get("D7"));
+        assertNull(cache.get(getKey(spt_A), spt_A.getRhythm()));
+    }
+
+    @Test
+    public void testMissAfterNeighbourChordChange() throws Exception
+    {
+        cache.put(getKey(spt_A), createRvPhrases(spt_A.getRhythm()));
+        song.getChordLeadSheet().changeItem(cliCs_B4, ExtChordSymbol.get("Db7"));
+        assertNull(cache.get(getKey(spt_A), spt_A.getRhythm()));
+    }
+
+    @Test
+    public void testMissAfterStyleChange() throws Exception
+    {
+        String key = getKey(spt_A);
+        cache.put(key, createRvPhrases(spt_A.getRhythm()));
+
+        var r = spt_A.getRhythm();
+        Rhythm r2 = getOtherRhythm(r);
+        song.getSongStructure().setSongPartsRhythm(List.of(spt_A), r2, null);
+        spt_A = song.getSongStructure().getSongPart(0);
+
+        String key2 = getKey(spt_A);
+        assertNotEquals(key, key2);
+        assertNull(cache.get(key2, spt_A.getRhythm()));
+    }
+
+    @Test
+    public void testMissAfterRhythmParameterChange() throws Exception
+    {
+        cache.put(getKey(spt_A), createRvPhrases(spt_A.getRhythm()));
+
+        var rpVariation = RP_SYS_Variation.getVariationRp(spt_A.getRhythm());
+        assertNotNull(rpVariation);
+        String value = spt_A.getRPValue(rpVariation);
+        String otherValue = rpVariation.getPossibleValues().stream()
+                .filter(v -> !v.equals(value))
+                .findFirst()
+                .orElseThrow();
+        song.getSongStructure().setRhythmParameterValue(spt_A, rpVariation, otherValue);
+
+        assertNull(cache.get(getKey(spt_A), spt_A.getRhythm()));
+    }
+
+    @Test
+    public void testMissAfterSettingsChange() throws Exception
+    {
+        cache.put(getKey(spt_A), createRvPhrases(spt_A.getRhythm()));
+        musicGenerator.fingerprint = "swingIntensity=0.8";
+        assertNull(cache.get(getKey(spt_A), spt_A.getRhythm()));
+    }
+
+    @Test
+    public void testSongPartPositionInKey() throws Exception
+    {
+        assertTrue(getKey(spt_A).contains("|startBar=0"));
+
+        musicGenerator.reusable = true;
+        assertFalse(getKey(spt_A).contains("|startBar="));
+    }
+
+    // =============================================================================================
+    // Private methods
+    // =============================================================================================
+
+    private SongContext getContext() throws UnsupportedEditException
+    {
+        var midiMix = MidiMixManager.getDefault().findMix(song);
+        return SongContextFactory.getDefault().of(song, midiMix);
+    }
+
+    private String getKey(SongPart spt) throws Exception
+    {
+        var context = getContext();
+        return MusicGenerationCache.getSongPartKey(context, spt, new SongChordSequence(song, context.getBarRange()), musicGenerator);
+    }
+
+    private Map<RhythmVoice, Phrase> createRvPhrases(Rhythm r)
+    {
+        Map<RhythmVoice, Phrase> res = new HashMap<>();
+        for (var rv : r.getRhythmVoices())
+        {
+            res.put(rv, new Phrase(rv.getPreferredChannel(), rv.isDrums()));
+        }
+        return res;
+    }
+
+    private Rhythm getOtherRhythm(Rhythm r) throws UnavailableRhythmException
+    {
+        var rdb = RhythmDatabase.getSharedInstance();
+        var ri = rdb.getRhythms(r.getTimeSignature()).stream()
+                .filter(rInfo -> rInfo.rhythmProviderId().equals("RhythmTestMocksProviderID") && !rInfo.equals(rdb.getRhythm(r.getUniqueId())))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Need at least 2 distinct 4/4 rhythms in the test database"));
+        return rdb.getRhythmInstance(ri);
+    }
+
+    private static class TestMusicGenerator implements MusicGenerator
+    {
+
+        private String fingerprint = "swingIntensity=0.5";
+        private boolean reusable;
+
+        @Override
+        public Map<RhythmVoice, Phrase> generateMusic(SongContext songContext, RhythmVoice... rhythmVoices) throws MusicGenerationException
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getSettingsFingerprint(SongContext songContext)
+        {
+            return fingerprint;
+        }
+
+        @Override
+        public boolean isSongPartMusicReusable(SongContext songContext)
+        {
+            return reusable;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ *
+ *   DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ *   Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *   This file is part of the JJazzLab software.
+ *
+ *   JJazzLab is free software: you can redistribute it and/or modify
+ *   it under the terms of the Lesser GNU General Public License (LGPLv3)
+ *   as published by the Free Software Foundation, either version 3 of the License,
+ *   or (at your option) any later version.
+ *
+ *   JJazzLab is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   Contributor(s):
+ *
+ */
+package org.jjazz.rhythmmusicgeneration.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import org.jjazz.chordleadsheet.ChordLeadSheetImpl;
+import org.jjazz.harmony.api.Note;
+import org.jjazz.harmony.api.TimeSignature;
+import org.jjazz.midimix.spi.MidiMixManager;
+import org.jjazz.phrase.api.NoteEvent;
+import org.jjazz.phrase.api.Phrase;
+import org.jjazz.rhythm.api.MusicGenerationException;
+import org.jjazz.rhythm.api.Rhythm;
+import org.jjazz.rhythm.api.RhythmFeatures;
+import org.jjazz.rhythm.api.RhythmVoice;
+import org.jjazz.rhythmmusicgeneration.spi.MusicGenerator;
+import org.jjazz.song.api.SongContext;
+import org.jjazz.song.spi.SongContextFactory;
+import org.jjazz.song.spi.SongFactory;
+import org.jjazz.testmocks.RhythmMock;
+import org.jjazz.utilities.api.Utilities;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the PhraseDiskCache encoding, of its handling of invalid files, and of its keys.
+ */
+public class PhraseDiskCacheTest
+{
+
+    private static final String KEY = "0123456789abcdef";
+    private static final long WRITE_TIMEOUT_MS = 5000;
+    @TempDir
+    Path tempDir;
+    private Rhythm rhythm;
+
+    static
+    {
+        Utilities.setLoggingFormat(null);
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @BeforeEach
+    public void setUp()
+    {
+        rhythm = new RhythmMock("PhraseDiskCacheTestRhythm", TimeSignature.FOUR_FOUR, new RhythmFeatures());
+    }
+
+    @Test
+    public void testWriteReadRoundTrip() throws IOException
+    {
+        var rvPhrases = createRvPhrases(rhythm);
+        var res = PhraseDiskCache.readPhrases(toDataInputStream(toBytes(rhythm, rvPhrases)), rhythm);
+        assertSamePhrases(rvPhrases, res);
+    }
+
+    @Test
+    public void testWriteReadEmptyPhrases() throws IOException
+    {
+        Map<RhythmVoice, Phrase> rvPhrases = new HashMap<>();
+        for (var rv : rhythm.getRhythmVoices())
+        {
+            rvPhrases.put(rv, new Phrase(rv.getPreferredChannel(), rv.isDrums()));
+        }
+        var res = PhraseDiskCache.readPhrases(toDataInputStream(toBytes(rhythm, rvPhrases)), rhythm);
+        assertSamePhrases(rvPhrases, res);
+    }
+
+    @Test
+    public void testWriteUnknownRhythmVoice()
+    {
+        var rvBass = rhythm.getRhythmVoices().get(2);
+        var rvUnknown = new RhythmVoice(rhythm, RhythmVoice.Type.BASS, "UnknownBass", rvBass.getPreferredInstrument(), 5);
+        var rvPhrases = createRvPhrases(rhythm);
+        rvPhrases.put(rvUnknown, new Phrase(5));
+        assertThrows(IllegalArgumentException.class, () -> toBytes(rhythm, rvPhrases));
+    }
+
+    @Test
+    public void testPutGet() throws Exception
+    {
+        var cache = new PhraseDiskCache(tempDir.toFile(), PhraseDiskCache.DEFAULT_MAX_SIZE_BYTES);
+        var rvPhrases = createRvPhrases(rhythm);
+        cache.put(KEY, rhythm, rvPhrases);
+        waitForWrite(cache);
+
+        assertSamePhrases(rvPhrases, cache.get(KEY, rhythm));
+        assertNull(cache.get("fedcba9876543210", rhythm));
+        assertEquals(1, cache.getNbHits());
+        assertEquals(1, cache.getNbMisses());
+
+        // A new instance reuses the existing files
+        var cache2 = new PhraseDiskCache(tempDir.toFile(), PhraseDiskCache.DEFAULT_MAX_SIZE_BYTES);
+        assertEquals(cache.getTotalSizeBytes(), cache2.getTotalSizeBytes());
+        assertSamePhrases(rvPhrases, cache2.get(KEY, rhythm));
+    }
+
+    @Test
+    public void testTruncatedFile() throws Exception
+    {
+        byte[] bytes = toBytes(rhythm, createRvPhrases(rhythm));
+        byte[] truncated = new byte[bytes.length - 3];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        assertInvalidFile(truncated);
+    }
+
+    @Test
+    public void testGarbageFile() throws Exception
+    {
+        assertInvalidFile("This is not a phrase cache file".getBytes());
+        assertInvalidFile(new byte[0]);
+    }
+
+    @Test
+    public void testTrailingData() throws Exception
+    {
+        byte[] bytes = toBytes(rhythm, createRvPhrases(rhythm));
+        byte[] longer = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, longer, 0, bytes.length);
+        assertInvalidFile(longer);
+    }
+
+    @Test
+    public void testOldVersionFile() throws Exception
+    {
+        byte[] bytes = toBytes(rhythm, createRvPhrases(rhythm));
+        bytes[5]--;      // Format version is the short after the int magic number
+        assertThrows(IOException.class, () -> PhraseDiskCache.readPhrases(toDataInputStream(bytes), rhythm));
+        assertInvalidFile(bytes);
+    }
+
+    @Test
+    public void testInvalidRhythmVoiceIndex() throws Exception
+    {
+        byte[] bytes = toBytes(rhythm, createRvPhrases(rhythm));
+        bytes[8] = 0x7F;      // First RhythmVoice index is the short after magic number, version and nb of phrases
+        assertThrows(IllegalArgumentException.class, () -> PhraseDiskCache.readPhrases(toDataInputStream(bytes), rhythm));
+        assertInvalidFile(bytes);
+    }
+
+    @Test
+    public void testSeedInKey() throws Exception
+    {
+        var cls = new ChordLeadSheetImpl("A", TimeSignature.FOUR_FOUR, 8);
+        var song = SongFactory.getDefault().createSong("TestSong", cls);
+        var midiMix = MidiMixManager.getDefault().findMix(song);
+        SongContext context = SongContextFactory.getDefault().of(song, midiMix);
+        var scs = new SongChordSequence(song, context.getBarRange());
+        var r = song.getSongStructure().getSongPart(0).getRhythm();
+        var mg = new TestMusicGenerator();
+
+        String key0 = PhraseDiskCache.computeKey(context, r, mg, scs, 0);
+        assertEquals(key0, PhraseDiskCache.computeKey(context, r, mg, scs, 0));
+        assertNotEquals(key0, PhraseDiskCache.computeKey(context, r, mg, scs, 1));
+    }
+
+    // =================================================================================================================
+    // Private methods
+    // =================================================================================================================
+    /**
+     * Check that cache.get() returns null for a file left with the specified content by a previous session, and deletes the file.
+     */
+    private void assertInvalidFile(byte[] content) throws IOException
+    {
+        File f = tempDir.resolve(KEY + ".jjpc").toFile();
+        Files.write(f.toPath(), content);
+        var cache = new PhraseDiskCache(tempDir.toFile(), PhraseDiskCache.DEFAULT_MAX_SIZE_BYTES);
+        assertEquals(content.length, cache.getTotalSizeBytes());
+
+        assertNull(cache.get(KEY, rhythm));
+        assertFalse(f.exists());
+        assertEquals(1, cache.getNbMisses());
+        assertEquals(0, cache.getTotalSizeBytes());
+    }
+
+    private void waitForWrite(PhraseDiskCache cache) throws InterruptedException
+    {
+        long t = System.currentTimeMillis();
+        while (cache.getTotalSizeBytes() == 0)
+        {
+            assertTrue(System.currentTimeMillis() - t < WRITE_TIMEOUT_MS, "Cache file not written");
+            Thread.sleep(10);
+        }
+    }
+
+    private Map<RhythmVoice, Phrase> createRvPhrases(Rhythm r)
+    {
+        Map<RhythmVoice, Phrase> res = new HashMap<>();
+        int i = 0;
+        for (var rv : r.getRhythmVoices())
+        {
+            Phrase p = new Phrase(rv.getPreferredChannel(), rv.isDrums());
+            p.add(new NoteEvent(36 + i, 0.5f, 100, 0f));
+            p.add(new NoteEvent(61 + i, 1.333f, 64, 1.25f, Note.Accidental.FLAT));
+            p.add(new NoteEvent(127, 0.01f, 1, 15.999f));
+            res.put(rv, p);
+            i++;
+        }
+        return res;
+    }
+
+    private byte[] toBytes(Rhythm r, Map<RhythmVoice, Phrase> rvPhrases) throws IOException
+    {
+        var bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes))
+        {
+            PhraseDiskCache.writePhrases(out, r, rvPhrases);
+        }
+        return bytes.toByteArray();
+    }
+
+    private DataInputStream toDataInputStream(byte[] bytes)
+    {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    private void assertSamePhrases(Map<RhythmVoice, Phrase> expected, Map<RhythmVoice, Phrase> actual)
+    {
+        assertNotNull(actual);
+        assertEquals(expected.keySet(), actual.keySet());
+        for (var rv : expected.keySet())
+        {
+            Phrase pExpected = expected.get(rv);
+            Phrase pActual = actual.get(rv);
+            assertEquals(pExpected.getChannel(), pActual.getChannel(), rv.getName());
+            assertEquals(pExpected.isDrums(), pActual.isDrums(), rv.getName());
+            assertTrue(pExpected.equalsAsNoteNearPosition(pActual, 0), rv.getName() + " expected=" + pExpected + " actual=" + pActual);
+            var itActual = pActual.iterator();
+            for (var ne : pExpected)
+            {
+                assertEquals(ne.getAccidental(), itActual.next().getAccidental());
+            }
+        }
+    }
+
+    // =================================================================================================================
+    // Inner classes
+    // =================================================================================================================
+    private static class TestMusicGenerator implements MusicGenerator
+    {
+
+        @Override
+        public Map<RhythmVoice, Phrase> generateMusic(SongContext songContext, RhythmVoice... rhythmVoices) throws MusicGenerationException
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
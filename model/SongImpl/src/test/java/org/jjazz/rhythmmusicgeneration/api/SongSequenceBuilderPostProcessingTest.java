@@ -0,0 +1,290 @@
+/*
+ *
+ *   DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ *   Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *   This file is part of the JJazzLab software.
+ *
+ *   JJazzLab is free software: you can redistribute it and/or modify
+ *   it under the terms of the Lesser GNU General Public License (LGPLv3)
+ *   as published by the Free Software Foundation, either version 3 of the License,
+ *   or (at your option) any later version.
+ *
+ *   JJazzLab is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   Contributor(s):
+ *
+ */
+package org.jjazz.rhythmmusicgeneration.api;
+
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Logger;
+import org.jjazz.chordleadsheet.ChordLeadSheetImpl;
+import org.jjazz.chordleadsheet.api.UnsupportedEditException;
+import org.jjazz.chordleadsheet.api.item.ExtChordSymbol;
+import org.jjazz.chordleadsheet.item.CLI_ChordSymbolImpl;
+import org.jjazz.chordleadsheet.item.CLI_SectionImpl;
+import org.jjazz.harmony.api.Position;
+import org.jjazz.harmony.api.TimeSignature;
+import org.jjazz.midimix.api.MidiMix;
+import org.jjazz.midimix.spi.MidiMixManager;
+import org.jjazz.phrase.api.NoteEvent;
+import org.jjazz.phrase.api.Phrase;
+import org.jjazz.rhythm.api.MusicGenerationException;
+import org.jjazz.rhythm.api.Rhythm;
+import org.jjazz.rhythm.api.RhythmVoice;
+import org.jjazz.rhythm.api.RhythmVoiceDelegate;
+import org.jjazz.rhythmdatabase.api.RhythmDatabase;
+import org.jjazz.rhythmparametersimpl.api.RP_SYS_Fill;
+import org.jjazz.rhythmparametersimpl.api.RP_SYS_Mute;
+import org.jjazz.song.api.Song;
+import org.jjazz.song.api.SongContext;
+import org.jjazz.song.spi.SongContextFactory;
+import org.jjazz.song.spi.SongFactory;
+import org.jjazz.songstructure.api.SongPart;
+import org.jjazz.utilities.api.Utilities;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check that the fused NotePipeline post-processing of SongSequenceBuilder gives the same phrases than the former multi-pass post-processing.
+ * <p>
+ * The fixture song uses a rhythm and an AdaptedRhythm (RhythmVoiceDelegates), NC chord symbols, RP_SYS_Mute (including a user track), RP_SYS_Fill
+ * fade_out, transposition, velocity shift, user tracks and drums rerouting.
+ */
+public class SongSequenceBuilderPostProcessingTest
+{
+
+    private static final int NB_USER_TRACKS = 3;
+    private static final int SPT_SIZE_IN_BARS = 8;
+    private static final Logger LOGGER = Logger.getLogger(SongSequenceBuilderPostProcessingTest.class.getSimpleName());
+
+    static
+    {
+        Utilities.setLoggingFormat(null);
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @Test
+    public void testFusedEqualsMultiPass() throws Exception
+    {
+        var context = createSongContext(32, new Random(2024));
+        var ssb = new SongSequenceBuilder(context);
+
+        var rvPhrases = createRhythmPhrases(context, new Random(17));
+        var rvPhrasesFused = getCopy(rvPhrases);
+        var rvPhrasesMultiPass = getCopy(rvPhrases);
+        ssb.postProcessPhrases(rvPhrasesFused, true);
+        ssb.postProcessPhrases(rvPhrasesMultiPass, false);
+
+        assertEquals(rvPhrasesMultiPass.keySet(), rvPhrasesFused.keySet());
+        assertTrue(rvPhrasesFused.keySet().stream().noneMatch(rv -> rv instanceof RhythmVoiceDelegate));
+        for (var rv : rvPhrasesMultiPass.keySet())
+        {
+            var pMultiPass = rvPhrasesMultiPass.get(rv);
+            var pFused = rvPhrasesFused.get(rv);
+            assertTrue(pMultiPass.equalsAsNoteNearPosition(pFused, 0), "rv=" + rv + "\nmultiPass=" + pMultiPass + "\nfused=" + pFused);
+        }
+    }
+
+    /**
+     * Compare the post-processing durations on a 300 bars song with 10 tracks (7 rhythm tracks + 3 user tracks).
+     * <p>
+     * Excluded from the default test run, run it with -Djjazzlab.surefire.excludedGroups=none.
+     */
+    @Tag("benchmark")
+    @Test
+    public void benchmarkPostProcessing() throws Exception
+    {
+        final int NB_WARMUP_RUNS = 5;
+        final int NB_RUNS = 20;
+        var context = createSongContext(300, new Random(2024));
+        var ssb = new SongSequenceBuilder(context);
+        var rvPhrases = createRhythmPhrases(context, new Random(17));
+
+        long multiPassNs = 0;
+        long fusedNs = 0;
+        for (int i = 0; i < NB_WARMUP_RUNS + NB_RUNS; i++)
+        {
+            var rvPhrasesMultiPass = getCopy(rvPhrases);
+            long t = System.nanoTime();
+            ssb.postProcessPhrases(rvPhrasesMultiPass, false);
+            long multiPassRunNs = System.nanoTime() - t;
+
+            var rvPhrasesFused = getCopy(rvPhrases);
+            t = System.nanoTime();
+            ssb.postProcessPhrases(rvPhrasesFused, true);
+            long fusedRunNs = System.nanoTime() - t;
+
+            if (i >= NB_WARMUP_RUNS)
+            {
+                multiPassNs += multiPassRunNs;
+                fusedNs += fusedRunNs;
+            }
+        }
+
+        int nbNotes = rvPhrases.values().stream().mapToInt(p -> p.size()).sum();
+        LOGGER.info(String.format("benchmarkPostProcessing() nbNotes=%d (+user tracks) multiPass=%.2fms fused=%.2fms", nbNotes,
+                multiPassNs / 1e6 / NB_RUNS, fusedNs / 1e6 / NB_RUNS));
+    }
+
+    // =============================================================================================
+    // Private methods
+    // =============================================================================================
+
+    /**
+     * Create a song with alternate SongParts of SPT_SIZE_IN_BARS bars: 4/4 with the default rhythm, and 3/4 with the corresponding AdaptedRhythm.
+     *
+     * @param nbBars
+     * @param rnd
+     * @return
+     */
+    private SongContext createSongContext(int nbBars, Random rnd) throws UnsupportedEditException, ParseException, MusicGenerationException
+    {
+        var cls = new ChordLeadSheetImpl("S0", TimeSignature.FOUR_FOUR, nbBars);
+        for (int bar = SPT_SIZE_IN_BARS; bar < nbBars; bar += SPT_SIZE_IN_BARS)
+        {
+            var ts = (bar / SPT_SIZE_IN_BARS) % 2 == 0 ? TimeSignature.FOUR_FOUR : TimeSignature.THREE_FOUR;
+            cls.addSection(new CLI_SectionImpl("S" + bar, ts, bar));
+        }
+        for (int bar = 0; bar < nbBars; bar++)
+        {
+            String chord = rnd.nextInt(6) == 0 ? "NC" : List.of("Dm7", "G7", "C7M", "A7", "Eb7").get(rnd.nextInt(5));
+            cls.addItem(new CLI_ChordSymbolImpl(ExtChordSymbol.get(chord), new Position(bar)));
+            if (rnd.nextBoolean())
+            {
+                cls.addItem(new CLI_ChordSymbolImpl(ExtChordSymbol.get(rnd.nextInt(4) == 0 ? "NC" : "F#m7b5"), new Position(bar, 2)));
+            }
+        }
+
+
+        Song song = SongFactory.getDefault().createSong("TestSong", cls);
+        var sgs = song.getSongStructure();
+
+
+        // Use an AdaptedRhythm for the 3/4 SongParts
+        var rdb = RhythmDatabase.getSharedInstance();
+        Rhythm r44 = sgs.getSongPart(0).getRhythm();
+        Rhythm r34 = rdb.getAdaptedRhythmInstance(r44, TimeSignature.THREE_FOUR);
+        assertNotNull(r34);
+        var spts34 = sgs.getSongParts().stream()
+                .filter(spt -> spt.getRhythm().getTimeSignature() == TimeSignature.THREE_FOUR)
+                .toList();
+        if (!spts34.isEmpty())
+        {
+            sgs.setSongPartsRhythm(spts34, r34, null);
+        }
+
+
+        // User tracks
+        MidiMix midiMix = MidiMixManager.getDefault().findMix(song);
+        for (int i = 0; i < NB_USER_TRACKS; i++)
+        {
+            song.setUserPhrase("User" + i, createRandomPhrase(0, sgs.toBeatRange(null).size(), rnd));
+        }
+
+
+        // Rhythm parameters
+        for (SongPart spt : sgs.getSongParts())
+        {
+            Rhythm r = spt.getRhythm();
+            var rpMute = RP_SYS_Mute.getMuteRp(r);
+            if (rpMute != null && rnd.nextInt(3) == 0)
+            {
+                String muted = rnd.nextBoolean() ? RP_SYS_Mute.RV_MUTE_USER_TRACK_1.getName() : r.getRhythmVoices().get(rnd.nextInt(r.getRhythmVoices().size())).getName();
+                sgs.setRhythmParameterValue(spt, rpMute, Set.of(muted));
+            }
+            var rpFill = RP_SYS_Fill.getFillRp(r);
+            if (rpFill != null && rnd.nextInt(4) == 0)
+            {
+                sgs.setRhythmParameterValue(spt, rpFill, RP_SYS_Fill.VALUE_FADE_OUT);
+            }
+        }
+
+
+        // Instrument settings and drums rerouting
+        for (RhythmVoice rv : r44.getRhythmVoices())
+        {
+            var insSet = midiMix.getInstrumentMix(rv).getSettings();
+            switch (rv.getType())
+            {
+                case BASS -> insSet.setTransposition(-12);
+                case CHORD1 -> insSet.setVelocityShift(20);
+                case CHORD2 ->
+                {
+                    insSet.setTransposition(5);
+                    insSet.setVelocityShift(-30);
+                }
+                case PERCUSSION -> midiMix.setDrumsReroutedChannel(true, midiMix.getChannel(rv));
+                default ->
+                {
+                }
+            }
+        }
+
+        return SongContextFactory.getDefault().of(song, midiMix);
+    }
+
+    /**
+     * Create the phrases like generateAllRhythmPhrases(): one phrase per RhythmVoice of each rhythm (RhythmVoiceDelegates for an AdaptedRhythm),
+     * notes only in the SongParts of the rhythm.
+     *
+     * @param context
+     * @param rnd
+     * @return
+     */
+    private Map<RhythmVoice, Phrase> createRhythmPhrases(SongContext context, Random rnd)
+    {
+        Map<RhythmVoice, Phrase> res = new HashMap<>();
+        for (SongPart spt : context.getSongParts())
+        {
+            var sptBeatRange = context.getSptBeatRange(spt);
+            for (RhythmVoice rv : spt.getRhythm().getRhythmVoices())
+            {
+                RhythmVoice rvSource = rv instanceof RhythmVoiceDelegate rvd ? rvd.getSource() : rv;
+                Phrase p = res.computeIfAbsent(rv, k -> new Phrase(context.getMidiMix().getChannel(rvSource), rv.isDrums()));
+                var pSpt = createRandomPhrase(p.getChannel(), sptBeatRange.size(), rnd);
+                pSpt.shiftAllEvents(sptBeatRange.from, false);
+                p.add(pSpt);
+            }
+        }
+        return res;
+    }
+
+    private Map<RhythmVoice, Phrase> getCopy(Map<RhythmVoice, Phrase> rvPhrases)
+    {
+        Map<RhythmVoice, Phrase> res = new HashMap<>();
+        rvPhrases.forEach((rv, p) -> res.put(rv, p.clone()));
+        return res;
+    }
+
+    /**
+     * Create a phrase with random notes until sizeInBeats, possibly overlapping.
+     */
+    private Phrase createRandomPhrase(int channel, float sizeInBeats, Random rnd)
+    {
+        Phrase p = new Phrase(channel);
+        float pos = rnd.nextInt(4) / 4f;
+        while (pos < sizeInBeats - 0.25f)
+        {
+            float dur = Math.min(0.05f + rnd.nextInt(16) / 4f, sizeInBeats - pos);
+            p.add(new NoteEvent(30 + rnd.nextInt(60), dur, 1 + rnd.nextInt(127), pos));         // (pitch, dur, velo, pos)
+            pos += rnd.nextInt(8) / 8f + 0.125f;
+        }
+        return p;
+    }
+}
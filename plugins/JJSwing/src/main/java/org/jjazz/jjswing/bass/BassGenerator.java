@@ -41,6 +41,7 @@ import org.jjazz.rhythmmusicgeneration.api.AccentProcessor;
 import org.jjazz.rhythmmusicgeneration.api.AnticipatedChordProcessor;
 import org.jjazz.rhythmmusicgeneration.api.ChordSequence;
 import org.jjazz.rhythmmusicgeneration.api.SimpleChordSequence;
+import org.jjazz.rhythmmusicgeneration.spi.CancellationToken;
 import org.jjazz.rhythmmusicgeneration.spi.MusicGenerator;
 import org.jjazz.song.api.Song;
 import org.jjazz.song.spi.SongContextFactory;
@@ -100,8 +101,32 @@ public class BassGenerator implements MusicGenerator
      */
     @Override
     public HashMap<RhythmVoice, Phrase> generateMusic(SongContext context, RhythmVoice... rvs) throws MusicGenerationException
+    {
+        return generateMusic(context, CancellationToken.NONE, rvs);
+    }
+
+    @Override
+    public String getSettingsFingerprint(SongContext context)
+    {
+        return BassGeneratorSettings.getInstance().getFingerprint();
+    }
+
+    /**
+     * Process only one bass track.
+     * <p>
+     * cancelToken is checked before processing each bass style.
+     *
+     * @param context
+     * @param cancelToken
+     * @param rvs         0 or 1 value. If specified must be a bass RhythmVoice
+     * @return
+     * @throws MusicGenerationException
+     */
+    @Override
+    public HashMap<RhythmVoice, Phrase> generateMusic(SongContext context, CancellationToken cancelToken, RhythmVoice... rvs) throws MusicGenerationException
     {
         Objects.requireNonNull(context);
+        Objects.requireNonNull(cancelToken);
         Preconditions.checkArgument(rvs.length == 0 || (rvs.length == 1 && rvs[0].getType() == RhythmVoice.Type.BASS), "context=%s, rvs=%s", context, rvs);
 
         if (context.getSong() != lastSong)
@@ -134,7 +159,8 @@ public class BassGenerator implements MusicGenerator
 
 
         // Get one bass phrase per used BassStyle, then merge them into pRes
-        var bassPhrases = getOneBassPhrasePerBassStyle(context, tags);
+        var bassPhrases = getOneBassPhrasePerBassStyle(context, tags, cancelToken);
+        cancelToken.checkCancelled();
         HashMap<RhythmVoice, Phrase> res = new HashMap<>();
         int channel = getChannelFromMidiMix(context.getMidiMix(), rvBass);
         assert channel != -1 : "rvBass=" + rvBass + " context.getMidiMix()=" + context.getMidiMix();
@@ -288,10 +314,11 @@ public class BassGenerator implements MusicGenerator
      *
      * @param sgContextOrig
      * @param tags
+     * @param cancelToken Checked before processing each bass style
      * @return
      * @throws org.jjazz.rhythm.api.MusicGenerationException
      */
-    private List<Phrase> getOneBassPhrasePerBassStyle(SongContext sgContextOrig, List<String> tags) throws MusicGenerationException
+    private List<Phrase> getOneBassPhrasePerBassStyle(SongContext sgContextOrig, List<String> tags, CancellationToken cancelToken) throws MusicGenerationException
     {
         LOGGER.fine("getVariationBassPhrases() --");
 
@@ -320,6 +347,8 @@ public class BassGenerator implements MusicGenerator
         // Process each used bass style
         for (var style : usedBassStyles)
         {
+            cancelToken.checkCancelled();
+
             // Prepare the list of SimpleChordSequence
             var barRanges = contextWork.getMergedBarRanges(rhythm, rpBassStyle, RP_BassStyle.toRpValue(style));
             if (barRanges.isEmpty())
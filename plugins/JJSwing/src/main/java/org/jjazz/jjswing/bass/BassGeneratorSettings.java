@@ -94,6 +94,18 @@ public class BassGeneratorSettings
         pcs.firePropertyChange(PREF_SWING_PROFILE_INTENSITY, old, intensity);
     }
 
+    /**
+     * A fingerprint of the settings which impact the generated music.
+     *
+     * @return
+     * @see org.jjazz.rhythmmusicgeneration.spi.MusicGenerator#getSettingsFingerprint(org.jjazz.song.api.SongContext)
+     */
+    public String getFingerprint()
+    {
+        return "nonChordStart=" + isAcceptNonChordBassStartNote() + ",randomized=" + isWbpsaStoreRandomized() + ",swingIntensity="
+                + getSwingProfileIntensity();
+    }
+
     public synchronized void addPropertyChangeListener(PropertyChangeListener listener)
     {
         pcs.addPropertyChangeListener(listener);
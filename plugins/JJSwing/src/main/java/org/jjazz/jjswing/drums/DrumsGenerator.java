@@ -33,6 +33,7 @@ import org.jjazz.rhythmparametersimpl.api.RP_SYS_Variation;
 import org.jjazz.rhythmmusicgeneration.api.AccentProcessor;
 import org.jjazz.rhythmmusicgeneration.api.AccentProcessorConfig;
 import org.jjazz.rhythmmusicgeneration.api.SimpleChordSequence;
+import org.jjazz.rhythmmusicgeneration.spi.CancellationToken;
 import org.jjazz.rhythmmusicgeneration.spi.MusicGenerator;
 import org.jjazz.song.api.Song;
 import org.jjazz.songstructure.api.SongPart;
@@ -76,8 +77,38 @@ public class DrumsGenerator implements MusicGenerator
      */
     @Override
     public HashMap<RhythmVoice, Phrase> generateMusic(SongContext context, RhythmVoice... rvs) throws MusicGenerationException
+    {
+        return generateMusic(context, CancellationToken.NONE, rvs);
+    }
+
+    /**
+     * The only user setting used by the drums generation is the swing profile intensity.
+     *
+     * @param context
+     * @return
+     */
+    @Override
+    public String getSettingsFingerprint(SongContext context)
+    {
+        return "swingIntensity=" + BassGeneratorSettings.getInstance().getSwingProfileIntensity();
+    }
+
+    /**
+     * Process only drums and percussion tracks.
+     * <p>
+     * cancelToken is checked before processing each SongPart.
+     *
+     * @param context
+     * @param cancelToken
+     * @param rvs         If specified must be a drums or percussion RhythmVoice
+     * @return
+     * @throws MusicGenerationException
+     */
+    @Override
+    public HashMap<RhythmVoice, Phrase> generateMusic(SongContext context, CancellationToken cancelToken, RhythmVoice... rvs) throws MusicGenerationException
     {
         Objects.requireNonNull(context);
+        Objects.requireNonNull(cancelToken);
         Preconditions.checkArgument(rvs.length == 0
                 || Stream.of(rvs).allMatch(rv -> rv.getType() == RhythmVoice.Type.DRUMS || rv.getType() == RhythmVoice.Type.PERCUSSION),
                 "context=%s, rvs=%s", context, rvs);
@@ -119,7 +150,7 @@ public class DrumsGenerator implements MusicGenerator
 
         Phrase pDrums = rvDrums != null ? new Phrase(9, true) : null;       // channel is normally unused
         Phrase pPerc = rvPerc != null ? new Phrase(8, true) : null;         // channel is normally unused
-        fillPhrases(pDrums, pPerc, context, tags);
+        fillPhrases(pDrums, pPerc, context, tags, cancelToken);
 
         if (rvDrums != null)
         {
@@ -151,15 +182,17 @@ public class DrumsGenerator implements MusicGenerator
      * @param pPerc   Can be null except if pDrums is null
      * @param context
      * @param tags
+     * @param cancelToken Checked before processing each SongPart
      * @throws org.jjazz.rhythm.api.MusicGenerationException
      */
-    private void fillPhrases(Phrase pDrums, Phrase pPerc, SongContext context, List<String> tags) throws MusicGenerationException
+    private void fillPhrases(Phrase pDrums, Phrase pPerc, SongContext context, List<String> tags, CancellationToken cancelToken) throws MusicGenerationException
     {
         var dpsDb = DpSourceDatabase.getInstance(TimeSignature.FOUR_FOUR);
         var nbBeatsPerBar = rhythm.getTimeSignature().getNbNaturalBeats();
 
         for (var spt : getRhythmSpts(context))
         {
+            cancelToken.checkCancelled();
             var drumsStyle = getDrumsStyle(spt);
             var dpss = dpsDb.getDpSourceSet(drumsStyle);
             int dpsSizeInBars = dpss.getSize();
@@ -0,0 +1,575 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLab software.
+ *   
+ *  JJazzLab is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLab is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.yamjjazz;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jjazz.phrase.api.NoteEvent;
+import org.jjazz.rhythmmusicgeneration.api.SourcePhrase;
+import org.jjazz.rhythmmusicgeneration.api.SourcePhraseSet;
+import org.jjazz.yamjjazz.rhythm.api.CtabChannelSettings;
+import org.jjazz.yamjjazz.rhythm.api.Style;
+import org.jjazz.yamjjazz.rhythm.api.StylePart;
+import org.jjazz.yamjjazz.rhythm.api.StylePartType;
+import org.openide.modules.Places;
+
+/**
+ * A disk cache of the music data of a Style, i.e. the SourcePhraseSets of each StylePart, as produced by Style.readMusicData().
+ * <p>
+ * Reading the cache avoids parsing again the whole Midi sequence of the style files. A cache file is valid only for the exact
+ * same style files: the absolute path, size and last modified time of each file are stored in the cache file header. The cache
+ * file is also ignored if it was written with another VERSION.
+ * <p>
+ * The cache file contains an index of the StyleParts, so that the music data of each StylePart can be loaded separately, when it is
+ * actually needed. Cache files are read with positional reads and closed right away, they are not memory-mapped: a mapped file can't be
+ * replaced on Windows until the mapping is garbage collected.
+ * <p>
+ * The cache only stores the music data: the non music data (CASM, SInt, etc.) must have been read before calling
+ * {@link #loadStylePartSizes(Style, File, File)}.
+ */
+public final class StyleMusicDataCache
+{
+
+    /**
+     * Increase this value when the file format or the style music data parsing changes.
+     */
+    public static final int VERSION = 3;
+    private static final int MAGIC = 0x594A5A43;        // "YJZC"
+    /**
+     * Magic number, version and header length.
+     */
+    private static final int PREAMBLE_SIZE = 12;
+    private static final String CACHE_DIR_NAME = "YamJJazzStyles";
+    private static final Logger LOGGER = Logger.getLogger(StyleMusicDataCache.class.getSimpleName());
+
+    private StyleMusicDataCache()
+    {
+    }
+
+    /**
+     * Check that the cache is valid for the specified style files and set the size of each StylePart of style.
+     * <p>
+     * The music data of each StylePart can then be loaded with {@link #load(StylePart, File, File)}.
+     *
+     * @param style   The style must have its non music data already read.
+     * @param stdFile A standard Yamaha style file
+     * @param extFile A YamJJazz extension file. Can be null.
+     * @return False if the cache is missing, stale or inconsistent with style. Style is then left unchanged.
+     */
+    static public boolean loadStylePartSizes(Style style, File stdFile, File extFile)
+    {
+        File cacheFile = getCacheFile(stdFile, extFile);
+        return cacheFile != null && loadStylePartSizes(style, stdFile, extFile, cacheFile);
+    }
+
+    /**
+     * Fill the specified StylePart with its cached music data.
+     * <p>
+     * If the cache is missing, stale or inconsistent with stylePart, stylePart music data is cleared.
+     *
+     * @param stylePart A StylePart of a style with its non music data already read.
+     * @param stdFile   A standard Yamaha style file
+     * @param extFile   A YamJJazz extension file. Can be null.
+     * @return True if stylePart music data was loaded from the cache.
+     */
+    static public boolean load(StylePart stylePart, File stdFile, File extFile)
+    {
+        File cacheFile = getCacheFile(stdFile, extFile);
+        return cacheFile != null && load(stylePart, stdFile, extFile, cacheFile);
+    }
+
+    /**
+     * Save the music data of style in the cache.
+     * <p>
+     * Errors are only logged: the cache is an optimization.
+     *
+     * @param style   The style with its music data loaded from stdFile and extFile.
+     * @param stdFile A standard Yamaha style file
+     * @param extFile A YamJJazz extension file. Can be null.
+     */
+    static public void save(Style style, File stdFile, File extFile)
+    {
+        File cacheFile = getCacheFile(stdFile, extFile);
+        if (cacheFile != null)
+        {
+            save(style, stdFile, extFile, cacheFile);
+        }
+    }
+
+    // ===================================================================================
+    // Package private methods
+    // ===================================================================================
+    /**
+     * Same as loadStylePartSizes(Style, File, File) but with an explicit cache file.
+     *
+     * @param style
+     * @param stdFile
+     * @param extFile   Can be null
+     * @param cacheFile
+     * @return
+     */
+    static boolean loadStylePartSizes(Style style, File stdFile, File extFile, File cacheFile)
+    {
+        Map<StylePartType, IndexEntry> index = readIndex(cacheFile, stdFile, extFile);
+        if (index == null || !index.keySet().containsAll(style.getStylePartTypes()) || !style.getStylePartTypes().containsAll(index.keySet()))
+        {
+            return false;
+        }
+        for (StylePartType type : style.getStylePartTypes())
+        {
+            style.getStylePart(type).setSizeInBeats(index.get(type).sizeInBeats());
+        }
+        return true;
+    }
+
+    /**
+     * Same as load(StylePart, File, File) but with an explicit cache file.
+     *
+     * @param stylePart
+     * @param stdFile
+     * @param extFile   Can be null
+     * @param cacheFile
+     * @return
+     */
+    static boolean load(StylePart stylePart, File stdFile, File extFile, File cacheFile)
+    {
+        if (!cacheFile.isFile())
+        {
+            return false;
+        }
+
+        boolean b = false;
+        try (FileChannel fc = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ))
+        {
+            Map<StylePartType, IndexEntry> index = readIndex(fc, stdFile, extFile);
+            IndexEntry entry = index == null ? null : index.get(stylePart.getType());
+            if (entry != null)
+            {
+                ByteBuffer bb = read(fc, entry.offset(), entry.length());
+                stylePart.setSizeInBeats(entry.sizeInBeats());
+                b = readMusicData(bb, stylePart);
+            }
+            if (!b)
+            {
+                stylePart.clearMusicData(-1);
+            }
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException ex)
+        {
+            LOGGER.log(Level.WARNING, "load() Invalid cache file {0} for {1}: {2}", new Object[]
+            {
+                cacheFile.getAbsolutePath(), stdFile.getName(), ex.getMessage()
+            });
+            stylePart.clearMusicData(-1);
+        }
+
+        LOGGER.log(Level.FINE, "load() stylePart={0} stdFile={1} extFile={2} b={3}", new Object[]
+        {
+            stylePart.getType(), stdFile, extFile, b
+        });
+        return b;
+    }
+
+    /**
+     * Same as save(Style, File, File) but with an explicit cache file.
+     * <p>
+     * The data is written in a temporary file which then replaces cacheFile.
+     *
+     * @param style
+     * @param stdFile
+     * @param extFile   Can be null
+     * @param cacheFile
+     */
+    static void save(Style style, File stdFile, File extFile, File cacheFile)
+    {
+        File tmpFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp");
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile.toPath()))))
+            {
+                write(out, style, stdFile, extFile);
+            }
+            try
+            {
+                Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex)
+            {
+                Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex)
+        {
+            LOGGER.log(Level.WARNING, "save() Can''t write cache file {0} for {1}: {2}", new Object[]
+            {
+                cacheFile.getAbsolutePath(), stdFile.getName(), ex.getMessage()
+            });
+            tmpFile.delete();
+        }
+    }
+
+    // ===================================================================================
+    // Private methods
+    // ===================================================================================
+    /**
+     * Get the cache file for the specified style files.
+     * <p>
+     * Different style files might share the same cache file if their path hashcodes collide: the header check will then reject the
+     * cache file.
+     *
+     * @param stdFile
+     * @param extFile Can be null
+     * @return Null if no cache directory available.
+     */
+    static private File getCacheFile(File stdFile, File extFile)
+    {
+        File dir = Places.getCacheSubdirectory(CACHE_DIR_NAME);
+        if (dir == null)
+        {
+            return null;
+        }
+        String key = stdFile.getAbsolutePath() + (extFile == null ? "" : "|" + extFile.getAbsolutePath());
+        String name = stdFile.getName().replaceAll("[^\\w.-]", "_") + "-" + Integer.toHexString(key.hashCode()) + ".bin";
+        return new File(dir, name);
+    }
+
+    /**
+     * Write the cache file content.
+     * <p>
+     * File format: magic number, VERSION, header length, header, StyleParts music data. The header contains the style files keys and the
+     * StyleParts index.
+     */
+    static private void write(DataOutputStream out, Style style, File stdFile, File extFile) throws IOException
+    {
+        List<StylePartType> types = style.getStylePartTypes();
+
+
+        // Music data of each StylePart
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DataOutputStream dataOut = new DataOutputStream(data);
+        int[] offsets = new int[types.size() + 1];
+        for (int i = 0; i < types.size(); i++)
+        {
+            offsets[i] = dataOut.size();
+            writeMusicData(dataOut, style.getStylePart(types.get(i)));
+        }
+        offsets[types.size()] = dataOut.size();
+        dataOut.flush();
+
+
+        // Header
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerOut = new DataOutputStream(header);
+        writeFileKey(headerOut, stdFile);
+        headerOut.writeBoolean(extFile != null);
+        if (extFile != null)
+        {
+            writeFileKey(headerOut, extFile);
+        }
+        writeIndex(headerOut, style, offsets);
+        headerOut.flush();
+
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(header.size());
+        header.writeTo(out);
+        data.writeTo(out);
+    }
+
+    static private void writeFileKey(DataOutputStream out, File f) throws IOException
+    {
+        writeString(out, f.getAbsolutePath());
+        out.writeLong(f.length());
+        out.writeLong(f.lastModified());
+    }
+
+    static private boolean readFileKey(ByteBuffer bb, File f)
+    {
+        String path = readString(bb);
+        long size = bb.getLong();
+        long lastModified = bb.getLong();
+        return path.equals(f.getAbsolutePath()) && size == f.length() && lastModified == f.lastModified();
+    }
+
+    /**
+     * Read the index of the specified cache file.
+     *
+     * @param cacheFile
+     * @param stdFile
+     * @param extFile   Can be null
+     * @return Null if cache file is missing or invalid
+     */
+    static private Map<StylePartType, IndexEntry> readIndex(File cacheFile, File stdFile, File extFile)
+    {
+        if (!cacheFile.isFile())
+        {
+            return null;
+        }
+
+        Map<StylePartType, IndexEntry> res = null;
+        try (FileChannel fc = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ))
+        {
+            res = readIndex(fc, stdFile, extFile);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException ex)
+        {
+            LOGGER.log(Level.WARNING, "readIndex() Invalid cache file {0} for {1}: {2}", new Object[]
+            {
+                cacheFile.getAbsolutePath(), stdFile.getName(), ex.getMessage()
+            });
+        }
+        return res;
+    }
+
+    /**
+     * Read the header of a cache file.
+     *
+     * @param fc
+     * @param stdFile
+     * @param extFile Can be null
+     * @return Null if cache file is stale or has another VERSION. Entry offsets are absolute positions in the file.
+     * @throws IOException If file is too short
+     */
+    static private Map<StylePartType, IndexEntry> readIndex(FileChannel fc, File stdFile, File extFile) throws IOException
+    {
+        ByteBuffer bb = read(fc, 0, PREAMBLE_SIZE);
+        if (bb.getInt() != MAGIC || bb.getInt() != VERSION)
+        {
+            return null;
+        }
+        int headerLength = bb.getInt();
+        long fileSize = fc.size();
+        if (headerLength < 0 || PREAMBLE_SIZE + (long) headerLength > fileSize)
+        {
+            return null;
+        }
+
+        bb = read(fc, PREAMBLE_SIZE, headerLength);
+        if (!readFileKey(bb, stdFile))
+        {
+            return null;
+        }
+        boolean hasExt = bb.get() != 0;
+        if (hasExt != (extFile != null) || (extFile != null && !readFileKey(bb, extFile)))
+        {
+            return null;
+        }
+
+        return readIndex(bb, PREAMBLE_SIZE + headerLength, fileSize);
+    }
+
+    /**
+     * Write the StyleParts index.
+     * <p>
+     * An index entry is: StylePartType name, size in beats, offset of the StylePart music data (relative to the end of the header), length of
+     * the StylePart music data.
+     *
+     * @param out
+     * @param style
+     * @param offsets The start of each StylePart music data, plus the end of the last one
+     */
+    static private void writeIndex(DataOutputStream out, Style style, int[] offsets) throws IOException
+    {
+        List<StylePartType> types = style.getStylePartTypes();
+        out.writeInt(types.size());
+        for (int i = 0; i < types.size(); i++)
+        {
+            StylePartType type = types.get(i);
+            writeString(out, type.name());
+            out.writeFloat(style.getStylePart(type).getSizeInBeats());
+            out.writeInt(offsets[i]);
+            out.writeInt(offsets[i + 1] - offsets[i]);
+        }
+    }
+
+    /**
+     * Read the index written by writeIndex().
+     *
+     * @param bb        Positioned at the start of the index
+     * @param dataStart The file position of the StyleParts music data
+     * @param fileSize
+     * @return Null if index is not consistent with the file size. Entry offsets are absolute positions in the file.
+     */
+    static private Map<StylePartType, IndexEntry> readIndex(ByteBuffer bb, long dataStart, long fileSize)
+    {
+        Map<StylePartType, IndexEntry> res = new EnumMap<>(StylePartType.class);
+        int nbTypes = bb.getInt();
+        for (int i = 0; i < nbTypes; i++)
+        {
+            StylePartType type = StylePartType.valueOf(readString(bb));
+            float sizeInBeats = bb.getFloat();
+            int offset = bb.getInt();
+            int length = bb.getInt();
+            if (offset < 0 || length < 0 || dataStart + offset + length > fileSize)
+            {
+                return null;
+            }
+            res.put(type, new IndexEntry(sizeInBeats, dataStart + offset, length));
+        }
+        return res;
+    }
+
+    /**
+     * Read length bytes from the specified file position.
+     *
+     * @param fc
+     * @param position
+     * @param length
+     * @return A heap buffer ready to be read
+     * @throws IOException If end of file is reached before length bytes are read
+     */
+    static private ByteBuffer read(FileChannel fc, long position, int length) throws IOException
+    {
+        ByteBuffer bb = ByteBuffer.allocate(length);
+        while (bb.hasRemaining())
+        {
+            if (fc.read(bb, position + bb.position()) < 0)
+            {
+                throw new EOFException("Unexpected end of file at position " + (position + bb.position()));
+            }
+        }
+        bb.flip();
+        return bb;
+    }
+
+    /**
+     * Write for each complexity level the SourcePhraseSets with their notes.
+     */
+    static private void writeMusicData(DataOutputStream out, StylePart sp) throws IOException
+    {
+        List<Integer> levels = sp.getComplexityLevels();
+        out.writeInt(levels.size());
+        for (int level : levels)
+        {
+            List<SourcePhraseSet> spsList = sp.getSourcePhraseSets(level);
+            out.writeInt(level);
+            out.writeInt(spsList.size());
+            for (SourcePhraseSet sps : spsList)
+            {
+                String id = sps.getClientProperty(SourcePhraseSet.PROP_ID);
+                writeString(out, id == null ? "" : id);
+
+                List<Integer> channels = sps.getSourceChannels();
+                out.writeInt(channels.size());
+                for (int channel : channels)
+                {
+                    SourcePhrase phrase = sps.getPhrase(channel);
+                    out.writeInt(channel);
+                    out.writeInt(phrase.size());
+                    for (NoteEvent ne : phrase)
+                    {
+                        out.writeByte(ne.getPitch());
+                        out.writeByte(ne.getVelocity());
+                        out.writeFloat(ne.getDurationInBeats());
+                        out.writeFloat(ne.getPositionInBeats());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the StylePart data written by writeMusicData(DataOutputStream, StylePart).
+     *
+     * @param bb Positioned at the start of the StylePart data, limit set at the end.
+     * @return False if data is not consistent with sp
+     */
+    static private boolean readMusicData(ByteBuffer bb, StylePart sp)
+    {
+        int nbLevels = bb.getInt();
+        for (int j = 0; j < nbLevels; j++)
+        {
+            int level = bb.getInt();
+            int nbSps = bb.getInt();
+            for (int k = 0; k < nbSps; k++)
+            {
+                String id = readString(bb);
+                SourcePhraseSet sps = sp.getSourcePhraseSet(level, k);
+                if (sps == null)
+                {
+                    sps = new SourcePhraseSet(id);
+                    sp.addSourcePhraseSet(sps, level);
+                }
+
+                int nbChannels = bb.getInt();
+                for (int c = 0; c < nbChannels; c++)
+                {
+                    int channel = bb.getInt();
+                    CtabChannelSettings cTab = sp.getCtabChannelSettings(channel);
+                    if (cTab == null)
+                    {
+                        return false;
+                    }
+                    SourcePhrase phrase = new SourcePhrase(channel, cTab.getSourceChordSymbol());
+                    int nbNotes = bb.getInt();
+                    for (int n = 0; n < nbNotes; n++)
+                    {
+                        int pitch = bb.get();
+                        int velocity = bb.get();
+                        float duration = bb.getFloat();
+                        float pos = bb.getFloat();
+                        phrase.add(new NoteEvent(pitch, duration, velocity, pos));
+                    }
+                    sps.setPhrase(channel, phrase);
+                }
+            }
+        }
+        return !bb.hasRemaining();
+    }
+
+    static private void writeString(DataOutputStream out, String s) throws IOException
+    {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static private String readString(ByteBuffer bb)
+    {
+        byte[] bytes = new byte[bb.getInt()];
+        bb.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ===================================================================================
+    // Private classes
+    // ===================================================================================
+    private record IndexEntry(float sizeInBeats, long offset, int length)
+        {
+
+    }
+}
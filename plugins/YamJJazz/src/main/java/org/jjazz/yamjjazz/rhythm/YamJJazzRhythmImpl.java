@@ -51,9 +51,11 @@ import org.jjazz.rhythm.api.RhythmParameter;
 import org.jjazz.rhythm.api.RhythmVoice;
 import org.jjazz.rhythm.api.TempoRange;
 import org.jjazz.rhythmparametersimpl.api.*;
+import org.jjazz.rhythmmusicgeneration.api.SourcePhraseSet;
 import org.jjazz.rhythmmusicgeneration.spi.MusicGenerator;
 import org.jjazz.yamjjazz.rhythm.api.AccType;
 import org.jjazz.yamjjazz.FormatNotSupportedException;
+import org.jjazz.yamjjazz.StyleMusicDataCache;
 import org.jjazz.yamjjazz.MPL_ExtensionFile;
 import org.jjazz.yamjjazz.rhythm.api.Style;
 import org.jjazz.yamjjazz.rhythm.api.StylePart;
@@ -352,6 +354,8 @@ public class YamJJazzRhythmImpl implements YamJJazzRhythm
     /**
      * If StyleParts Phrases are not loaded, load them.
      * <p>
+     * If the StyleMusicDataCache is valid, only the Main_A Phrases are loaded, the Phrases of the other StyleParts are loaded on demand
+     * (i.e. only if a song actually uses them). Otherwise all the Phrases are read from the style files, then saved in the cache.
      */
     @Override
     public void loadResources() throws MusicGenerationException
@@ -360,14 +364,19 @@ public class YamJJazzRhythmImpl implements YamJJazzRhythm
         {
             return;
         }
+        File cachedExtFile = isExtendedRhythm ? extFile : null;
         try
         {
-            if (isExtendedRhythm)
-            {
-                style.readMusicData(extFile, stdFile);
-            } else
+            if (!loadFromCache(cachedExtFile))
             {
-                style.readMusicData(stdFile);
+                if (isExtendedRhythm)
+                {
+                    style.readMusicData(extFile, stdFile);
+                } else
+                {
+                    style.readMusicData(stdFile);
+                }
+                StyleMusicDataCache.save(style, stdFile, cachedExtFile);
             }
         } catch (FormatNotSupportedException | IOException | InvalidMidiDataException ex)
         {
@@ -396,6 +405,7 @@ public class YamJJazzRhythmImpl implements YamJJazzRhythm
         for (StylePartType type : style.getStylePartTypes())
         {
             StylePart sp = style.getStylePart(type);
+            sp.setMusicDataLoader(null);
             sp.clearMusicData(-1);
         }
         pcs.firePropertyChange(PROP_RESOURCES_LOADED, true, false);
@@ -576,6 +586,113 @@ public class YamJJazzRhythmImpl implements YamJJazzRhythm
         return rv;
     }
 
+    /**
+     * Load the Main_A music data from the StyleMusicDataCache, and set a music data loader for the other StyleParts.
+     *
+     * @param cachedExtFile
+     * @return False if cache could not be used
+     */
+    private boolean loadFromCache(File cachedExtFile)
+    {
+        if (!StyleMusicDataCache.loadStylePartSizes(style, stdFile, cachedExtFile)
+                || !StyleMusicDataCache.load(style.getStylePart(StylePartType.Main_A), stdFile, cachedExtFile))
+        {
+            return false;
+        }
+        for (StylePartType type : style.getStylePartTypes())
+        {
+            if (type != StylePartType.Main_A)
+            {
+                style.getStylePart(type).setMusicDataLoader(sp -> loadStylePartMusicData(sp, cachedExtFile));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The music data loader of a StylePart.
+     * <p>
+     * If the StyleMusicDataCache can't be used anymore (e.g. cache file was deleted), parse the style files once in a separate Style instance
+     * and copy the music data of all the StyleParts not loaded yet. This is done under the style music data lock, which is held when a
+     * loader is called and which is shared by all the StyleParts.
+     *
+     * @param sp
+     * @param cachedExtFile
+     */
+    private void loadStylePartMusicData(StylePart sp, File cachedExtFile)
+    {
+        if (StyleMusicDataCache.load(sp, stdFile, cachedExtFile))
+        {
+            return;
+        }
+
+        LOGGER.log(Level.WARNING, "{0} - loadStylePartMusicData() cache not available for {1}, reading style file", new Object[]
+        {
+            getName(), sp.getType()
+        });
+        try
+        {
+            Style tmpStyle = new Style();
+            if (isExtendedRhythm)
+            {
+                tmpStyle.readNonMusicData(extFile, stdFile);
+                tmpStyle.readMusicData(extFile, stdFile);
+            } else
+            {
+                tmpStyle.readNonMusicData(stdFile);
+                tmpStyle.readMusicData(stdFile);
+            }
+            StyleMusicDataCache.save(tmpStyle, stdFile, cachedExtFile);
+
+            for (StylePartType type : style.getStylePartTypes())
+            {
+                StylePart stylePart = style.getStylePart(type);
+                StylePart tmpSp = tmpStyle.getStylePart(type);
+                // sp loader has already been removed by StylePart.loadMusicData()
+                if (tmpSp != null && (stylePart == sp || stylePart.isMusicDataLoaderSet()))
+                {
+                    stylePart.setMusicDataLoader(null);
+                    copyMusicData(tmpSp, stylePart);
+                }
+            }
+        } catch (FormatNotSupportedException | IOException | InvalidMidiDataException ex)
+        {
+            LOGGER.log(Level.SEVERE, "{0} - loadStylePartMusicData() problem reading file: {1}", new Object[]
+            {
+                getName(), ex.getLocalizedMessage()
+            });
+        }
+    }
+
+    /**
+     * Copy the music data of a StylePart into a StylePart of another Style instance built from the same style files.
+     *
+     * @param srcSp
+     * @param destSp
+     */
+    private void copyMusicData(StylePart srcSp, StylePart destSp)
+    {
+        destSp.setSizeInBeats(srcSp.getSizeInBeats());
+        for (int complexity : srcSp.getComplexityLevels())
+        {
+            List<SourcePhraseSet> srcSpsList = srcSp.getSourcePhraseSets(complexity);
+            for (int i = 0; i < srcSpsList.size(); i++)
+            {
+                SourcePhraseSet srcSps = srcSpsList.get(i);
+                SourcePhraseSet sps = destSp.getSourcePhraseSet(complexity, i);
+                if (sps == null)
+                {
+                    sps = new SourcePhraseSet(srcSps.getClientProperty(SourcePhraseSet.PROP_ID));
+                    destSp.addSourcePhraseSet(sps, complexity);
+                }
+                for (int channel : srcSps.getSourceChannels())
+                {
+                    sps.setPhrase(channel, srcSps.getPhrase(channel));
+                }
+            }
+        }
+    }
+
     /**
      * Build the RhythmParameters for this rhythm.
      * <p>
@@ -73,6 +73,7 @@ public class Style
     private final HashMap<StylePartType, StylePart> mapTypeStylePart = new HashMap<>();
     private final SInt sInt = new SInt();
     private final HashSet<AccType> returnedAccTypes = new HashSet<>();         // Internal state data, set and used by getAccType(channel)
+    private final Object musicDataLock = new Object();                          // Shared by our StyleParts to load their music data
 
     private static final Logger LOGGER = Logger.getLogger(Style.class.getSimpleName());
 
@@ -80,6 +81,7 @@ public class Style
      * Create a StylePart of specified type and add it to this object.
      * <p>
      * If StylePart already exists, just return it.<br>
+     * All the StyleParts of a Style share the same music data lock, see {@link StylePart#setMusicDataLoader(java.util.function.Consumer)}.
      *
      * @param type
      * @return The created StylePart.
@@ -89,7 +91,7 @@ public class Style
         StylePart sp = mapTypeStylePart.get(type);
         if (sp == null)
         {
-            sp = new StylePart(type);
+            sp = new StylePart(type, musicDataLock);
             mapTypeStylePart.put(sp.getType(), sp);
         }
         return sp;
@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jjazz.harmony.api.Note;
@@ -40,6 +41,8 @@ import org.jjazz.rhythmmusicgeneration.api.SourcePhraseSet;
  * SourcePhraseSets are stored per ComplexityLevel. There can be several SourcePhraseSets variations for one complexity level.
  * Standard Yamaha styles use only one variation at the default complexity level. <br>
  * Cntt data is discarded because not used in this version.
+ * <p>
+ * Music data can be loaded on demand: see {@link #setMusicDataLoader(java.util.function.Consumer)}.
  */
 public class StylePart
 {
@@ -56,6 +59,11 @@ public class StylePart
     private final HashMap<Integer, List<SourcePhraseSet>> mapComplexity_PhraseList = new HashMap<>();
 
     private float sizeInBeats;
+    /**
+     * If not null, called to load the music data upon first access. Guarded by musicDataLock.
+     */
+    private Consumer<StylePart> musicDataLoader;
+    private final Object musicDataLock;
     private static final Logger LOGGER = Logger.getLogger(StylePart.class.getSimpleName());
 
     /**
@@ -66,8 +74,24 @@ public class StylePart
      * @param t
      */
     public StylePart(StylePartType t)
+    {
+        this(t, null);
+    }
+
+    /**
+     * Create a StylePart of specified type which uses the specified lock for music data loading.
+     * <p>
+     * StylePart is initialized with 1 SourcePhraseSet at DEFAULT_COMPLEXITY_LEVEL.
+     *
+     * @param t
+     * @param musicDataLock The lock held when calling the music data loader, e.g. shared by all the StyleParts of a Style. If null use this
+     *                      StylePart.
+     * @see #setMusicDataLoader(java.util.function.Consumer)
+     */
+    public StylePart(StylePartType t, Object musicDataLock)
     {
         type = t;
+        this.musicDataLock = musicDataLock == null ? this : musicDataLock;
         sizeInBeats = 0;
         SourcePhraseSet sps = new SourcePhraseSet(type.toString());
         addSourcePhraseSet(sps, StylePart.DEFAULT_COMPLEXITY_LEVEL);
@@ -146,6 +170,7 @@ public class StylePart
         {
             throw new IllegalArgumentException("sps=" + sps + " complexity=" + complexity);   //NOI18N
         }
+        loadMusicData();
         List<SourcePhraseSet> list = mapComplexity_PhraseList.get(complexity);
         if (list == null)
         {
@@ -162,6 +187,7 @@ public class StylePart
      */
     public List<Integer> getComplexityLevels()
     {
+        loadMusicData();
         ArrayList<Integer> res = new ArrayList<>(mapComplexity_PhraseList.keySet());
         Collections.sort(res);
         return res;
@@ -180,6 +206,7 @@ public class StylePart
         {
             throw new IllegalArgumentException("complexity=" + complexity + " variationIndex=" + variationIndex);   //NOI18N
         }
+        loadMusicData();
         List<SourcePhraseSet> list = mapComplexity_PhraseList.get(complexity);
         if (list == null || variationIndex >= list.size())
         {
@@ -222,6 +249,7 @@ public class StylePart
      */
     public List<SourcePhraseSet> getSourcePhraseSets(int complexity)
     {
+        loadMusicData();
         ArrayList<SourcePhraseSet> res = new ArrayList<>();
         List<SourcePhraseSet> list = mapComplexity_PhraseList.get(complexity);
         if (list != null)
@@ -231,56 +259,114 @@ public class StylePart
         return res;
     }
 
+    /**
+     * Set the function which loads the music data of this StylePart on demand.
+     * <p>
+     * The loader is called once, when the music data (complexity levels or SourcePhraseSets) is accessed for the first time, or when
+     * {@link #loadMusicData()} is called. The loader is called with the music data lock held (see
+     * {@link #StylePart(StylePartType, Object)}): other threads accessing the music data wait until loading is complete. The loader can
+     * fill the music data of other StyleParts sharing the same lock.
+     *
+     * @param loader If null, remove the current loader.
+     */
+    public void setMusicDataLoader(Consumer<StylePart> loader)
+    {
+        synchronized (musicDataLock)
+        {
+            musicDataLoader = loader;
+        }
+    }
+
+    /**
+     * Check if music data will be loaded on demand.
+     *
+     * @return True if a music data loader is set and was not called yet.
+     * @see #setMusicDataLoader(java.util.function.Consumer)
+     */
+    public boolean isMusicDataLoaderSet()
+    {
+        synchronized (musicDataLock)
+        {
+            return musicDataLoader != null;
+        }
+    }
+
+    /**
+     * If a music data loader is set, call it then remove it.
+     * <p>
+     * Do nothing if no music data loader is set.
+     */
+    public void loadMusicData()
+    {
+        synchronized (musicDataLock)
+        {
+            if (musicDataLoader != null)
+            {
+                Consumer<StylePart> loader = musicDataLoader;
+                musicDataLoader = null;         // Before calling the loader, which uses our music data accessors
+                loader.accept(this);
+            }
+        }
+    }
+
     /**
      * Check if music data has been loaded for this StylePart.
+     * <p>
+     * This does not call the music data loader, if any.
      *
      * @return True if there is at least one non-empty SourcePhraseSet for a given complexity level with one SourcePhrase inside.
      */
     public boolean isMusicLoaded()
     {
-        boolean b = false;
-        for (Integer complexityLevel : mapComplexity_PhraseList.keySet())
+        synchronized (musicDataLock)
         {
-            List<SourcePhraseSet> spsList = mapComplexity_PhraseList.get(complexityLevel);
-            for (SourcePhraseSet sps : spsList)
+            boolean b = false;
+            for (Integer complexityLevel : mapComplexity_PhraseList.keySet())
             {
-                if (!sps.getSourceChannels().isEmpty())
+                List<SourcePhraseSet> spsList = mapComplexity_PhraseList.get(complexityLevel);
+                for (SourcePhraseSet sps : spsList)
                 {
-                    b = true;
-                    break;
+                    if (!sps.getSourceChannels().isEmpty())
+                    {
+                        b = true;
+                        break;
+                    }
                 }
             }
+            return b;
         }
-        return b;
     }
 
     /**
      * Remove the music data for the specified complexity level.
      * <p>
-     * This calls clear() on each SourcePhraseSet of this complexityLevel.
+     * This calls clear() on each SourcePhraseSet of this complexityLevel. This does not remove the music data loader, if any.
      *
      * @param complexityLevel If value is &lt; 1, remove music data for all the complexity levels.
      */
     public void clearMusicData(int complexityLevel)
     {
-        if (complexityLevel < 1)
+        synchronized (musicDataLock)
         {
-            for (Integer cl : mapComplexity_PhraseList.keySet())
+            if (complexityLevel < 1)
             {
-                List<SourcePhraseSet> spsList = mapComplexity_PhraseList.get(cl);
-                for (SourcePhraseSet sps : spsList)
+                for (Integer cl : mapComplexity_PhraseList.keySet())
                 {
-                    sps.clear();
+                    List<SourcePhraseSet> spsList = mapComplexity_PhraseList.get(cl);
+                    for (SourcePhraseSet sps : spsList)
+                    {
+                        sps.clear();
+                    }
                 }
-            }
-        } else
-        {
-            List<SourcePhraseSet> spsList = mapComplexity_PhraseList.get(complexityLevel);
-            if (spsList != null)
+            } else
             {
-                for (SourcePhraseSet sps : spsList)
+                List<SourcePhraseSet> spsList = mapComplexity_PhraseList.get(complexityLevel);
+                if (spsList != null)
                 {
-                    sps.clear();
+                    for (SourcePhraseSet sps : spsList)
+                    {
+                        sps.clear();
+                    }
                 }
             }
         }
@@ -30,6 +30,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -67,6 +71,7 @@ import org.jjazz.rhythmmusicgeneration.api.SourcePhrase;
 import org.jjazz.rhythmmusicgeneration.api.SourcePhraseSet;
 import org.jjazz.rhythmmusicgeneration.api.PhraseUtilities;
 import org.jjazz.rhythmmusicgeneration.api.SimpleChordSequence;
+import org.jjazz.rhythmmusicgeneration.spi.CancellationToken;
 import org.jjazz.rhythmmusicgeneration.spi.MusicGenerator;
 import org.jjazz.rhythmparametersimpl.api.RP_SYS_Fill;
 import org.jjazz.rhythmparametersimpl.api.RP_SYS_Intensity;
@@ -105,16 +110,83 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
             {
 
     }
-    public static boolean ENABLE_DRUM_KEY_MAPPING = true;
-    private YamJJazzRhythm rhythm;
-    private List<RhythmVoice> rhythmVoices;
-    private SongContext contextOriginal;
-    private SongContext contextWork;
 
     /**
-     * The Chord Sequence with all the chords.
+     * The parameters which impact fitSrcPhraseToChordSymbol() + Phrases.limitPitch(): the set of pitches used by the source phrase, the source and
+     * destination chord symbols, the ctb2 settings.
      */
-    private SongChordSequence songChordSequence;
+    private record FitKey(long srcPitchesLow, long srcPitchesHigh, int srcRootRelPitch, ChordType srcChordType, Ctb2ChannelSettings ctb2,
+            int destRootRelPitch, int destBassRelPitch, ChordType destChordType, ChordRenderingInfo cri)
+            {
+
+    }
+
+    /**
+     * The state of one generateMusic() call.
+     * <p>
+     * The same instance can be used by concurrent generateMusic() calls (e.g. from different MusicGenerationQueues), so the per-call data must not be
+     * stored in instance fields.
+     */
+    private static class GenerationState
+    {
+
+        private final CancellationToken cancelToken;
+        private List<RhythmVoice> rhythmVoices;
+        private SongContext contextOriginal;
+        private SongContext contextWork;
+        /**
+         * The Chord Sequence with all the chords.
+         */
+        private SongChordSequence songChordSequence;
+        /**
+         * Cache of the source pitch to destination pitch maps computed by fitSrcPhraseToChordSymbol(), see getFittedPhrase().
+         */
+        private final Map<FitKey, int[]> fitPitchMaps = new ConcurrentHashMap<>();
+        private final AtomicInteger fitCacheRequests = new AtomicInteger();
+        private final AtomicInteger fitCacheMisses = new AtomicInteger();
+
+        private GenerationState(CancellationToken cancelToken)
+        {
+            this.cancelToken = cancelToken;
+        }
+    }
+
+    /**
+     * The rendering of one AccType phrase for one short chord sequence, see getOneAccTypePhraseOneShortChordSequence().
+     */
+    private static class AccTypeRendering
+    {
+
+        private final GenerationState state;
+        private final StylePart stylePart;
+        private final SourcePhraseSet sps;
+        private final AccType accType;
+        private final SimpleChordSequence shortcSeq;
+        private Phrase phrase;
+        private MusicGenerationException exception;
+
+        private AccTypeRendering(GenerationState state, StylePart stylePart, SourcePhraseSet sps, AccType accType, SimpleChordSequence shortcSeq)
+        {
+            this.state = state;
+            this.stylePart = stylePart;
+            this.sps = sps;
+            this.accType = accType;
+            this.shortcSeq = shortcSeq;
+        }
+    }
+
+    public static boolean ENABLE_DRUM_KEY_MAPPING = true;
+    /**
+     * If true, the AccType phrases of the short chord sequences are rendered in parallel.
+     */
+    public static boolean ENABLE_PARALLEL_RENDERING = true;
+    /**
+     * Max number of threads used to render the AccType phrases in parallel.
+     */
+    private static final int MAX_RENDERING_THREADS = 8;
+    private static ForkJoinPool RENDERING_POOL;
+    private static ForkJoinPool LOW_PRIORITY_RENDERING_POOL;
+    private final YamJJazzRhythm rhythm;
 
     protected static final Logger LOGGER = Logger.getLogger(YamJJazzRhythmGenerator.class.getSimpleName());
 
@@ -127,40 +199,87 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
         rhythm = r;
     }
 
+    /**
+     * The per-call data is stored in a GenerationState instance, the rendering pools are created in a synchronized method, and the StyleParts music
+     * data is loaded under the Style lock.
+     *
+     * @return True
+     */
+    @Override
+    public boolean isThreadSafe()
+    {
+        return true;
+    }
+
     @Override
     public HashMap<RhythmVoice, Phrase> generateMusic(SongContext contextOrig, RhythmVoice... rvs) throws MusicGenerationException
+    {
+        return generateMusic(contextOrig, CancellationToken.NONE, rvs);
+    }
+
+    /**
+     * Generate the music, checking cancelToken before processing each chord sequence.
+     *
+     * @param contextOrig
+     * @param cancelToken
+     * @param rvs
+     * @return
+     * @throws MusicGenerationException
+     */
+    @Override
+    public HashMap<RhythmVoice, Phrase> generateMusic(SongContext contextOrig, CancellationToken cancelToken, RhythmVoice... rvs) throws MusicGenerationException
     {
         Objects.requireNonNull(contextOrig);
+        Objects.requireNonNull(cancelToken);
+        GenerationState state = new GenerationState(cancelToken);
+        try
+        {
+            return generateMusicImpl(state, contextOrig, rvs);
+        } finally
+        {
+            LOGGER.log(LogLevel, "generateMusic() rhythm={0} fitted phrases cache: requests={1} misses={2}", new Object[]
+            {
+                rhythm.getName(), state.fitCacheRequests.get(), state.fitCacheMisses.get()
+            });
+        }
+    }
+
+    // ===============================================================================
+    // Private methods
+    // ===============================================================================
+
+    private HashMap<RhythmVoice, Phrase> generateMusicImpl(GenerationState state, SongContext contextOrig, RhythmVoice... rvs) throws MusicGenerationException
+    {
         var rhythmRvs = rhythm.getRhythmVoices();
         var rvsList = List.of(rvs);
         Preconditions.checkArgument(rhythmRvs.containsAll(rvsList), "rvsList=%s\nrhythmRvs=%s", rvsList, rhythmRvs);
 
-        rhythmVoices = rvsList.isEmpty() ? rhythmRvs : rvsList;
-        contextOriginal = contextOrig;
+        state.rhythmVoices = rvsList.isEmpty() ? rhythmRvs : rvsList;
+        state.contextOriginal = contextOrig;
 
 
         // Prepare a working context which can be modified 
-        IntRange contextBarRange = contextOriginal.getBarRange();
-        FloatRange contextBeatRange = contextOriginal.getBeatRange();
-        Song songWork = contextOriginal.getSong().getDeepCopy(true);
-        this.contextWork = SongContextFactory.getDefault().of(songWork, contextOriginal.getMidiMix(), contextBarRange);
+        IntRange contextBarRange = state.contextOriginal.getBarRange();
+        FloatRange contextBeatRange = state.contextOriginal.getBeatRange();
+        Song songWork = state.contextOriginal.getSong().getDeepCopy(true);
+        state.contextWork = SongContextFactory.getDefault().of(songWork, state.contextOriginal.getMidiMix(), contextBarRange);
 
 
         // Introduce fake section/songpart when a Fill rhythm parameter is used
-        preprocessFillParameter(contextWork);     // SongStructure and ChordLeadsheet might be changed independently
+        preprocessFillParameter(state.contextWork);     // SongStructure and ChordLeadsheet might be changed independently
 
 
         // Build the main chord sequence
-        songChordSequence = new SongChordSequence(songWork, contextWork.getBarRange());   // Throw UserErrorGenerationException but no risk: will have a chord at beginning. Handle alternate chord symbols.       
-        songChordSequence.removeRedundantStandardChords();
+        state.songChordSequence = new SongChordSequence(songWork, state.contextWork.getBarRange());   // Throw UserErrorGenerationException but no risk: will have a chord at beginning. Handle alternate chord symbols.       
+        state.songChordSequence.removeRedundantStandardChords();
 
         LOGGER.log(LogLevel, "generateMusic()-- rhythm={0} songChordSequence={1}", new Object[]
         {
-            rhythm.getName(), songChordSequence
+            rhythm.getName(), state.songChordSequence
         });
 
         // The final result to fill in
-        List<ChordSeqPhrases> chordSeqPhrases = getAllPhrasesAllChordSequences();
+        List<ChordSeqPhrases> chordSeqPhrases = getAllPhrasesAllChordSequences(state);
 
         // Robustness check
         assert !chordSeqPhrases.isEmpty();
@@ -175,27 +294,29 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
             }
         }
 
+        state.cancelToken.checkCancelled();
+
         // Get a simplified version: merge all ChordSequences which use our rhythm
-        List<ChordSeqPhrases> chordSeqPhrasesMerged = mergeChordSequences(chordSeqPhrases);
+        List<ChordSeqPhrases> chordSeqPhrasesMerged = mergeChordSequences(state, chordSeqPhrases);
 
         // Perfom post process operations
-        processAnticipationsAndAccents(chordSeqPhrasesMerged);
+        processAnticipationsAndAccents(state, chordSeqPhrasesMerged);
 
         // Apply the Intensity parameter 
-        processIntensityParameter(chordSeqPhrasesMerged);
+        processIntensityParameter(state, chordSeqPhrasesMerged);
 
         // Post process bass line for in-bar chord symbols
-        processBassLine(chordSeqPhrasesMerged);
+        processBassLine(state, chordSeqPhrasesMerged);
 
         // Fill the resulting phrase for each RhythmVoice    
         HashMap<RhythmVoice, Phrase> res = new HashMap<>();
-        for (RhythmVoice rv : rhythmVoices)       // Some can be RhythmVoiceDelegates
+        for (RhythmVoice rv : state.rhythmVoices)       // Some can be RhythmVoiceDelegates
         {
             // Get or create the resulting phrase
             Phrase pRes = res.get(rv);
             if (pRes == null)
             {
-                int destChannel = getChannelFromMidiMix(rv); // Manage the case of RhythmVoiceDelegate
+                int destChannel = getChannelFromMidiMix(state, rv); // Manage the case of RhythmVoiceDelegate
                 pRes = new Phrase(destChannel, rv.isDrums());
                 res.put(rv, pRes);
             }
@@ -219,25 +340,25 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
         return res;
     }
 
-    // ===============================================================================
-    // Private methods
-    // ===============================================================================
     /**
      * Get all phrases for all AccTypes for all song context parts using our rhythm.
      * <p>
+     * The SourcePhraseSets are randomly picked first, in chord sequence order. Then the AccType phrases of each short chord sequence, which are
+     * independent, are rendered (in parallel if ENABLE_PARALLEL_RENDERING is true), and finally merged in chord sequence order.
      *
      * @return @throws org.jjazz.rhythm.api.MusicGenerationException
      */
-    private List<ChordSeqPhrases> getAllPhrasesAllChordSequences() throws MusicGenerationException
+    private List<ChordSeqPhrases> getAllPhrasesAllChordSequences(GenerationState state) throws MusicGenerationException
     {
         LOGGER.fine("getAllPhrasesAllChordSequences()--");
 
         List<ChordSeqPhrases> res = new ArrayList<>();
+        List<List<AccTypeRendering>> renderingsPerChordSeq = new ArrayList<>();
 
 
         // Process each used variation
         var rpVariation = RP_SYS_Variation.getVariationRp(rhythm);
-        Set<String> usedVariationValues = contextWork.getSongParts().stream()
+        Set<String> usedVariationValues = state.contextWork.getSongParts().stream()
                 .filter(spt -> spt.getRhythm() == rhythm)
                 .map(spt -> spt.getRPValue(rpVariation))
                 .collect(Collectors.toSet());
@@ -257,53 +378,103 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
 
 
             // Get all the (merged) bar ranges which use rpVariationValue
-            var barRanges = contextWork.getMergedBarRanges(rhythm, rpVariation, rpVariationValue);
+            var barRanges = state.contextWork.getMergedBarRanges(rhythm, rpVariation, rpVariationValue);
 
 
-            // Generate music for each bar range
+            // Prepare the rendering of each bar range
             for (var barRange : barRanges)
             {
-                float beatStart = contextWork.getSong().getSongStructure().toPositionInNaturalBeats(new Position(barRange.from));
-                SimpleChordSequence cSeq = new SimpleChordSequence(songChordSequence.subSequence(barRange, true), beatStart, rhythm.getTimeSignature());
-                HashMap<AccType, Phrase> mapAccTypePhrase = getAllAccTypesPhrasesOneChordSequence(stylePart, complexity, cSeq);
-                ChordSeqPhrases csp = new ChordSeqPhrases(cSeq, mapAccTypePhrase);
-                res.add(csp);
+                state.cancelToken.checkCancelled();
+                float beatStart = state.contextWork.getSong().getSongStructure().toPositionInNaturalBeats(new Position(barRange.from));
+                SimpleChordSequence cSeq = new SimpleChordSequence(state.songChordSequence.subSequence(barRange, true), beatStart, rhythm.getTimeSignature());
+                renderingsPerChordSeq.add(getAccTypeRenderingsOneChordSequence(state, stylePart, complexity, cSeq));
+                res.add(new ChordSeqPhrases(cSeq, new HashMap<>()));
             }
 
         }
 
+
+        // Render
+        long t = System.currentTimeMillis();
+        List<AccTypeRendering> renderings = renderingsPerChordSeq.stream()
+                .flatMap(l -> l.stream())
+                .toList();
+        boolean parallel = ENABLE_PARALLEL_RENDERING && renderings.size() > 1;
+        if (parallel && ForkJoinTask.inForkJoinPool())
+        {
+            // We're already running in a pool (e.g. several rhythms generated in parallel), use it
+            renderings.parallelStream().forEach(r -> render(r));
+        } else if (parallel)
+        {
+            getRenderingPool().submit(() -> renderings.parallelStream().forEach(r -> render(r))).join();
+        } else
+        {
+            renderings.forEach(r -> render(r));
+        }
+        LOGGER.log(LogLevel, "getAllPhrasesAllChordSequences() nbRenderings={0} parallel={1} duration={2}ms", new Object[]
+        {
+            renderings.size(), parallel, System.currentTimeMillis() - t
+        });
+
+
+        // Merge in chord sequence order
+        for (int i = 0; i < res.size(); i++)
+        {
+            ChordSeqPhrases csp = res.get(i);
+            for (var rendering : renderingsPerChordSeq.get(i))
+            {
+                if (rendering.exception != null)
+                {
+                    throw rendering.exception;
+                }
+                AccType at = rendering.accType;
+                Phrase p = rendering.phrase;
+                Phrase pRes = csp.mapAccTypePhrase().get(at);
+                if (pRes == null)
+                {
+                    pRes = new Phrase(p.getChannel(), at.isDrums());
+                    csp.mapAccTypePhrase().put(at, pRes);
+                }
+                pRes.add(p);
+                // Make sure all notes are OFF at the end
+                Phrases.silenceAfter(pRes, csp.simpleChordSequence().getBeatRange().to);
+            }
+        }
+
         return res;
     }
 
     /**
-     * Get all phrases (all AccTypes) for one chord sequence.
+     * Prepare the rendering of all phrases (all AccTypes) for one chord sequence.
      * <p>
-     * If cSeq is bigger than the StylePart length (most common case), slice cSeq in smaller subsequences to be processed.
+     * If cSeq is bigger than the StylePart length (most common case), slice cSeq in smaller subsequences to be processed. The SourcePhraseSet of
+     * each subsequence is randomly picked here.
      *
+     * @param state
      * @param stylePart
      * @param complexity
      * @param cSeq       There must be a chord on first bar/beat 0. Can be any length.
-     * @return
+     * @return The renderings in subsequence order
      * @throws MusicGenerationException
      */
-    private HashMap<AccType, Phrase> getAllAccTypesPhrasesOneChordSequence(StylePart stylePart, int complexity, SimpleChordSequence cSeq) throws MusicGenerationException
+    private List<AccTypeRendering> getAccTypeRenderingsOneChordSequence(GenerationState state, StylePart stylePart, int complexity, SimpleChordSequence cSeq) throws MusicGenerationException
     {
         if (stylePart == null || !cSeq.hasChordAtBeginning())
         {
             throw new IllegalArgumentException("stylePart=" + stylePart + " cSeq=" + cSeq);   //NOI18N
         }
-        LOGGER.log(LogLevel, "getAllAccTypesPhrasesOneChordSequence() -- stylePart={0} cSeq={1}", new Object[]
+        LOGGER.log(LogLevel, "getAccTypeRenderingsOneChordSequence() -- stylePart={0} cSeq={1}", new Object[]
         {
             stylePart, cSeq
         });
 
-        HashMap<AccType, Phrase> res = new HashMap<>();
+        List<AccTypeRendering> res = new ArrayList<>();
 
         int cSeqEndBar = cSeq.getBarRange().to;
         int stylePartNbBars = rhythm.getStyle().getStylePartSizeInBars(stylePart.getType());
         if (stylePartNbBars <= 0)
         {
-            LOGGER.log(Level.SEVERE, "getAllAccTypesPhrasesOneChordSequence() Invalid value for stylePartNbBars={0}  stylePart={1}", new Object[]
+            LOGGER.log(Level.SEVERE, "getAccTypeRenderingsOneChordSequence() Invalid value for stylePartNbBars={0}  stylePart={1}", new Object[]
             {
                 stylePartNbBars, stylePart
             });
@@ -320,41 +491,25 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
             int endBar = Math.min(startBar + stylePartNbBars - 1, cSeqEndBar);
             SimpleChordSequence subSeq = cSeq.subSequence(new IntRange(startBar, endBar), true);
 
-            // Get all the phrases for this short chord sequence
-            HashMap<AccType, Phrase> mapAccTypePhrase = getAllAccTypesPhrasesOneShortChordSequence(stylePart, complexity, subSeq);
-
-            // Append the phrases to the result
-            for (AccType at : mapAccTypePhrase.keySet())
-            {
-                Phrase p = mapAccTypePhrase.get(at);
-                Phrase pRes = res.get(at);
-                if (pRes == null)
-                {
-                    pRes = new Phrase(p.getChannel(), at.isDrums());
-                    res.put(at, pRes);
-                }
-                pRes.add(p);
-                // Make sure all notes are OFF at the end
-                Phrases.silenceAfter(pRes, cSeq.getBeatRange().to);
-            }
+            // Get all the phrases renderings for this short chord sequence
+            res.addAll(getAccTypeRenderingsOneShortChordSequence(state, stylePart, complexity, subSeq));
         }
-        //LOGGER.log(LogLevel, "getAllAccTypesPhrasesOneChordSequence() res=" + res);
         return res;
     }
 
     /**
-     * Get all phrases for each StylePart's AccType adjusted to a "short ChordSequence".
+     * Prepare the rendering of each StylePart's AccType adjusted to a "short ChordSequence".
      * <p>
      * Short chordSequence means its size is equal or less than the stylePart.<br>
-     * If there are several SourcePhraseSet alternatives for the given stylePart and complexity, we select
+     * If there are several SourcePhraseSet alternatives for the given stylePart and complexity, we randomly select one.
      *
+     * @param state
      * @param stylePart
      * @param complexity
      * @param shortcSeq  There must be a chord on first bar/beat 0. Can't be longer than a sourcePhrase length.
      * @return
-     * @throws MusicGenerationException
      */
-    private HashMap<AccType, Phrase> getAllAccTypesPhrasesOneShortChordSequence(StylePart stylePart, int complexity, SimpleChordSequence shortcSeq) throws MusicGenerationException
+    private List<AccTypeRendering> getAccTypeRenderingsOneShortChordSequence(GenerationState state, StylePart stylePart, int complexity, SimpleChordSequence shortcSeq)
     {
 
         if (stylePart == null || complexity < 1 || !shortcSeq.hasChordAtBeginning() || shortcSeq.getBarRange().size() > rhythm.getStyle().getStylePartSizeInBars(
@@ -362,16 +517,16 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
         {
             throw new IllegalArgumentException("stylePart=" + stylePart + " shortcSeq=" + shortcSeq);   //NOI18N
         }
-        LOGGER.log(LogLevel, "getAllAccTypesPhrasesOneShortChordSequence() -- stylePart={0} shortcSeq={1}", new Object[]
+        LOGGER.log(LogLevel, "getAccTypeRenderingsOneShortChordSequence() -- stylePart={0} shortcSeq={1}", new Object[]
         {
             stylePart,
             shortcSeq
         });
-        HashMap<AccType, Phrase> mapAccTypePhrase = new HashMap<>();
+        List<AccTypeRendering> res = new ArrayList<>();
 
 
         // Pick the SourcePhraseSet to be used depending on the context
-        SpsRandomPicker srp = SpsRandomPicker.getInstance(contextWork.getSong().getSongStructure(), rhythm, stylePart, complexity);
+        SpsRandomPicker srp = SpsRandomPicker.getInstance(state.contextWork.getSong().getSongStructure(), rhythm, stylePart, complexity);
         SourcePhraseSet sps = srp.pick(shortcSeq.getBarRange().from);
 
 
@@ -379,16 +534,78 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
         for (AccType at : stylePart.getAccTypes())
         {
             RhythmVoice rv = rhythm.getRhythmVoice(at);
-            if (!rhythmVoices.contains(rv))
+            if (!state.rhythmVoices.contains(rv))
             {
                 // Skip the RhythmVoices which are not requested
                 continue;
             }
-            Phrase p = getOneAccTypePhraseOneShortChordSequence(stylePart, sps, at, shortcSeq);
-            mapAccTypePhrase.put(at, p);
+            res.add(new AccTypeRendering(state, stylePart, sps, at, shortcSeq));
         }
 
-        return mapAccTypePhrase;
+        return res;
+    }
+
+    /**
+     * Compute rendering.phrase, or set rendering.exception.
+     * <p>
+     * Can be called in parallel for different renderings.
+     *
+     * @param rendering
+     */
+    private void render(AccTypeRendering rendering)
+    {
+        try
+        {
+            rendering.state.cancelToken.checkCancelled();
+            rendering.phrase = getOneAccTypePhraseOneShortChordSequence(rendering.state, rendering.stylePart, rendering.sps, rendering.accType, rendering.shortcSeq);
+        } catch (MusicGenerationException ex)
+        {
+            rendering.exception = ex;
+        }
+    }
+
+    /**
+     * Get the bounded pool used to render the AccType phrases in parallel.
+     * <p>
+     * If the calling thread has a priority lower than Thread.NORM_PRIORITY (e.g. a background pre-generation), a separate pool whose workers use
+     * Thread.MIN_PRIORITY is returned.
+     * <p>
+     * Worker threads use the context ClassLoader of the thread which created the pool, so that rendering can access the application Lookup.
+     *
+     * @return
+     */
+    static private synchronized ForkJoinPool getRenderingPool()
+    {
+        if (Thread.currentThread().getPriority() < Thread.NORM_PRIORITY)
+        {
+            if (LOW_PRIORITY_RENDERING_POOL == null)
+            {
+                LOW_PRIORITY_RENDERING_POOL = createRenderingPool("JL-YamJJazzRenderingLow-", Thread.MIN_PRIORITY);
+            }
+            return LOW_PRIORITY_RENDERING_POOL;
+        }
+        if (RENDERING_POOL == null)
+        {
+            RENDERING_POOL = createRenderingPool("JL-YamJJazzRendering-", Thread.NORM_PRIORITY);
+        }
+        return RENDERING_POOL;
+    }
+
+    static private ForkJoinPool createRenderingPool(String threadNamePrefix, int threadPriority)
+    {
+        int nbThreads = Math.min(MAX_RENDERING_THREADS, Math.max(2, Runtime.getRuntime().availableProcessors() - 1));
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        AtomicInteger n = new AtomicInteger(1);
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> 
+        {
+            var wt = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            wt.setName(threadNamePrefix + n.getAndIncrement());
+            wt.setContextClassLoader(cl);
+            wt.setPriority(threadPriority);
+            return wt;
+        };
+        return new ForkJoinPool(nbThreads, factory,
+                (th, ex) -> LOGGER.log(Level.SEVERE, "Uncaught in " + th.getName(), ex), false);
     }
 
     /**
@@ -396,6 +613,7 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
      * <p>
      * Short chordSequence means its size is equal or less than the stylePart source phrase.
      *
+     * @param state
      * @param stylePart
      * @param sps       The SourcePhraseSet to be used.
      * @param at
@@ -403,7 +621,7 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
      * @return A Phrase starting at cSeq's start position, and length=stylePart.nbBars
      * @throws MusicGenerationException
      */
-    private Phrase getOneAccTypePhraseOneShortChordSequence(StylePart stylePart, SourcePhraseSet sps, AccType at, SimpleChordSequence shortcSeq) throws MusicGenerationException
+    private Phrase getOneAccTypePhraseOneShortChordSequence(GenerationState state, StylePart stylePart, SourcePhraseSet sps, AccType at, SimpleChordSequence shortcSeq) throws MusicGenerationException
     {
         if (stylePart == null || sps == null || at == null || !shortcSeq.hasChordAtBeginning()
                 || shortcSeq.getBarRange().size() > rhythm.getStyle().getStylePartSizeInBars(stylePart.getType()))
@@ -421,8 +639,8 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
 
             throw new MusicGenerationException("Invalid data for rhythm " + rhythm.getName() + " / at=" + at);
         }
-        int destChannel = getChannelFromMidiMix(rv);
-        assert destChannel != -1 : "stylePart=" + stylePart + " rv=" + rv + " at=" + at + " midiMix=" + contextWork.getMidiMix();
+        int destChannel = getChannelFromMidiMix(state, rv);
+        assert destChannel != -1 : "stylePart=" + stylePart + " rv=" + rv + " at=" + at + " midiMix=" + state.contextWork.getMidiMix();
 
 
         // Take all the possible source channels, we'll do the selection when we have the destination chord
@@ -472,7 +690,7 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
             // Possibly remap drum notes if source/dest. keymaps differ
             if (at.isDrums())
             {
-                Instrument ins = contextWork.getMidiMix().getInstrumentMix(destChannel).getInstrument();
+                Instrument ins = state.contextWork.getMidiMix().getInstrumentMix(destChannel).getInstrument();
                 DrumKit.KeyMap destMap = KeyMapGM.getInstance();    // By default
                 if (ins.isDrumKit())
                 {
@@ -574,8 +792,7 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
                         LOGGER.log(LogLevel, "   ByPass+RootFixed: directly reusing source phrase");
                     } else
                     {
-                        Phrase fittedPhrase = fitSrcPhraseToChordSymbol(pSrcLow, ctb2, destEcs, cri);
-                        Phrases.limitPitch(fittedPhrase, ctb2.noteLowLimit.getPitch(), ctb2.noteHighLimit.getPitch());
+                        Phrase fittedPhrase = getFittedPhrase(state, pSrcLow, ctb2, destEcs, cri);
                         pDestOneCs.add(fittedPhrase);
                     }
                 }
@@ -585,8 +802,7 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
                 if (cTab.isSingleCtb2())
                 {
                     // There is only one main single ctb2 (always the case for SFF1 files)
-                    pDestOneCs = fitSrcPhraseToChordSymbol(pSrc, cTab.ctb2Main, destEcs, cri);  // We can replaceAll pDestOneCs
-                    Phrases.limitPitch(pDestOneCs, cTab.ctb2Main.noteLowLimit.getPitch(), cTab.ctb2Main.noteHighLimit.getPitch());
+                    pDestOneCs = getFittedPhrase(state, pSrc, cTab.ctb2Main, destEcs, cri);  // We can replaceAll pDestOneCs
                 } else
                 {
                     // There is also a low or high range too
@@ -603,8 +819,7 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
                         LOGGER.log(LogLevel, "   ByPass+RootFixed: directly reusing source phrase");
                     } else
                     {
-                        Phrase fittedPhrase = fitSrcPhraseToChordSymbol(pSrcMain, ctb2, destEcs, cri);
-                        Phrases.limitPitch(fittedPhrase, ctb2.noteLowLimit.getPitch(), ctb2.noteHighLimit.getPitch());
+                        Phrase fittedPhrase = getFittedPhrase(state, pSrcMain, ctb2, destEcs, cri);
                         pDestOneCs.add(fittedPhrase);
                     }
                 }
@@ -625,8 +840,7 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
                         LOGGER.log(LogLevel, "   ByPass+RootFixed: directly reusing source phrase");
                     } else
                     {
-                        Phrase fittedPhrase = fitSrcPhraseToChordSymbol(pSrcHigh, ctb2, destEcs, cri);
-                        Phrases.limitPitch(fittedPhrase, ctb2.noteLowLimit.getPitch(), ctb2.noteHighLimit.getPitch());
+                        Phrase fittedPhrase = getFittedPhrase(state, pSrcHigh, ctb2, destEcs, cri);
                         pDestOneCs.add(fittedPhrase);
                     }
 
@@ -662,7 +876,7 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
             //LOGGER.log(LogLevel, "getOneAccTypePhraseOneShortChordSequence()      pre-fixTransitions  pDest=" + pDest.toString());
             // Fix transitions for notes still ON during chord changes
             // Always use the main ctb2 RTR: not perfect since in some SFF2 files it seems there could be different RTR values for lowest/highest notes
-            fixNoteOnTransitions(pDest, shortcSeq, cTab.ctb2Main);
+            fixNoteOnTransitions(state, pDest, shortcSeq, cTab.ctb2Main);
 
             LOGGER.log(LogLevel, "getOneAccTypePhraseOneShortChordSequence()      post-fixTransitions pDest={0}", pDest);
 
@@ -680,6 +894,88 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
         return pRes;
     }
 
+    /**
+     * Same as fitSrcPhraseToChordSymbol() followed by Phrases.limitPitch(), but reuse the result of a previous call with the same parameters.
+     * <p>
+     * Songs repeat the same chord symbols many times. The fitting result only depends on the set of pitches used in pSrc (not on the note positions),
+     * and each source note pitch is always changed into the same destination pitch. So the per-generation cache stores a source pitch to destination
+     * pitch map, which is applied to the pSrc notes when the same chord symbol is used again with the same kind of source phrase.
+     *
+     * @param state
+     * @param pSrc
+     * @param ctb2
+     * @param destEcs
+     * @param cri
+     * @return A new phrase. NoteEvents have their client property set to the PARENT_NOTE, as with fitSrcPhraseToChordSymbol().
+     */
+    private Phrase getFittedPhrase(GenerationState state, SourcePhrase pSrc, Ctb2ChannelSettings ctb2, ExtChordSymbol destEcs, ChordRenderingInfo cri)
+    {
+        if (ctb2.ntr == NoteTranspositionRule.ROOT_TRANSPOSITION && ctb2.ntt == NoteTranspositionTable.BYPASS)
+        {
+            // Simple transposition which does not set PARENT_NOTE, no need to cache
+            Phrase res = fitSrcPhraseToChordSymbol(pSrc, ctb2, destEcs, cri);
+            Phrases.limitPitch(res, ctb2.noteLowLimit.getPitch(), ctb2.noteHighLimit.getPitch());
+            return res;
+        }
+
+        long pitchesLow = 0;
+        long pitchesHigh = 0;
+        for (NoteEvent ne : pSrc)
+        {
+            int pitch = ne.getPitch();
+            if (pitch < 64)
+            {
+                pitchesLow |= 1L << pitch;
+            } else
+            {
+                pitchesHigh |= 1L << (pitch - 64);
+            }
+        }
+        ExtChordSymbol srcEcs = pSrc.getSourceChordSymbol();
+        var fitKey = new FitKey(pitchesLow, pitchesHigh, srcEcs.getRootNote().getRelativePitch(), srcEcs.getChordType(), ctb2,
+                destEcs.getRootNote().getRelativePitch(), destEcs.getBassNote().getRelativePitch(), destEcs.getChordType(), cri);
+        state.fitCacheRequests.incrementAndGet();
+
+
+        int[] pitchMap = state.fitPitchMaps.get(fitKey);
+        if (pitchMap == null)
+        {
+            state.fitCacheMisses.incrementAndGet();
+            Phrase res = fitSrcPhraseToChordSymbol(pSrc, ctb2, destEcs, cri);
+            Phrases.limitPitch(res, ctb2.noteLowLimit.getPitch(), ctb2.noteHighLimit.getPitch());
+
+            // Save the pitch map: -1 means source pitch is not used in the fitted phrase
+            pitchMap = new int[128];
+            Arrays.fill(pitchMap, -1);
+            for (NoteEvent destNote : res)
+            {
+                NoteEvent srcNote = (NoteEvent) destNote.getClientProperties().get(Phrase.PARENT_NOTE);
+                if (srcNote == null)
+                {
+                    return res;     // Should not happen, don't cache
+                }
+                pitchMap[srcNote.getPitch()] = destNote.getPitch();
+            }
+            state.fitPitchMaps.putIfAbsent(fitKey, pitchMap);
+            return res;
+        }
+
+
+        // Reuse the pitch map
+        Phrase res = new Phrase(pSrc.getChannel(), false);
+        for (NoteEvent srcNote : pSrc)
+        {
+            int destPitch = pitchMap[srcNote.getPitch()];
+            if (destPitch != -1)
+            {
+                NoteEvent destNote = srcNote.setPitch(destPitch, true);
+                destNote.getClientProperties().put(Phrase.PARENT_NOTE, srcNote);
+                res.add(destNote);
+            }
+        }
+        return res;
+    }
+
     /**
      * Build a new phrase by adapting pSrc to destEcs, taking in account the specified parameters.
      *
@@ -847,12 +1143,13 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
      * - create new notes<br>
      * - create PitchBendNoteEvent (not implemented)<br>
      *
+     * @param state
      * @param pDest Notes position/duration must be consistent with cSeq's bounds.
      * @param cSeq  The chord sequence corresponding to phrase p.
      * @param ctb2  the channel settings of the phrase
      * @throws IllegalStateException
      */
-    private void fixNoteOnTransitions(Phrase pDest, SimpleChordSequence cSeq, Ctb2ChannelSettings ctb2) throws IllegalStateException
+    private void fixNoteOnTransitions(GenerationState state, Phrase pDest, SimpleChordSequence cSeq, Ctb2ChannelSettings ctb2) throws IllegalStateException
     {
         LOGGER.log(LogLevel, "fixNoteOnTransitions() -- pDest={0}\ncSeq={1}\nctb2.rtr={2}", new Object[]
         {
@@ -864,7 +1161,7 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
 
 
         // Prepare data
-        SongStructure ss = contextWork.getSong().getSongStructure();
+        SongStructure ss = state.contextWork.getSong().getSongStructure();
 
 
         // Test each destination note, use array as we will modify the phrase
@@ -1084,17 +1381,18 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
     /**
      * Change the velocity of notes depending on the Intensity parameter of each SongPart.
      *
+     * @param state
      * @param chordSeqPhrases
      */
-    private void processIntensityParameter(List<ChordSeqPhrases> chordSeqPhrases)
+    private void processIntensityParameter(GenerationState state, List<ChordSeqPhrases> chordSeqPhrases)
     {
         for (var chordSeqPhrase : chordSeqPhrases)
         {
             HashMap<AccType, Phrase> mapAccTypePhrase = chordSeqPhrase.mapAccTypePhrase();
 
-            for (SongPart spt : contextWork.getSongParts())
+            for (SongPart spt : state.contextWork.getSongParts())
             {
-                FloatRange frg = contextWork.getSptBeatRange(spt);
+                FloatRange frg = state.contextWork.getSptBeatRange(spt);
                 if (frg.isEmpty() || spt.getRhythm() != rhythm)
                 {
                     continue;
@@ -1119,9 +1417,10 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
     /**
      * Ensure the root/bass note is played at chord symbol change position.
      *
+     * @param state
      * @param chordSeqPhrases
      */
-    private void processBassLine(List<ChordSeqPhrases> chordSeqPhrases)
+    private void processBassLine(GenerationState state, List<ChordSeqPhrases> chordSeqPhrases)
     {
         // Check each chord sequence
         for (var chordSeqPhrase : chordSeqPhrases)
@@ -1133,7 +1432,7 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
                 // Some rare rhythms don't use a bass
                 continue;
             }
-            float cSeqStartInBeats = contextWork.getSong().getSongStructure().toPositionInNaturalBeats(cSeq.getBarRange().from);
+            float cSeqStartInBeats = state.contextWork.getSong().getSongStructure().toPositionInNaturalBeats(cSeq.getBarRange().from);
 
 
             // Check if there is a note played at each chord symbol position
@@ -1177,9 +1476,9 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
         }
     }
 
-    private void processAnticipationsAndAccents(List<ChordSeqPhrases> chordSeqPhrases)
+    private void processAnticipationsAndAccents(GenerationState state, List<ChordSeqPhrases> chordSeqPhrases)
     {
-        SongStructure ss = contextWork.getSong().getSongStructure();
+        SongStructure ss = state.contextWork.getSong().getSongStructure();
         int nbCellsPerBeat = Grid.getRecommendedNbCellsPerBeat(rhythm.getTimeSignature(), rhythm.getFeatures().division().isSwing());
 
         LOGGER.fine("processAnticipationsAndAccents() --");
@@ -1191,7 +1490,7 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
             float cSeqStartInBeats = ss.toPositionInNaturalBeats(cSeq.getBarRange().from);
 
 
-            AccentProcessor ap = new AccentProcessor(cSeq, nbCellsPerBeat, contextWork.getSong().getTempo(), Grid.PRE_CELL_BEAT_WINDOW_DEFAULT);
+            AccentProcessor ap = new AccentProcessor(cSeq, nbCellsPerBeat, state.contextWork.getSong().getTempo(), Grid.PRE_CELL_BEAT_WINDOW_DEFAULT);
             AnticipatedChordProcessor acp = new AnticipatedChordProcessor(cSeq, nbCellsPerBeat, Grid.PRE_CELL_BEAT_WINDOW_DEFAULT);
 
 
@@ -1265,10 +1564,11 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
      * Merge all contiguous ChordSequences which are using our rhythm.
      * <p>
      *
+     * @param state
      * @param chordSeqPhrases
      * @return
      */
-    private List<ChordSeqPhrases> mergeChordSequences(List<ChordSeqPhrases> chordSeqPhrases)
+    private List<ChordSeqPhrases> mergeChordSequences(GenerationState state, List<ChordSeqPhrases> chordSeqPhrases)
     {
         Objects.requireNonNull(chordSeqPhrases);
         Preconditions.checkArgument(!chordSeqPhrases.isEmpty());
@@ -1291,7 +1591,7 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
             {
                 // We finished the loop, or cSeq is not contiguous : create a longer ChordSequence with a new AccType/Phrase map
                 int nbBars = prevSeqLastBar - startBar + 1;
-                float startBeatPos = contextWork.getSong().getSongStructure().toPositionInNaturalBeats(startBar);
+                float startBeatPos = state.contextWork.getSong().getSongStructure().toPositionInNaturalBeats(startBar);
                 SimpleChordSequence newSeq = new SimpleChordSequence(new IntRange(startBar, startBar + nbBars - 1), startBeatPos, rhythm.getTimeSignature());
                 HashMap<AccType, Phrase> newMap = new HashMap<>();
                 for (int j = startIndex; j < i; j++)
@@ -1329,13 +1629,14 @@ public class YamJJazzRhythmGenerator implements MusicGenerator
     /**
      * Manage the case of RhythmVoiceDelegate.
      *
+     * @param state
      * @param rv
      * @return
      */
-    private int getChannelFromMidiMix(RhythmVoice rv)
+    private int getChannelFromMidiMix(GenerationState state, RhythmVoice rv)
     {
         RhythmVoice myRv = (rv instanceof RhythmVoiceDelegate) ? ((RhythmVoiceDelegate) rv).getSource() : rv;
-        int destChannel = contextWork.getMidiMix().getChannel(myRv);
+        int destChannel = state.contextWork.getMidiMix().getChannel(myRv);
         return destChannel;
     }
 
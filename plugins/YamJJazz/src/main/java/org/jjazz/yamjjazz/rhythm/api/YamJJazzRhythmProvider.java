@@ -30,6 +30,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sound.midi.InvalidMidiDataException;
@@ -121,73 +122,40 @@ public class YamJJazzRhythmProvider implements RhythmProvider
         }
 
 
-        // Reset data
-        fileRhythms = new ArrayList<>();
-
-
-        // Get the default rhythms
-        var defaultRhythmFiles = getDefaultRhythmFiles(forceRescan);
-        for (File f : defaultRhythmFiles)
-        {
-            Rhythm r;
-            try
-            {
-                r = readFast(f);
-            } catch (IOException ex)
-            {
-                LOGGER.log(Level.WARNING, "getFileRhythms() ex={0}", ex.getLocalizedMessage());
-                errRpt.individualErrorMessages.add(ex.getLocalizedMessage());
-                continue;
-            }
-            fileRhythms.add(r);
-        }
-
-
-        // Get the list of user rhythm files
-        File rDir = RhythmDirsLocator.getDefault().getUserRhythmsDirectory();
-        if (!rDir.isDirectory())
-        {
-            LOGGER.log(Level.WARNING, "getFileRhythms() RhythmProvider={0} - Rhythm file directory does not exist : {1}", new Object[]
-            {
-                info.getName(),
-                rDir.getAbsolutePath()
-            });
-            return fileRhythms;
-        }
-        Set<Path> userRhythmPaths = Utilities.listFiles(rDir, fileFilter, PREFIX_IGNORED_SUBDIR, SUBDIR_MAX_DEPTH);
-        LOGGER.log(Level.FINE, "getFileRhythms()   userRhythmPaths={0}", userRhythmPaths);
+        fileRhythms = readFast(getRhythmFiles(forceRescan), errRpt);
+        updateErrorReport(errRpt);
 
+        return new ArrayList<>(fileRhythms);
+    }
 
-        // Read the user rhythm files
-        for (Path path : userRhythmPaths)
-        {
-            if (defaultRhythmFiles.contains(path.toFile()))
-            {
-                // It might happen that the user rhythm directory is the same than the default rhythm directory (e.g. JJazzLabToolkit) 
-                continue;
-            }
-            Rhythm r;
-            try
-            {
-                r = readFast(path.toFile());
-            } catch (IOException ex)
-            {
-                LOGGER.log(Level.WARNING, "getFileRhythms() ex={0}", ex.getLocalizedMessage());
-                errRpt.individualErrorMessages.add(ex.getLocalizedMessage());
-                continue;
-            }
-            fileRhythms.add(r);
-        }
+    @Override
+    public List<Rhythm> getFileRhythms(Predicate<File> isUpToDate, MultipleErrorsReport errRpt)
+    {
+        // Our cached data will be incomplete
+        fileRhythms = null;
 
+        var files = getRhythmFiles(false).stream()
+            .filter(f -> !isUpToDate.test(f))
+            .toList();
+        LOGGER.log(Level.INFO, "getFileRhythms() {0} rhythm files need to be read", files.size());
 
-        if (!errRpt.individualErrorMessages.isEmpty())
-        {
-            errRpt.primaryErrorMessage = errRpt.individualErrorMessages.size() + " rhythm files could not be read.";
-            errRpt.secondaryErrorMessage = "Rhythm Provider: YamJJazz Extended";
-        }
+        var res = readFast(files, errRpt);
+        updateErrorReport(errRpt);
 
+        return res;
+    }
 
-        return new ArrayList<>(fileRhythms);
+    /**
+     * Read the files in parallel: readFast(File) is thread-safe, it only creates a new YamJJazzRhythmImpl instance.
+     *
+     * @param files
+     * @param errRpt
+     * @return
+     */
+    @Override
+    public List<Rhythm> readFast(List<File> files, MultipleErrorsReport errRpt)
+    {
+        return RhythmProvider.readFastInParallel(this, files, errRpt);
     }
 
     /**
@@ -253,6 +221,53 @@ public class YamJJazzRhythmProvider implements RhythmProvider
     // -------------------------------------------------------------------------------------------------
     // Private methods
     // -------------------------------------------------------------------------------------------------
+    /**
+     * Get the default rhythm files followed by the user rhythm files.
+     *
+     * @param copyDefaultFiles If true extract the default files from zip resource file
+     * @return
+     */
+    private List<File> getRhythmFiles(boolean copyDefaultFiles)
+    {
+        // Get the default rhythms
+        var defaultRhythmFiles = getDefaultRhythmFiles(copyDefaultFiles);
+        List<File> res = new ArrayList<>(defaultRhythmFiles);
+
+
+        // Get the list of user rhythm files
+        File rDir = RhythmDirsLocator.getDefault().getUserRhythmsDirectory();
+        if (!rDir.isDirectory())
+        {
+            LOGGER.log(Level.WARNING, "getRhythmFiles() RhythmProvider={0} - Rhythm file directory does not exist : {1}", new Object[]
+            {
+                info.getName(),
+                rDir.getAbsolutePath()
+            });
+            return res;
+        }
+        Set<Path> userRhythmPaths = Utilities.listFiles(rDir, fileFilter, PREFIX_IGNORED_SUBDIR, SUBDIR_MAX_DEPTH);
+        LOGGER.log(Level.FINE, "getRhythmFiles()   userRhythmPaths={0}", userRhythmPaths);
+
+
+        // Sort to get the same result whatever the file system order
+        userRhythmPaths.stream()
+            .sorted()
+            .map(path -> path.toFile())
+            .filter(f -> !defaultRhythmFiles.contains(f))   // It might happen that the user rhythm directory is the same than the default rhythm directory (e.g. JJazzLabToolkit) 
+            .forEach(f -> res.add(f));
+
+        return res;
+    }
+
+    private void updateErrorReport(MultipleErrorsReport errRpt)
+    {
+        if (!errRpt.individualErrorMessages.isEmpty())
+        {
+            errRpt.primaryErrorMessage = errRpt.individualErrorMessages.size() + " rhythm files could not be read.";
+            errRpt.secondaryErrorMessage = "Rhythm Provider: YamJJazz Extended";
+        }
+    }
+
     /**
      * Get the list of rhythm files (matching getFilenameFile()) present in the directory for default rhythm files.
      * <p>
@@ -284,6 +299,7 @@ public class YamJJazzRhythmProvider implements RhythmProvider
             }
         } else
         {
+            Arrays.sort(files);
             res.addAll(Arrays.asList(files));
         }
         return res;
@@ -0,0 +1,276 @@
+/*
+ *
+ *   DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ *   Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *   This file is part of the JJazzLab software.
+ *
+ *   JJazzLab is free software: you can redistribute it and/or modify
+ *   it under the terms of the Lesser GNU General Public License (LGPLv3)
+ *   as published by the Free Software Foundation, either version 3 of the License,
+ *   or (at your option) any later version.
+ *
+ *   JJazzLab is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License
+ *   along with JJazzLab.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *   Contributor(s):
+ *
+ */
+package org.jjazz.yamjjazz;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import org.jjazz.harmony.api.Note;
+import org.jjazz.phrase.api.NoteEvent;
+import org.jjazz.rhythmmusicgeneration.api.SourcePhrase;
+import org.jjazz.rhythmmusicgeneration.api.SourcePhraseSet;
+import org.jjazz.utilities.api.Utilities;
+import org.jjazz.yamjjazz.rhythm.api.CtabChannelSettings;
+import org.jjazz.yamjjazz.rhythm.api.Style;
+import org.jjazz.yamjjazz.rhythm.api.StylePart;
+import org.jjazz.yamjjazz.rhythm.api.StylePartType;
+import org.jjazz.yamjjazz.rhythm.api.YamChord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the StyleMusicDataCache file format.
+ * <p>
+ * The fixture is a style with 2 StyleParts and 2 channels. The style files are dummy files: only their path, size and last modified time
+ * are used by the cache.
+ */
+public class StyleMusicDataCacheTest
+{
+
+    private static final int CHANNEL_BASS = 10;
+    private static final int CHANNEL_CHORD = 11;
+    private static final List<StylePartType> TYPES = List.of(StylePartType.Main_A, StylePartType.Fill_In_AA);
+    @TempDir
+    Path tempDir;
+    private File stdFile;
+    private File extFile;
+    private File cacheFile;
+
+    static
+    {
+        Utilities.setLoggingFormat(null);
+        Locale.setDefault(Locale.ENGLISH);
+    }
+
+    @BeforeEach
+    public void setUp() throws IOException
+    {
+        stdFile = tempDir.resolve("Test.sty").toFile();
+        Files.write(stdFile.toPath(), new byte[100]);
+        extFile = tempDir.resolve("Test.yjz").toFile();
+        Files.write(extFile.toPath(), new byte[50]);
+        cacheFile = tempDir.resolve("Test.bin").toFile();
+    }
+
+    @Test
+    public void testRoundTrip()
+    {
+        Style style = createStyle(true);
+        StyleMusicDataCache.save(style, stdFile, extFile, cacheFile);
+
+        Style style2 = createStyle(false);
+        assertTrue(StyleMusicDataCache.loadStylePartSizes(style2, stdFile, extFile, cacheFile));
+        for (StylePartType type : TYPES)
+        {
+            assertEquals(style.getStylePart(type).getSizeInBeats(), style2.getStylePart(type).getSizeInBeats(), type.name());
+            assertFalse(style2.getStylePart(type).isMusicLoaded());
+        }
+
+        // Load each StylePart separately, in reverse order
+        for (StylePartType type : TYPES.reversed())
+        {
+            assertTrue(StyleMusicDataCache.load(style2.getStylePart(type), stdFile, extFile, cacheFile), type.name());
+            assertSameMusicData(style.getStylePart(type), style2.getStylePart(type));
+        }
+    }
+
+    @Test
+    public void testRoundTripNoExtFile()
+    {
+        Style style = createStyle(true);
+        StyleMusicDataCache.save(style, stdFile, null, cacheFile);
+
+        Style style2 = createStyle(false);
+        assertFalse(StyleMusicDataCache.loadStylePartSizes(style2, stdFile, extFile, cacheFile));
+        assertTrue(StyleMusicDataCache.loadStylePartSizes(style2, stdFile, null, cacheFile));
+        StylePart sp = style2.getStylePart(StylePartType.Main_A);
+        assertTrue(StyleMusicDataCache.load(sp, stdFile, null, cacheFile));
+        assertSameMusicData(style.getStylePart(StylePartType.Main_A), sp);
+    }
+
+    @Test
+    public void testReplaceAfterLoad()
+    {
+        Style style = createStyle(true);
+        StyleMusicDataCache.save(style, stdFile, extFile, cacheFile);
+        Style style2 = createStyle(false);
+        assertTrue(StyleMusicDataCache.load(style2.getStylePart(StylePartType.Main_A), stdFile, extFile, cacheFile));
+
+        // Cache files must not stay open or mapped after load, otherwise they can't be replaced on Windows
+        style.getStylePart(StylePartType.Main_A).setSizeInBeats(16);
+        StyleMusicDataCache.save(style, stdFile, extFile, cacheFile);
+        assertFalse(new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp").exists());
+
+        Style style3 = createStyle(false);
+        assertTrue(StyleMusicDataCache.loadStylePartSizes(style3, stdFile, extFile, cacheFile));
+        assertEquals(16f, style3.getStylePart(StylePartType.Main_A).getSizeInBeats());
+        assertTrue(StyleMusicDataCache.load(style3.getStylePart(StylePartType.Main_A), stdFile, extFile, cacheFile));
+        assertSameMusicData(style.getStylePart(StylePartType.Main_A), style3.getStylePart(StylePartType.Main_A));
+    }
+
+    @Test
+    public void testStaleCache() throws IOException
+    {
+        StyleMusicDataCache.save(createStyle(true), stdFile, extFile, cacheFile);
+        Files.write(stdFile.toPath(), new byte[101]);
+
+        Style style2 = createStyle(false);
+        assertFalse(StyleMusicDataCache.loadStylePartSizes(style2, stdFile, extFile, cacheFile));
+        assertFalse(StyleMusicDataCache.load(style2.getStylePart(StylePartType.Main_A), stdFile, extFile, cacheFile));
+        assertFalse(style2.getStylePart(StylePartType.Main_A).isMusicLoaded());
+    }
+
+    @Test
+    public void testMissingStylePart()
+    {
+        Style style = createStyle(true);
+        StyleMusicDataCache.save(style, stdFile, extFile, cacheFile);
+
+        Style style2 = createStyle(false);
+        style2.addStylePart(StylePartType.Main_B);
+        assertFalse(StyleMusicDataCache.loadStylePartSizes(style2, stdFile, extFile, cacheFile));
+        assertFalse(StyleMusicDataCache.load(style2.getStylePart(StylePartType.Main_B), stdFile, extFile, cacheFile));
+    }
+
+    @Test
+    public void testTruncatedCacheFile() throws IOException
+    {
+        StyleMusicDataCache.save(createStyle(true), stdFile, extFile, cacheFile);
+        try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "rw"))
+        {
+            raf.setLength(raf.length() - 5);
+        }
+
+        Style style2 = createStyle(false);
+        assertFalse(StyleMusicDataCache.loadStylePartSizes(style2, stdFile, extFile, cacheFile));
+        for (StylePartType type : TYPES)
+        {
+            assertFalse(StyleMusicDataCache.load(style2.getStylePart(type), stdFile, extFile, cacheFile), type.name());
+            assertFalse(style2.getStylePart(type).isMusicLoaded());
+        }
+    }
+
+    @Test
+    public void testGarbageCacheFile() throws IOException
+    {
+        Files.write(cacheFile.toPath(), "garbage".getBytes());
+        Style style2 = createStyle(false);
+        assertFalse(StyleMusicDataCache.loadStylePartSizes(style2, stdFile, extFile, cacheFile));
+        assertFalse(StyleMusicDataCache.load(style2.getStylePart(StylePartType.Main_A), stdFile, extFile, cacheFile));
+    }
+
+    // =================================================================================================================
+    // Private methods
+    // =================================================================================================================
+    /**
+     * Create a style with its non music data.
+     *
+     * @param withMusicData If true also add music data: 2 complexity levels for Main_A, 1 complexity level for Fill_In_AA, 2 variations
+     *                      per complexity level.
+     */
+    private Style createStyle(boolean withMusicData)
+    {
+        Style style = new Style();
+        for (StylePartType type : TYPES)
+        {
+            StylePart sp = style.addStylePart(type);
+            sp.setCtabChannelSettings(CHANNEL_BASS, createCtab(CHANNEL_BASS, "min7"));
+            sp.setCtabChannelSettings(CHANNEL_CHORD, createCtab(CHANNEL_CHORD, "Maj7"));
+            if (!withMusicData)
+            {
+                continue;
+            }
+
+            sp.setSizeInBeats(type == StylePartType.Main_A ? 8 : 4);
+            int nbLevels = type == StylePartType.Main_A ? 2 : 1;
+            for (int level = 1; level <= nbLevels; level++)
+            {
+                for (int v = 0; v < 2; v++)
+                {
+                    SourcePhraseSet sps = new SourcePhraseSet(type.name() + "-" + level + "-" + v);
+                    sps.setPhrase(CHANNEL_BASS, createPhrase(sp, CHANNEL_BASS, 36 + level + v, sp.getSizeInBeats()));
+                    if (v == 0)
+                    {
+                        sps.setPhrase(CHANNEL_CHORD, createPhrase(sp, CHANNEL_CHORD, 60 + level, sp.getSizeInBeats()));
+                    }
+                    sp.addSourcePhraseSet(sps, level);
+                }
+            }
+        }
+        return style;
+    }
+
+    private CtabChannelSettings createCtab(int channel, String yamChord)
+    {
+        var res = new CtabChannelSettings(channel);
+        res.sourceChordNote = new Note(0);
+        res.sourceChordType = YamChord.get(yamChord);
+        return res;
+    }
+
+    private SourcePhrase createPhrase(StylePart sp, int channel, int pitch, float sizeInBeats)
+    {
+        var res = new SourcePhrase(channel, sp.getCtabChannelSettings(channel).getSourceChordSymbol());
+        for (float pos = 0; pos < sizeInBeats; pos += 0.75f)
+        {
+            res.add(new NoteEvent(pitch, 0.5f, 64 + (int) pos, pos));
+        }
+        return res;
+    }
+
+    private void assertSameMusicData(StylePart expected, StylePart actual)
+    {
+        String type = expected.getType().name();
+        assertEquals(expected.getSizeInBeats(), actual.getSizeInBeats(), type);
+        assertEquals(expected.getComplexityLevels(), actual.getComplexityLevels(), type);
+        for (int level : expected.getComplexityLevels())
+        {
+            var expectedSpsList = expected.getSourcePhraseSets(level);
+            var actualSpsList = actual.getSourcePhraseSets(level);
+            assertEquals(expectedSpsList.size(), actualSpsList.size(), type);
+            for (int i = 0; i < expectedSpsList.size(); i++)
+            {
+                var expectedSps = expectedSpsList.get(i);
+                var actualSps = actualSpsList.get(i);
+                assertEquals(expectedSps.getClientProperty(SourcePhraseSet.PROP_ID), actualSps.getClientProperty(SourcePhraseSet.PROP_ID));
+                assertEquals(expectedSps.getSourceChannels(), actualSps.getSourceChannels());
+                for (int channel : expectedSps.getSourceChannels())
+                {
+                    SourcePhrase expectedPhrase = expectedSps.getPhrase(channel);
+                    SourcePhrase actualPhrase = actualSps.getPhrase(channel);
+                    assertEquals(expectedPhrase.getChannel(), actualPhrase.getChannel());
+                    assertEquals(expectedPhrase.getSourceChordSymbol(), actualPhrase.getSourceChordSymbol());
+                    assertTrue(expectedPhrase.equalsAsNoteNearPosition(actualPhrase, 0), type + " level=" + level + " channel=" + channel);
+                }
+            }
+        }
+    }
+}